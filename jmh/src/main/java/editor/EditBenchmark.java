@@ -0,0 +1,144 @@
+package editor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class EditBenchmark measures changes of figures made by the user: dragging, scaling and adding polygons.
+ *
+ * Dragging and scaling should not allocate anything, which is seen with gc profiler of JMH:
+ *   java -jar jmh/target/benchmarks.jar EditBenchmark -p size=100000 -prof gc
+ * DrawPanelTest checks it in every build.
+ * @see Scenes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EditBenchmark {
+
+    /**
+     * Panels of the editor with the pressed figure, prepared by Scenes.pressFigure,
+     * so every operation is the same step of the same gesture.
+     */
+    @State(Scope.Benchmark)
+    public static class Pressed {
+
+        @Param({"1000", "100000", "1000000"})
+        public int size;
+
+        @Param({"circles", "rects", "polygons", "mixed"})
+        public String mix;
+
+        private DrawPanel panel;
+        private FigureStore store;
+        private int figure;
+        private FigureRecord start;
+        private MouseEvent[] moves;
+        private MouseWheelEvent down, up;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            MouseEvent press = Scenes.pressFigure(size, mix);
+            panel = (DrawPanel) press.getComponent();
+            store = panel.getStore();
+            figure = panel.getActiveFigure();
+            start = store.getRecord(figure);
+            moves = new MouseEvent[] {
+                    new MouseEvent(panel, MouseEvent.MOUSE_DRAGGED, 0, InputEvent.BUTTON1_DOWN_MASK, press.getX() + 8, press.getY(), 0, false),
+                    new MouseEvent(panel, MouseEvent.MOUSE_DRAGGED, 0, InputEvent.BUTTON1_DOWN_MASK, press.getX(), press.getY(), 0, false)
+            };
+            down = new MouseWheelEvent(panel, MouseEvent.MOUSE_WHEEL, 0, 0, press.getX(), press.getY(), 0, false,
+                    MouseWheelEvent.WHEEL_UNIT_SCROLL, 1, 1);
+            up = new MouseWheelEvent(panel, MouseEvent.MOUSE_WHEEL, 0, 0, press.getX(), press.getY(), 0, false,
+                    MouseWheelEvent.WHEEL_UNIT_SCROLL, 1, -1);
+        }
+    }
+
+    /**
+     * Scene to which polygons are added, created again when it grew by the number of figures of scene,
+     * so it does not grow without end.
+     */
+    @State(Scope.Benchmark)
+    public static class Growing {
+
+        @Param({"1000", "100000", "1000000"})
+        public int size;
+
+        @Param({"circles", "rects", "polygons", "mixed"})
+        public String mix;
+
+        private final Random random = new Random(11);
+        private final float[] points = new float[12];
+        private FigureStore store;
+        private int side;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            store = Scenes.createScene(size, mix);
+            side = Scenes.sideOf(size);
+        }
+
+        @Setup(Level.Iteration)
+        public void shrink() {
+            if (store.size() >= 2 * size + 100000) store = Scenes.createScene(size, mix);
+        }
+    }
+
+    /**
+     * Drags figure there and back by 8 pixels, like DrawPanel does with the last drag event of every frame.
+     */
+    @Benchmark
+    public double drag(Pressed p) {
+        p.next ^= 1;
+        p.panel.drag(p.moves[p.next]);
+        return p.store.getX(p.figure);
+    }
+
+    /**
+     * Scales figure by one notch of the wheel, like DrawPanel does with rotation of every frame.
+     * Figure is made smaller when it is bigger than at the start and bigger otherwise, so its size stays the same.
+     * Circles move a bit with every scale, circle is put back when it moved by its width, so it stays in the same
+     * cells of spatial index and the benchmark does not measure creating new cells far away.
+     */
+    @Benchmark
+    public double scale(Pressed p) {
+        FigureStore store = p.store;
+        if (Math.abs(store.getX(p.figure) - p.start.x) > p.start.width) store.replace(p.figure, p.start);
+        if (store.getWidth(p.figure) > p.start.width) p.panel.wheel(p.down, 1, 1);
+        else p.panel.wheel(p.up, -1, -1);
+        return store.getWidth(p.figure);
+    }
+
+    /**
+     * Adds polygon from points chosen by user, like DrawPanel.addNewPolygon does.
+     */
+    @Benchmark
+    public int addPolygon(Growing g) {
+        int x = g.random.nextInt(g.side), y = g.random.nextInt(g.side);
+        for (int j = 0; j < 6; j++) {
+            g.points[2 * j] = x + g.random.nextInt(40);
+            g.points[2 * j + 1] = y + g.random.nextInt(40);
+        }
+        g.store.addPolygon(g.points, 6, 0);
+        return g.store.size();
+    }
+}
@@ -0,0 +1,176 @@
+package editor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class FeedBenchmark measures how fast DrawPanel applies changes posted through FigureFeed by other threads,
+ * and how long the user waits for Event Dispatch Thread meanwhile.
+ *
+ * Producers add, recolor, replace and remove their own figures above the figures of scene.
+ * Benchmark batch is time of one batch of FEED_BATCH changes, edtLatency are percentiles of the wait
+ * for Event Dispatch Thread while producers keep posting batches.
+ * @see Scenes
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FeedBenchmark {
+
+    /**
+     * Feed benchmark has PRODUCERS threads, every one posts its part of FEED_BATCH changes in one operation
+     * and keeps about FEED_FIGURES of its own figures in the drawing.
+     */
+    private static final int PRODUCERS = 4;
+    private static final int FEED_BATCH = 20000;
+    private static final int FEED_FIGURES = 2000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"circles", "rects", "polygons", "mixed"})
+    public String mix;
+
+    private FigureFeed feed;
+    private ExecutorService threads;
+    private final List<Runnable> producers = new ArrayList<>();
+    private final List<Future<?>> posted = new ArrayList<>();
+    private volatile boolean idle;
+    private final Runnable probe = () -> idle = feed.isIdle();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        EventQueue.invokeAndWait(() -> {
+            DrawPanel panel = new DrawPanel();
+            panel.setSize(Scenes.WIDTH, Scenes.HEIGHT);
+            panel.setFigures(Scenes.createScene(size, mix));
+            feed = panel.getFeed();
+        });
+        threads = Executors.newFixedThreadPool(PRODUCERS, task -> {
+            Thread thread = new Thread(task, "Producer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int p = 0; p < PRODUCERS; p++) producers.add(producer(feed, new Random(p)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        threads.shutdownNow();
+    }
+
+    /**
+     * Lets producers post one batch of changes and waits until Event Dispatch Thread applies all of them.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public boolean batch() throws Exception {
+        posted.clear();
+        for (Runnable producer : producers) posted.add(threads.submit(producer));
+        boolean producing = true;
+        do {
+            Thread.sleep(1);
+            EventQueue.invokeAndWait(probe);
+            if (producing) {
+                producing = false;
+                for (Future<?> f : posted) producing |= !f.isDone();
+            }
+        } while (producing || !idle);
+        awaitProducers();
+        return idle;
+    }
+
+    /**
+     * Waits until producers of the last batch end, so the next batch does not run the same producer twice at once.
+     */
+    private void awaitProducers() throws Exception {
+        for (Future<?> f : posted) f.get();
+    }
+
+    /**
+     * Puts empty task into event queue while Load keeps producers busy, the wait is the delay that the user would feel.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public boolean edtLatency(Load load) throws Exception {
+        EventQueue.invokeAndWait(probe);
+        return idle;
+    }
+
+    /**
+     * Load runs batches one after another in its own thread during every iteration of edtLatency.
+     */
+    @State(Scope.Benchmark)
+    public static class Load {
+        private Thread thread;
+
+        @Setup(Level.Iteration)
+        public void start(FeedBenchmark benchmark) {
+            thread = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) benchmark.batch();
+                } catch (InterruptedException e) {
+                    // iteration ended
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, "Load");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @TearDown(Level.Iteration)
+        public void stop(FeedBenchmark benchmark) throws Exception {
+            thread.interrupt();
+            thread.join();
+            benchmark.awaitProducers();
+        }
+    }
+
+    /**
+     * Creates producer that posts its part of FEED_BATCH changes every time it runs.
+     */
+    private static Runnable producer(FigureFeed feed, Random random) {
+        IntList ids = new IntList();
+        return () -> {
+            for (int k = 0; k < FEED_BATCH / PRODUCERS; k++) {
+                int x = random.nextInt(Scenes.WIDTH), y = random.nextInt(Scenes.HEIGHT), rgb = random.nextInt(0xffffff);
+                int op = random.nextInt(10);
+                if (ids.isEmpty() || (op < 3 && ids.size() < FEED_FIGURES)) {
+                    ids.add(random.nextBoolean() ? feed.addCircle(x, y, 10, 10, rgb) : feed.addRect(x, y, 10, 10, rgb));
+                } else if (op < 5) {
+                    int i = random.nextInt(ids.size());
+                    feed.remove(ids.get(i));
+                    ids.set(i, ids.get(ids.size() - 1));
+                    ids.removeAt(ids.size() - 1);
+                } else if (op < 8) {
+                    feed.setColor(ids.get(random.nextInt(ids.size())), rgb);
+                } else {
+                    feed.replace(ids.get(random.nextInt(ids.size())), new FigureRecord(FigureStore.RECT, x, y, 20, 10, rgb, null));
+                }
+            }
+        };
+    }
+}
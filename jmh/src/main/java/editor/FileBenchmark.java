@@ -0,0 +1,92 @@
+package editor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class FileBenchmark measures saving scene into file and opening it again, like MenuPanel does.
+ * @see Scenes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FileBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"circles", "rects", "polygons", "mixed"})
+    public String mix;
+
+    /**
+     * Area of the drawing shown on one screen without zoom.
+     */
+    private static final Rectangle2D SCREEN = new Rectangle2D.Double(0, 0, Scenes.WIDTH, Scenes.HEIGHT);
+
+    private FigureStore scene;
+    private File binary, text, indexed;
+    private final IntList visible = new IntList();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        scene = Scenes.createScene(size, mix);
+        binary = File.createTempFile("bench", ".figb");
+        text = File.createTempFile("bench", ".txt");
+        indexed = File.createTempFile("bench", ".figb");
+        BinarySceneFormat.write(indexed, scene);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        binary.delete();
+        text.delete();
+        indexed.delete();
+    }
+
+    /**
+     * Saves scene into binary file and opens it again, like MenuPanel does for files with binary extension.
+     */
+    @Benchmark
+    public int binaryRoundTrip() throws IOException {
+        BinarySceneFormat.write(binary, scene);
+        return BinarySceneFormat.read(binary).size();
+    }
+
+    /**
+     * Opens binary file with index as mapped scene and finds figures of one screen, like MenuPanel does for big files.
+     */
+    @Benchmark
+    public int mappedOpen() throws IOException {
+        FigureStore opened = FigureStore.fromMapped(MappedScene.open(indexed), Progress.NONE);
+        opened.query(SCREEN, visible);
+        return visible.size();
+    }
+
+    /**
+     * Saves scene into text file and opens it again, like MenuPanel does for other files.
+     */
+    @Benchmark
+    public int textRoundTrip() throws IOException {
+        TextSceneFormat.write(text, scene, Progress.NONE);
+        return TextSceneFormat.read(text, Progress.NONE).size();
+    }
+}
@@ -0,0 +1,95 @@
+package editor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class PaintBenchmark measures painting of the view and finding figure under the cursor.
+ *
+ * Benchmarks of the editor are built by Maven into jmh/target/benchmarks.jar and run by JMH:
+ *   mvn -B package
+ *   java -jar jmh/target/benchmarks.jar -rf json -rff bench-results.json
+ *   java -jar jmh/target/benchmarks.jar PaintBenchmark -p size=100000 -p mix=polygons
+ * @see Scenes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"circles", "rects", "polygons", "mixed"})
+    public String mix;
+
+    private DrawPanel panel;
+    private FigureStore store;
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    /**
+     * Points spread over the view, hit benchmark takes the next one in every operation.
+     */
+    private final double[] points = new double[2 * 4096];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        panel = new DrawPanel();
+        panel.setSize(Scenes.WIDTH, Scenes.HEIGHT);
+        panel.setFigures(Scenes.createScene(size, mix));
+        store = panel.getStore();
+        image = new BufferedImage(Scenes.WIDTH, Scenes.HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        graphics = image.createGraphics();
+
+        Random random = new Random(7);
+        for (int i = 0; i < points.length; i += 2) {
+            points[i] = random.nextInt(Scenes.WIDTH);
+            points[i + 1] = random.nextInt(Scenes.HEIGHT);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    /**
+     * Paints DrawPanel showing the corner of scene into offscreen image, like Swing paints it on the screen.
+     */
+    @Benchmark
+    public int paint() {
+        panel.paint(graphics);
+        return image.getRGB(Scenes.WIDTH / 2, Scenes.HEIGHT / 2);
+    }
+
+    /**
+     * Finds figure hit by the cursor, like DrawPanel.markAsActive does.
+     */
+    @Benchmark
+    public int hit() {
+        int i = next;
+        next = (i + 2) & (points.length - 1);
+        return store.hit(points[i], points[i + 1]);
+    }
+}
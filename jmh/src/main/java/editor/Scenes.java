@@ -0,0 +1,102 @@
+package editor;
+
+import javax.swing.AbstractButton;
+import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.util.Random;
+
+/**
+ * Class Scenes creates scenes and panels used by benchmarks.
+ *
+ * Scenes contain given number of figures of given mix spread over square area,
+ * the side of area grows with the number of figures, so the density of figures is the same in every scene.
+ * Scenes are created with the same seed, so every run measures the same figures.
+ */
+final class Scenes {
+
+    /**
+     * WIDTH and HEIGHT are the size of DrawPanel in EditorsFrame, used as the size of drawn view.
+     * SPACING is the side of square that one figure has on average.
+     */
+    static final int WIDTH = 880, HEIGHT = 640;
+    private static final int SPACING = 30;
+
+    private Scenes() {}
+
+    /**
+     * Creates scene with given number of figures.
+     * @param size number of figures
+     * @param mix circles, rects, polygons or mixed
+     * @return store with figures of scene
+     */
+    static FigureStore createScene(int size, String mix) {
+        if (!mix.equals("circles") && !mix.equals("rects") && !mix.equals("polygons") && !mix.equals("mixed")) {
+            throw new IllegalArgumentException("Unknown mix " + mix);
+        }
+        Random random = new Random(42);
+        int side = sideOf(size);
+        FigureStore store = new FigureStore();
+        float[] vertices = new float[12];
+
+        for (int i = 0; i < size; i++) {
+            int type = mix.equals("circles") ? 0 : mix.equals("rects") ? 1 : mix.equals("polygons") ? 2 : i % 3;
+            int x = random.nextInt(side), y = random.nextInt(side);
+            int w = 5 + random.nextInt(50), h = 5 + random.nextInt(50);
+            int rgb = random.nextInt(0xffffff);
+
+            if (type == 0) {
+                store.addCircle(x, y, w, w, rgb);
+            } else if (type == 1) {
+                store.addRect(x, y, w, h, rgb);
+            } else {
+                for (int j = 0; j < 6; j++) {
+                    vertices[2 * j] = x + random.nextInt(w);
+                    vertices[2 * j + 1] = y + random.nextInt(h);
+                }
+                store.addPolygon(vertices, 6, rgb);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Returns the side of square area of scene with given number of figures.
+     */
+    static int sideOf(int size) {
+        return Math.max(WIDTH, (int) Math.sqrt((double) size * SPACING * SPACING));
+    }
+
+    /**
+     * Creates panels of the editor like EditorsFrame does, chooses modify mode and presses the first figure
+     * at least 20 units wide found from the middle of the view, so it is selected like by the user.
+     * @return event of the press, its component is the panel
+     */
+    static MouseEvent pressFigure(int size, String mix) {
+        DrawPanel panel = new DrawPanel();
+        ActionPanel actionPanel = new ActionPanel();
+        EditPanel editPanel = new EditPanel();
+        panel.setActionPanel(actionPanel);
+        panel.setEditPanel(editPanel);
+        actionPanel.setDrawPanel(panel);
+        editPanel.setDrawPanel(panel);
+        for (Component c : actionPanel.getComponents()) {
+            if (c instanceof AbstractButton && ((AbstractButton) c).getText().equals("Modify")) ((AbstractButton) c).doClick();
+        }
+        panel.setSize(WIDTH, HEIGHT);
+        panel.setFigures(createScene(size, mix));
+
+        FigureStore store = panel.getStore();
+        for (int y = HEIGHT / 2; y < HEIGHT; y++) {
+            for (int x = WIDTH / 2; x < WIDTH; x++) {
+                int hit = store.hit(x, y);
+                if (hit == -1 || store.getWidth(hit) < 20) continue;
+                MouseEvent press = new MouseEvent(panel, MouseEvent.MOUSE_PRESSED, System.currentTimeMillis(),
+                        InputEvent.BUTTON1_DOWN_MASK, x, y, 1, false, MouseEvent.BUTTON1);
+                panel.dispatchEvent(press);
+                return press;
+            }
+        }
+        throw new IllegalStateException("No figure to press in scene of " + size + " " + mix);
+    }
+}
@@ -1,4 +1,4 @@
-import javafx.scene.control.ToggleButton;
+package editor;
 
 import javax.swing.JToggleButton;
 
@@ -57,7 +57,7 @@ class ActionPanel extends JPanel {
          */
         clear = new JButton("Clear");
         clear.addActionListener(e -> {
-            if (drawPanel.getFigures().size() > 0) {
+            if (drawPanel.getStore().size() > 0) {
                 int option = JOptionPane.showConfirmDialog(null, "Do you really want to clear all your figures?");
                 if(option==0) {
                     drawPanel.clearFigures();
@@ -0,0 +1,105 @@
+package editor;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class BackgroundTask runs long operation, like reading or saving big file, outside of the Event Dispatch Thread,
+ * so the editor does not freeze.
+ * Progress of operation is shown in ProgressMonitor, which allows user to cancel it.
+ * Operation is split into named phases, time of every phase is logged when the task ends.
+ * Result of operation is given to finished method that is run on the Event Dispatch Thread,
+ * so for example figures read from file are shown all at once.
+ * @param <T> type of result of operation
+ * @see Progress
+ */
+abstract class BackgroundTask<T> extends SwingWorker<T, Void> implements Progress {
+
+    private static final Logger LOGGER = Logger.getLogger(BackgroundTask.class.getName());
+
+    /**
+     * Description is the name of operation shown to the user and written into log.
+     * Timings contains times of ended phases, phase is the name of current phase.
+     */
+    private final String description;
+    private final ProgressMonitor monitor;
+    private final StringBuilder timings = new StringBuilder();
+    private String phase;
+    private long phaseStart;
+
+    /**
+     * Creates task, it has to be started with execute method.
+     * @param parent component that progress dialog belongs to
+     * @param description name of operation
+     */
+    BackgroundTask(Component parent, String description) {
+        this.description = description;
+        this.monitor = new ProgressMonitor(parent, description, null, 0, 100);
+
+        addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) monitor.setProgress((Integer) e.getNewValue());
+            if (monitor.isCanceled()) cancel(true);
+        });
+    }
+
+    /**
+     * Shows result of operation, invoked on the Event Dispatch Thread when operation ended successfully.
+     * @param result result of doInBackground
+     */
+    protected abstract void finished(T result);
+
+    /**
+     * Updates progress shown to the user. Invoked by the operation in background thread.
+     * @throws CancellationException if user cancelled the task
+     */
+    public void update(long done, long total) {
+        if (isCancelled()) throw new CancellationException();
+        if (total > 0) setProgress((int) Math.max(0, Math.min(100, done * 100 / total)));
+    }
+
+    /**
+     * Ends current phase of operation and starts the next one.
+     * @param name name of the next phase
+     */
+    synchronized void phase(String name) {
+        endPhase();
+        phase = name;
+        phaseStart = System.nanoTime();
+    }
+
+    private synchronized void endPhase() {
+        if (phase == null) return;
+        timings.append(", ").append(phase).append(' ').append((System.nanoTime() - phaseStart) / 1000000).append(" ms");
+        phase = null;
+    }
+
+    /**
+     * Closes progress dialog, gives result to finished method and logs times of phases.
+     * When operation failed error is shown to the user.
+     */
+    protected final void done() {
+        monitor.close();
+        if (isCancelled()) {
+            endPhase();
+            LOGGER.info(description + " cancelled" + timings);
+            return;
+        }
+        try {
+            T result = get();
+            phase("finish");
+            finished(result);
+            endPhase();
+            LOGGER.info(description + timings);
+        } catch (InterruptedException | ExecutionException e) {
+            endPhase();
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            LOGGER.log(Level.WARNING, description + " failed" + timings, cause);
+            JOptionPane.showMessageDialog(null, description + " failed: " + cause.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package editor;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Class BatchRenderer saves drawings from files as PNG images without showing the editor, for example on server
+ * or in continuous integration, where there is no display:
+ *   java -cp out:resources editor.BatchRenderer -dpi 192 -o images drawing1.figb drawing2.txt
+ *
+ * Options:
+ *   -dpi 96   resolution of images, 96 DPI gives one pixel of image per one unit of drawing
+ *   -area x,y,width,height   area of drawing saved into images, by default bounds of all figures of every drawing
+ *   -o directory   directory for images, by default images are saved next to drawings
+ *   -threads 4   number of threads, by default number of processors
+ *
+ * Drawings are read in both formats written by the editor and drawn by ImageExporter with FigureRenderer,
+ * the same way as DrawPanel draws them. Image of drawing "name.ext" is saved as "name.png",
+ * or as "name.ext.png" when other drawing of the same name is given too.
+ * Files are rendered in parallel in one pool, which also parses parts of big text files and draws tiles of images,
+ * so a single big drawing uses all threads too. Process exits with status 1 if any file failed.
+ * @see ImageExporter
+ */
+class BatchRenderer {
+
+    /**
+     * Resolution that gives one pixel of image per one unit of drawing.
+     */
+    private static final int BASE_DPI = 96;
+
+    private int dpi = BASE_DPI;
+    private Rectangle2D area;
+    private File outputDirectory;
+    private ForkJoinPool pool;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (System.getProperty("java.awt.headless") == null) System.setProperty("java.awt.headless", "true");
+
+        BatchRenderer renderer = new BatchRenderer();
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                files.add(new File(args[i]));
+                continue;
+            }
+            String option = args[i];
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value of " + option);
+            String value = args[++i];
+            switch (option) {
+                case "-dpi": renderer.dpi = Integer.parseInt(value); break;
+                case "-area": renderer.area = parseArea(value); break;
+                case "-o": renderer.outputDirectory = new File(value); break;
+                case "-threads": threads = Integer.parseInt(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: BatchRenderer [-dpi 96] [-area x,y,width,height] [-o directory] [-threads n] file...");
+            System.exit(2);
+        }
+        if (renderer.dpi <= 0) throw new IllegalArgumentException("Resolution has to be a positive number");
+        if (renderer.outputDirectory != null && !renderer.outputDirectory.isDirectory() && !renderer.outputDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Can not create directory " + renderer.outputDirectory);
+        }
+
+        renderer.pool = new ForkJoinPool(threads);
+        List<ForkJoinTask<String>> tasks = new ArrayList<>();
+        HashSet<File> images = new HashSet<>();
+        for (File file : files) {
+            File image = renderer.imageOf(file, false);
+            if (!images.add(image)) image = renderer.imageOf(file, true);
+            images.add(image);
+            File output = image;
+            tasks.add(renderer.pool.submit(() -> renderer.render(file, output)));
+        }
+
+        int failed = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                System.out.println(tasks.get(i).get());
+            } catch (ExecutionException e) {
+                failed++;
+                Throwable cause = e;
+                while (cause.getCause() != null) cause = cause.getCause();
+                System.err.println(files.get(i) + ": failed: " + cause);
+            }
+        }
+        renderer.pool.shutdown();
+        System.exit(failed > 0 ? 1 : 0);
+    }
+
+    private static Rectangle2D parseArea(String value) {
+        String[] parts = value.split(",");
+        if (parts.length != 4) throw new IllegalArgumentException("Area has to be x,y,width,height");
+        double width = Double.parseDouble(parts[2]), height = Double.parseDouble(parts[3]);
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Size of area has to be positive");
+        return new Rectangle2D.Double(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), width, height);
+    }
+
+    /**
+     * Reads drawing from file and saves its image. Image that existed before is kept if drawing failed.
+     * @param file file with drawing
+     * @param image file to save image into
+     * @return line describing saved image
+     * @throws IOException if file can not be read or image can not be written
+     */
+    private String render(File file, File image) throws IOException {
+        long start = System.nanoTime();
+        FigureStore figures = BinarySceneFormat.isBinary(file)
+                ? BinarySceneFormat.read(file)
+                : TextSceneFormat.read(file, Progress.NONE, pool);
+
+        Rectangle2D exported = area != null ? area : boundsOf(figures);
+        ImageExporter exporter = new ImageExporter(figures, exported, (double) dpi / BASE_DPI, pool);
+        exporter.export(image, dpi);
+
+        return String.format(Locale.ROOT, "%s -> %s %dx%d, %d figures, %d ms", file, image,
+                exporter.getWidth(), exporter.getHeight(), figures.size(), (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * Returns file for image of given drawing.
+     * @param file file with drawing
+     * @param withExtension {@code true} to keep extension of drawing in the name of image
+     * @return file for image
+     */
+    private File imageOf(File file, boolean withExtension) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (!withExtension && dot > 0) name = name.substring(0, dot);
+        File directory = outputDirectory != null ? outputDirectory : file.getAbsoluteFile().getParentFile();
+        return new File(directory, name + ".png").getAbsoluteFile();
+    }
+
+    /**
+     * Returns bounds of all figures with their outlines, or small area at the beginning of empty drawing.
+     * @param figures figures of drawing
+     * @return area containing all figures
+     */
+    private static Rectangle2D boundsOf(FigureStore figures) {
+        if (figures.size() == 0) return new Rectangle2D.Double(0, 0, 1, 1);
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < figures.size(); i++) {
+            minX = Math.min(minX, figures.getX(i));
+            minY = Math.min(minY, figures.getY(i));
+            maxX = Math.max(maxX, figures.getX(i) + figures.getWidth(i));
+            maxY = Math.max(maxY, figures.getY(i) + figures.getHeight(i));
+        }
+        return new Rectangle2D.Double(Math.floor(minX) - 1, Math.floor(minY) - 1,
+                Math.ceil(maxX) - Math.floor(minX) + 2, Math.ceil(maxY) - Math.floor(minY) + 2);
+    }
+}
@@ -0,0 +1,454 @@
+package editor;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Class BinarySceneFormat reads and writes figures in compact binary format. It is used next to the text format of TextSceneFormat.
+ *
+ * File starts with header: magic bytes "FIGB", version and number of figures.
+ * Then every figure is saved as record:
+ * - type of figure (1 byte),
+ * - color of figure as packed RGB (3 bytes),
+ * - Circle: x, y, width, height as float32,
+ * - Rect: x, y, width, height as zigzag varints,
+ * - Polygon: number of vertices as varint, bounds as float32 (so readers can skip polygon without reading vertices),
+ *   then x and y of every vertex as float32.
+ * All numbers are little endian. Files are read and written through buffered channel, no strings are created per figure.
+ *
+ * Version 2 adds index after the records, so MappedScene can open big file without reading its records:
+ * - palette: number of colors, then RGB and number of figures of every color, sorted by RGB,
+ * - table: offset of record and index of its color in palette for every figure,
+ * - grid: size of cell and number of used cells, key of every cell sorted ascending, start of ids of every cell
+ *   in list of ids (one more start for the end of the list), then the list with ids of records in every cell,
+ * - large: number of records that cover more than INDEX_MAX_CELLS cells and their ids,
+ * - trailer: position of the palette (int64) and magic bytes "FIGX".
+ * All values of index are int32 except keys of cells. Readers of records stop after the last record, so they read
+ * both versions. File bigger than what MappedScene can map gets no trailer and it is read like file of version 1.
+ * @see TextSceneFormat
+ * @see MappedScene
+ */
+class BinarySceneFormat {
+
+    static final byte[] MAGIC = {'F', 'I', 'G', 'B'};
+    static final byte VERSION = 2;
+    static final byte FIRST_VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 1 + 4;
+
+    /**
+     * Smallest record is rectangle with type, color and four one-byte varints.
+     */
+    private static final int MIN_RECORD_SIZE = 4 + 4;
+
+    /**
+     * INDEX_MAGIC ends the trailer of index, INDEX_CELL_SIZE is the size of cell of its grid in pixels and
+     * INDEX_MAX_CELLS is the number of cells after which record is put into the list of large ones.
+     * MAX_CELL is the biggest coordinate of cell, like in SpatialIndex.
+     */
+    static final byte[] INDEX_MAGIC = {'F', 'I', 'G', 'X'};
+    static final int TRAILER_SIZE = 8 + INDEX_MAGIC.length;
+    static final int INDEX_CELL_SIZE = 256;
+    static final int INDEX_MAX_CELLS = 256;
+    private static final int MAX_CELL = 1 << 29;
+
+    static final byte CIRCLE = 1;
+    static final byte RECT = 2;
+    static final byte POLYGON = 3;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Progress of reading and writing is updated after every PROGRESS_STEP figures.
+     */
+    static final int PROGRESS_STEP = 1 << 12;
+
+    /**
+     * Checks if given file starts with magic bytes of binary format.
+     * @param file file to check
+     * @return {@code true} if file is in binary format, {@code false} otherwise.
+     * @throws IOException if file can not be read
+     */
+    static boolean isBinary(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(MAGIC.length);
+            while (b.hasRemaining() && channel.read(b) > 0) ;
+            return !b.hasRemaining() && Arrays.equals(b.array(), MAGIC);
+        }
+    }
+
+    /**
+     * Writes figures with their colors into file.
+     * @param file file to write into
+     * @param figures figures to write
+     * @throws IOException if file can not be written
+     */
+    static void write(File file, FigureStore figures) throws IOException {
+        write(file, figures, Progress.NONE);
+    }
+
+    /**
+     * Writes figures with their colors into file and reports number of written figures.
+     * @param file file to write into
+     * @param figures figures to write
+     * @param progress progress of writing, it can cancel writing
+     * @throws IOException if file can not be written
+     */
+    static void write(File file, FigureStore figures, Progress progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer b = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            b.put(MAGIC).put(VERSION).putInt(figures.size());
+
+            /** Flushed is the number of bytes written into the channel, so offset of record is flushed plus position in buffer. */
+            IndexBuilder index = new IndexBuilder(figures.size());
+            long flushed = 0;
+            float[] vertices = new float[64];
+            for (int i = 0; i < figures.size(); i++) {
+                if (i % PROGRESS_STEP == 0) progress.update(i, figures.size());
+                byte type = figures.getType(i);
+                int rgb = figures.getRGB(i);
+                flushed += ensureSpace(channel, b, 4 + 20);
+                long offset = flushed + b.position();
+
+                if (type == FigureStore.CIRCLE) {
+                    float x = (float) figures.getX(i), y = (float) figures.getY(i);
+                    float w = (float) figures.getWidth(i), h = (float) figures.getHeight(i);
+                    putTypeAndColor(b, CIRCLE, rgb);
+                    b.putFloat(x).putFloat(y).putFloat(w).putFloat(h);
+                    index.add(i, offset, rgb, x, y, w, h);
+                }
+                else if (type == FigureStore.RECT) {
+                    int x = (int) figures.getX(i), y = (int) figures.getY(i);
+                    int w = (int) figures.getWidth(i), h = (int) figures.getHeight(i);
+                    putTypeAndColor(b, RECT, rgb);
+                    putVarint(b, x);
+                    putVarint(b, y);
+                    putVarint(b, w);
+                    putVarint(b, h);
+                    index.add(i, offset, rgb, x, y, w, h);
+                }
+                else {
+                    int n = figures.getVertexCount(i);
+                    if (vertices.length < 2 * n) vertices = new float[2 * n];
+                    figures.getVertices(i, vertices);
+                    float x = (float) figures.getX(i), y = (float) figures.getY(i);
+                    float w = (float) figures.getWidth(i), h = (float) figures.getHeight(i);
+
+                    putTypeAndColor(b, POLYGON, rgb);
+                    putVarint(b, n);
+                    flushed += ensureSpace(channel, b, 16);
+                    b.putFloat(x).putFloat(y).putFloat(w).putFloat(h);
+
+                    for (int j = 0; j < 2 * n; j += 2) {
+                        flushed += ensureSpace(channel, b, 8);
+                        b.putFloat(vertices[j]).putFloat(vertices[j + 1]);
+                    }
+                    index.add(i, offset, rgb, x, y, w, h);
+                }
+            }
+            long end = flushed + b.position();
+            if (end <= Integer.MAX_VALUE) index.write(channel, b, end);
+            flush(channel, b);
+        }
+    }
+
+    /**
+     * Reads figures with their colors from file.
+     * @param file file to read from
+     * @return store with read figures, it has no listeners
+     * @throws IOException if file can not be read or it is not correct binary scene
+     */
+    static FigureStore read(File file) throws IOException {
+        return read(file, Progress.NONE);
+    }
+
+    /**
+     * Reads figures with their colors from file and reports number of read figures.
+     * @param file file to read from
+     * @param progress progress of reading, it can cancel reading
+     * @return store with read figures, it has no listeners
+     * @throws IOException if file can not be read or it is not correct binary scene
+     */
+    static FigureStore read(File file, Progress progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            b.flip();
+
+            b = fill(channel, b, HEADER_SIZE);
+            int count = readHeader(b, channel.size());
+            FigureStore figures = new FigureStore();
+            float[] vertices = new float[64];
+
+            try {
+                for (int i = 0; i < count; i++) {
+                    if (i % PROGRESS_STEP == 0) progress.update(i, count);
+                    b = fill(channel, b, 4 + 20);
+                    byte type = b.get();
+                    int rgb = getColor(b);
+
+                    if (type == CIRCLE) {
+                        figures.addCircle(b.getFloat(), b.getFloat(), b.getFloat(), b.getFloat(), rgb);
+                    }
+                    else if (type == RECT) {
+                        figures.addRect(getVarint(b), getVarint(b), getVarint(b), getVarint(b), rgb);
+                    }
+                    else if (type == POLYGON) {
+                        int n = getVarint(b);
+                        checkVertexCount(i, n, channel.size() - channel.position() + b.remaining());
+                        b = fill(channel, b, 16 + 8 * n);
+                        b.position(b.position() + 16);
+                        if (vertices.length < 2 * n) vertices = new float[2 * n];
+                        for (int j = 0; j < 2 * n; j++) vertices[j] = b.getFloat();
+                        figures.addPolygon(vertices, n, rgb);
+                    }
+                    else {
+                        throw new IOException("Unknown figure type " + type + " of figure " + i);
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                throw new EOFException("Unexpected end of file");
+            }
+            return figures;
+        }
+    }
+
+    /**
+     * Reads header of binary scene. Number of figures is checked against size of file before anything is allocated for them.
+     * @param b buffer positioned at the beginning of file
+     * @param size size of the whole file
+     * @return number of figures in file
+     * @throws IOException if buffer does not start with correct header or the file can not hold its number of figures
+     */
+    static int readHeader(ByteBuffer b, long size) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        if (b.remaining() < HEADER_SIZE) throw new EOFException("File is too short");
+        b.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a binary scene file");
+        byte version = b.get();
+        if (version < FIRST_VERSION || version > VERSION) throw new IOException("Unsupported version " + version);
+        int count = b.getInt();
+        if (count < 0) throw new IOException("Negative number of figures " + count);
+        if (count > (size - HEADER_SIZE) / MIN_RECORD_SIZE) {
+            throw new IOException("File has " + count + " figures, more than it holds");
+        }
+        return count;
+    }
+
+    /**
+     * Checks number of vertices of polygon read from file before anything is allocated or skipped for them,
+     * so damaged file can not make reader allocate huge buffer or overflow position.
+     * @param i index of polygon
+     * @param n read number of vertices
+     * @param left number of bytes after the number of vertices to the end of file
+     * @throws IOException if polygon has no vertices or its bounds and vertices do not fit into the rest of file
+     */
+    static void checkVertexCount(int i, int n, long left) throws IOException {
+        if (n <= 0) throw new IOException("Polygon " + i + " has no vertices");
+        if (16L + 8L * n > Math.min(left, Integer.MAX_VALUE)) {
+            throw new IOException("Polygon " + i + " has " + n + " vertices, more than the rest of file holds");
+        }
+    }
+
+    private static void putTypeAndColor(ByteBuffer b, byte type, int rgb) {
+        b.put(type).put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+    }
+
+    /**
+     * Reads packed RGB color of figure.
+     * @param b buffer positioned after the type of figure
+     * @return RGB value of color
+     */
+    static int getColor(ByteBuffer b) {
+        return (b.get() & 0xff) << 16 | (b.get() & 0xff) << 8 | (b.get() & 0xff);
+    }
+
+    /**
+     * Writes zigzag varint, small numbers of both signs take one byte.
+     * @param b buffer with space for 5 bytes
+     * @param value value to write
+     */
+    static void putVarint(ByteBuffer b, int value) {
+        int v = (value << 1) ^ (value >> 31);
+        while ((v & ~0x7f) != 0) {
+            b.put((byte) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    /**
+     * Reads zigzag varint.
+     * @param b buffer positioned at the varint
+     * @return read value
+     * @throws IOException if varint is longer than 5 bytes
+     */
+    static int getVarint(ByteBuffer b) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte part = b.get();
+            v |= (part & 0x7f) << shift;
+            if (part >= 0) return (v >>> 1) ^ -(v & 1);
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Returns coordinate of cell of index grid containing given coordinate, clamped to MAX_CELL like cells of SpatialIndex.
+     * @param coordinate coordinate in pixels
+     * @param cellSize size of cell
+     * @return coordinate of cell
+     */
+    static int cell(double coordinate, int cellSize) {
+        return (int) Math.max(-MAX_CELL, Math.min(MAX_CELL, Math.floor(coordinate / cellSize)));
+    }
+
+    /**
+     * Packs coordinates of cell into key. Sign bit of y is flipped, so keys of cells with the same x are sorted by y.
+     * @param cx, cy coordinates of cell
+     * @return key of cell
+     */
+    static long cellKey(int cx, int cy) {
+        return (long) cx << 32 | (cy ^ 0x80000000) & 0xffffffffL;
+    }
+
+    /**
+     * Writes buffer into the channel if it has less than n bytes of space.
+     * @return number of written bytes
+     */
+    private static int ensureSpace(FileChannel channel, ByteBuffer b, int n) throws IOException {
+        return b.remaining() < n ? flush(channel, b) : 0;
+    }
+
+    private static int flush(FileChannel channel, ByteBuffer b) throws IOException {
+        b.flip();
+        int n = b.remaining();
+        while (b.hasRemaining()) channel.write(b);
+        b.clear();
+        return n;
+    }
+
+    /**
+     * Makes sure that at least n bytes are in the buffer, unless the end of file is reached.
+     * Buffer is made bigger when n bytes do not fit in it.
+     * @return buffer with read bytes, ready to get them
+     */
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer b, int n) throws IOException {
+        if (b.remaining() >= n) return b;
+        if (n > b.capacity()) {
+            int capacity = n > 1 << 29 ? n : Integer.highestOneBit(n) << 1;
+            ByteBuffer bigger = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            bigger.put(b);
+            b = bigger;
+        } else {
+            b.compact();
+        }
+        while (b.position() < n && channel.read(b) > 0) ;
+        b.flip();
+        return b;
+    }
+
+    /**
+     * Collects offset, color and cells of every record while records are written, then writes them as index after the records.
+     * Ids of records in every cell are sorted ascending, because records are added in their order and sorted into cells
+     * by counting sort.
+     */
+    private static class IndexBuilder {
+
+        /**
+         * offsets and colors contain offset and index of color in palette of every record.
+         * keys and ids contain key of cell and id of record of every pair of cell and record that covers it.
+         */
+        private final int[] offsets, colors;
+        private final ColorTable palette = new ColorTable();
+        private long[] keys = new long[64];
+        private int[] ids = new int[64];
+        private int pairs;
+        private final IntList large = new IntList();
+
+        IndexBuilder(int count) {
+            offsets = new int[count];
+            colors = new int[count];
+        }
+
+        /**
+         * Adds written record. Bounds are the values written into the record, so MappedScene finds the same cells.
+         */
+        void add(int r, long offset, int rgb, double x, double y, double w, double h) {
+            offsets[r] = (int) offset;
+            colors[r] = palette.intern(rgb);
+            int x0 = cell(x, INDEX_CELL_SIZE), y0 = cell(y, INDEX_CELL_SIZE);
+            int x1 = cell(x + w, INDEX_CELL_SIZE), y1 = cell(y + h, INDEX_CELL_SIZE);
+            if (((long) x1 - x0 + 1) * ((long) y1 - y0 + 1) > INDEX_MAX_CELLS) {
+                large.add(r);
+                return;
+            }
+            for (int cx = x0; cx <= x1; cx++) {
+                for (int cy = y0; cy <= y1; cy++) {
+                    if (pairs == keys.length) {
+                        keys = Arrays.copyOf(keys, 2 * pairs);
+                        ids = Arrays.copyOf(ids, 2 * pairs);
+                    }
+                    keys[pairs] = cellKey(cx, cy);
+                    ids[pairs++] = r;
+                }
+            }
+        }
+
+        /**
+         * Writes index and trailer. Palette entries are never released here, so they are numbered from 0 without gaps.
+         * Palette is written sorted by RGB, so MappedScene finds color of new figure by binary search.
+         * @param position position of the index in the file, right after the last record
+         */
+        void write(FileChannel channel, ByteBuffer b, long position) throws IOException {
+            int colorCount = palette.size();
+            long[] sorted = new long[colorCount];
+            for (int e = 0; e < colorCount; e++) sorted[e] = (long) (palette.getRGB(e) & 0xffffff) << 32 | e;
+            Arrays.sort(sorted);
+            int[] indexOf = new int[colorCount];
+            flushed(channel, b, 4).putInt(colorCount);
+            for (int c = 0; c < colorCount; c++) {
+                int entry = (int) sorted[c];
+                indexOf[entry] = c;
+                flushed(channel, b, 8).putInt((int) (sorted[c] >>> 32)).putInt(palette.getUses(entry));
+            }
+            for (int r = 0; r < offsets.length; r++) flushed(channel, b, 8).putInt(offsets[r]).putInt(indexOf[colors[r]]);
+
+            long[] cells = Arrays.copyOf(keys, pairs);
+            Arrays.sort(cells);
+            int cellCount = 0;
+            for (int k = 0; k < pairs; k++) {
+                if (cellCount == 0 || cells[cellCount - 1] != cells[k]) cells[cellCount++] = cells[k];
+            }
+            int[] starts = new int[cellCount + 1];
+            int[] cellOf = new int[pairs];
+            for (int k = 0; k < pairs; k++) {
+                cellOf[k] = Arrays.binarySearch(cells, 0, cellCount, keys[k]);
+                starts[cellOf[k] + 1]++;
+            }
+            for (int c = 0; c < cellCount; c++) starts[c + 1] += starts[c];
+            int[] next = Arrays.copyOf(starts, cellCount);
+            int[] list = new int[pairs];
+            for (int k = 0; k < pairs; k++) list[next[cellOf[k]]++] = ids[k];
+
+            flushed(channel, b, 8).putInt(INDEX_CELL_SIZE).putInt(cellCount);
+            for (int c = 0; c < cellCount; c++) flushed(channel, b, 8).putLong(cells[c]);
+            for (int c = 0; c <= cellCount; c++) flushed(channel, b, 4).putInt(starts[c]);
+            for (int k = 0; k < pairs; k++) flushed(channel, b, 4).putInt(list[k]);
+            flushed(channel, b, 4).putInt(large.size());
+            for (int k = 0; k < large.size(); k++) flushed(channel, b, 4).putInt(large.get(k));
+            flushed(channel, b, TRAILER_SIZE).putLong(position).put(INDEX_MAGIC);
+        }
+
+        private static ByteBuffer flushed(FileChannel channel, ByteBuffer b, int n) throws IOException {
+            ensureSpace(channel, b, n);
+            return b;
+        }
+    }
+}
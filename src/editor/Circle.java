@@ -1,3 +1,5 @@
+package editor;
+
 import java.awt.geom.Ellipse2D;
 
 /**
@@ -0,0 +1,203 @@
+package editor;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Class ColorTable is the palette of colors of figures. Every distinct color is kept once, as entry with packed RGB,
+ * Color object used to paint it and the number of figures that use it. Figures keep only index of their entry.
+ *
+ * Drawings use only a few colors, so figures of the same color share one Color object, no Color is created
+ * when figures are drawn or selected, and changing color of all figures of one color is one change of their entry.
+ * Entries that are not used by any figure are given to new colors, so the palette does not grow with every color
+ * that was used once.
+ *
+ * Entries of colors are found by open addressing hash table with primitive arrays, removed entries are deleted
+ * by moving following keys back, so lookups never pass over deleted slots.
+ * @see FigureStore
+ */
+class ColorTable {
+
+    /**
+     * rgbs, paints and uses contain color, Color object and number of figures of every entry, size is the number of entries
+     * ever created. Entries with no uses are free, their indices are in freeEntries.
+     */
+    private int[] rgbs = new int[16];
+    private Color[] paints = new Color[16];
+    private int[] uses = new int[16];
+    private int size;
+    private final IntList freeEntries = new IntList();
+
+    /**
+     * slots contains index of entry plus one for every used slot of hash table, 0 for empty slot.
+     */
+    private int[] slots = new int[32];
+
+    /**
+     * Returns entry of given color and counts one more figure that uses it. Entry is created if the color is new.
+     * @param rgb packed RGB of color, alpha is ignored
+     * @return index of entry
+     */
+    int intern(int rgb) {
+        return intern(rgb, 1);
+    }
+
+    /**
+     * Returns entry of given color and counts given number of figures that use it, like palette of indexed scene file.
+     * @param rgb packed RGB of color, alpha is ignored
+     * @param figures number of figures that use the color
+     * @return index of entry
+     */
+    int intern(int rgb, int figures) {
+        rgb |= 0xff000000;
+        int entry = find(rgb);
+        if (entry < 0) {
+            entry = freeEntries.isEmpty() ? newEntry() : freeEntries.removeAt(freeEntries.size() - 1);
+            rgbs[entry] = rgb;
+            paints[entry] = new Color(rgb);
+            insertSlot(entry);
+        }
+        uses[entry] += figures;
+        return entry;
+    }
+
+    /**
+     * Counts one figure less that uses given entry. Entry that is not used any more is freed.
+     * @param entry index of entry
+     */
+    void release(int entry) {
+        if (--uses[entry] == 0) free(entry);
+    }
+
+    /**
+     * Finds entry of given color.
+     * @param rgb packed RGB of color, alpha is ignored
+     * @return index of entry, -1 if no figure has this color
+     */
+    int find(int rgb) {
+        rgb |= 0xff000000;
+        for (int s = slot(rgb); slots[s] != 0; s = (s + 1) & (slots.length - 1)) {
+            if (rgbs[slots[s] - 1] == rgb) return slots[s] - 1;
+        }
+        return -1;
+    }
+
+    int getRGB(int entry) {
+        return rgbs[entry];
+    }
+
+    Color getColor(int entry) {
+        return paints[entry];
+    }
+
+    /**
+     * Returns number of figures that use given entry.
+     * @param entry index of entry
+     * @return number of figures
+     */
+    int getUses(int entry) {
+        return uses[entry];
+    }
+
+    /**
+     * Returns number of distinct colors of figures.
+     * @return number of used entries
+     */
+    int size() {
+        return size - freeEntries.size();
+    }
+
+    /**
+     * Changes color of entry, so all figures that use it get new color. No other entry may have new color.
+     * @param entry index of entry
+     * @param rgb new color
+     */
+    void recolor(int entry, int rgb) {
+        deleteSlot(entry);
+        rgbs[entry] = rgb | 0xff000000;
+        paints[entry] = new Color(rgbs[entry]);
+        insertSlot(entry);
+    }
+
+    /**
+     * Moves all uses of one entry to the other one, the first entry is freed. Figures have to be moved to the other entry by caller.
+     * @param from index of entry that is freed
+     * @param to index of entry that gets its uses
+     */
+    void merge(int from, int to) {
+        uses[to] += uses[from];
+        uses[from] = 0;
+        free(from);
+    }
+
+    /**
+     * Creates copy of the palette, for example for snapshot of figures read by other threads.
+     * Color objects are shared, they can not be changed.
+     * @return copy of the palette
+     */
+    ColorTable copy() {
+        ColorTable copy = new ColorTable();
+        copy.rgbs = Arrays.copyOf(rgbs, rgbs.length);
+        copy.paints = Arrays.copyOf(paints, paints.length);
+        copy.uses = Arrays.copyOf(uses, uses.length);
+        copy.size = size;
+        copy.freeEntries.addAll(freeEntries);
+        copy.slots = Arrays.copyOf(slots, slots.length);
+        return copy;
+    }
+
+    private int newEntry() {
+        if (size == rgbs.length) {
+            rgbs = Arrays.copyOf(rgbs, 2 * size);
+            paints = Arrays.copyOf(paints, 2 * size);
+            uses = Arrays.copyOf(uses, 2 * size);
+        }
+        return size++;
+    }
+
+    private void free(int entry) {
+        deleteSlot(entry);
+        paints[entry] = null;
+        freeEntries.add(entry);
+    }
+
+    /**
+     * Puts entry into hash table, which is kept at most half full.
+     */
+    private void insertSlot(int entry) {
+        if (2 * (size() + 1) > slots.length) {
+            int[] old = slots;
+            slots = new int[2 * old.length];
+            for (int value : old) {
+                if (value != 0) insertSlot(value - 1);
+            }
+        }
+        int s = slot(rgbs[entry]);
+        while (slots[s] != 0) s = (s + 1) & (slots.length - 1);
+        slots[s] = entry + 1;
+    }
+
+    /**
+     * Removes entry from hash table. Following keys that would not be found behind the empty slot are moved into it.
+     */
+    private void deleteSlot(int entry) {
+        int mask = slots.length - 1;
+        int s = slot(rgbs[entry]);
+        while (slots[s] != entry + 1) s = (s + 1) & mask;
+        slots[s] = 0;
+        for (int next = (s + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int home = slot(rgbs[slots[next] - 1]);
+            /** Key can move into the empty slot if its home slot is not between the empty slot and its slot. */
+            if (((next - home) & mask) >= ((next - s) & mask)) {
+                slots[s] = slots[next];
+                slots[next] = 0;
+                s = next;
+            }
+        }
+    }
+
+    private int slot(int rgb) {
+        int h = rgb * 0x9E3779B9;
+        return (h ^ h >>> 16) & (slots.length - 1);
+    }
+}
@@ -0,0 +1,1235 @@
+package editor;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+
+/**
+ * Class DrawPanel creates panel acting as canvas to paint, move, color and show created figures.
+ */
+class DrawPanel extends JPanel {
+
+    /**
+     * Distance in pixels the drawing is moved by one step of the mouse wheel.
+     * Zoom is multiplied or divided by ZOOM_STEP by one step of the mouse wheel with control pressed.
+     */
+    private static final int SCROLL_STEP = 40;
+    private static final double ZOOM_STEP = 1.1;
+
+    /**
+     * Time in milliseconds after the last drag or wheel event when interaction ends and figures are drawn in full quality.
+     */
+    private static final int INTERACTION_DELAY = 200;
+
+    /**
+     * Time in milliseconds of one frame, drag and wheel events are applied at most once per frame.
+     */
+    private static final int FRAME_DELAY = 16;
+
+    /**
+     * Area of the panel covered by performance overlay and time in milliseconds between its updates.
+     */
+    private static final Rectangle OVERLAY = new Rectangle(8, 8, 300, 70);
+    private static final int OVERLAY_DELAY = 500;
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 160);
+    private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+
+    /**
+     * Color that fills the rubber band.
+     */
+    private static final Color BAND_FILL = new Color(0, 0, 255, 32);
+
+    /**
+     * Selected figures get their own frames up to MAX_FRAMES of them, bigger selection gets one frame around all of them.
+     */
+    private static final int MAX_FRAMES = 1000;
+
+    /**
+     * Points contains x and y of points that user choose, in coordinates of the drawing, pointCount is their number.
+     * Then points are transformed into chosen figure - that is provided in DrawingAdapter.
+     * Vertices of new polygon are given to the store straight from this array.
+     * @see DrawingAdapter
+     *
+     * xMove, yMove contains initial position of cursor in coordinates of the drawing - used to move figures.
+     * @see MotionAdapter
+     *
+     * xPan, yPan contains the position of cursor on the panel while the drawing is moved with middle mouse button,
+     * panning tells if it is moved.
+     */
+    private float[] points = new float[32];
+    private int pointCount;
+    private int xMove, yMove;
+    private int xPan, yPan;
+    private boolean panning = false;
+
+    /**
+     * Viewport maps coordinates of the drawing to coordinates of the panel, it is changed by panning and zooming.
+     * Figures are kept in coordinates of the drawing, only mouse events and repainted areas use coordinates of the panel.
+     * @see Viewport
+     */
+    private final Viewport viewport = new Viewport();
+
+    /**
+     * Store contains all the figures created by user and their colors.
+     * ActiveFigure contains the index of selected figure, the one clicked last, its properties are shown in editPanel.
+     * Selection contains indices of all selected figures sorted ascending, active figure is one of them.
+     * Selected figures are moved, scaled and colored together.
+     * DisableMarking allows to disable marking other figures
+     * @see FigureStore
+     */
+    private final FigureStore store = new FigureStore();
+    private int activeFigure = -1;
+    private final IntList selection = new IntList();
+    private boolean disableMarking = false;
+
+    /**
+     * Band is the rubber band dragged from empty place to select figures inside it, in coordinates of the panel,
+     * null when it is not dragged. xBand, yBand is the corner where it started.
+     * @see #endBand()
+     */
+    private Rectangle band;
+    private int xBand, yBand;
+
+    /**
+     * Dragging tells that many selected figures are dragged, xDragged, yDragged is the distance they were dragged
+     * since the drag started. LayerCache moves their image instead of drawing them in every frame.
+     * @see LayerCache#paintDragged(Graphics2D, Viewport, int, int, IntList, int, int)
+     */
+    private boolean dragging;
+    private int xDragged, yDragged;
+
+    /**
+     * Dirty contains the area of the panel that has to be repainted after figures changed.
+     * @see #repaintDirty()
+     *
+     * Renderer draws figures, layerCache keeps figures below and above the selected figures as images.
+     * @see FigureRenderer
+     * @see LayerCache
+     */
+    private final Rectangle dirty = new Rectangle(0, 0, -1, -1);
+
+    /**
+     * Rectangles reused for bounds of figures and their area on the panel, so dragging and scaling figures
+     * and drawing their frames do not create rectangles. Clip gets the clip of painted frame.
+     */
+    private final Rectangle2D.Double worldBounds = new Rectangle2D.Double();
+    private final Rectangle screenBounds = new Rectangle();
+    private final Rectangle clip = new Rectangle();
+    private final FigureRenderer renderer = new FigureRenderer(store);
+    private final LayerCache layerCache = new LayerCache(store, renderer);
+
+    /**
+     * History keeps changes of figures made by user, so they can be undone.
+     * All changes of figures made by user go through history.
+     * @see FigureHistory
+     */
+    private final FigureHistory history = new FigureHistory(store);
+
+    /**
+     * Feed applies changes made by other threads, it is created by getFeed().
+     * @see FigureFeed
+     */
+    private FigureFeed feed;
+
+    /**
+     * While user drags figures, moves or zooms the drawing, figures are drawn without antialiasing, so frames are faster.
+     * InteractionEnd turns antialiasing back on when no interaction happened for INTERACTION_DELAY.
+     * It is not restarted by every event (restart of Swing timer creates new entry of timer queue),
+     * events only write down their time in lastInteraction and the timer waits again when it fires too early.
+     * @see #startInteraction()
+     */
+    private final Timer interactionEnd = new Timer(INTERACTION_DELAY, e -> checkInteractionEnd());
+    private long lastInteraction;
+
+    /**
+     * Drag and wheel events are not applied at once, only the last drag event and the sum of wheel rotation
+     * are kept until the next frame. Figures are changed and repainted once per frame however fast the mouse is,
+     * and events never wait for more than one frame. Frame timer repeats while events come, it stops after a frame without events.
+     * @see #queueInput()
+     */
+    private final Timer frame = new Timer(FRAME_DELAY, e -> nextFrame());
+    private MouseEvent pendingDrag;
+    private MouseWheelEvent pendingWheel;
+    private double pendingRotation;
+    private int pendingNotches;
+
+    /**
+     * Stats records time of painting, hit tests and delays of mouse events.
+     * When overlay is visible, stats are shown in the corner of the panel, overlayUpdate repaints them from time to time.
+     * @see RenderStats
+     */
+    private final RenderStats stats = new RenderStats();
+    private final Timer overlayUpdate = new Timer(OVERLAY_DELAY, e -> repaint(OVERLAY));
+
+    /**
+     * References to other panels which are needed to cooperate with DrawPanel.
+     * @see ActionPanel
+     * @see EditPanel
+     */
+    private ActionPanel actionPanel;
+    private EditPanel editPanel;
+
+
+
+    DrawPanel() {
+        /**
+         * Creating blank panel with white background and adding listener that allows user to draw, move and scale figures.
+         */
+        super();
+        setBackground(Color.white);
+
+        addMouseListener(new DrawingAdapter());
+        addMouseMotionListener(new MotionAdapter());
+        addMouseWheelListener(new Scaling());
+        interactionEnd.setRepeats(false);
+    }
+
+    /**
+     * Sets the reference to actionPanel. DrawPanel needs to know what buttons are selected to draw proper figures
+     * @param actionPanel reference to actionPanel
+     */
+    void setActionPanel(ActionPanel actionPanel) {
+        this.actionPanel = actionPanel;
+    }
+
+    /**
+     * Sets the reference to editPanel. DrawPanel tells editPanel to update the list of figures and takes chosen color from editPanel.
+     * @param editPanel reference to editPanel
+     */
+    void setEditPanel(EditPanel editPanel) { this.editPanel = editPanel; }
+
+    /**
+     * Returns the store of figures, needed for saving drawing into file.
+     * EditPanel listens to it to show the list of layers.
+     * @return store of figures
+     */
+    FigureStore getStore() {
+        return store;
+    }
+
+    /**
+     * Clears points selected by user. Invoked when mode is changed or figure is drawn.
+     */
+    void clearPoints() {
+        pointCount = 0;
+    }
+
+    /**
+     * Clears all figures drawn. Also deletes colors connected with figures and drawn points.
+     * Clearing can be undone.
+     */
+    void clearFigures() {
+        clearPoints();
+
+        history.clear();
+        select(-1);
+
+        repaint();
+    }
+
+    /**
+     * Sets figures read from opened file. The drawing is shown from the beginning without zoom.
+     * @param figures store with figures read from the file, it should not be used after this call.
+     */
+    void setFigures(FigureStore figures) {
+        store.setAll(figures);
+        history.discardAllEdits();
+        select(-1);
+        viewport.reset();
+        repaint();
+    }
+
+    /**
+     * Returns viewport of the panel, needed to save visible part of the drawing as image.
+     * @return viewport of the panel
+     */
+    Viewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * Returns statistics of painting, they are registered in JMX by EditorsFrame.
+     * @return statistics of painting
+     */
+    RenderStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Shows or hides performance overlay with frames per second and percentiles of times.
+     * @param visible {@code true} to show overlay
+     */
+    void setOverlayVisible(boolean visible) {
+        if(visible) overlayUpdate.start();
+        else overlayUpdate.stop();
+        repaint(OVERLAY);
+    }
+
+    boolean isOverlayVisible() {
+        return overlayUpdate.isRunning();
+    }
+
+    /**
+     * Shows the drawing from the beginning without zoom.
+     */
+    void resetView() {
+        viewport.reset();
+        repaint();
+    }
+
+    /**
+     * Removes selected figures. Allowed only in modify mode.
+     */
+
+    void removeActive() {
+        if(activeFigure != -1 && store.size()>0 && actionPanel.isModifyEnabled()) {
+            history.removeAll(selection);
+            select(-1);
+            repaint();
+        }
+    }
+
+    /**
+     * Undoes the last change of figures. Selected figures are unmarked, because they could be removed or moved in z-order.
+     */
+    void undo() {
+        if (!history.canUndo()) return;
+        history.undo();
+        select(-1);
+        repaint();
+    }
+
+    /**
+     * Redoes the last undone change of figures.
+     */
+    void redo() {
+        if (!history.canRedo()) return;
+        history.redo();
+        select(-1);
+        repaint();
+    }
+
+    /**
+     * Returns feed that lets other threads change figures, it is created when it is needed for the first time.
+     * Has to be invoked in Event Dispatch Thread, the feed can be used from any thread.
+     * @return feed of figures
+     */
+    FigureFeed getFeed() {
+        if (feed == null) feed = new FigureFeed(this);
+        return feed;
+    }
+
+    /**
+     * Repaints the part of the drawing changed by the feed.
+     * History and selected figures are moved below removed figures, removed figures are unmarked.
+     * @param changed area of the drawing with changed figures, in coordinates of the drawing
+     * @param added {@code true} if feed added figures
+     * @param removed indices of figures removed by feed, sorted ascending, empty if none was removed
+     * @see FigureHistory#figuresRemoved(IntList)
+     */
+    void figuresFed(Rectangle2D changed, boolean added, IntList removed) {
+        if (added) history.figuresAppended();
+        if (!removed.isEmpty()) {
+            history.figuresRemoved(removed);
+            int kept = 0;
+            for (int k = 0; k < selection.size(); k++) {
+                int i = selection.get(k);
+                if (!removed.contains(i)) selection.set(kept++, i - removed.countBelow(i));
+            }
+            boolean unmarked = kept < selection.size();
+            selection.truncate(kept);
+            if (activeFigure != -1) {
+                activeFigure = removed.contains(activeFigure) ? (kept > 0 ? selection.get(kept - 1) : -1)
+                        : activeFigure - removed.countBelow(activeFigure);
+                if (unmarked) editPanel.updateProperties(activeFigure);
+            }
+            if (unmarked) {
+                repaint();
+                return;
+            }
+        }
+        if (changed.getWidth() < 0) return;
+        Rectangle b = viewport.toScreen(changed);
+        int outline = (int) ceil(viewport.getZoom() / 2);
+        b.grow(outline + 2, outline + 2);
+        repaint(b);
+    }
+
+    /**
+     * Returns history of changes, used to show names of changes that can be undone and redone.
+     * @return history of changes
+     */
+    FigureHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Draws points selected by user. First point is red.
+     * @param g2d used to draw points on DrawPanel
+*            @see Graphics2D
+     */
+
+    private void drawPoints(Graphics2D g2d) {
+        for(int i = 0; i<pointCount; i++) {
+            int x = (int) round(viewport.toScreenX(points[2 * i]));
+            int y = (int) round(viewport.toScreenY(points[2 * i + 1]));
+            if(i == 0) {
+                g2d.setPaint(Color.red);
+                g2d.fillRect(x, y, 4, 4);
+            }
+            else {
+                g2d.setPaint(Color.white);
+                g2d.fillRect(x, y, 3, 3);
+                g2d.setPaint(Color.black);
+                g2d.drawRect(x, y, 3, 3);
+            }
+        }
+    }
+
+    /**
+     * Adds the area of panel showing figure of given index (with its outline and selection frame) to the dirty area.
+     * Should be invoked before and after figure is changed, so both old and new position are repainted.
+     * @param i index of figure, nothing is added for -1
+     */
+    private void addDirty(int i) {
+        if(i < 0 || i >= store.size()) return;
+        addDirty(store.getX(i), store.getY(i), store.getWidth(i), store.getHeight(i));
+    }
+
+    /**
+     * Adds the area of panel showing all selected figures to the dirty area, like addDirty(int) does for one figure.
+     * For many figures it is one rectangle around all of them, so moving them is repainted at once.
+     */
+    private void addDirtySelection() {
+        if(selection.size() == 1) addDirty(activeFigure);
+        else if(!selection.isEmpty()) {
+            store.getBounds(selection, worldBounds);
+            addDirty(worldBounds.x, worldBounds.y, worldBounds.width, worldBounds.height);
+        }
+    }
+
+    private void addDirty(double x, double y, double width, double height) {
+        viewport.toScreen(x, y, width, height, screenBounds);
+        int outline = (int) ceil(viewport.getZoom() / 2);
+        screenBounds.grow(outline + 2, outline + 2);
+        dirty.add(screenBounds);
+    }
+
+    /**
+     * Repaints only the dirty area and clears it.
+     */
+    private void repaintDirty() {
+        if(dirty.width >= 0 && dirty.height >= 0) {
+            repaint(dirty);
+        }
+        dirty.setBounds(0, 0, -1, -1);
+    }
+
+    /**
+     * Draws figures from list and blue frame on selected figure.
+     * Figures are drawn through the viewport, only figures that intersect the part of the drawing
+     * visible in the clip of given graphics are drawn, so the time of painting depends only on what is visible.
+     * When any figure is selected, figures below the lowest and above the topmost selected figure are copied from layerCache
+     * and only figures between them are drawn. While many selected figures are dragged, all figures are copied from layerCache.
+     * @param g2d used to draw figures on DrawPanel
+     *            @see Graphics2D
+     */
+
+    private void drawFigures(Graphics2D g2d) {
+        if(dragging) {
+            layerCache.paintDragged(g2d, viewport, getWidth(), getHeight(), selection, xDragged, yDragged);
+        }
+        else if(activeFigure != -1) {
+            layerCache.paint(g2d, viewport, getWidth(), getHeight(), selection.get(0), selection.get(selection.size() - 1) + 1);
+        }
+        else {
+            renderer.draw(g2d, viewport.getTransform(), viewport.toVisibleWorld(getClip(g2d)), 0, store.size());
+        }
+
+        /**
+         * If any figure is selected, draw blue rectangle around it to mark figure as selected.
+         * Frame is drawn in coordinates of the panel, so it has the same width at any zoom.
+         */
+        if(activeFigure != -1 && (actionPanel.isModifyEnabled() || actionPanel.isColorEnabled())) {
+            g2d.setPaint(Color.BLUE);
+            if(selection.size() <= MAX_FRAMES) {
+                for(int k = 0; k < selection.size(); k++) {
+                    int i = selection.get(k);
+                    drawFrame(g2d, store.getX(i), store.getY(i), store.getWidth(i), store.getHeight(i));
+                }
+            }
+            else {
+                store.getBounds(selection, worldBounds);
+                drawFrame(g2d, worldBounds.x, worldBounds.y, worldBounds.width, worldBounds.height);
+            }
+        }
+
+        /**
+         * Rubber band is drawn as light blue rectangle.
+         */
+        if(band != null) {
+            g2d.setPaint(BAND_FILL);
+            g2d.fill(band);
+            g2d.setPaint(Color.BLUE);
+            g2d.draw(band);
+        }
+    }
+
+    private void drawFrame(Graphics2D g2d, double x, double y, double width, double height) {
+        viewport.toScreen(x, y, width, height, screenBounds);
+        g2d.drawRect(screenBounds.x, screenBounds.y, screenBounds.width, screenBounds.height);
+    }
+
+    /**
+     * Draws performance overlay in the corner of the panel.
+     * @param g2d used to draw on DrawPanel
+     */
+    private void drawOverlay(Graphics2D g2d) {
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setPaint(OVERLAY_BACKGROUND);
+        g2d.fill(OVERLAY);
+        g2d.setPaint(Color.white);
+        g2d.setFont(OVERLAY_FONT);
+        String[] lines = stats.describe();
+        for(int i = 0; i < lines.length; i++) {
+            g2d.drawString(lines[i], OVERLAY.x + 6, OVERLAY.y + 15 + 16 * i);
+        }
+    }
+
+    /**
+     * Returns the clip of given graphics in the reused rectangle, the whole panel when graphics has no clip.
+     */
+    private Rectangle getClip(Graphics2D g2d) {
+        clip.setBounds(0, 0, getWidth(), getHeight());
+        return g2d.getClipBounds(clip);
+    }
+
+    /**
+     * Runs functions to draw figures and points.
+     * Time of painting and numbers of drawn and culled figures are recorded in stats,
+     * except updates of overlay alone, so they do not change the stats they show.
+     * Figures copied from layerCache are neither drawn nor culled.
+     * @param g used to draw on DrawPanel
+     */
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        long drawnBefore = renderer.getDrawnCount(), culledBefore = renderer.getCulledCount();
+
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        drawFigures(g2d);
+        drawPoints(g2d);
+
+        boolean overlayOnly = OVERLAY.contains(getClip(g2d));
+        if(!overlayOnly) {
+            int drawn = (int) (renderer.getDrawnCount() - drawnBefore);
+            int culled = (int) (renderer.getCulledCount() - culledBefore);
+            stats.recordFrame(start, System.nanoTime(), drawn, culled);
+        }
+        if(isOverlayVisible()) drawOverlay(g2d);
+    }
+
+    /**
+     * Adds new circle to figures list when two points are chosen.
+     * First point is the center of the circle, distance between second and first point is the radius of the circle.
+     * @param color RGB value of color of new circle
+     */
+    private void addNewCircle(int color) {
+        /**
+         * xDistance is the distance in horizontal axis.
+         * yDistance is the distance in vertical axis.
+         * Radius is calculated using Pythagorean theorem.
+         */
+        double xDistance = abs(points[0] - points[2]);
+        double yDistance = abs(points[1] - points[3]);
+        double radius = sqrt(pow(xDistance, 2) + pow(yDistance, 2));
+
+        store.addCircle(points[0] - radius, points[1] - radius, 2 * radius, 2 * radius, color);
+        history.added();
+        clearPoints();
+    }
+
+    /**
+     * Adds new rectangle to figures list when two points are chosen.
+     * Line between two selected points is the diagonal of rectangle.
+     * @param color RGB value of color of new rectangle
+     */
+
+    private void addNewRectangle(int color) {
+
+        int xPos0 = round(points[0]);
+        int xPos1 = round(points[2]);
+        int yPos0 = round(points[1]);
+        int yPos1 = round(points[3]);
+
+        int xPos = (xPos0 < xPos1 ? xPos0 : xPos1);
+        int yPos = (yPos0 < yPos1 ? yPos0 : yPos1);
+        int width = abs(xPos0 - xPos1);
+        int height = abs(yPos0 - yPos1);
+
+        store.addRect(xPos,yPos,width,height, color);
+        history.added();
+        clearPoints();
+    }
+
+    /**
+     * Adds new polygon to figures list when the last point selected by user is near the first point.
+     * Vertices of polygon are the points selected by user.
+     * @param color RGB value of color of new polygon
+     */
+
+    private void addNewPolygon(int color) {
+
+        store.addPolygon(points, pointCount, color);
+        history.added();
+        clearPoints();
+    }
+
+    /**
+     * Returns the state of marking (enabled/disabled)
+     * @return {@code true} if marking is enabled, {@code false} otherwise.
+     */
+
+    private boolean isMarkingEnabled() {
+        return !disableMarking;
+    }
+
+    /**
+     * Detects if mouse is over the figure and marks this figure as active when mouse is clicked.
+     * Only figures near the cursor are tested, the topmost hit figure is marked.
+     * Figure that is already selected keeps the whole selection, so selected figures can be dragged together.
+     * With shift pressed hit figure is added to the selection or removed from it.
+     * Invokes function to update properties of selected figure.
+     * @param e provides position of the cursor
+     * @return index of hit figure, -1 if no figure is hit
+     */
+    private int markAsActive(MouseEvent e) {
+        int oldActive = activeFigure;
+        long start = System.nanoTime();
+        int hit = store.hit(viewport.toWorldX(e.getX()), viewport.toWorldY(e.getY()));
+        stats.recordHit(start, System.nanoTime(), hit);
+
+        if(e.isShiftDown()) {
+            if(hit != -1 && selection.contains(hit)) {
+                selection.removeValue(hit);
+                activeFigure = selection.isEmpty() ? -1 : selection.get(selection.size() - 1);
+            }
+            else if(hit != -1) {
+                selection.addSorted(hit);
+                activeFigure = hit;
+            }
+        }
+        else if(hit != -1 && selection.contains(hit)) {
+            activeFigure = hit;
+        }
+        else {
+            select(hit);
+        }
+        if(activeFigure != oldActive) editPanel.updateProperties(activeFigure);
+        return hit;
+    }
+
+    /**
+     * Selects only figure of given index and shows its properties.
+     * @param i index of figure, -1 selects nothing
+     */
+    private void select(int i) {
+        selection.clear();
+        if(i != -1) selection.add(i);
+        activeFigure = i;
+        editPanel.updateProperties(i);
+    }
+
+    /**
+     * Starts rubber band in the corner where mouse was pressed.
+     * @param e provides position of the mouse
+     */
+    private void startBand(MouseEvent e) {
+        xBand = e.getX();
+        yBand = e.getY();
+        band = new Rectangle(xBand, yBand, 0, 0);
+    }
+
+    /**
+     * Stretches rubber band to the mouse, old and new band are repainted.
+     * @param e provides position of the mouse
+     */
+    private void dragBand(MouseEvent e) {
+        dirty.add(band);
+        band.setFrameFromDiagonal(xBand, yBand, e.getX(), e.getY());
+        dirty.add(band);
+        dirty.grow(1, 1);
+        repaintDirty();
+    }
+
+    /**
+     * Selects figures that lie inside the rubber band, they are found by spatial index of the store.
+     * Selection was cleared when band started, with shift pressed found figures are added to the selection.
+     * The topmost selected figure becomes active.
+     */
+    private void endBand() {
+        if(band.width > 0 || band.height > 0) {
+            IntList inside = new IntList();
+            store.queryInside(viewport.toWorld(band), inside);
+            selection.addAll(inside);
+            selection.sortUnique();
+            activeFigure = selection.isEmpty() ? -1 : selection.get(selection.size() - 1);
+            editPanel.updateProperties(activeFigure);
+        }
+        band = null;
+    }
+
+    /**
+     * Applies pending drag or wheel event at once if no frame is running, otherwise it waits for the next frame.
+     * The first event after a break is applied at once, so the editor answers without delay.
+     */
+    private void queueInput() {
+        if(frame.isRunning()) return;
+        applyPendingInput();
+        frame.start();
+    }
+
+    /**
+     * Applies events that came during the frame. Frames stop when no event came.
+     */
+    private void nextFrame() {
+        if(pendingDrag == null && pendingWheel == null) {
+            frame.stop();
+            return;
+        }
+        applyPendingInput();
+    }
+
+    /**
+     * Applies the last drag event and the wheel rotation collected since the last frame.
+     * Invoked also before press and release of mouse button, so they see all moves before them.
+     */
+    private void applyPendingInput() {
+        if(pendingDrag != null) {
+            MouseEvent e = pendingDrag;
+            pendingDrag = null;
+            drag(e);
+        }
+        if(pendingWheel != null) {
+            MouseWheelEvent e = pendingWheel;
+            double rotation = pendingRotation;
+            int notches = pendingNotches;
+            pendingWheel = null;
+            pendingRotation = 0;
+            pendingNotches = 0;
+            wheel(e, rotation, notches);
+        }
+    }
+
+    /**
+     * Moves selected figures depending on the mouse position, or stretches the rubber band.
+     * When middle mouse button is pressed moves the whole drawing instead.
+     * Moves are counted from the last applied position, so the last event contains moves of all events before it.
+     * Nothing is created here after the first event of drag, DrawPanelTest checks it.
+     * @param e the last drag event
+     */
+    void drag(MouseEvent e) {
+        if(panning) {
+            viewport.pan(e.getX() - xPan, e.getY() - yPan);
+            xPan = e.getX();
+            yPan = e.getY();
+            repaint();
+            return;
+        }
+        if(band != null) {
+            dragBand(e);
+            return;
+        }
+
+        int oldActive = activeFigure;
+        if(isMarkingEnabled()) markAsActive(e);
+        disableMarking = true;
+        if(activeFigure != oldActive) {
+            addDirty(oldActive);
+            addDirty(activeFigure);
+        }
+
+        /**
+         * If the modify mode is enabled calculates the distance of the mouse move in the drawing.
+         */
+
+        if (actionPanel.isModifyEnabled()) {
+            int deltaX = worldX(e) - xMove;
+            int deltaY = worldY(e) - yMove;
+
+            /**
+             * If any figure is selected, all selected figures are moved depending on the calculated distance.
+             * Initial position of the mouse is changed to the actual position of mouse.
+             */
+
+            if(activeFigure != -1) {
+                if(!dragging && selection.size() > 1) {
+                    dragging = true;
+                    xDragged = 0;
+                    yDragged = 0;
+                }
+                addDirtySelection();
+                history.translateAll(selection, deltaX, deltaY);
+                addDirtySelection();
+                xDragged += deltaX;
+                yDragged += deltaY;
+                xMove += deltaX;
+                yMove += deltaY;
+            }
+        }
+        repaintDirty();
+    }
+
+    /**
+     * Zooms, scrolls or scales selected figures by wheel rotation collected during the frame.
+     * Nothing is created by scaling, DrawPanelTest checks it.
+     * @param e the last wheel event, its position and modifiers are used
+     * @param rotation sum of precise rotation of events
+     * @param notches sum of rotation of events in whole notches
+     */
+    void wheel(MouseWheelEvent e, double rotation, int notches) {
+        /**
+         * With control pressed zooms the drawing, the point under the cursor stays in its place.
+         */
+        if (e.isControlDown()) {
+            if (viewport.zoom(pow(ZOOM_STEP, -rotation), e.getX(), e.getY())) repaint();
+            return;
+        }
+
+        /**
+         * Scale only when modify is enabled and there is selected figure.
+         * Otherwise scrolls the drawing, vertically or horizontally with shift pressed.
+         */
+        if (!actionPanel.isModifyEnabled() || e.getScrollType() != MouseWheelEvent.WHEEL_UNIT_SCROLL || activeFigure == -1) {
+            int distance = (int) round(-rotation * SCROLL_STEP);
+            if (e.isShiftDown()) viewport.pan(distance, 0);
+            else viewport.pan(0, distance);
+            repaint();
+        }
+        else {
+
+            /**
+             * Scaling selected figures once for every notch, like separate events would do it.
+             * @see FigureStore#scaleAll(IntList, double)
+             */
+            addDirtySelection();
+            for (int k = 0; k < abs(notches); k++) {
+                history.scaleAll(selection, signum(notches) * 0.1);
+            }
+            addDirtySelection();
+            repaintDirty();
+        }
+    }
+
+    /**
+     * Turns antialiasing off until the interaction ends, invoked by every event of drag or wheel.
+     */
+    private void startInteraction() {
+        renderer.setAntialiasing(false);
+        lastInteraction = System.nanoTime();
+        if(!interactionEnd.isRunning()) {
+            interactionEnd.setInitialDelay(INTERACTION_DELAY);
+            interactionEnd.start();
+        }
+    }
+
+    /**
+     * Ends the interaction if no event came for INTERACTION_DELAY, otherwise waits for the rest of the delay.
+     */
+    private void checkInteractionEnd() {
+        long quiet = (System.nanoTime() - lastInteraction) / 1000000;
+        if(quiet >= INTERACTION_DELAY) {
+            endInteraction();
+        }
+        else {
+            interactionEnd.setInitialDelay((int) (INTERACTION_DELAY - quiet));
+            interactionEnd.start();
+        }
+    }
+
+    /**
+     * Turns antialiasing back on and draws figures again in full quality.
+     * Properties of the active figure are shown once here, not for every event of scaling.
+     */
+    private void endInteraction() {
+        editPanel.updateProperties(activeFigure);
+        renderer.setAntialiasing(true);
+        layerCache.invalidateAliased();
+        repaint();
+    }
+
+    /**
+     * Returns position of the cursor in coordinates of the drawing, rounded to whole units.
+     * @param e provides position of the mouse
+     * @return x coordinate in the drawing
+     */
+    private int worldX(MouseEvent e) {
+        return (int) round(viewport.toWorldX(e.getX()));
+    }
+
+    /**
+     * Returns position of the cursor in coordinates of the drawing, rounded to whole units.
+     * @param e provides position of the mouse
+     * @return y coordinate in the drawing
+     */
+    private int worldY(MouseEvent e) {
+        return (int) round(viewport.toWorldY(e.getY()));
+    }
+
+    /**
+     * Starts moving the drawing when middle mouse button is pressed.
+     * @param e provides position of the mouse
+     * @return {@code true} if the drawing is moved and the event should not be used for anything else
+     */
+    private boolean startPanning(MouseEvent e) {
+        if(!SwingUtilities.isMiddleMouseButton(e)) return panning;
+        panning = true;
+        xPan = e.getX();
+        yPan = e.getY();
+        return true;
+    }
+
+
+    /**
+     * Sets the specific figure of given index as active, it becomes the only selected figure.
+     * @param activeFigure index of figure that should be set as active.
+     */
+    void setActiveFigure(int activeFigure) {
+        select(activeFigure);
+        this.repaint();
+    }
+
+    /**
+     * Returns the index of active figure.
+     * @return active figure index.
+     */
+    int getActiveFigure() {
+        return activeFigure;
+    }
+
+    /**
+     * ContextMenu provides popup menu for changing color and setting active figure on top of the others
+     */
+
+    class ContextMenu extends JPopupMenu {
+        JMenuItem changeColor, replaceColor, setFirst;
+        ContextMenu() {
+            /**
+             * Creates menu item for changing color of the figure and adds listener that opens dialog with RGB sliders.
+             * @see ColorChooser
+             */
+            changeColor = new JMenuItem("Change color");
+            changeColor.addActionListener(e -> {
+                if(activeFigure != -1 && (actionPanel.isModifyEnabled() || actionPanel.isColorEnabled())) {
+                    ColorChooser dialog = new ColorChooser();
+                    dialog.setVisible(true);
+                }
+            });
+
+            /**
+             * Creates menu item that gives color chosen in editPanel to all figures of the same color as the active figure.
+             * @see FigureStore#replaceColor(int, int)
+             */
+            replaceColor = new JMenuItem("Change color of all alike");
+            replaceColor.addActionListener(e -> {
+                if(activeFigure != -1 && (actionPanel.isModifyEnabled() || actionPanel.isColorEnabled())) {
+                    history.replaceColor(store.getRGB(activeFigure), editPanel.getColor().getRGB());
+                    history.endGesture();
+                    editPanel.updateProperties(activeFigure);
+                    DrawPanel.this.repaint();
+                }
+            });
+
+            /**
+             * Creates menu item for setting figure of the top and adds listener to move figure on the top of the list.
+             */
+            setFirst = new JMenuItem("Set on the top");
+            setFirst.addActionListener(e -> {
+                if(activeFigure != -1 && actionPanel.isModifyEnabled()) {
+                    history.moveToTop(activeFigure);
+
+                    setActiveFigure(store.size()-1);
+                }
+            });
+            /**
+             * If the color mode is enabled shows only option to change colors.
+             * When modify mode is enabled shows option for changing color and setting figure on the top.
+             */
+            if(actionPanel.isColorEnabled()) {
+                add(changeColor);
+                add(replaceColor);
+            }
+            if(actionPanel.isModifyEnabled()) {
+                add(changeColor);
+                add(replaceColor);
+                add(setFirst);
+            }
+        }
+    }
+
+    /**
+     * Class that allows to open window with three sliders to control the color of figure using RGB.
+     */
+    class ColorChooser extends JDialog {
+        JSlider sliderR, sliderG, sliderB;
+        int r , g , b;
+
+        ColorChooser() {
+            setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+            setLayout(new GridLayout(6, 1));
+
+            /**
+             * Getting the color of figure that is modified.
+             */
+            Color color = store.getColor(activeFigure);
+            r = color.getRed();
+            g = color.getGreen();
+            b = color.getBlue();
+
+            /**
+             * Setting the initial positions of sliders depending on the color of the figure.
+             */
+
+            sliderR = getSlider(r);
+            sliderG = getSlider(g);
+            sliderB = getSlider(b);
+
+            /**
+             * Showing the sliders that allows user to change color.
+             */
+
+            add(new JLabel("Red:"));
+            add(sliderR);
+            add(new JLabel("Green:"));
+            add(sliderG);
+            add(new JLabel("Blue:"));
+            add(sliderB);
+            pack();
+            setVisible(true);
+        }
+
+        /**
+         * Creates the slider with given initial value.
+         * @param initialVal initial value of slider (should be 0-255 for RGB colors)
+         * @return horizontal slider with given initial value
+         */
+        private JSlider getSlider(int initialVal) {
+            JSlider slider = new JSlider(JSlider.HORIZONTAL, 0, 255, initialVal);
+            slider.addChangeListener(new SliderListener());
+            return slider;
+        }
+
+        /**
+         * Listener that changes color of selected figures depending on the change of the sliders value.
+         * Slider sends one more event when the knob is released, with the same value and not adjusting.
+         */
+
+        private class SliderListener implements ChangeListener {
+            public void stateChanged(ChangeEvent e) {
+                JSlider slider = (JSlider) e.getSource();
+                if (slider == sliderR) {
+                    r = slider.getValue();
+                } else if (slider == sliderG) {
+                    g = slider.getValue();
+                } else if (slider == sliderB) {
+                    b = slider.getValue();
+                }
+                history.setColorAll(selection, r << 16 | g << 8 | b);
+                /**
+                 * Dragging the knob is one gesture that is undone at once, it ends when the knob is released.
+                 */
+                if (!slider.getValueIsAdjusting()) history.endGesture();
+                editPanel.updateProperties(activeFigure);
+                DrawPanel.this.repaint();
+            }
+        }
+    }
+
+    /**
+     * DrawingAdapter provides the option to draw figures using the mouse.
+     * Shows context menu when mouse button that is pressed is popup trigger.
+     * @see ContextMenu
+     */
+    class DrawingAdapter extends MouseAdapter {
+
+        /**
+         * Adds point to array of points that are later used to draw figures.
+         * @param e provides position of the mouse
+         */
+        private void addVertices(MouseEvent e) {
+            if(points.length < 2 * pointCount + 2) points = Arrays.copyOf(points, 2 * points.length);
+            points[2 * pointCount] = (float) viewport.toWorldX(e.getX());
+            points[2 * pointCount + 1] = (float) viewport.toWorldY(e.getY());
+            pointCount++;
+        }
+
+        /**
+         * Enables marking other figures when mouse released (moving active figure ended).
+         * Selects figures inside rubber band. Shows context menu.
+         * @param e provides position of the mouse
+         */
+
+        public void mouseReleased(MouseEvent e) {
+            applyPendingInput();
+            if(SwingUtilities.isMiddleMouseButton(e)) panning = false;
+            if(band != null) endBand();
+            dragging = false;
+            disableMarking = false;
+            history.endGesture();
+            if(e.isPopupTrigger()) {
+                ContextMenu menu = new ContextMenu();
+                menu.show(e.getComponent(), e.getX(), e.getY());
+            }
+            repaint();
+        }
+
+        /**
+         * Provides options for drawing points, figures, marking figures and showing context menu.
+         * @param e provides position of the mouse
+         */
+        public void mousePressed(MouseEvent e) {
+            stats.recordQueueDelay(e.getWhen());
+            applyPendingInput();
+
+            /**
+             * Middle mouse button moves the drawing, nothing is drawn or marked.
+             */
+            if(startPanning(e)) return;
+
+            /**
+             * Shows context menu.
+             */
+
+            if(e.isPopupTrigger()) {
+                ContextMenu menu = new ContextMenu();
+                menu.show(e.getComponent(), e.getX(), e.getY());
+            }
+
+            /**
+             * Marks figure as active if any of figures is hit.
+             * Disables selecting other figures when already pressed and selected one.
+             * Pressing left button on empty place in modify or color mode starts rubber band.
+             */
+            if(isMarkingEnabled() && markAsActive(e) == -1 && SwingUtilities.isLeftMouseButton(e)
+                    && (actionPanel.isModifyEnabled() || actionPanel.isColorEnabled())) {
+                startBand(e);
+            }
+            disableMarking = true;
+
+            repaint();
+
+            /**
+             * Saves the initial position of the mouse.
+             * @see MotionAdapter
+             */
+            xMove = worldX(e);
+            yMove = worldY(e);
+
+            /**
+             * If drawing mode is enabled adds points to the list and draws figure when enough points is collected.
+             */
+
+            if (actionPanel.isDrawEnabled()) {
+
+                if (actionPanel.drawRectangle()) {
+                    addVertices(e);
+                    if (pointCount == 2) {
+                        addNewRectangle(editPanel.getColor().getRGB());
+                    }
+
+                }
+                if (actionPanel.drawPolygon()) {
+                    if (pointCount >= 3 && abs(e.getX() - viewport.toScreenX(points[0])) < 10
+                            && abs(e.getY() - viewport.toScreenY(points[1])) < 10) {
+                        addNewPolygon(editPanel.getColor().getRGB());
+                    } else {
+                        addVertices(e);
+                    }
+                }
+                if (actionPanel.drawCircle()) {
+                    addVertices(e);
+                    if (pointCount == 2) {
+                        addNewCircle(editPanel.getColor().getRGB());
+                    }
+                }
+            }
+
+            /**
+             * If color mode is enabled colors selected figures with color chosen in editPanel.
+             * With shift pressed figures are only selected, so selection can be built before coloring.
+             */
+            if(actionPanel.isColorEnabled() && activeFigure != -1 && !e.isShiftDown()) {
+                history.setColorAll(selection, editPanel.getColor().getRGB());
+                editPanel.updateProperties(activeFigure);
+            }
+            repaint();
+        }
+    }
+
+    /**
+     * Provides option to move figures and to drag rubber band.
+     */
+    class MotionAdapter extends MouseAdapter {
+
+        /**
+         * Marks figure as active when mouse pressed.
+         * @param e provides the position of the mouse.
+         */
+        public void mousePressed(MouseEvent e) {
+            if(startPanning(e)) return;
+            markAsActive(e);
+            repaint();
+        }
+
+        /**
+         * Enables marking other figures when moving selected figure ended.
+         */
+
+        public void mouseReleased(MouseEvent e) {
+            disableMarking = false;
+            history.endGesture();
+            repaint();
+        }
+
+        /**
+         * Keeps the drag event until the next frame.
+         * @see #queueInput()
+         */
+        public void mouseDragged(MouseEvent e) {
+            stats.recordQueueDelay(e.getWhen());
+            startInteraction();
+            pendingDrag = e;
+            queueInput();
+        }
+    }
+
+    /**
+     * Provides option to scale figures, to zoom and to scroll the drawing.
+     */
+    class Scaling implements MouseWheelListener {
+        /**
+         * Adds rotation of the wheel to rotation waiting for the next frame.
+         * Rotation with other modifiers or scroll type is not joined, the waiting one is applied before.
+         * @see #queueInput()
+         */
+        @Override
+        public void mouseWheelMoved(MouseWheelEvent e) {
+            stats.recordQueueDelay(e.getWhen());
+            startInteraction();
+            if (pendingWheel != null && (pendingWheel.getModifiersEx() != e.getModifiersEx()
+                    || pendingWheel.getScrollType() != e.getScrollType())) {
+                applyPendingInput();
+            }
+            pendingWheel = e;
+            pendingRotation += e.getPreciseWheelRotation();
+            pendingNotches += e.getWheelRotation();
+            queueInput();
+        }
+    }
+}
@@ -1,3 +1,5 @@
+package editor;
+
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
@@ -6,7 +8,6 @@ import java.awt.event.MouseEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * EditPanel provides panel for choosing color, list of drawn figures and properties of selected figure.
@@ -18,7 +19,8 @@ class EditPanel extends JPanel {
      * activeColor is label that shows us active color
      * color contains value of active color
      * list contains all the layers
-     * layers contains list of figures
+     * layers is the model of list that takes names of figures from drawPanel's store
+     * @see LayerListModel
      *
      * drawPanel is the reference to drawPanel
      * figureProperties is a panel that draws active figure properties
@@ -29,7 +31,7 @@ class EditPanel extends JPanel {
     private Color color = Color.black;
 
     private final JList<String> list;
-    private final DefaultListModel<String> layers;
+    private LayerListModel layers;
 
     private DrawPanel drawPanel;
     private FigureProperties figureProperties;
@@ -49,12 +51,14 @@ class EditPanel extends JPanel {
 
         /**
          * Create list with layers and add scrollbar.
+         * Prototype value gives all rows the same size, so the list does not ask for every row to measure it.
+         * The model is set when drawPanel is known.
+         * Swing scroll pane paints only visible rows and can be created without screen, for example in benchmarks.
          */
-        layers = new DefaultListModel<>();
-        list = new JList(layers);
+        list = new JList<>();
+        list.setPrototypeCellValue("Polygon");
         list.addMouseListener(new Marking());
-        ScrollPane scrollList = new ScrollPane();
-        scrollList.add(list);
+        JScrollPane scrollList = new JScrollPane(list);
 
         /**
          * Create panel with figure properties.
@@ -66,30 +70,13 @@ class EditPanel extends JPanel {
         add(figureProperties);
     }
 
-    /**
-     * Updates layers' list when figures list changed.
-     * @param figures figures list
-     */
-    void updateLayers(ArrayList<Shape> figures) {
-        layers.clear();
-        for(Shape f: figures) {
-            String name;
-            if (f.getClass().getName().equals("java.awt.geom.GeneralPath")) {
-                name = "Polygon";
-            } else {
-                name = f.getClass().getName();
-            }
-            layers.addElement(name);
-        }
-    }
-
     /**
      * Updates properties of active figure when active figure changed
-     * @param f reference to active figure
+     * @param i index of active figure, -1 if no figure is selected
      */
 
-    void updateProperties(Shape f) {
-        this.figureProperties.updateProperties(f);
+    void updateProperties(int i) {
+        this.figureProperties.updateProperties(i);
     }
 
     /**
@@ -115,6 +102,8 @@ class EditPanel extends JPanel {
 
     void setDrawPanel(DrawPanel drawPanel) {
         this.drawPanel = drawPanel;
+        this.layers = new LayerListModel(drawPanel.getStore());
+        list.setModel(layers);
     }
 
     /**
@@ -136,6 +125,14 @@ class EditPanel extends JPanel {
     class FigureProperties extends JPanel {
         JLabel figureType,height,width,red,green,blue;
 
+        /**
+         * Properties shown in labels. DrawPanel updates properties when selection changes, when color of figures
+         * is changed and when interaction ends, labels are changed only when shown properties differ.
+         * shownType is null when no figure is shown.
+         */
+        private String shownType = "";
+        private int shownWidth, shownHeight, shownRGB;
+
         FigureProperties() {
             setLayout(new GridLayout(6,1));
             /**
@@ -158,21 +155,32 @@ class EditPanel extends JPanel {
 
         /**
          * Update properties when given another active figure
-         * @param f reference to active figure, null if no figure is selected.
+         * @param i index of active figure, -1 if no figure is selected.
          */
-        void updateProperties(Shape f) {
-            if(f != null) {
-                this.figureType.setText("Figure Type: " + f.getClass().getName());
-                if(f.getClass().getName() == "java.awt.geom.GeneralPath") {
-                    this.figureType.setText("Figure Type: Polygon");
-                }
-                this.height.setText("Height: " + f.getBounds().getHeight());
-                this.width.setText("Width: " + f.getBounds().getWidth());
-                this.red.setText("Red: " + drawPanel.getColors().get(drawPanel.getActiveFigure()).getRed());
-                this.green.setText("Green: " + drawPanel.getColors().get(drawPanel.getActiveFigure()).getGreen());
-                this.blue.setText("Blue: " + drawPanel.getColors().get(drawPanel.getActiveFigure()).getBlue());
+        void updateProperties(int i) {
+            if(i != -1) {
+                FigureStore store = drawPanel.getStore();
+                String type = store.getTypeName(i);
+                int width = pixels(store.getX(i), store.getWidth(i));
+                int height = pixels(store.getY(i), store.getHeight(i));
+                int rgb = store.getRGB(i);
+                if(type.equals(shownType) && width == shownWidth && height == shownHeight && rgb == shownRGB) return;
+                shownType = type;
+                shownWidth = width;
+                shownHeight = height;
+                shownRGB = rgb;
+
+                Color color = store.getColor(i);
+                this.figureType.setText("Figure Type: " + type);
+                this.height.setText("Height: " + (double) height);
+                this.width.setText("Width: " + (double) width);
+                this.red.setText("Red: " + color.getRed());
+                this.green.setText("Green: " + color.getGreen());
+                this.blue.setText("Blue: " + color.getBlue());
             }
             else {
+                if(shownType == null) return;
+                shownType = null;
                 this.figureType.setText("Figure Type: -");
                 this.height.setText("Height: -");
                 this.width.setText("Width: -");
@@ -181,6 +189,13 @@ class EditPanel extends JPanel {
                 this.blue.setText("Blue: -");
             }
         }
+
+        /**
+         * Returns the number of pixels covered by given span of figure, like size of Rectangle2D.getBounds().
+         */
+        private int pixels(double position, double size) {
+            return (int) (Math.ceil(position + size) - Math.floor(position));
+        }
     }
 
     /**
@@ -232,16 +247,22 @@ class EditPanel extends JPanel {
              * @param e provides position of mouse click.
              */
             public void mousePressed(MouseEvent e) {
-                if(e.getX()<image.getWidth() && e.getY() < image.getHeight()) {
-                    color = new Color(image.getRGB(e.getX() * 10, e.getY() * 10));
-                    updateActiveColor();
-                    drawPanel.repaint();
-                }
+                pickColor(e);
             }
 
             public void mouseDragged(MouseEvent e) {
+                pickColor(e);
+            }
+
+            /**
+             * New Color is created only when the pixel has other color than the active one,
+             * dragging over pixels of the same color does not change anything.
+             */
+            private void pickColor(MouseEvent e) {
                 if(e.getX()<image.getWidth() && e.getY() < image.getHeight()) {
-                    color = new Color(image.getRGB(e.getX() * 10, e.getY() * 10));
+                    int rgb = image.getRGB(e.getX() * 10, e.getY() * 10);
+                    if(rgb == color.getRGB()) return;
+                    color = new Color(rgb);
                     updateActiveColor();
                     drawPanel.repaint();
                 }
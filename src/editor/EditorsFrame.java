@@ -0,0 +1,117 @@
+package editor;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+
+/**
+ * EditorsFrame class provides GUI for drawing and editing simple figures.
+ * EditorsFrame has menu for saving, opening and creating new files and 3 additional panels.
+ * DrawPanel provides canvas for drawing figures,
+ * ActionPanel provides buttons for drawing, modifying and coloring figures and deleting created figures,
+ * EditPanel provides palette of colors, list of created figures and properties of active figures
+ *
+ * @version 1.0
+ * @since 2017-04-20
+ * @author Jonasz Wiacek
+ */
+class EditorsFrame extends JFrame {
+
+    EditorsFrame() {
+        super("Shapes Editor");
+
+        /**
+         * Set the layout of GUI, size and default close operation.
+         */
+
+        setLayout(new BorderLayout());
+        setSize(new Dimension(880,640));
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+
+        /**
+         * Adding panels to EditorsFrame.
+         * @see MenuPanel
+         * @see DrawPanel
+         * @see ActionPanel
+         * @see EditPanel
+         */
+
+        MenuPanel menuPanel = new MenuPanel();
+        setJMenuBar(menuPanel);
+        DrawPanel drawPanel = new DrawPanel();
+        ActionPanel actionPanel = new ActionPanel();
+        EditPanel editPanel = new EditPanel();
+
+        /**
+         * Creating connections between panels that need to cooperate.
+         */
+        drawPanel.setActionPanel(actionPanel);
+        drawPanel.setEditPanel(editPanel);
+        actionPanel.setDrawPanel(drawPanel);
+        editPanel.setDrawPanel(drawPanel);
+        menuPanel.setDrawPanel(drawPanel);
+
+        /**
+         * Statistics of drawing are available in JMX.
+         * @see RenderStats
+         */
+        drawPanel.getStats().register();
+
+        /**
+         * Placing panels in the frame.
+         */
+        add(actionPanel, BorderLayout.LINE_START);
+        add(drawPanel, BorderLayout.CENTER);
+        add(editPanel, BorderLayout.LINE_END);
+
+        setVisible(true);
+
+        /**
+         * Changes of figures are saved into journal, so drawing can be recovered when editor did not exit normally.
+         * Closing the window exits like Exit of MenuPanel, which deletes the journal only when the drawing was saved
+         * or user did not want to save it.
+         * @see FigureJournal
+         */
+        FigureJournal journal = FigureJournal.open(FigureJournal.defaultDirectory());
+        if (journal != null) {
+            recover(journal, drawPanel);
+            journal.start(drawPanel.getStore());
+            menuPanel.setJournal(journal);
+        }
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                menuPanel.exitEditor();
+            }
+        });
+
+    }
+
+    /**
+     * Asks user if figures left in journal by the last session should be recovered, and shows them if so.
+     * @param journal opened journal
+     * @param drawPanel panel that shows recovered figures
+     */
+    private void recover(FigureJournal journal, DrawPanel drawPanel) {
+        try {
+            FigureStore recovered = journal.recover();
+            if (recovered == null || recovered.size() == 0) return;
+            int option = JOptionPane.showConfirmDialog(this,
+                    "Drawing with " + recovered.size() + " figures was not saved. Do you want to recover it?",
+                    "Recover drawing", JOptionPane.YES_NO_OPTION);
+            if (option == JOptionPane.YES_OPTION) drawPanel.setFigures(recovered);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Drawing can not be recovered: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the GUI and shows it.
+     */
+
+    public static void main(String[] args) {
+        EventQueue.invokeLater(EditorsFrame::new);
+    }
+
+}
@@ -0,0 +1,472 @@
+package editor;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class FigureFeed lets other threads, like a data feed, add, change and remove figures of DrawPanel.
+ *
+ * FigureStore and its listeners are used only by Event Dispatch Thread, so painting always sees all figures
+ * in consistent state. Producers do not touch the store: every change is put into lock-free queue and the call
+ * returns at once, producers never wait for the editor. Event Dispatch Thread drains the queue in batches and
+ * applies changes for at most DRAIN_TIME per frame, the rest waits for the next frame. Each batch is repainted once,
+ * so the editor stays interactive however fast the changes come.
+ *
+ * Figures added by the feed get ids, which do not change when other figures are removed or moved in z-order,
+ * so producers can change and remove their figures later. Changes of figures that were already removed are ignored.
+ * Figures are added on the top, removed figures are given to DrawPanel, which moves history and selection below them.
+ * @see DrawPanel
+ * @see FigureStore
+ */
+class FigureFeed implements FigureStoreListener {
+
+    /**
+     * Maximal time in nanoseconds spent by applying changes in one frame, and delay of the next frame in milliseconds.
+     */
+    static final long DRAIN_TIME = 8000000;
+    private static final int FRAME_DELAY = 16;
+
+    private static final byte ADD = 1;
+    private static final byte REPLACE = 2;
+    private static final byte COLOR = 3;
+    private static final byte REMOVE = 4;
+
+    private final DrawPanel panel;
+    private final FigureStore store;
+
+    private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * Scheduled is true when drain will run, producers schedule it only when it is false.
+     * Next frame runs drain when the previous one did not apply all changes.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Timer nextFrame = new Timer(FRAME_DELAY, e -> drain());
+
+    /**
+     * Index of every figure of the feed in the store, used only by Event Dispatch Thread.
+     */
+    private final IdTable indices = new IdTable();
+
+    /**
+     * Indices of figures removed in the current batch.
+     */
+    private final IntList removals = new IntList();
+
+    /**
+     * Area of the drawing changed by the current batch.
+     */
+    private final Rectangle2D.Double changed = new Rectangle2D.Double();
+
+    /**
+     * Creates feed for figures of given panel. It has to be created in Event Dispatch Thread.
+     * @param panel panel that shows figures
+     */
+    FigureFeed(DrawPanel panel) {
+        this.panel = panel;
+        this.store = panel.getStore();
+        nextFrame.setRepeats(false);
+        store.addListener(this);
+    }
+
+    /**
+     * Adds circle on the top of the other figures. Can be invoked from any thread.
+     * @param x, y, w, h bounds of circle
+     * @param rgb color of circle
+     * @return id of new figure
+     */
+    int addCircle(double x, double y, double w, double h, int rgb) {
+        return add(new FigureRecord(FigureStore.CIRCLE, x, y, w, h, rgb, null));
+    }
+
+    /**
+     * Adds rectangle on the top of the other figures. Can be invoked from any thread.
+     * @param x, y, w, h bounds of rectangle
+     * @param rgb color of rectangle
+     * @return id of new figure
+     */
+    int addRect(int x, int y, int w, int h, int rgb) {
+        return add(new FigureRecord(FigureStore.RECT, x, y, w, h, rgb, null));
+    }
+
+    /**
+     * Adds polygon on the top of the other figures. Vertices are copied, so array can be used again. Can be invoked from any thread.
+     * @param xy x and y of every vertex
+     * @param n number of vertices
+     * @param rgb color of polygon
+     * @return id of new figure
+     */
+    int addPolygon(float[] xy, int n, int rgb) {
+        return add(polygon(xy, n, rgb));
+    }
+
+    /**
+     * Creates record of polygon with its bounds, for example to replace figure of the feed. Vertices are copied.
+     * @param xy x and y of every vertex
+     * @param n number of vertices
+     * @param rgb color of polygon
+     * @return record of polygon
+     */
+    static FigureRecord polygon(float[] xy, int n, int rgb) {
+        if (n <= 0) throw new IllegalArgumentException("Polygon has no vertices");
+        float[] vertices = Arrays.copyOf(xy, 2 * n);
+        float minX = vertices[0], minY = vertices[1], maxX = minX, maxY = minY;
+        for (int j = 1; j < n; j++) {
+            minX = Math.min(minX, vertices[2 * j]);
+            maxX = Math.max(maxX, vertices[2 * j]);
+            minY = Math.min(minY, vertices[2 * j + 1]);
+            maxY = Math.max(maxY, vertices[2 * j + 1]);
+        }
+        return new FigureRecord(FigureStore.POLYGON, minX, minY, maxX - minX, maxY - minY, rgb, vertices);
+    }
+
+    /**
+     * Replaces figure of given id with new circle, rectangle or polygon. Position in z-order does not change.
+     * Can be invoked from any thread.
+     * @param id id of figure given when it was added
+     * @param figure new figure, its vertices should not be changed later
+     * @see #polygon(float[], int, int)
+     */
+    void replace(int id, FigureRecord figure) {
+        post(new Change(REPLACE, id, figure, 0));
+    }
+
+    /**
+     * Changes color of figure of given id. Can be invoked from any thread.
+     * @param id id of figure given when it was added
+     * @param rgb new color
+     */
+    void setColor(int id, int rgb) {
+        post(new Change(COLOR, id, null, rgb));
+    }
+
+    /**
+     * Removes figure of given id. Can be invoked from any thread.
+     * @param id id of figure given when it was added
+     */
+    void remove(int id) {
+        post(new Change(REMOVE, id, null, 0));
+    }
+
+    /**
+     * Tells if all changes were taken from the queue. Taken changes are applied before Event Dispatch Thread runs
+     * anything else, so when it is invoked in Event Dispatch Thread, it tells if all posted changes were applied.
+     * @return {@code true} if no change waits in the queue
+     */
+    boolean isIdle() {
+        return changes.isEmpty();
+    }
+
+    private int add(FigureRecord figure) {
+        int id = nextId.getAndIncrement();
+        post(new Change(ADD, id, figure, 0));
+        return id;
+    }
+
+    /**
+     * Puts change into queue and schedules drain if it is not scheduled yet.
+     */
+    private void post(Change change) {
+        changes.offer(change);
+        if (!scheduled.getAndSet(true)) EventQueue.invokeLater(this::drain);
+    }
+
+    /**
+     * Applies waiting changes in Event Dispatch Thread until the queue is empty or DRAIN_TIME passes.
+     * Time is checked after every 64 changes, so reading the clock does not cost more than the changes.
+     */
+    private void drain() {
+        scheduled.set(false);
+        long deadline = System.nanoTime() + DRAIN_TIME;
+        boolean added = false;
+        changed.setRect(0, 0, -1, -1);
+
+        int applied = 0;
+        Change c;
+        while ((c = changes.poll()) != null) {
+            if (c.op == ADD) {
+                int i = store.size();
+                store.insert(i, c.figure);
+                indices.put(c.id, i);
+                addChanged(i);
+                added = true;
+            } else {
+                int i = indices.get(c.id);
+                if (i >= 0) {
+                    addChanged(i);
+                    if (c.op == REPLACE) store.replace(i, c.figure);
+                    else if (c.op == COLOR) store.setColor(i, c.rgb);
+                    else {
+                        indices.forget(c.id);
+                        removals.add(i);
+                    }
+                    if (c.op != REMOVE) addChanged(i);
+                }
+            }
+            if (++applied % 64 == 0 && System.nanoTime() > deadline) break;
+        }
+
+        /**
+         * Removed figures stay in the store until the end of batch, so indices of other figures do not change
+         * during the batch, then they are removed at once.
+         */
+        if (!removals.isEmpty()) {
+            removals.sortUnique();
+            store.removeAll(removals);
+        }
+
+        if (!changes.isEmpty() && !scheduled.getAndSet(true)) nextFrame.restart();
+        if (applied > 0) panel.figuresFed(changed, added, removals);
+        removals.clear();
+    }
+
+    private void addChanged(int i) {
+        double x = store.getX(i), y = store.getY(i), w = store.getWidth(i), h = store.getHeight(i);
+        if (changed.width < 0) {
+            changed.setRect(x, y, w, h);
+        } else {
+            changed.add(x, y);
+            changed.add(x + w, y + h);
+        }
+    }
+
+    /**
+     * Indices of figures of the feed are moved together with figures of the store.
+     * Figures added on the top do not move other figures, so only insertion in the middle has to update indices.
+     */
+    @Override
+    public void figuresAdded(int from, int to) {
+        if (to < store.size() - 1) indices.shift(from, to - from + 1);
+    }
+
+    @Override
+    public void figuresInserted(IntList sorted) {
+        indices.insertAll(sorted);
+    }
+
+    @Override
+    public void figureRemoved(int index) {
+        indices.remove(index);
+    }
+
+    @Override
+    public void figuresRemoved(IntList sorted) {
+        indices.removeAll(sorted);
+    }
+
+    @Override
+    public void figureMovedToTop(int index) {
+        indices.moveToTop(index, store.size() - 1);
+    }
+
+    @Override
+    public void figuresCleared() {
+        indices.clear();
+    }
+
+    /**
+     * Change put by producer: operation, id of figure and new figure or color.
+     */
+    private static final class Change {
+        final byte op;
+        final int id;
+        final FigureRecord figure;
+        final int rgb;
+
+        Change(byte op, int id, FigureRecord figure, int rgb) {
+            this.op = op;
+            this.id = id;
+            this.figure = figure;
+            this.rgb = rgb;
+        }
+    }
+
+    /**
+     * Hash table from id of figure to its index, with open addressing and primitive arrays.
+     * Removed figures keep their id in the table with index -1, ids are never used again,
+     * table is rebuilt without them when it becomes half full.
+     *
+     * Next to it idAt keeps id of figure of every index, -1 for figures that are not from the feed, up to tracked
+     * (figures from tracked up are not from the feed). When figures move in z-order, only ids in the moved range
+     * are renumbered, so deleting or moving figure of the user does not scan all ids of the feed.
+     */
+    private static final class IdTable {
+        private int[] ids = new int[64];
+        private int[] values = new int[64];
+        private boolean[] used = new boolean[64];
+        private int filled, live;
+
+        private int[] idAt = new int[64];
+        private int tracked;
+
+        int get(int id) {
+            int s = find(id);
+            return s < 0 ? -1 : values[s];
+        }
+
+        /**
+         * Adds figure of given id at given index, which is not lower than indices of other figures of the feed.
+         */
+        void put(int id, int index) {
+            if (2 * (filled + 1) > ids.length) rebuild();
+            int s = slot(id);
+            while (used[s]) s = (s + 1) & (ids.length - 1);
+            used[s] = true;
+            ids[s] = id;
+            values[s] = index;
+            filled++;
+            live++;
+            track(index + 1);
+            idAt[index] = id;
+        }
+
+        /**
+         * Forgets figure of given index and moves figures above it down by one.
+         */
+        void remove(int index) {
+            if (index >= tracked) return;
+            if (idAt[index] >= 0) forget(idAt[index]);
+            for (int j = index + 1; j < tracked; j++) moveId(j, j - 1);
+            tracked--;
+        }
+
+        /**
+         * Forgets figure of given id, its index is not changed any more.
+         */
+        void forget(int id) {
+            int s = find(id);
+            if (s < 0 || values[s] < 0) return;
+            idAt[values[s]] = -1;
+            values[s] = -1;
+            live--;
+        }
+
+        /**
+         * Forgets figures of given indices and moves other figures down by the number of removed figures below them.
+         * @param sorted indices sorted ascending
+         */
+        void removeAll(IntList sorted) {
+            int first = sorted.get(0);
+            if (first >= tracked) return;
+            int to = first;
+            for (int j = first, k = 0; j < tracked; j++) {
+                if (k < sorted.size() && sorted.get(k) == j) {
+                    if (idAt[j] >= 0) forget(idAt[j]);
+                    k++;
+                } else {
+                    moveId(j, to++);
+                }
+            }
+            tracked = to;
+        }
+
+        /**
+         * Moves figures up by the number of figures inserted below them.
+         * @param sorted indices of inserted figures after inserting, sorted ascending
+         */
+        void insertAll(IntList sorted) {
+            int first = sorted.get(0);
+            if (first >= tracked) return;
+            int top = tracked - 1;
+            int last = top + SpatialIndex.insertedBelow(sorted, top);
+            track(last + 1);
+            int k = sorted.countBelow(last + 1) - 1;
+            for (int to = last, j = top; to >= first; to--) {
+                if (k >= 0 && sorted.get(k) == to) {
+                    idAt[to] = -1;
+                    k--;
+                } else {
+                    moveId(j--, to);
+                }
+            }
+        }
+
+        void moveToTop(int index, int top) {
+            if (index >= tracked) return;
+            int id = idAt[index];
+            for (int j = index + 1; j < tracked; j++) moveId(j, j - 1);
+            tracked--;
+            if (id >= 0) {
+                track(top + 1);
+                idAt[top] = id;
+                values[find(id)] = top;
+            }
+        }
+
+        /**
+         * Moves figures from given index up by given count.
+         */
+        void shift(int index, int count) {
+            if (index >= tracked) return;
+            int last = tracked - 1;
+            track(tracked + count);
+            for (int j = last; j >= index; j--) moveId(j, j + count);
+            Arrays.fill(idAt, index, index + count, -1);
+        }
+
+        void clear() {
+            Arrays.fill(used, false);
+            filled = 0;
+            live = 0;
+            tracked = 0;
+        }
+
+        /**
+         * Moves id of figure from one index to the other one, in both directions of the table.
+         */
+        private void moveId(int from, int to) {
+            int id = idAt[from];
+            idAt[to] = id;
+            if (id >= 0) values[find(id)] = to;
+        }
+
+        /**
+         * Extends indices known by idAt up to given size, new indices have no figure of the feed.
+         */
+        private void track(int size) {
+            if (size <= tracked) return;
+            if (size > idAt.length) idAt = Arrays.copyOf(idAt, Math.max(size, 2 * idAt.length));
+            Arrays.fill(idAt, tracked, size, -1);
+            tracked = size;
+        }
+
+        /**
+         * Returns slot of given id, -1 if the id is not in the table.
+         */
+        private int find(int id) {
+            for (int s = slot(id); used[s]; s = (s + 1) & (ids.length - 1)) {
+                if (ids[s] == id) return s;
+            }
+            return -1;
+        }
+
+        private int slot(int id) {
+            int h = id * 0x9E3779B9;
+            return (h ^ h >>> 16) & (ids.length - 1);
+        }
+
+        /**
+         * Copies live entries into table big enough to stay at most quarter full.
+         */
+        private void rebuild() {
+            int[] oldIds = ids, oldValues = values;
+            boolean[] oldUsed = used;
+            int capacity = 64;
+            while (capacity < 4 * (live + 1)) capacity *= 2;
+            ids = new int[capacity];
+            values = new int[capacity];
+            used = new boolean[capacity];
+            filled = 0;
+            live = 0;
+            for (int s = 0; s < oldIds.length; s++) {
+                if (oldUsed[s] && oldValues[s] >= 0) put(oldIds[s], oldValues[s]);
+            }
+        }
+    }
+}
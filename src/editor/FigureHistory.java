@@ -0,0 +1,808 @@
+package editor;
+
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Class FigureHistory changes figures of FigureStore and remembers the changes, so they can be undone and redone.
+ *
+ * Every change is kept as small edit that knows only what changed: index of figure and the move, old and new color,
+ * or record of removed figure. Memory of history grows with the size of changes, not with the size of drawing.
+ * Clearing of figures moves arrays of figures into the edit and undo moves them back, so both take constant time.
+ *
+ * Moves, color changes and scales of the same figure are joined into one edit until the gesture ends,
+ * so dragging figure is undone at once. Gestures end when mouse is released, scales of figure are joined
+ * when the wheel is turned again within SCALE_JOIN_TIME. Joined changes only update the last edit,
+ * so dragging and scaling create nothing after the first event of gesture.
+ *
+ * Changes of many selected figures are done by the store in one pass and kept as one edit with indices of the figures,
+ * joined in the same way when the same figures are changed again. Indices are copied only when new edit is started,
+ * so dragging big selection does not copy them in every frame.
+ *
+ * Figures can be also added and removed by other source than the user, like FigureFeed. Figures added on the top
+ * do not move other figures, so edits stay valid. Removed figures move indices of edits, so every edit moves its indices
+ * below them. Only edits that changed removed figures are dropped, together with edits that depend on them.
+ * @see FigureStore
+ * @see FigureFeed
+ * @see FigureRecord
+ */
+class FigureHistory extends UndoManager {
+
+    /**
+     * Maximal time in milliseconds between two scales of figure that are joined into one edit.
+     */
+    private static final long SCALE_JOIN_TIME = 1000;
+
+    /**
+     * Maximal number of edits that can be undone, the oldest edits are dropped when there are more of them.
+     * UndoManager keeps only 100 edits by default, which is few gestures of real work. Edits keep only what changed,
+     * so most of them take tens of bytes. The biggest ones keep records of deleted or scaled figures, or arrays
+     * of cleared drawing, so they take at most what those figures took in the drawing.
+     */
+    static final int LIMIT = 1000;
+
+    private final FigureStore store;
+
+    FigureHistory(FigureStore store) {
+        this.store = store;
+        setLimit(LIMIT);
+    }
+
+    /**
+     * Remembers that new figure was added on the top of the others.
+     */
+    void added() {
+        addEdit(new AddEdit(store.size() - 1));
+    }
+
+    /**
+     * Removes figure of given index.
+     * @param i index of figure
+     */
+    void remove(int i) {
+        FigureRecord removed = store.getRecord(i);
+        store.remove(i);
+        addEdit(new RemoveEdit(i, removed));
+    }
+
+    /**
+     * Moves figure of given index on the top of the others.
+     * @param i index of figure
+     */
+    void moveToTop(int i) {
+        store.moveToTop(i);
+        addEdit(new MoveToTopEdit(i, store.size() - 1));
+    }
+
+    /**
+     * Removes all figures.
+     */
+    void clear() {
+        if (store.size() == 0) return;
+        addEdit(new ClearEdit(store.takeAll()));
+    }
+
+    /**
+     * Changes color of figure of given index.
+     * @param i index of figure
+     * @param rgb new color
+     */
+    void setColor(int i, int rgb) {
+        int old = store.getRGB(i);
+        store.setColor(i, rgb);
+        if (store.getRGB(i) == old) return;
+        ColorEdit last = lastOpen(ColorEdit.class);
+        if (last != null && last.index == i) {
+            last.after = store.getRGB(i);
+        } else {
+            addEdit(new ColorEdit(i, old, store.getRGB(i)));
+        }
+    }
+
+    /**
+     * Moves figure of given index by given distance.
+     * @param i index of figure
+     * @param deltaX distance in horizontal axis
+     * @param deltaY distance in vertical axis
+     */
+    void translate(int i, int deltaX, int deltaY) {
+        if (deltaX == 0 && deltaY == 0) return;
+        store.translate(i, deltaX, deltaY);
+        MoveEdit last = lastOpen(MoveEdit.class);
+        if (last != null && last.index == i) {
+            last.deltaX += deltaX;
+            last.deltaY += deltaY;
+        } else {
+            addEdit(new MoveEdit(i, deltaX, deltaY));
+        }
+    }
+
+    /**
+     * Scales figure of given index.
+     * Scaling loses precision, so edit keeps figure from before scaling.
+     * @param i index of figure
+     * @param scaleRate rate of scale
+     * @see FigureStore#scale(int, double)
+     */
+    void scale(int i, double scaleRate) {
+        ScaleEdit last = lastOpen(ScaleEdit.class);
+        long now = System.currentTimeMillis();
+        if (last != null && last.index == i && now - last.time <= SCALE_JOIN_TIME) {
+            store.scale(i, scaleRate);
+            last.time = now;
+        } else {
+            FigureRecord before = store.getRecord(i);
+            store.scale(i, scaleRate);
+            addEdit(new ScaleEdit(i, before));
+        }
+    }
+
+    /**
+     * Removes figures of given indices at once.
+     * @param sorted indices of figures, sorted ascending without duplicates
+     */
+    void removeAll(IntList sorted) {
+        if (sorted.size() == 1) {
+            remove(sorted.get(0));
+            return;
+        }
+        FigureRecord[] removed = records(sorted);
+        store.removeAll(sorted);
+        addEdit(new RemoveAllEdit(sorted.copy(), removed));
+    }
+
+    /**
+     * Moves figures of given indices by given distance.
+     * @param sorted indices of figures, sorted ascending without duplicates
+     * @param deltaX distance in horizontal axis
+     * @param deltaY distance in vertical axis
+     */
+    void translateAll(IntList sorted, int deltaX, int deltaY) {
+        if (sorted.size() == 1) {
+            translate(sorted.get(0), deltaX, deltaY);
+            return;
+        }
+        if (deltaX == 0 && deltaY == 0) return;
+        store.translateAll(sorted, deltaX, deltaY);
+        MoveAllEdit last = joinable(MoveAllEdit.class, sorted);
+        if (last != null) {
+            last.deltaX += deltaX;
+            last.deltaY += deltaY;
+        } else {
+            addEdit(new MoveAllEdit(sorted.copy(), deltaX, deltaY));
+        }
+    }
+
+    /**
+     * Scales figures of given indices, each around its own center.
+     * @param sorted indices of figures, sorted ascending without duplicates
+     * @param scaleRate rate of scale
+     * @see FigureStore#scaleAll(IntList, double)
+     */
+    void scaleAll(IntList sorted, double scaleRate) {
+        if (sorted.size() == 1) {
+            scale(sorted.get(0), scaleRate);
+            return;
+        }
+        ScaleAllEdit last = joinable(ScaleAllEdit.class, sorted);
+        long now = System.currentTimeMillis();
+        if (last != null && now - last.time <= SCALE_JOIN_TIME) {
+            store.scaleAll(sorted, scaleRate);
+            last.time = now;
+        } else {
+            FigureRecord[] before = records(sorted);
+            store.scaleAll(sorted, scaleRate);
+            addEdit(new ScaleAllEdit(sorted.copy(), before));
+        }
+    }
+
+    /**
+     * Changes color of figures of given indices.
+     * @param sorted indices of figures, sorted ascending without duplicates
+     * @param rgb new color
+     */
+    void setColorAll(IntList sorted, int rgb) {
+        if (sorted.size() == 1) {
+            setColor(sorted.get(0), rgb);
+            return;
+        }
+        ColorAllEdit last = joinable(ColorAllEdit.class, sorted);
+        if (last == null) {
+            int[] before = new int[sorted.size()];
+            for (int k = 0; k < before.length; k++) before[k] = store.getRGB(sorted.get(k));
+            last = new ColorAllEdit(sorted.copy(), before);
+            addEdit(last);
+        }
+        store.setColorAll(sorted, rgb);
+        last.after = store.getRGB(sorted.get(0));
+    }
+
+    /**
+     * Changes color of all figures of one color. The store changes only the entry of palette when no figure has
+     * the new color yet, but the edit keeps indices of the changed figures, so undo and redo change only them
+     * and not figures that got one of the colors later.
+     * @param oldRgb color of changed figures
+     * @param newRgb new color
+     * @see FigureStore#replaceColor(int, int)
+     */
+    void replaceColor(int oldRgb, int newRgb) {
+        if (((oldRgb ^ newRgb) & 0xffffff) == 0) return;
+        IntList figures = new IntList();
+        store.findColor(oldRgb, figures);
+        if (figures.isEmpty()) return;
+        store.replaceColor(oldRgb, newRgb);
+        addEdit(new ReplaceColorEdit(figures, oldRgb | 0xff000000, newRgb | 0xff000000));
+    }
+
+    /**
+     * Keeps history valid after figures were added on the top by other source than the user.
+     * Undo of Clear would put cleared figures above the added ones, so Clear is dropped with edits before it.
+     */
+    synchronized void figuresAppended() {
+        for (int k = edits.indexOf(editToBeUndone()); k >= 0; k--) {
+            if (edits.get(k) instanceof ClearEdit) {
+                trimEdits(0, k);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Keeps history valid after figures of given indices were removed by other source than the user.
+     * Removal is moved back through edits that can be undone, and forward through edits that can be redone,
+     * so every edit gets indices of its figures. Done edit that changed removed figure can not be undone,
+     * so it is dropped with all edits before it, undone edit is dropped with all edits after it.
+     * @param sorted indices of removed figures, sorted ascending without duplicates
+     */
+    synchronized void figuresRemoved(IntList sorted) {
+        int next = edits.indexOf(editToBeUndone()) + 1;
+        IntList removed = sorted.copy();
+        for (int k = next - 1; k >= 0 && !removed.isEmpty(); k--) {
+            if (!((FigureEdit) edits.get(k)).removedAfter(removed)) {
+                trimEdits(0, k);
+                next -= k + 1;
+                break;
+            }
+        }
+        removed = sorted.copy();
+        for (int k = next; k < edits.size() && !removed.isEmpty(); k++) {
+            if (!((FigureEdit) edits.get(k)).removedBefore(removed)) {
+                trimEdits(k, edits.size() - 1);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns index of figure after figures of given indices were removed, -1 if the figure was removed too.
+     */
+    private static int shifted(IntList removed, int index) {
+        int below = removed.countBelow(index);
+        return below < removed.size() && removed.get(below) == index ? -1 : index - below;
+    }
+
+    /**
+     * Adds delta to removed indices from given range. Range must not contain index that would collide, so list stays sorted.
+     */
+    private static void shift(IntList removed, int from, int to, int delta) {
+        for (int k = removed.countBelow(from); k < removed.size() && removed.get(k) <= to; k++) {
+            removed.set(k, removed.get(k) + delta);
+        }
+    }
+
+    /**
+     * Returns the last edit if it is of given type and its gesture did not end.
+     */
+    private <T extends FigureEdit> T lastOpen(Class<T> type) {
+        UndoableEdit last = editToBeUndone();
+        if (!type.isInstance(last)) return null;
+        T edit = type.cast(last);
+        return !edit.ended ? edit : null;
+    }
+
+    /**
+     * Returns the last edit if it is of given type, changed the same figures and its gesture did not end.
+     */
+    private <T extends SelectionEdit> T joinable(Class<T> type, IntList sorted) {
+        T edit = lastOpen(type);
+        return edit != null && edit.figures.sameValues(sorted) ? edit : null;
+    }
+
+    private FigureRecord[] records(IntList sorted) {
+        FigureRecord[] records = new FigureRecord[sorted.size()];
+        for (int k = 0; k < records.length; k++) records[k] = store.getRecord(sorted.get(k));
+        return records;
+    }
+
+    /**
+     * Undoes the last change. Changes made after undo are not joined with edits that are left.
+     */
+    public synchronized void undo() {
+        super.undo();
+        endGesture();
+    }
+
+    /**
+     * Redoes the last undone change.
+     */
+    public synchronized void redo() {
+        super.redo();
+        endGesture();
+    }
+
+    /**
+     * Ends current gesture, following changes are not joined with the last edit.
+     */
+    void endGesture() {
+        UndoableEdit last = editToBeUndone();
+        if (last instanceof FigureEdit) ((FigureEdit) last).ended = true;
+    }
+
+    /**
+     * Base of edits of figures. Ended edit does not join other edits.
+     */
+    private abstract static class FigureEdit extends AbstractUndoableEdit {
+        boolean ended;
+
+        /**
+         * Moves indices of done edit below figures removed after it.
+         * Removed indices are changed to indices of the same figures before the edit.
+         * @param removed indices of removed figures, sorted ascending
+         * @return {@code false} if the edit changed removed figure, so it can not be undone
+         */
+        boolean removedAfter(IntList removed) {
+            return true;
+        }
+
+        /**
+         * Moves indices of undone edit below figures removed before it is redone.
+         * Removed indices are changed to indices of the same figures after the edit.
+         * @param removed indices of removed figures, sorted ascending
+         * @return {@code false} if the edit changes removed figure, so it can not be redone
+         */
+        boolean removedBefore(IntList removed) {
+            return true;
+        }
+    }
+
+    /**
+     * Base of edits of one figure that do not move it in z-order.
+     */
+    private abstract static class IndexEdit extends FigureEdit {
+        int index;
+
+        IndexEdit(int index) {
+            this.index = index;
+        }
+
+        boolean removedAfter(IntList removed) {
+            return removedBefore(removed);
+        }
+
+        boolean removedBefore(IntList removed) {
+            int i = shifted(removed, index);
+            if (i < 0) return false;
+            index = i;
+            return true;
+        }
+    }
+
+    private class AddEdit extends FigureEdit {
+        private int index;
+        private FigureRecord added;
+
+        AddEdit(int index) {
+            this.index = index;
+        }
+
+        boolean removedAfter(IntList removed) {
+            int i = shifted(removed, index);
+            if (i < 0) return false;
+            shift(removed, index + 1, Integer.MAX_VALUE, -1);
+            index = i;
+            return true;
+        }
+
+        boolean removedBefore(IntList removed) {
+            int i = index - removed.countBelow(index);
+            shift(removed, index, Integer.MAX_VALUE, 1);
+            index = i;
+            return true;
+        }
+
+        public void undo() {
+            super.undo();
+            added = store.getRecord(index);
+            store.remove(index);
+        }
+
+        public void redo() {
+            super.redo();
+            store.insert(index, added);
+            added = null;
+        }
+
+        public String getPresentationName() {
+            return "Add figure";
+        }
+    }
+
+    private class RemoveEdit extends FigureEdit {
+        private int index;
+        private final FigureRecord removed;
+
+        RemoveEdit(int index, FigureRecord removed) {
+            this.index = index;
+            this.removed = removed;
+        }
+
+        boolean removedAfter(IntList removed) {
+            shift(removed, index, Integer.MAX_VALUE, 1);
+            index -= removed.countBelow(index);
+            return true;
+        }
+
+        boolean removedBefore(IntList removed) {
+            int i = shifted(removed, index);
+            if (i < 0) return false;
+            shift(removed, index + 1, Integer.MAX_VALUE, -1);
+            index = i;
+            return true;
+        }
+
+        public void undo() {
+            super.undo();
+            store.insert(index, removed);
+        }
+
+        public void redo() {
+            super.redo();
+            store.remove(index);
+        }
+
+        public String getPresentationName() {
+            return "Delete figure";
+        }
+    }
+
+    /**
+     * Index of the moved figure on the top is kept, other figures can be added above it later
+     * and redo puts the figure below them again.
+     */
+    private class MoveToTopEdit extends FigureEdit {
+        private int index;
+        private int top;
+
+        MoveToTopEdit(int index, int top) {
+            this.index = index;
+            this.top = top;
+        }
+
+        boolean removedAfter(IntList removed) {
+            int t = shifted(removed, top);
+            if (t < 0) return false;
+            shift(removed, index, top - 1, 1);
+            index -= removed.countBelow(index);
+            top = t;
+            return true;
+        }
+
+        boolean removedBefore(IntList removed) {
+            int i = shifted(removed, index);
+            if (i < 0) return false;
+            int t = top - removed.countBelow(top + 1);
+            shift(removed, index + 1, top, -1);
+            index = i;
+            top = t;
+            return true;
+        }
+
+        public void undo() {
+            super.undo();
+            FigureRecord moved = store.getRecord(top);
+            store.remove(top);
+            store.insert(index, moved);
+        }
+
+        public void redo() {
+            super.redo();
+            if (top == store.size() - 1) {
+                store.moveToTop(index);
+            } else {
+                FigureRecord moved = store.getRecord(index);
+                store.remove(index);
+                store.insert(top, moved);
+            }
+        }
+
+        public String getPresentationName() {
+            return "Set on the top";
+        }
+    }
+
+    /**
+     * Cleared figures are kept in store taken out of the drawing, undo gives its arrays back without copying.
+     */
+    private class ClearEdit extends FigureEdit {
+        private FigureStore cleared;
+
+        ClearEdit(FigureStore cleared) {
+            this.cleared = cleared;
+        }
+
+        /**
+         * Figures that were added after Clear are not on the top of cleared figures, see figuresAppended.
+         */
+        boolean removedAfter(IntList removed) {
+            return false;
+        }
+
+        boolean removedBefore(IntList removed) {
+            removed.clear();
+            return true;
+        }
+
+        public void undo() {
+            super.undo();
+            store.setAll(cleared);
+            cleared = null;
+        }
+
+        public void redo() {
+            super.redo();
+            cleared = store.takeAll();
+        }
+
+        public String getPresentationName() {
+            return "Clear";
+        }
+    }
+
+    private class ColorEdit extends IndexEdit {
+        private final int before;
+        private int after;
+
+        ColorEdit(int index, int before, int after) {
+            super(index);
+            this.before = before;
+            this.after = after;
+        }
+
+        public void undo() {
+            super.undo();
+            store.setColor(index, before);
+        }
+
+        public void redo() {
+            super.redo();
+            store.setColor(index, after);
+        }
+
+        public String getPresentationName() {
+            return "Change color";
+        }
+    }
+
+    private class MoveEdit extends IndexEdit {
+        private int deltaX, deltaY;
+
+        MoveEdit(int index, int deltaX, int deltaY) {
+            super(index);
+            this.deltaX = deltaX;
+            this.deltaY = deltaY;
+        }
+
+        public void undo() {
+            super.undo();
+            store.translate(index, -deltaX, -deltaY);
+        }
+
+        public void redo() {
+            super.redo();
+            store.translate(index, deltaX, deltaY);
+        }
+
+        public String getPresentationName() {
+            return "Move";
+        }
+    }
+
+    /**
+     * Figure after scaling is taken when the edit is undone, like in ScaleAllEdit.
+     */
+    private class ScaleEdit extends IndexEdit {
+        private final FigureRecord before;
+        private FigureRecord after;
+        private long time = System.currentTimeMillis();
+
+        ScaleEdit(int index, FigureRecord before) {
+            super(index);
+            this.before = before;
+        }
+
+        public void undo() {
+            super.undo();
+            after = store.getRecord(index);
+            store.replace(index, before);
+        }
+
+        public void redo() {
+            super.redo();
+            store.replace(index, after);
+            after = null;
+        }
+
+        public String getPresentationName() {
+            return "Scale";
+        }
+    }
+
+    /**
+     * Base of edits of many selected figures, figures are indices sorted ascending.
+     */
+    private abstract static class SelectionEdit extends FigureEdit {
+        final IntList figures;
+
+        SelectionEdit(IntList figures) {
+            this.figures = figures;
+        }
+
+        boolean removedAfter(IntList removed) {
+            return removedBefore(removed);
+        }
+
+        boolean removedBefore(IntList removed) {
+            for (int k = 0; k < figures.size(); k++) {
+                int i = shifted(removed, figures.get(k));
+                if (i < 0) return false;
+                figures.set(k, i);
+            }
+            return true;
+        }
+    }
+
+    private class RemoveAllEdit extends SelectionEdit {
+        private final FigureRecord[] removed;
+
+        RemoveAllEdit(IntList figures, FigureRecord[] removed) {
+            super(figures);
+            this.removed = removed;
+        }
+
+        boolean removedAfter(IntList removed) {
+            for (int k = 0; k < removed.size(); k++) {
+                removed.set(k, removed.get(k) + SpatialIndex.insertedBelow(figures, removed.get(k)));
+            }
+            for (int k = 0; k < figures.size(); k++) figures.set(k, figures.get(k) - removed.countBelow(figures.get(k)));
+            return true;
+        }
+
+        boolean removedBefore(IntList removed) {
+            IntList before = figures.copy();
+            if (!super.removedBefore(removed)) return false;
+            for (int k = 0; k < removed.size(); k++) removed.set(k, removed.get(k) - before.countBelow(removed.get(k)));
+            return true;
+        }
+
+        public void undo() {
+            super.undo();
+            store.insertAll(figures, removed);
+        }
+
+        public void redo() {
+            super.redo();
+            store.removeAll(figures);
+        }
+
+        public String getPresentationName() {
+            return "Delete figures";
+        }
+    }
+
+    private class MoveAllEdit extends SelectionEdit {
+        private int deltaX, deltaY;
+
+        MoveAllEdit(IntList figures, int deltaX, int deltaY) {
+            super(figures);
+            this.deltaX = deltaX;
+            this.deltaY = deltaY;
+        }
+
+        public void undo() {
+            super.undo();
+            store.translateAll(figures, -deltaX, -deltaY);
+        }
+
+        public void redo() {
+            super.redo();
+            store.translateAll(figures, deltaX, deltaY);
+        }
+
+        public String getPresentationName() {
+            return "Move";
+        }
+    }
+
+    /**
+     * Scaling loses precision, so edit keeps figures from before scaling. Figures after scaling are taken when it is undone.
+     */
+    private class ScaleAllEdit extends SelectionEdit {
+        private final FigureRecord[] before;
+        private FigureRecord[] after;
+        private long time = System.currentTimeMillis();
+
+        ScaleAllEdit(IntList figures, FigureRecord[] before) {
+            super(figures);
+            this.before = before;
+        }
+
+        public void undo() {
+            super.undo();
+            after = records(figures);
+            for (int k = 0; k < before.length; k++) store.replace(figures.get(k), before[k]);
+        }
+
+        public void redo() {
+            super.redo();
+            for (int k = 0; k < after.length; k++) store.replace(figures.get(k), after[k]);
+            after = null;
+        }
+
+        public String getPresentationName() {
+            return "Scale";
+        }
+    }
+
+    /**
+     * Figures are the figures that had the old color, other figures of both colors keep their colors.
+     */
+    private class ReplaceColorEdit extends SelectionEdit {
+        private final int before;
+        private final int after;
+
+        ReplaceColorEdit(IntList figures, int before, int after) {
+            super(figures);
+            this.before = before;
+            this.after = after;
+        }
+
+        public void undo() {
+            super.undo();
+            store.setColorAll(figures, before);
+        }
+
+        public void redo() {
+            super.redo();
+            store.setColorAll(figures, after);
+        }
+
+        public String getPresentationName() {
+            return "Change color of all figures";
+        }
+    }
+
+    private class ColorAllEdit extends SelectionEdit {
+        private final int[] before;
+        private int after;
+
+        ColorAllEdit(IntList figures, int[] before) {
+            super(figures);
+            this.before = before;
+        }
+
+        public void undo() {
+            super.undo();
+            for (int k = 0; k < before.length; k++) store.setColor(figures.get(k), before[k]);
+        }
+
+        public void redo() {
+            super.redo();
+            store.setColorAll(figures, after);
+        }
+
+        public String getPresentationName() {
+            return "Change color";
+        }
+    }
+}
@@ -0,0 +1,760 @@
+package editor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Class FigureJournal saves every change of figures into journal file, so drawing can be recovered after a crash.
+ *
+ * Journal listens to FigureStore and appends one small record per change: added, replaced or removed figure,
+ * figure moved to the top, clearing, move by distance, scale by rate and new color. Records of moves, scales and colors
+ * have only index and the change, so their cost does not depend on the size of drawing or of the figure.
+ * Moves, scales and colors of many selected figures at once are kept in one record with differences of sorted indices,
+ * new color of all figures of one color is one record with both colors.
+ * Records are collected in memory on Event Dispatch Thread and written by background thread in batches,
+ * with one fsync per batch at most every SYNC_INTERVAL milliseconds.
+ *
+ * Journal starts from snapshot of all figures. When journal becomes bigger than the last snapshot, new snapshot is
+ * taken and new journal is started, so replaying is never longer than reading the drawing twice, and the cost of
+ * snapshots spread over the records is constant. Snapshot number n is kept in file scene-n.txt
+ * (written by TextSceneFormat, so numbers are exact), its journal in scene-n.journal. Files of older snapshots
+ * are deleted when the new snapshot is complete.
+ *
+ * Figures of opened file are not written again: snapshot is a hard link to the file, scene-n.figb, scene-n.txt
+ * or scene-n.txt.gz, which keeps the figures when the file is replaced by saving. When the link can not be made
+ * (other file system), scene-n.source keeps path, size and time of change of the file, and snapshot of figures
+ * is taken before saving replaces it. So opening a drawing costs the same for any number of figures, and journal
+ * holds only changes made after it.
+ *
+ * Every record is written as: length, payload and CRC32C of payload. Recovery reads the newest snapshot
+ * and replays its journal until the end or the first broken record, which was not written completely.
+ * Journal files are deleted when editor exits normally, only drawings that were not saved or dropped by user
+ * are recovered. Directory is locked, so only one editor writes into it.
+ * @see FigureStore
+ * @see TextSceneFormat
+ */
+class FigureJournal implements FigureStoreListener {
+
+    private static final Logger LOGGER = Logger.getLogger(FigureJournal.class.getName());
+
+    static final byte[] MAGIC = {'F', 'I', 'G', 'J'};
+    static final byte VERSION = 1;
+
+    private static final byte ADD = 1;
+    private static final byte REPLACE = 2;
+    private static final byte REMOVE = 3;
+    private static final byte MOVE_TO_TOP = 4;
+    private static final byte CLEAR = 5;
+    private static final byte TRANSLATE = 6;
+    private static final byte SCALE = 7;
+    private static final byte COLOR = 8;
+    private static final byte TRANSLATE_ALL = 9;
+    private static final byte SCALE_ALL = 10;
+    private static final byte COLOR_ALL = 11;
+    private static final byte REPLACE_COLOR = 12;
+
+    /**
+     * Minimal time in milliseconds between two fsyncs of journal. Records made in this time are written together.
+     */
+    static final long SYNC_INTERVAL = 500;
+
+    /**
+     * Journal is compacted into snapshot when it has at least this many bytes and more bytes than the last snapshot.
+     */
+    private static final long COMPACT_SIZE = 1 << 20;
+
+    /**
+     * Space of record without payload: length before it and CRC after it.
+     */
+    private static final int FRAME_SIZE = 8;
+
+    /**
+     * Bytes of added or replaced figure after its index: type, color and bounds. Vertices of polygons come after them.
+     */
+    private static final int FIGURE_SIZE = 1 + 4 + 4 * 8;
+
+    private static final String SOURCE_EXTENSION = ".source";
+    private static final String[] SNAPSHOT_EXTENSIONS = {".txt", ".txt.gz", ".figb", SOURCE_EXTENSION};
+
+    private final File dir;
+    private final FileChannel lockChannel;
+    private FigureStore store;
+
+    /**
+     * Records waiting for the writer and records being written, swapped by the writer. Both are guarded by lock,
+     * pending is filled by Event Dispatch Thread, writing is used only by the writer thread.
+     */
+    private final Object lock = new Object();
+    private ByteBuffer pending = newBuffer(1 << 16);
+    private ByteBuffer writing = newBuffer(1 << 16);
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * Snapshot waiting for the writer and position in pending records where it was taken.
+     * Records before that position belong to the old journal, records after it to the journal of the snapshot.
+     */
+    private FigureStore snapshot;
+    private File snapshotSource;
+    private int snapshotAt;
+    private int recordStart;
+    private boolean stopping;
+    private Thread writer;
+
+    /**
+     * Bytes of records since the last snapshot, counted on Event Dispatch Thread,
+     * and size of the last written snapshot, set by the writer.
+     */
+    private long journalSize;
+    private volatile long snapshotSize;
+
+    private float[] vertices = new float[64];
+
+    /**
+     * File whose figures replace all figures next, set on Event Dispatch Thread, and file that the current snapshot
+     * may refer to by its path, guarded by lock and cleared by the writer when the file was linked.
+     */
+    private File source;
+    private volatile File referenced;
+
+    /**
+     * Number of the current snapshot and channel of its journal, used only by the writer.
+     */
+    private int generation;
+    private FileChannel journal;
+
+    private FigureJournal(File dir, FileChannel lockChannel) {
+        this.dir = dir;
+        this.lockChannel = lockChannel;
+    }
+
+    /**
+     * Returns default directory of journal, in home directory of user or given by system property figures.journal.
+     * @return directory of journal
+     */
+    static File defaultDirectory() {
+        String dir = System.getProperty("figures.journal");
+        return dir != null ? new File(dir) : new File(System.getProperty("user.home"), ".figures-editor");
+    }
+
+    /**
+     * Opens journal in given directory and locks the directory. Failure is only logged, editor works without journal.
+     * @param dir directory of journal files, it is created if it does not exist
+     * @return opened journal, {@code null} if directory can not be used or other editor uses it
+     */
+    static FigureJournal open(File dir) {
+        try {
+            Files.createDirectories(dir.toPath());
+            FileChannel channel = FileChannel.open(new File(dir, "lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock fileLock;
+            try {
+                fileLock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                fileLock = null;
+            }
+            if (fileLock == null) {
+                channel.close();
+                LOGGER.info("Journal " + dir + " is used by other editor, drawing is not saved automatically");
+                return null;
+            }
+            return new FigureJournal(dir, channel);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Journal can not be opened, drawing is not saved automatically", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads figures left by editor that did not exit normally: the newest snapshot with its journal replayed.
+     * @return recovered figures, {@code null} if there is nothing to recover
+     * @throws IOException if snapshot can not be read
+     */
+    FigureStore recover() throws IOException {
+        int newest = newestGeneration();
+        if (newest == 0) return null;
+
+        FigureStore figures = readSnapshot(newest);
+        File journalFile = journalFile(newest);
+        if (!journalFile.exists()) return figures;
+
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(journalFile.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        if (b.remaining() < MAGIC.length + 1) return figures;
+        for (byte m : MAGIC) {
+            if (b.get() != m) throw new IOException(journalFile.getName() + " is not a journal");
+        }
+        if (b.get() != VERSION) throw new IOException("Unsupported version of " + journalFile.getName());
+
+        int replayed = 0;
+        while (b.remaining() >= FRAME_SIZE) {
+            int length = b.getInt();
+            if (length <= 0 || length > b.remaining() - 4) break;
+            crc.reset();
+            crc.update(b.array(), b.position(), length);
+            if ((int) crc.getValue() != b.getInt(b.position() + length)) break;
+
+            int next = b.position() + length + 4;
+            try {
+                replay(figures, b);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Journal record " + replayed + " can not be replayed", e);
+                break;
+            }
+            b.position(next);
+            replayed++;
+        }
+        LOGGER.info("Recovered " + figures.size() + " figures, " + replayed + " changes replayed from " + journalFile);
+        return figures;
+    }
+
+    /**
+     * Reads snapshot of given generation: figures written by TextSceneFormat or the opened file linked or referred to.
+     */
+    private FigureStore readSnapshot(int g) throws IOException {
+        File file = null;
+        for (String extension : SNAPSHOT_EXTENSIONS) {
+            File f = new File(dir, "scene-" + g + extension);
+            if (file == null && f.exists()) file = f;
+        }
+        if (file == null) throw new IOException("Snapshot " + g + " does not exist");
+        if (file.getName().endsWith(SOURCE_EXTENSION)) {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (lines.size() != 3) throw new IOException(file.getName() + " is not a reference to file");
+            file = new File(lines.get(0));
+            if (file.length() != Long.parseLong(lines.get(1)) || file.lastModified() != Long.parseLong(lines.get(2))) {
+                throw new IOException(file + " was changed after it was opened");
+            }
+        }
+        if (BinarySceneFormat.isBinary(file)) return FigureStore.fromMapped(MappedScene.open(file), Progress.NONE);
+        return TextSceneFormat.read(file, Progress.NONE);
+    }
+
+    /**
+     * Applies one record to figures in the same way as it was done in the editor.
+     */
+    private static void replay(FigureStore figures, ByteBuffer b) throws IOException {
+        byte op = b.get();
+        int i = BinarySceneFormat.getVarint(b);
+        switch (op) {
+            case ADD: figures.insert(i, readFigure(b)); break;
+            case REPLACE: figures.replace(i, readFigure(b)); break;
+            case REMOVE: figures.remove(i); break;
+            case MOVE_TO_TOP: figures.moveToTop(i); break;
+            case CLEAR: figures.clear(); break;
+            case TRANSLATE: figures.translate(i, BinarySceneFormat.getVarint(b), BinarySceneFormat.getVarint(b)); break;
+            case SCALE: figures.scale(i, b.getDouble()); break;
+            case COLOR: figures.setColor(i, b.getInt()); break;
+            case TRANSLATE_ALL: {
+                IntList indices = readIndices(b, i);
+                figures.translateAll(indices, BinarySceneFormat.getVarint(b), BinarySceneFormat.getVarint(b));
+                break;
+            }
+            case SCALE_ALL: figures.scaleAll(readIndices(b, i), b.getDouble()); break;
+            case COLOR_ALL: figures.setColorAll(readIndices(b, i), b.getInt()); break;
+            case REPLACE_COLOR: figures.replaceColor(b.getInt(), b.getInt()); break;
+            default: throw new IOException("Unknown journal record " + op);
+        }
+    }
+
+    /**
+     * Reads sorted indices written by putIndices().
+     * @param n number of indices, given as index of the record
+     */
+    private static IntList readIndices(ByteBuffer b, int n) throws IOException {
+        if (n <= 0 || n > b.remaining()) throw new IOException("Wrong number of figures " + n);
+        IntList indices = new IntList(n);
+        int previous = -1;
+        for (int k = 0; k < n; k++) {
+            previous += BinarySceneFormat.getVarint(b);
+            indices.add(previous);
+        }
+        return indices;
+    }
+
+    private static FigureRecord readFigure(ByteBuffer b) throws IOException {
+        byte type = b.get();
+        int rgb = b.getInt();
+        double x = b.getDouble(), y = b.getDouble(), w = b.getDouble(), h = b.getDouble();
+        float[] xy = null;
+        if (type == FigureStore.POLYGON) {
+            int n = BinarySceneFormat.getVarint(b);
+            if (n <= 0 || 8L * n > b.remaining()) throw new IOException("Polygon with wrong number of vertices " + n);
+            xy = new float[2 * n];
+            for (int j = 0; j < 2 * n; j++) xy[j] = b.getFloat();
+        }
+        return new FigureRecord(type, x, y, w, h, rgb, xy);
+    }
+
+    /**
+     * Starts saving changes of given figures. The first snapshot is taken now, files of previous session are deleted
+     * when it is written.
+     * @param store figures changed by the editor
+     */
+    void start(FigureStore store) {
+        this.store = store;
+        generation = newestGeneration();
+        store.addListener(this);
+        takeSnapshot();
+
+        writer = new Thread(this::write, "Journal writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Writes all waiting records and stops the writer. Files are kept, so drawing can be recovered next time.
+     */
+    void stop() {
+        if (writer == null) return;
+        store.removeListener(this);
+        synchronized (lock) {
+            stopping = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    /**
+     * Stops the journal and deletes its files, used when editor exits and user saved the drawing or dropped it.
+     */
+    void close() {
+        stop();
+        try {
+            deleteGenerations(Integer.MAX_VALUE);
+            lockChannel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Journal files can not be deleted", e);
+        }
+    }
+
+    /**
+     * Tells that figures that replace all figures next are read from given file, so the file is kept as snapshot
+     * instead of them.
+     * @param file opened file with figures
+     */
+    void opened(File file) {
+        source = file.getAbsoluteFile();
+    }
+
+    /**
+     * Takes snapshot of figures before given file is replaced by saving, if the journal refers to it by its path.
+     * @param file file that figures are saved into
+     */
+    void replacing(File file) {
+        File f = file.getAbsoluteFile();
+        boolean referring;
+        synchronized (lock) {
+            referring = f.equals(snapshotSource) || f.equals(referenced);
+        }
+        if (referring) takeSnapshot();
+    }
+
+    @Override
+    public void figuresAdded(int from, int to) {
+        if (from == to) figure(ADD, from);
+        else if (source != null && from == 0 && to == store.size() - 1) takeSource(source);
+        else takeSnapshot();
+        source = null;
+    }
+
+    @Override
+    public void figureRemoved(int index) {
+        synchronized (lock) {
+            begin(REMOVE, index, 0);
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void figureMovedToTop(int index) {
+        synchronized (lock) {
+            begin(MOVE_TO_TOP, index, 0);
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Changes that are not moves, scales or colors replace the whole figure, like undo of scale.
+     */
+    @Override
+    public void figureChanged(int index) {
+        figure(REPLACE, index);
+    }
+
+    @Override
+    public void figureTranslated(int index, int deltaX, int deltaY) {
+        synchronized (lock) {
+            begin(TRANSLATE, index, 10);
+            BinarySceneFormat.putVarint(pending, deltaX);
+            BinarySceneFormat.putVarint(pending, deltaY);
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void figureScaled(int index, double scaleRate) {
+        synchronized (lock) {
+            begin(SCALE, index, 8);
+            pending.putDouble(scaleRate);
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void figureColored(int index, int rgb) {
+        synchronized (lock) {
+            begin(COLOR, index, 4);
+            pending.putInt(rgb);
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void figuresTranslated(IntList indices, int deltaX, int deltaY) {
+        synchronized (lock) {
+            begin(TRANSLATE_ALL, indices.size(), 5 * indices.size() + 10);
+            putIndices(indices);
+            BinarySceneFormat.putVarint(pending, deltaX);
+            BinarySceneFormat.putVarint(pending, deltaY);
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void figuresScaled(IntList indices, double scaleRate) {
+        synchronized (lock) {
+            begin(SCALE_ALL, indices.size(), 5 * indices.size() + 8);
+            putIndices(indices);
+            pending.putDouble(scaleRate);
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void figuresColored(IntList indices, int rgb) {
+        synchronized (lock) {
+            begin(COLOR_ALL, indices.size(), 5 * indices.size() + 4);
+            putIndices(indices);
+            pending.putInt(rgb);
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void colorReplaced(int oldRgb, int newRgb) {
+        synchronized (lock) {
+            begin(REPLACE_COLOR, 0, 8);
+            pending.putInt(oldRgb).putInt(newRgb);
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void figuresCleared() {
+        synchronized (lock) {
+            begin(CLEAR, 0, 0);
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Puts record with all properties of figure, used for added and replaced figures.
+     */
+    private void figure(byte op, int i) {
+        int n = 0;
+        if (store.getType(i) == FigureStore.POLYGON) {
+            n = store.getVertexCount(i);
+            if (vertices.length < 2 * n) vertices = new float[2 * n];
+            store.getVertices(i, vertices);
+        }
+        synchronized (lock) {
+            begin(op, i, FIGURE_SIZE + 5 + 8 * n);
+            pending.put(store.getType(i)).putInt(store.getRGB(i))
+                    .putDouble(store.getX(i)).putDouble(store.getY(i))
+                    .putDouble(store.getWidth(i)).putDouble(store.getHeight(i));
+            if (n > 0) {
+                BinarySceneFormat.putVarint(pending, n);
+                for (int j = 0; j < 2 * n; j++) pending.putFloat(vertices[j]);
+            }
+            end();
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Puts sorted indices as differences from the previous one, so indices of figures close in z-order take one byte.
+     * Number of indices is put by begin() in place of index.
+     */
+    private void putIndices(IntList indices) {
+        int previous = -1;
+        for (int k = 0; k < indices.size(); k++) {
+            BinarySceneFormat.putVarint(pending, indices.get(k) - previous);
+            previous = indices.get(k);
+        }
+    }
+
+    /**
+     * Starts record in pending buffer: makes space for it, leaves space for its length and puts operation
+     * and index of figure. It is called with lock held, records of stopped journal are dropped.
+     * @param size bytes of record after index
+     */
+    private void begin(byte op, int index, int size) {
+        if (stopping) pending.clear();
+        if (pending.remaining() < FRAME_SIZE + 6 + size) {
+            ByteBuffer bigger = newBuffer(Math.max(2 * pending.capacity(), pending.position() + FRAME_SIZE + 6 + size));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        recordStart = pending.position();
+        pending.putInt(0).put(op);
+        BinarySceneFormat.putVarint(pending, index);
+    }
+
+    /**
+     * Finishes record started by begin(): sets its length, adds CRC and wakes the writer if it waits for records.
+     */
+    private void end() {
+        int length = pending.position() - recordStart - 4;
+        pending.putInt(recordStart, length);
+        crc.reset();
+        crc.update(pending.array(), recordStart + 4, length);
+        pending.putInt((int) crc.getValue());
+        journalSize += length + FRAME_SIZE;
+        if (recordStart == 0) lock.notifyAll();
+    }
+
+    private void compactIfNeeded() {
+        if (journalSize > Math.max(COMPACT_SIZE, snapshotSize)) takeSnapshot();
+    }
+
+    /**
+     * Copies figures for the writer, which writes them into new snapshot. Copying takes time proportional to
+     * the number of figures, but it is done only after journal grew over the size of snapshot.
+     */
+    private void takeSnapshot() {
+        if (stopping) return;
+        FigureStore copy = store.snapshot();
+        synchronized (lock) {
+            snapshot = copy;
+            snapshotSource = null;
+            snapshotAt = pending.position();
+            journalSize = 0;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Gives opened file to the writer, which keeps it as new snapshot. Journal is compacted only when it becomes
+     * bigger than the file.
+     */
+    private void takeSource(File file) {
+        if (stopping) return;
+        synchronized (lock) {
+            snapshot = null;
+            snapshotSource = file;
+            snapshotAt = pending.position();
+            journalSize = 0;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Loop of the writer thread. It waits for records, at most until SYNC_INTERVAL after the last fsync,
+     * writes all waiting records at once and forces them to the disk.
+     */
+    private void write() {
+        long lastSync = 0;
+        try {
+            while (true) {
+                FigureStore copy;
+                File copySource;
+                int copyAt;
+                ByteBuffer batch;
+                synchronized (lock) {
+                    while (true) {
+                        boolean snapshotWaiting = snapshot != null || snapshotSource != null;
+                        boolean waiting = pending.position() > 0 || snapshotWaiting;
+                        long wait = lastSync + SYNC_INTERVAL - System.currentTimeMillis();
+                        if (stopping || waiting && (wait <= 0 || snapshotWaiting)) break;
+                        lock.wait(waiting ? wait : 0);
+                    }
+                    if (stopping && pending.position() == 0 && snapshot == null && snapshotSource == null) break;
+
+                    batch = pending;
+                    pending = writing;
+                    writing = batch;
+                    copy = snapshot;
+                    copySource = snapshotSource;
+                    copyAt = snapshotAt;
+                    snapshot = null;
+                    snapshotSource = null;
+                    if (copy != null || copySource != null) referenced = copySource;
+                }
+
+                batch.flip();
+                if (copy != null || copySource != null) {
+                    int end = batch.limit();
+                    batch.limit(copyAt);
+                    append(batch);
+                    batch.limit(end).position(copyAt);
+                    writeSnapshot(copy, copySource);
+                }
+                append(batch);
+                if (journal != null) journal.force(false);
+                lastSync = System.currentTimeMillis();
+                batch.clear();
+            }
+            if (journal != null) journal.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Journal can not be written, drawing is not saved automatically any more", e);
+            synchronized (lock) {
+                stopping = true;
+                pending.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void append(ByteBuffer batch) throws IOException {
+        if (journal == null) return;
+        while (batch.hasRemaining()) journal.write(batch);
+    }
+
+    /**
+     * Writes snapshot as the next generation and starts its journal. Older files are deleted at the end,
+     * so there is always complete snapshot on the disk.
+     * @param copy figures to write, {@code null} when opened file is the snapshot
+     * @param file opened file
+     */
+    private void writeSnapshot(FigureStore copy, File file) throws IOException {
+        if (journal != null) {
+            journal.force(false);
+            journal.close();
+        }
+        int next = generation + 1;
+        File snapshotFile;
+        File tmp = null;
+        if (copy != null) {
+            snapshotFile = new File(dir, "scene-" + next + ".txt");
+            tmp = new File(dir, snapshotFile.getName() + ".tmp");
+            TextSceneFormat.write(tmp, copy, false, Progress.NONE);
+        } else {
+            snapshotFile = linkedFile(next, file);
+            try {
+                Files.deleteIfExists(snapshotFile.toPath());
+                Files.createLink(snapshotFile.toPath(), file.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                LOGGER.log(Level.FINE, "Opened file can not be linked into journal, it is kept by its path", e);
+                snapshotFile = new File(dir, "scene-" + next + SOURCE_EXTENSION);
+                tmp = new File(dir, snapshotFile.getName() + ".tmp");
+                Files.write(tmp.toPath(), Arrays.asList(file.getPath(), Long.toString(file.length()),
+                        Long.toString(file.lastModified())), StandardCharsets.UTF_8);
+            }
+        }
+        if (tmp != null) {
+            try (FileChannel c = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                c.force(true);
+            }
+        }
+
+        journal = FileChannel.open(journalFile(next).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1).put(MAGIC).put(VERSION);
+        header.flip();
+        append(header);
+        if (tmp != null) {
+            Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /** Linked file does not need snapshot before it is replaced. */
+        if (copy == null && !snapshotFile.getName().endsWith(SOURCE_EXTENSION)) referenced = null;
+        snapshotSize = copy != null ? snapshotFile.length() : file.length();
+        generation = next;
+        deleteGenerations(next);
+    }
+
+    /**
+     * Deletes snapshots and journals older than given generation.
+     */
+    private void deleteGenerations(int below) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) {
+            int g = generationOf(f);
+            if (g > 0 && g < below) Files.deleteIfExists(f.toPath());
+        }
+    }
+
+    private int newestGeneration() {
+        int newest = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                for (String extension : SNAPSHOT_EXTENSIONS) {
+                    if (f.getName().endsWith(extension)) newest = Math.max(newest, generationOf(f));
+                }
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * Returns number of snapshot of file scene-n.txt, other snapshot file or scene-n.journal, 0 for other files.
+     */
+    private static int generationOf(File f) {
+        String name = f.getName();
+        int dot = name.indexOf('.');
+        if (!name.startsWith("scene-") || dot < 0) return 0;
+        try {
+            return Integer.parseInt(name.substring("scene-".length(), dot));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns hard link of opened file in journal, named by format of the file, so recovery reads it in the same way.
+     */
+    private File linkedFile(int g, File file) throws IOException {
+        String extension = BinarySceneFormat.isBinary(file) ? ".figb" : TextSceneFormat.isCompressed(file) ? ".txt.gz" : ".txt";
+        return new File(dir, "scene-" + g + extension);
+    }
+
+    private File journalFile(int g) {
+        return new File(dir, "scene-" + g + ".journal");
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,329 @@
+package editor;
+
+import java.util.Arrays;
+
+/**
+ * Class FigureOrder keeps z-order of figures of store opened from indexed mapped scene, where figures stay in the file
+ * until they are changed. Order is a list of runs, every run is a sequence of records of the file or a sequence of slots,
+ * which are figures kept in arrays of FigureStore. Changed figure gets slot that replaces its record, new figures get new slots.
+ *
+ * Scene that was just opened is one run of all records, so the order takes constant memory however big the file is,
+ * and it grows only with changes of figures. Records are never moved, so runs of records stay in the order of the file
+ * and the run of given record is found by binary search.
+ * @see FigureStore
+ * @see MappedScene
+ */
+class FigureOrder {
+
+    /**
+     * start contains the first figure of every run: slot for run of slots, -1 - record for run of records.
+     * length contains number of figures of every run and first contains index of the first figure of every run.
+     * runs is the number of runs, size is the number of figures.
+     */
+    private int[] start = new int[8];
+    private int[] length = new int[8];
+    private int[] first = new int[8];
+    private int runs;
+    private int size;
+
+    /**
+     * recordRuns contains indices of runs of records, in the order of the file.
+     * zOfSlot contains index of figure of every slot, -1 for slot that has no figure, slotLimit is one more than the biggest slot.
+     */
+    private int[] recordRuns = new int[8];
+    private int recordRunCount;
+    private int[] zOfSlot = new int[16];
+    private int slotLimit;
+
+    /**
+     * Run found by the last locate. Figures are mostly read in order, so the next one is usually in the same run.
+     * Snapshot can be read from many threads, then any of them can set it, it is always index of some run.
+     */
+    private int lastRun;
+
+    /**
+     * Creates order of all records of the file.
+     * @param records number of records
+     */
+    FigureOrder(int records) {
+        if (records > 0) appendRun(-1, records);
+        size = records;
+        renumber();
+    }
+
+    private FigureOrder() {
+    }
+
+    /**
+     * Returns number of figures.
+     * @return number of figures
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns number of runs, it grows with changes of figures.
+     * @return number of runs
+     */
+    int runs() {
+        return runs;
+    }
+
+    /**
+     * Finds slot or record of figure of given index.
+     * @param i index of figure
+     * @return slot of figure, or -1 - record when figure is still only in the file
+     */
+    int locate(int i) {
+        int k = lastRun;
+        if (k >= runs || i < first[k] || i >= first[k] + length[k]) lastRun = k = runOf(i);
+        return start[k] >= 0 ? start[k] + i - first[k] : start[k] - (i - first[k]);
+    }
+
+    /**
+     * Returns index of figure that is given record of the file.
+     * @param r record
+     * @return index of figure, -1 if the record was replaced by slot or removed
+     */
+    int indexOfRecord(int r) {
+        int low = 0, high = recordRunCount;
+        while (low < high) {
+            int m = (low + high) >>> 1;
+            if (-1 - start[recordRuns[m]] <= r) low = m + 1;
+            else high = m;
+        }
+        if (low == 0) return -1;
+        int k = recordRuns[low - 1];
+        int d = r - (-1 - start[k]);
+        return d < length[k] ? first[k] + d : -1;
+    }
+
+    /**
+     * Returns index of figure of given slot.
+     * @param s slot
+     * @return index of figure, -1 if the slot has no figure
+     */
+    int indexOfSlot(int s) {
+        return s < slotLimit ? zOfSlot[s] : -1;
+    }
+
+    /**
+     * Adds figure of given slot on the top of the others. It takes constant time, so figures can be drawn and fed one by one.
+     * @param s new slot
+     */
+    void add(int s) {
+        appendRun(s, 1);
+        if (s >= zOfSlot.length) zOfSlot = grow(zOfSlot, s + 1, -1);
+        for (int t = slotLimit; t < s; t++) zOfSlot[t] = -1;
+        slotLimit = Math.max(slotLimit, s + 1);
+        zOfSlot[s] = size++;
+    }
+
+    /**
+     * Inserts figure of given slot at given position. Figures with bigger or equal index are moved up.
+     * @param i index of new figure
+     * @param s new slot
+     */
+    void insert(int i, int s) {
+        if (i == size) {
+            add(s);
+            return;
+        }
+        IntList sorted = new IntList(1);
+        sorted.add(i);
+        insertAll(sorted, s);
+    }
+
+    /**
+     * Replaces record of figure of given index with slot, index of figure does not change.
+     * @param i index of figure
+     * @param s new slot of the figure
+     */
+    void set(int i, int s) {
+        IntList sorted = new IntList(1);
+        sorted.add(i);
+        setAll(sorted, s);
+    }
+
+    /**
+     * Replaces records of figures of given indices with slots in one pass over runs, indices of figures do not change.
+     * @param sorted indices of figures that are records, sorted ascending without duplicates
+     * @param s slot of the first figure, the others get following slots
+     */
+    void setAll(IntList sorted, int s) {
+        int[] oldStart = start, oldLength = length, oldFirst = first;
+        int oldRuns = runs;
+        clearRuns();
+        for (int k = 0, j = 0; k < oldRuns; k++) {
+            int from = oldFirst[k], to = from + oldLength[k];
+            int piece = from;
+            while (j < sorted.size() && sorted.get(j) < to) {
+                int changed = sorted.get(j);
+                if (changed > piece) appendRun(at(oldStart[k], piece - from), changed - piece);
+                appendRun(s + j++, 1);
+                piece = changed + 1;
+            }
+            if (to > piece) appendRun(at(oldStart[k], piece - from), to - piece);
+        }
+        renumber();
+    }
+
+    /**
+     * Removes figure of given index. Figures above it are moved down.
+     * @param i index of figure
+     */
+    void remove(int i) {
+        IntList sorted = new IntList(1);
+        sorted.add(i);
+        removeAll(sorted);
+    }
+
+    /**
+     * Removes figures of given indices in one pass over runs.
+     * @param sorted indices of figures, sorted ascending without duplicates
+     */
+    void removeAll(IntList sorted) {
+        int[] oldStart = start, oldLength = length, oldFirst = first;
+        int oldRuns = runs;
+        clearRuns();
+        for (int k = 0, j = 0; k < oldRuns; k++) {
+            int from = oldFirst[k], to = from + oldLength[k];
+            int piece = from;
+            while (j < sorted.size() && sorted.get(j) < to) {
+                int removed = sorted.get(j++);
+                if (removed > piece) appendRun(at(oldStart[k], piece - from), removed - piece);
+                piece = removed + 1;
+            }
+            if (to > piece) appendRun(at(oldStart[k], piece - from), to - piece);
+        }
+        size -= sorted.size();
+        renumber();
+    }
+
+    /**
+     * Inserts figures at given indices in one pass over runs, reverse of removeAll.
+     * @param sorted indices of figures after inserting, sorted ascending without duplicates
+     * @param s slot of the first inserted figure, the others get following slots
+     */
+    void insertAll(IntList sorted, int s) {
+        int[] oldStart = start, oldLength = length;
+        int oldRuns = runs;
+        clearRuns();
+        int j = 0, z = 0;
+        for (int k = 0; k < oldRuns; k++) {
+            for (int d = 0; d < oldLength[k]; ) {
+                while (j < sorted.size() && sorted.get(j) == z) {
+                    appendRun(s + j++, 1);
+                    z++;
+                }
+                int taken = oldLength[k] - d;
+                if (j < sorted.size()) taken = Math.min(taken, sorted.get(j) - z);
+                appendRun(at(oldStart[k], d), taken);
+                d += taken;
+                z += taken;
+            }
+        }
+        while (j < sorted.size()) appendRun(s + j++, 1);
+        size += sorted.size();
+        renumber();
+    }
+
+    /**
+     * Creates copy of the order, for example for snapshot of figures read by other threads.
+     * @return copy of the order
+     */
+    FigureOrder copy() {
+        FigureOrder copy = new FigureOrder();
+        copy.start = Arrays.copyOf(start, runs);
+        copy.length = Arrays.copyOf(length, runs);
+        copy.first = Arrays.copyOf(first, runs);
+        copy.runs = runs;
+        copy.size = size;
+        copy.recordRuns = Arrays.copyOf(recordRuns, recordRunCount);
+        copy.recordRunCount = recordRunCount;
+        copy.zOfSlot = Arrays.copyOf(zOfSlot, slotLimit);
+        copy.slotLimit = slotLimit;
+        return copy;
+    }
+
+    /**
+     * Returns slot or record that is given number of figures after the start of run, in the same encoding as start.
+     */
+    private static int at(int start, int d) {
+        return start >= 0 ? start + d : start - d;
+    }
+
+    /**
+     * Finds run that contains figure of given index.
+     */
+    private int runOf(int i) {
+        int low = 0, high = runs;
+        while (low < high) {
+            int m = (low + high) >>> 1;
+            if (first[m] <= i) low = m + 1;
+            else high = m;
+        }
+        return low - 1;
+    }
+
+    /**
+     * Starts new list of runs, old arrays are kept by caller while the new list is made from them.
+     */
+    private void clearRuns() {
+        start = new int[Math.max(8, runs + 2)];
+        length = new int[start.length];
+        first = new int[start.length];
+        runs = 0;
+        lastRun = 0;
+    }
+
+    /**
+     * Adds figures on the top of the last run, when they follow its last slot or record, or as new run.
+     * Runs of records are found by renumber after the runs are made.
+     */
+    private void appendRun(int s, int n) {
+        if (runs > 0) {
+            int k = runs - 1;
+            if ((s >= 0) == (start[k] >= 0) && at(start[k], length[k]) == s) {
+                length[k] += n;
+                return;
+            }
+        }
+        if (runs == start.length) {
+            start = Arrays.copyOf(start, 2 * runs);
+            length = Arrays.copyOf(length, 2 * runs);
+            first = Arrays.copyOf(first, 2 * runs);
+        }
+        first[runs] = runs == 0 ? 0 : first[runs - 1] + length[runs - 1];
+        start[runs] = s;
+        length[runs++] = n;
+    }
+
+    /**
+     * Finds runs of records and index of figure of every slot again after runs were made again.
+     */
+    private void renumber() {
+        recordRunCount = 0;
+        Arrays.fill(zOfSlot, 0, slotLimit, -1);
+        for (int k = 0; k < runs; k++) {
+            if (start[k] < 0) {
+                if (recordRunCount == recordRuns.length) recordRuns = Arrays.copyOf(recordRuns, 2 * recordRunCount);
+                recordRuns[recordRunCount++] = k;
+                continue;
+            }
+            int end = start[k] + length[k];
+            if (end > zOfSlot.length) zOfSlot = grow(zOfSlot, end, -1);
+            for (int t = slotLimit; t < end; t++) zOfSlot[t] = -1;
+            slotLimit = Math.max(slotLimit, end);
+            for (int d = 0; d < length[k]; d++) zOfSlot[start[k] + d] = first[k] + d;
+        }
+    }
+
+    private static int[] grow(int[] array, int capacity, int fill) {
+        int old = array.length;
+        int[] grown = Arrays.copyOf(array, Math.max(capacity, 2 * old));
+        Arrays.fill(grown, old, grown.length, fill);
+        return grown;
+    }
+}
@@ -0,0 +1,30 @@
+package editor;
+
+/**
+ * Class FigureRecord keeps one figure taken out of FigureStore, for example removed figure that can be restored by undo.
+ * It contains only primitive values, vertices are kept only for polygons.
+ * @see FigureStore#getRecord(int)
+ * @see FigureStore#insert(int, FigureRecord)
+ */
+class FigureRecord {
+
+    /**
+     * Type is FigureStore.CIRCLE, RECT or POLYGON.
+     * x, y, width and height are bounds of figure, rgb is its color.
+     * Vertices contains x and y of every vertex of polygon, it is null for other figures.
+     */
+    final byte type;
+    final double x, y, width, height;
+    final int rgb;
+    final float[] vertices;
+
+    FigureRecord(byte type, double x, double y, double width, double height, int rgb, float[] vertices) {
+        this.type = type;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.rgb = rgb;
+        this.vertices = vertices;
+    }
+}
@@ -0,0 +1,310 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Class FigureRenderer draws figures from FigureStore.
+ * Used by DrawPanel, LayerCache and ImageExporter to draw the same figures in the same way.
+ * One renderer has to be used by one thread, but many renderers can draw figures of the same store snapshot at once.
+ *
+ * With level of detail enabled, figures are drawn as simply as their size on the screen allows.
+ * Figures smaller than PIXEL_SIZE pixels are drawn as one pixel, figures smaller than RECT_SIZE as their bounds,
+ * both without antialiasing. Polygons with many vertices are simplified with Douglas-Peucker algorithm,
+ * vertices closer than SIMPLIFY_TOLERANCE pixels to the simplified outline are skipped.
+ * Size on the screen is taken from the transform of graphics, so it works for any zoom and resolution.
+ * @see DrawPanel
+ * @see LayerCache
+ * @see ImageExporter
+ */
+class FigureRenderer {
+
+    /**
+     * Sizes in pixels, see description of the class.
+     * Polygons with at most SIMPLIFY_VERTICES vertices are drawn without simplifying, it would take longer than drawing them.
+     */
+    private static final double PIXEL_SIZE = 1.5, RECT_SIZE = 4, SIMPLIFY_TOLERANCE = 0.5;
+    private static final int SIMPLIFY_VERTICES = 16;
+
+    private final FigureStore store;
+
+    /**
+     * LevelOfDetail enables simplified drawing of small figures, antialiasing enables antialiasing of other figures.
+     */
+    private boolean levelOfDetail = true;
+    private boolean antialiasing = true;
+
+    /**
+     * Number of figures drawn by this renderer since it was created, and of figures in drawn ranges skipped because
+     * they are outside of the area, used to count figures drawn and culled in one frame.
+     */
+    private long drawnCount;
+    private long culledCount;
+
+    /**
+     * Visible contains indices of figures that are drawn in current call of draw.
+     */
+    private final IntList visible = new IntList();
+
+    /**
+     * Shapes reused to draw figures, so no objects are created for every drawn figure.
+     */
+    private final Ellipse2D.Double circle = new Ellipse2D.Double();
+    private final Rectangle2D.Double rect = new Rectangle2D.Double();
+    private final PolygonShape polygon = new PolygonShape();
+    private float[] vertices = new float[64];
+
+    /**
+     * Keep marks vertices left by simplifying of polygon, stack contains parts of outline waiting for simplifying.
+     */
+    private boolean[] keep = new boolean[64];
+    private int[] stack = new int[128];
+
+    FigureRenderer(FigureStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Enables or disables simplified drawing of small figures and polygons with many vertices.
+     * Should be disabled when figures are drawn for the user to keep, like exported image.
+     * @param levelOfDetail {@code true} to enable
+     */
+    void setLevelOfDetail(boolean levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+    }
+
+    /**
+     * Enables or disables antialiasing. Figures are drawn much faster without it, for example while user drags them.
+     * @param antialiasing {@code true} to enable
+     */
+    void setAntialiasing(boolean antialiasing) {
+        this.antialiasing = antialiasing;
+    }
+
+    boolean isAntialiasing() {
+        return antialiasing;
+    }
+
+    long getDrawnCount() {
+        return drawnCount;
+    }
+
+    long getCulledCount() {
+        return culledCount;
+    }
+
+    /**
+     * Counts figures skipped by query of spatial index that was made outside of the renderer.
+     * @param count number of skipped figures
+     */
+    void addCulled(int count) {
+        culledCount += count;
+    }
+
+    /**
+     * Draws figures of indices from given range that intersect given area. Figures are drawn from the bottom to the top.
+     * @param g2d used to draw figures
+     * @param area area to draw, figures outside of it are skipped
+     * @param from index of the first figure to draw
+     * @param to index after the last figure to draw
+     */
+    void draw(Graphics2D g2d, Rectangle2D area, int from, int to) {
+        store.query(area, visible);
+        int end = 0;
+        while (end < visible.size() && visible.get(end) < to) end++;
+        int start = 0;
+        while (start < end && visible.get(start) < from) start++;
+        culledCount += to - from - (end - start);
+        draw(g2d, visible, start, end);
+    }
+
+    /**
+     * Draws figures of indices from given range that intersect given area, through given transform.
+     * Transform, paint and antialiasing of graphics are restored after, so graphics of the panel is not copied
+     * for every frame.
+     * @param g2d used to draw figures, in coordinates of the panel
+     * @param view transform from the drawing to the panel
+     * @param area area to draw, figures outside of it are skipped
+     * @param from index of the first figure to draw
+     * @param to index after the last figure to draw
+     */
+    void draw(Graphics2D g2d, AffineTransform view, Rectangle2D area, int from, int to) {
+        AffineTransform screen = g2d.getTransform();
+        Paint paint = g2d.getPaint();
+        Object hint = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+        g2d.transform(view);
+        draw(g2d, area, from, to);
+        g2d.setTransform(screen);
+        g2d.setPaint(paint);
+        if (hint != null) g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, hint);
+    }
+
+    /**
+     * Draws figures of given indices in the order of the list.
+     * Renderer does not use spatial index of the store here, so it can draw figures of store snapshot.
+     * @param g2d used to draw figures
+     * @param figures indices of figures to draw, sorted from the bottom to the top
+     * @param start position of the first index in the list
+     * @param end position after the last index in the list
+     * @see FigureStore#snapshot()
+     */
+    void draw(Graphics2D g2d, IntList figures, int start, int end) {
+        drawnCount += end - start;
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                antialiasing ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+
+        /**
+         * Level of detail needs sizes in pixels, so it is used only when transform only scales and moves figures.
+         * Small figures are drawn by device graphics directly in pixels, it is created when the first one is found.
+         */
+        AffineTransform t = g2d.getTransform();
+        boolean lod = levelOfDetail && t.getShearX() == 0 && t.getShearY() == 0;
+        double sx = t.getScaleX(), sy = t.getScaleY(), tx = t.getTranslateX(), ty = t.getTranslateY();
+        double tolerance = lod ? SIMPLIFY_TOLERANCE / Math.min(Math.abs(sx), Math.abs(sy)) : 0;
+        Graphics2D device = null;
+
+        int paint = -1, devicePaint = -1;
+        for(int j = start; j < end; j++) {
+            int i = figures.get(j);
+
+            /** Outline of figure adds half of unit on every side. */
+            if(lod) {
+                double w = (store.getWidth(i) + 1) * Math.abs(sx);
+                double h = (store.getHeight(i) + 1) * Math.abs(sy);
+                if(w < RECT_SIZE && h < RECT_SIZE) {
+                    if(device == null) {
+                        device = (Graphics2D) g2d.create();
+                        device.setTransform(new AffineTransform());
+                        device.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+                    }
+                    if(store.getColorIndex(i) != devicePaint) {
+                        devicePaint = store.getColorIndex(i);
+                        device.setPaint(store.getColor(i));
+                    }
+                    double x0 = (store.getX(i) - 0.5) * sx + tx, x1 = x0 + w * Math.signum(sx);
+                    double y0 = (store.getY(i) - 0.5) * sy + ty, y1 = y0 + h * Math.signum(sy);
+                    if(w < PIXEL_SIZE && h < PIXEL_SIZE) {
+                        device.fillRect((int) Math.floor((x0 + x1) / 2), (int) Math.floor((y0 + y1) / 2), 1, 1);
+                    } else {
+                        int x = (int) Math.round(Math.min(x0, x1)), y = (int) Math.round(Math.min(y0, y1));
+                        device.fillRect(x, y, Math.max(1, (int) Math.round(w)), Math.max(1, (int) Math.round(h)));
+                    }
+                    continue;
+                }
+            }
+
+            /**
+             * Paint is changed only when color of figure differs from color of previous figure, so runs of figures
+             * of the same color are drawn with one paint. Figures of the same color have the same index in palette.
+             */
+            if(store.getColorIndex(i) != paint) {
+                paint = store.getColorIndex(i);
+                g2d.setPaint(store.getColor(i));
+            }
+            Shape f = shape(i, tolerance);
+            g2d.fill(f);
+            g2d.draw(f);
+        }
+        if(device != null) device.dispose();
+    }
+
+    /**
+     * Sets one of reused shapes to the geometry of figure of given index.
+     * @param i index of figure
+     * @param tolerance distance in units of figures, polygons with many vertices are simplified with it when it is not 0
+     * @return shape of figure, valid until the next call
+     */
+    private Shape shape(int i, double tolerance) {
+        switch (store.getType(i)) {
+            case FigureStore.CIRCLE:
+                circle.setFrame(store.getX(i), store.getY(i), store.getWidth(i), store.getHeight(i));
+                return circle;
+            case FigureStore.RECT:
+                rect.setRect(store.getX(i), store.getY(i), store.getWidth(i), store.getHeight(i));
+                return rect;
+            default:
+                int n = store.getVertexCount(i);
+                if (vertices.length < 2 * n) vertices = new float[2 * n];
+                store.getVertices(i, vertices);
+                if (tolerance > 0 && n > SIMPLIFY_VERTICES) n = simplify(n, tolerance);
+                polygon.set(vertices, n);
+                return polygon;
+        }
+    }
+
+    /**
+     * Simplifies polygon in vertices array with Douglas-Peucker algorithm.
+     * Outline is split at the first vertex and the vertex farthest from it, then every part is split at its vertex
+     * farthest from the line between its ends, until all vertices left out are closer to the line than tolerance.
+     * Vertices that are left are moved to the beginning of the array.
+     * @param n number of vertices
+     * @param tolerance maximal distance of vertex left out
+     * @return number of vertices left, n if polygon would have less than 3 vertices
+     */
+    private int simplify(int n, double tolerance) {
+        if (keep.length < n) keep = new boolean[n];
+        if (stack.length < 2 * n) stack = new int[2 * n];
+        Arrays.fill(keep, 0, n, false);
+
+        int far = 0;
+        double max = -1;
+        for (int j = 1; j < n; j++) {
+            double dx = vertices[2 * j] - vertices[0], dy = vertices[2 * j + 1] - vertices[1];
+            if (dx * dx + dy * dy > max) {
+                max = dx * dx + dy * dy;
+                far = j;
+            }
+        }
+        keep[0] = keep[far] = true;
+
+        /** Part from a to b contains vertices between them, b equal to n means the first vertex. */
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = far;
+        stack[top++] = far;
+        stack[top++] = n;
+        double limit = tolerance * tolerance;
+        while (top > 0) {
+            int b = stack[--top], a = stack[--top];
+            double ax = vertices[2 * a], ay = vertices[2 * a + 1];
+            double bx = vertices[2 * (b % n)], by = vertices[2 * (b % n) + 1];
+            double dx = bx - ax, dy = by - ay, length = dx * dx + dy * dy;
+
+            int split = -1;
+            max = limit;
+            for (int j = a + 1; j < b; j++) {
+                double px = vertices[2 * j] - ax, py = vertices[2 * j + 1] - ay;
+                double u = length > 0 ? Math.max(0, Math.min(1, (px * dx + py * dy) / length)) : 0;
+                double ex = px - u * dx, ey = py - u * dy;
+                if (ex * ex + ey * ey > max) {
+                    max = ex * ex + ey * ey;
+                    split = j;
+                }
+            }
+            if (split != -1) {
+                keep[split] = true;
+                stack[top++] = a;
+                stack[top++] = split;
+                stack[top++] = split;
+                stack[top++] = b;
+            }
+        }
+
+        int m = 0;
+        for (int j = 0; j < n; j++) {
+            if (keep[j]) m++;
+        }
+        if (m < 3) return n;
+        m = 0;
+        for (int j = 0; j < n; j++) {
+            if (!keep[j]) continue;
+            vertices[2 * m] = vertices[2 * j];
+            vertices[2 * m + 1] = vertices[2 * j + 1];
+            m++;
+        }
+        return m;
+    }
+}
@@ -0,0 +1,1400 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+import static java.lang.Math.round;
+
+/**
+ * Class FigureStore keeps figures drawn by user together with their colors.
+ * All changes of figures go through FigureStore, so spatial index of figures stays in sync with them.
+ *
+ * Figures are not kept as objects. Every property of figures is kept in its own primitive array:
+ * - types contains type of every figure (CIRCLE, RECT or POLYGON),
+ * - bounds contains x, y, width and height of every figure, for circles and rectangles it is the whole geometry,
+ * - colors contains index of color of every figure in palette, which keeps every distinct color once,
+ * - vertices of all polygons are kept in one shared array, polygon knows where its vertices start and how many of them it has.
+ *
+ * Polygons of big scene can stay in mapped file until they are changed. Their vertices are read from the file every time they are needed.
+ * Big polygons get table of their edges sorted into horizontal bands, so hit test checks only edges near the point.
+ *
+ * Store opened from indexed mapped scene keeps all figures in the file until they are changed. Then the arrays are indexed
+ * by slots instead of figures and FigureOrder maps index of every figure to its slot or to its record in the file.
+ * Changed and new figures get slots, spatial index contains only slots and records are found by the grid of the file,
+ * so memory grows with changed figures, not with the size of the file. Colors of the file are loaded into palette
+ * only when figures of the color are changed.
+ * @see SpatialIndex
+ * @see ColorTable
+ * @see PolygonEdges
+ * @see MappedScene
+ * @see FigureOrder
+ */
+class FigureStore {
+
+    static final byte CIRCLE = 1;
+    static final byte RECT = 2;
+    static final byte POLYGON = 3;
+
+    /**
+     * Number of cached colors of mapped file, power of two.
+     */
+    private static final int FILE_COLOR_CACHE = 256;
+
+    /**
+     * Number of cached tables of edges of polygons that are still only in mapped file, power of two.
+     */
+    private static final int EDGE_CACHE = 64;
+
+    /**
+     * count is the number of figures, the last one is on the top.
+     * vertexStart contains position of the first vertex of polygon in coords array.
+     * For polygon that is still in mapped file it contains (-1 - index of figure in mapped file).
+     * vertexCount contains the number of vertices of polygon.
+     * edges contains tables of edges of big polygons, made by their first hit test, null for other figures.
+     * @see PolygonEdges
+     */
+    private int count;
+    private byte[] types = new byte[16];
+    private double[] bounds = new double[64];
+    private int[] colors = new int[16];
+    private ColorTable palette = new ColorTable();
+    private int[] vertexStart = new int[16];
+    private int[] vertexCount = new int[16];
+    private PolygonEdges[] edges = new PolygonEdges[16];
+
+    /**
+     * coords contains x and y of vertices of all polygons.
+     * coordsUsed is the number of used values, coordsGarbage is the number of values of removed polygons.
+     */
+    private float[] coords = new float[64];
+    private int coordsUsed, coordsGarbage;
+
+    /**
+     * Mapped is the scene file that polygons are read from lazily, null if all figures are in memory.
+     * Scratch is used to read vertices of mapped polygons.
+     */
+    private MappedScene mapped;
+    private float[] scratch = new float[64];
+
+    /**
+     * Order is z-order of figures of store opened from indexed mapped scene, null when every figure has its slot at its index.
+     * slots is the number of used slots of store with order, slot of removed figure is not used again.
+     * fileColors contains entry of palette + 1 for every color of the index of the file, 0 for color that is not loaded yet.
+     * Color of the file is loaded into palette only when figure of the color is changed or new figure gets the color,
+     * unloadedColors is the number of colors that are not loaded. Colors of figures that are drawn are cached in fileColorCache,
+     * snapshot read by other threads has no cache.
+     * Found is list of slots and records reused by query and hit of store with order,
+     * owned is list of figures that get slots at once before they are changed together.
+     * @see MappedScene#isIndexed()
+     */
+    private FigureOrder order;
+    private int slots;
+    private int[] fileColors;
+    private int unloadedColors;
+    private Color[] fileColorCache;
+    private final IntList found = new IntList();
+    private final IntList owned = new IntList();
+
+    /**
+     * Tables of edges of big polygons that are still only in the mapped file, made by their hit tests.
+     * Table of record r is kept at r & (EDGE_CACHE - 1), so hit test does not give the polygon a slot and does not change the order.
+     */
+    private int[] edgeRecords;
+    private PolygonEdges[] recordEdges;
+
+    /**
+     * Index is used to find figures hit by the mouse and figures that have to be drawn.
+     * Listeners are notified about every change of figures. They are kept in array that is copied when listener is added
+     * or removed, so notifying them does not create iterator for every change of figure.
+     */
+    private SpatialIndex index = new SpatialIndex();
+    private FigureStoreListener[] listeners = new FigureStoreListener[0];
+
+    /**
+     * Hit test given to the index, created once, so hit does not create lambda capturing the point for every test.
+     */
+    private final SpatialIndex.HitTest hitTest = this::isHit;
+    private final IntList hitCandidates = new IntList();
+
+    /**
+     * Adds listener notified about changes of figures.
+     * @param l listener to add
+     */
+    void addListener(FigureStoreListener l) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = l;
+    }
+
+    void removeListener(FigureStoreListener l) {
+        for (int k = 0; k < listeners.length; k++) {
+            if (listeners[k] == l) {
+                FigureStoreListener[] rest = new FigureStoreListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, rest, 0, k);
+                System.arraycopy(listeners, k + 1, rest, k, rest.length - k);
+                listeners = rest;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns number of figures.
+     * @return number of figures
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns type of figure of given index.
+     * @param i index of figure
+     * @return CIRCLE, RECT or POLYGON
+     */
+    byte getType(int i) {
+        int s = locate(i);
+        return s >= 0 ? types[s] : mapped.getType(-1 - s);
+    }
+
+    /**
+     * Returns packed RGB color of figure of given index.
+     * @param i index of figure
+     * @return RGB value of color
+     */
+    int getRGB(int i) {
+        int entry = getColorIndex(i);
+        return entry >= 0 ? palette.getRGB(entry) : 0xff000000 | mapped.getPaletteRGB(-2 - entry);
+    }
+
+    /**
+     * Returns color of figure of given index. Figures of the same color share the same object.
+     * @param i index of figure
+     * @return color of figure
+     */
+    Color getColor(int i) {
+        int entry = getColorIndex(i);
+        return entry >= 0 ? palette.getColor(entry) : fileColor(-2 - entry);
+    }
+
+    /**
+     * Returns index of color of figure in palette. Figures with the same index have the same color,
+     * so renderer changes paint only when the index changes.
+     * @param i index of figure
+     * @return index of color in palette, or -2 - index of color of mapped file that is not loaded into palette
+     */
+    int getColorIndex(int i) {
+        int s = locate(i);
+        if (s >= 0) return colors[s];
+        int c = mapped.getColorIndex(-1 - s);
+        return fileColors[c] > 0 ? fileColors[c] - 1 : -2 - c;
+    }
+
+    /**
+     * Returns number of distinct colors of figures.
+     * @return number of colors
+     */
+    int getColorCount() {
+        return palette.size() + unloadedColors;
+    }
+
+    /**
+     * Methods to get bounds of figure of given index without creating any objects.
+     * @param i index of figure
+     * @return x, y, width or height of figure
+     */
+    double getX(int i) {
+        return bound(i, 0);
+    }
+    double getY(int i) {
+        return bound(i, 1);
+    }
+    double getWidth(int i) {
+        return bound(i, 2);
+    }
+    double getHeight(int i) {
+        return bound(i, 3);
+    }
+
+    private double bound(int i, int k) {
+        int s = locate(i);
+        return s >= 0 ? bounds[4 * s + k] : mapped.getBound(-1 - s, k);
+    }
+
+    /**
+     * Returns bounds of figure of given index.
+     * @param i index of figure
+     * @return bounds of figure
+     */
+    Rectangle2D getBounds(int i) {
+        return new Rectangle2D.Double(getX(i), getY(i), getWidth(i), getHeight(i));
+    }
+
+    /**
+     * Returns bounds of all figures of given indices together.
+     * @param figures indices of figures
+     * @return union of bounds of figures, empty rectangle with negative size if there are no figures
+     */
+    Rectangle2D getBounds(IntList figures) {
+        Rectangle2D bounds = new Rectangle2D.Double();
+        getBounds(figures, bounds);
+        return bounds;
+    }
+
+    /**
+     * Sets given rectangle to bounds of all figures of given indices together, like getBounds(IntList) without new rectangle.
+     * @param figures indices of figures
+     * @param union rectangle that gets union of bounds of figures, empty rectangle with negative size if there are no figures
+     */
+    void getBounds(IntList figures, Rectangle2D union) {
+        if (figures.isEmpty()) {
+            union.setRect(0, 0, -1, -1);
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < figures.size(); k++) {
+            int i = figures.get(k);
+            minX = Math.min(minX, getX(i));
+            minY = Math.min(minY, getY(i));
+            maxX = Math.max(maxX, getX(i) + getWidth(i));
+            maxY = Math.max(maxY, getY(i) + getHeight(i));
+        }
+        union.setRect(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Returns the name of figure type shown to the user.
+     * @param i index of figure
+     * @return name of figure type
+     */
+    String getTypeName(int i) {
+        switch (getType(i)) {
+            case CIRCLE: return "Circle";
+            case RECT: return "Rect";
+            default: return "Polygon";
+        }
+    }
+
+    /**
+     * Returns number of vertices of polygon of given index.
+     * @param i index of polygon
+     * @return number of vertices
+     */
+    int getVertexCount(int i) {
+        int s = locate(i);
+        return s >= 0 ? vertexCount[s] : mapped.getVertexCount(-1 - s);
+    }
+
+    /**
+     * Copies vertices of polygon of given index into given array.
+     * Can be called from many threads at once, as long as the store is not changed.
+     * @param i index of polygon
+     * @param out array for x and y of every vertex, has to have place for 2 * getVertexCount(i) values
+     */
+    void getVertices(int i, float[] out) {
+        int s = locate(i);
+        if (s >= 0 && vertexStart[s] >= 0) System.arraycopy(coords, vertexStart[s], out, 0, 2 * vertexCount[s]);
+        else mapped.readVertices(s >= 0 ? -1 - vertexStart[s] : -1 - s, out);
+    }
+
+    /**
+     * Creates figure object of given index. Used when figure has to be shown as Shape, for example when saving to text file.
+     * @param i index of figure
+     * @return new Circle, Rect or PolygonShape
+     */
+    Shape get(int i) {
+        switch (getType(i)) {
+            case CIRCLE: return new Circle(getX(i), getY(i), getWidth(i), getHeight(i));
+            case RECT: return new Rect((int) getX(i), (int) getY(i), (int) getWidth(i), (int) getHeight(i));
+            default:
+                int n = getVertexCount(i);
+                float[] xy = new float[2 * n];
+                getVertices(i, xy);
+                return new PolygonShape(xy, n);
+        }
+    }
+
+    /**
+     * Collects indices of figures whose bounds intersect given area.
+     * @param area searched area
+     * Figures of store with order are found among slots by spatial index and among records by the grid of the file.
+     * @param out list for found indices, sorted from the bottom to the top
+     */
+    void query(Rectangle2D area, IntList out) {
+        if (order == null) {
+            index.query(area, bounds, out);
+            return;
+        }
+        index.query(area, bounds, found);
+        out.clear();
+        for (int k = 0; k < found.size(); k++) {
+            int i = order.indexOfSlot(found.get(k));
+            if (i >= 0) out.add(i);
+        }
+        mapped.query(area, found);
+        for (int k = 0; k < found.size(); k++) {
+            int i = order.indexOfRecord(found.get(k));
+            if (i >= 0) out.add(i);
+        }
+        out.sortUnique();
+    }
+
+    /**
+     * Collects indices of figures whose bounds lie inside given area, like figures selected by rubber band.
+     * @param area searched area
+     * @param out list for found indices, sorted from the bottom to the top
+     */
+    void queryInside(Rectangle2D area, IntList out) {
+        query(area, out);
+        int n = 0;
+        for (int k = 0; k < out.size(); k++) {
+            int i = out.get(k);
+            if (getX(i) >= area.getX() && getY(i) >= area.getY()
+                    && getX(i) + getWidth(i) <= area.getMaxX() && getY(i) + getHeight(i) <= area.getMaxY()) {
+                out.set(n++, i);
+            }
+        }
+        out.truncate(n);
+    }
+
+    /**
+     * Adds figure on the top of the others.
+     * @param f Circle, Rect, PolygonShape or other shape with polygon outline
+     * @param rgb color of figure
+     */
+    void add(Shape f, int rgb) {
+        if (f instanceof Circle) {
+            Circle c = (Circle) f;
+            addCircle(c.x, c.y, c.width, c.height, rgb);
+        }
+        else if (f instanceof Rect) {
+            Rect r = (Rect) f;
+            addRect(r.x, r.y, r.width, r.height, rgb);
+        }
+        else if (f instanceof PolygonShape) {
+            PolygonShape p = (PolygonShape) f;
+            addPolygon(p.getVertices(), p.getVertexCount(), rgb);
+        }
+        else {
+            float[] c = new float[6];
+            float[] xy = new float[16];
+            int n = 0;
+            for (PathIterator it = f.getPathIterator(null); !it.isDone(); it.next()) {
+                if (it.currentSegment(c) == PathIterator.SEG_CLOSE) continue;
+                if (2 * n + 2 > xy.length) xy = Arrays.copyOf(xy, xy.length * 2);
+                xy[2 * n] = c[0];
+                xy[2 * n + 1] = c[1];
+                n++;
+            }
+            addPolygon(xy, n, rgb);
+        }
+    }
+
+    /**
+     * Adds circle on the top of the others.
+     * @param x, y, w, h bounds of circle
+     * @param rgb color of circle
+     */
+    void addCircle(double x, double y, double w, double h, int rgb) {
+        int i = append(slotOnTop(), CIRCLE, x, y, w, h, rgb);
+        fireAdded(i);
+    }
+
+    /**
+     * Adds rectangle on the top of the others.
+     * @param x, y, w, h bounds of rectangle
+     * @param rgb color of rectangle
+     */
+    void addRect(int x, int y, int w, int h, int rgb) {
+        int i = append(slotOnTop(), RECT, x, y, w, h, rgb);
+        fireAdded(i);
+    }
+
+    /**
+     * Adds polygon on the top of the others. Vertices are copied into the store.
+     * @param xy x and y of every vertex
+     * @param n number of vertices
+     * @param rgb color of polygon
+     */
+    void addPolygon(float[] xy, int n, int rgb) {
+        int start = allocateCoords(2 * n);
+        System.arraycopy(xy, 0, coords, start, 2 * n);
+        int s = slotOnTop();
+        vertexStart[s] = start;
+        vertexCount[s] = n;
+        setPolygonBounds(s);
+        int i = append(s, POLYGON, bounds[4 * s], bounds[4 * s + 1], bounds[4 * s + 2], bounds[4 * s + 3], rgb);
+        fireAdded(i);
+    }
+
+    /**
+     * Returns slot for figure added on the top of the others. Without order it is the index of the figure.
+     */
+    private int slotOnTop() {
+        if (order != null) return newSlot();
+        ensureCapacity(count + 1);
+        return count;
+    }
+
+    /**
+     * Returns new slot of store with order.
+     */
+    private int newSlot() {
+        ensureCapacity(slots + 1);
+        return slots++;
+    }
+
+    /**
+     * Puts figure into given slot on the top of the others and adds it to the index.
+     * Vertices of polygon have to be set before.
+     * @return index of new figure
+     */
+    private int append(int s, byte type, double x, double y, double w, double h, int rgb) {
+        types[s] = type;
+        colors[s] = intern(rgb);
+        if (type != POLYGON) {
+            vertexStart[s] = 0;
+            vertexCount[s] = 0;
+        }
+        setBounds(s, x, y, w, h);
+        if (index != null) index.add(x, y, w, h);
+        if (order != null) order.add(s);
+        return count++;
+    }
+
+    /**
+     * Returns slot of figure of given index, in store without order it is the index.
+     * @return slot of figure, or -1 - record when figure is still only in the mapped file
+     */
+    private int locate(int i) {
+        return order == null ? i : order.locate(i);
+    }
+
+    /**
+     * Returns slot of figure of given index that is going to be changed. Figure that is still only in the mapped file
+     * gets new slot with its type, color and bounds, vertices of polygon stay in the file until they are changed.
+     */
+    private int own(int i) {
+        int s = locate(i);
+        if (s >= 0) return s;
+        int r = -1 - s;
+        s = newSlot();
+        copyRecord(r, s);
+        order.set(i, s);
+        return s;
+    }
+
+    /**
+     * Gives slots to all figures of given indices that are still only in the mapped file. Runs of the order are made
+     * once for all of them, so changing many figures of just opened scene takes time proportional to their number.
+     * @param sorted indices of figures, sorted ascending without duplicates
+     */
+    private void ownAll(IntList sorted) {
+        if (order == null) return;
+        owned.clear();
+        for (int k = 0; k < sorted.size(); k++) {
+            if (order.locate(sorted.get(k)) < 0) owned.add(sorted.get(k));
+        }
+        if (owned.isEmpty()) return;
+        ensureCapacity(slots + owned.size());
+        int first = slots;
+        for (int k = 0; k < owned.size(); k++) copyRecord(-1 - order.locate(owned.get(k)), slots++);
+        order.setAll(owned, first);
+    }
+
+    /**
+     * Copies type, color and bounds of record of mapped file into given slot, vertices of polygon stay in the file.
+     */
+    private void copyRecord(int r, int s) {
+        types[s] = mapped.getType(r);
+        colors[s] = loadColor(mapped.getColorIndex(r));
+        for (int k = 0; k < 4; k++) bounds[4 * s + k] = mapped.getBound(r, k);
+        vertexStart[s] = types[s] == POLYGON ? -1 - r : 0;
+        vertexCount[s] = types[s] == POLYGON ? mapped.getVertexCount(r) : 0;
+        edges[s] = types[s] == POLYGON ? cachedEdges(r) : null;
+        if (index != null) index.add(bounds[4 * s], bounds[4 * s + 1], bounds[4 * s + 2], bounds[4 * s + 3]);
+    }
+
+    /**
+     * Releases color and vertices of figure of store with order that is removed. Its slot is not used any more,
+     * it stays in spatial index and query skips it, because it has no figure.
+     */
+    private void release(int i) {
+        int s = locate(i);
+        if (s < 0) {
+            palette.release(loadColor(mapped.getColorIndex(-1 - s)));
+            return;
+        }
+        if (types[s] == POLYGON && vertexStart[s] >= 0) coordsGarbage += 2 * vertexCount[s];
+        palette.release(colors[s]);
+        types[s] = 0;
+        edges[s] = null;
+    }
+
+    /**
+     * Returns entry of palette of given color of mapped file, entry is created with uses of all figures of the color in the file.
+     */
+    private int loadColor(int c) {
+        if (fileColors[c] == 0) {
+            fileColors[c] = palette.intern(mapped.getPaletteRGB(c), mapped.getPaletteUses(c)) + 1;
+            unloadedColors--;
+        }
+        return fileColors[c] - 1;
+    }
+
+    /**
+     * Interns color of new or changed figure. Color that figures of mapped file have is loaded first,
+     * so the figures share one entry.
+     */
+    private int intern(int rgb) {
+        loadColorOf(rgb);
+        return palette.intern(rgb);
+    }
+
+    /**
+     * Finds entry of palette of given color, color of mapped file is loaded first.
+     */
+    private int find(int rgb) {
+        loadColorOf(rgb);
+        return palette.find(rgb);
+    }
+
+    private void loadColorOf(int rgb) {
+        if (fileColors == null) return;
+        int c = mapped.findColor(rgb);
+        if (c >= 0) loadColor(c);
+    }
+
+    /**
+     * Returns color of mapped file that is not loaded into palette. Colors are cached by their index in the file,
+     * snapshot has no cache, so it creates new color.
+     */
+    private Color fileColor(int c) {
+        int rgb = 0xff000000 | mapped.getPaletteRGB(c);
+        if (fileColorCache == null) return new Color(rgb);
+        int k = c & (FILE_COLOR_CACHE - 1);
+        if (fileColorCache[k] == null || fileColorCache[k].getRGB() != rgb) fileColorCache[k] = new Color(rgb);
+        return fileColorCache[k];
+    }
+
+    /**
+     * Returns all properties of figure of given index. Vertices of polygon are copied into the record.
+     * @param i index of figure
+     * @return record of figure
+     */
+    FigureRecord getRecord(int i) {
+        byte type = getType(i);
+        float[] vertices = null;
+        if (type == POLYGON) {
+            vertices = new float[2 * getVertexCount(i)];
+            getVertices(i, vertices);
+        }
+        return new FigureRecord(type, getX(i), getY(i), getWidth(i), getHeight(i), getRGB(i), vertices);
+    }
+
+    /**
+     * Inserts figure at given position in z-order. Figures with bigger or equal index are moved up.
+     * @param i index of inserted figure
+     * @param f figure to insert
+     */
+    void insert(int i, FigureRecord f) {
+        if (order != null) {
+            int s = newSlot();
+            set(s, f);
+            index.add(bounds[4 * s], bounds[4 * s + 1], bounds[4 * s + 2], bounds[4 * s + 3]);
+            order.insert(i, s);
+            count++;
+            for (FigureStoreListener l : listeners) l.figuresAdded(i, i);
+            return;
+        }
+        ensureCapacity(count + 1);
+        int moved = count - i;
+        System.arraycopy(types, i, types, i + 1, moved);
+        System.arraycopy(bounds, 4 * i, bounds, 4 * i + 4, 4 * moved);
+        System.arraycopy(colors, i, colors, i + 1, moved);
+        System.arraycopy(vertexStart, i, vertexStart, i + 1, moved);
+        System.arraycopy(vertexCount, i, vertexCount, i + 1, moved);
+        System.arraycopy(edges, i, edges, i + 1, moved);
+        count++;
+
+        set(i, f);
+        index.insert(i, getX(i), getY(i), getWidth(i), getHeight(i));
+        for (FigureStoreListener l : listeners) l.figuresAdded(i, i);
+    }
+
+    /**
+     * Replaces figure of given index with given figure. Position of figure in z-order does not change.
+     * @param i index of figure
+     * @param f new figure
+     */
+    void replace(int i, FigureRecord f) {
+        int s = own(i);
+        double x = bounds[4 * s], y = bounds[4 * s + 1], w = bounds[4 * s + 2], h = bounds[4 * s + 3];
+        if (types[s] == POLYGON && vertexStart[s] >= 0) coordsGarbage += 2 * vertexCount[s];
+
+        /** New color is interned before old one is released, so figure that keeps its color keeps also its entry. */
+        int oldColor = colors[s];
+        set(s, f);
+        palette.release(oldColor);
+        index.update(s, x, y, w, h, bounds[4 * s], bounds[4 * s + 1], bounds[4 * s + 2], bounds[4 * s + 3]);
+        if (coordsGarbage > coordsUsed / 2) compactCoords();
+        for (FigureStoreListener l : listeners) l.figureChanged(i);
+    }
+
+    /**
+     * Sets all properties of figure of given slot, vertices of polygon are copied into the store.
+     * Color of figure that was there before has to be released by caller.
+     */
+    private void set(int i, FigureRecord f) {
+        types[i] = f.type;
+        colors[i] = intern(f.rgb);
+        setBounds(i, f.x, f.y, f.width, f.height);
+        if (f.type == POLYGON) {
+            int n = f.vertices.length / 2;
+            int start = allocateCoords(2 * n);
+            System.arraycopy(f.vertices, 0, coords, start, 2 * n);
+            vertexStart[i] = start;
+            vertexCount[i] = n;
+        } else {
+            vertexStart[i] = 0;
+            vertexCount[i] = 0;
+        }
+        edges[i] = null;
+    }
+
+    /**
+     * Removes figure of given index.
+     * @param i index of figure
+     */
+    void remove(int i) {
+        if (order != null) {
+            release(i);
+            order.remove(i);
+            count--;
+            if (coordsGarbage > coordsUsed / 2) compactCoords();
+            for (FigureStoreListener l : listeners) l.figureRemoved(i);
+            return;
+        }
+        index.remove(i, getX(i), getY(i), getWidth(i), getHeight(i));
+        if (types[i] == POLYGON && vertexStart[i] >= 0) coordsGarbage += 2 * vertexCount[i];
+        palette.release(colors[i]);
+
+        int moved = count - i - 1;
+        System.arraycopy(types, i + 1, types, i, moved);
+        System.arraycopy(bounds, 4 * i + 4, bounds, 4 * i, 4 * moved);
+        System.arraycopy(colors, i + 1, colors, i, moved);
+        System.arraycopy(vertexStart, i + 1, vertexStart, i, moved);
+        System.arraycopy(vertexCount, i + 1, vertexCount, i, moved);
+        System.arraycopy(edges, i + 1, edges, i, moved);
+        edges[count - 1] = null;
+        count--;
+
+        if (coordsGarbage > coordsUsed / 2) compactCoords();
+        for (FigureStoreListener l : listeners) l.figureRemoved(i);
+    }
+
+    /**
+     * Removes figures of given indices at once. Arrays and spatial index are compacted in one pass,
+     * so removing many figures takes time proportional to the number of figures, not to the number
+     * of figures times the number of removed ones.
+     * @param sorted indices of figures, sorted ascending without duplicates
+     */
+    void removeAll(IntList sorted) {
+        if (sorted.isEmpty()) return;
+        if (order != null) {
+            for (int k = 0; k < sorted.size(); k++) release(sorted.get(k));
+            order.removeAll(sorted);
+            count -= sorted.size();
+            if (coordsGarbage > coordsUsed / 2) compactCoords();
+            for (FigureStoreListener l : listeners) l.figuresRemoved(sorted);
+            return;
+        }
+        index.removeAll(sorted, bounds);
+
+        int to = sorted.get(0), k = 0;
+        for (int from = to; from < count; from++) {
+            if (k < sorted.size() && sorted.get(k) == from) {
+                if (types[from] == POLYGON && vertexStart[from] >= 0) coordsGarbage += 2 * vertexCount[from];
+                palette.release(colors[from]);
+                k++;
+                continue;
+            }
+            types[to] = types[from];
+            System.arraycopy(bounds, 4 * from, bounds, 4 * to, 4);
+            colors[to] = colors[from];
+            vertexStart[to] = vertexStart[from];
+            vertexCount[to] = vertexCount[from];
+            edges[to] = edges[from];
+            to++;
+        }
+        Arrays.fill(edges, to, count, null);
+        count = to;
+
+        if (coordsGarbage > coordsUsed / 2) compactCoords();
+        for (FigureStoreListener l : listeners) l.figuresRemoved(sorted);
+    }
+
+    /**
+     * Inserts figures at given indices at once, reverse of removeAll. Arrays are moved and spatial index
+     * is renumbered in one pass, so undoing removal of many figures is as fast as the removal.
+     * @param sorted indices of figures after inserting, sorted ascending without duplicates
+     * @param figures figures to insert, in the same order as indices
+     */
+    void insertAll(IntList sorted, FigureRecord[] figures) {
+        if (sorted.isEmpty()) return;
+        if (order != null) {
+            int first = slots;
+            for (int k = 0; k < sorted.size(); k++) {
+                int s = newSlot();
+                set(s, figures[k]);
+                index.add(bounds[4 * s], bounds[4 * s + 1], bounds[4 * s + 2], bounds[4 * s + 3]);
+            }
+            order.insertAll(sorted, first);
+            count += sorted.size();
+            for (FigureStoreListener l : listeners) l.figuresInserted(sorted);
+            return;
+        }
+        ensureCapacity(count + sorted.size());
+
+        int from = count - 1, k = sorted.size() - 1;
+        for (int to = count + sorted.size() - 1; k >= 0; to--) {
+            if (sorted.get(k) == to) {
+                k--;
+                continue;
+            }
+            types[to] = types[from];
+            System.arraycopy(bounds, 4 * from, bounds, 4 * to, 4);
+            colors[to] = colors[from];
+            vertexStart[to] = vertexStart[from];
+            vertexCount[to] = vertexCount[from];
+            edges[to] = edges[from];
+            from--;
+        }
+        count += sorted.size();
+
+        for (k = 0; k < sorted.size(); k++) set(sorted.get(k), figures[k]);
+        index.insertAll(sorted, bounds);
+        for (FigureStoreListener l : listeners) l.figuresInserted(sorted);
+    }
+
+    /**
+     * Moves figure of given index on the top of the others.
+     * @param i index of figure
+     */
+    void moveToTop(int i) {
+        if (order != null) {
+            int s = own(i);
+            order.remove(i);
+            order.add(s);
+            for (FigureStoreListener l : listeners) l.figureMovedToTop(i);
+            return;
+        }
+        index.moveToTop(i, getX(i), getY(i), getWidth(i), getHeight(i));
+
+        byte type = types[i];
+        double x = getX(i), y = getY(i), w = getWidth(i), h = getHeight(i);
+        int color = colors[i], start = vertexStart[i], n = vertexCount[i];
+        PolygonEdges e = edges[i];
+
+        int moved = count - i - 1;
+        System.arraycopy(types, i + 1, types, i, moved);
+        System.arraycopy(bounds, 4 * i + 4, bounds, 4 * i, 4 * moved);
+        System.arraycopy(colors, i + 1, colors, i, moved);
+        System.arraycopy(vertexStart, i + 1, vertexStart, i, moved);
+        System.arraycopy(vertexCount, i + 1, vertexCount, i, moved);
+        System.arraycopy(edges, i + 1, edges, i, moved);
+
+        int last = count - 1;
+        types[last] = type;
+        setBounds(last, x, y, w, h);
+        colors[last] = color;
+        vertexStart[last] = start;
+        vertexCount[last] = n;
+        edges[last] = e;
+
+        for (FigureStoreListener l : listeners) l.figureMovedToTop(i);
+    }
+
+    /**
+     * Removes all figures.
+     */
+    void clear() {
+        count = 0;
+        coordsUsed = 0;
+        coordsGarbage = 0;
+        mapped = null;
+        order = null;
+        slots = 0;
+        fileColors = null;
+        unloadedColors = 0;
+        fileColorCache = null;
+        edgeRecords = null;
+        recordEdges = null;
+        index.clear();
+        palette = new ColorTable();
+        edges = new PolygonEdges[types.length];
+        for (FigureStoreListener l : listeners) l.figuresCleared();
+    }
+
+    /**
+     * Takes all figures out of the store, the store becomes empty.
+     * Arrays and index of figures are not copied, they are moved into returned store, so it takes constant time
+     * even for big scenes. Figures can be given back by setAll.
+     * @return store with all figures, it has no listeners
+     */
+    FigureStore takeAll() {
+        FigureStore taken = new FigureStore();
+        taken.count = count;
+        taken.types = types;
+        taken.bounds = bounds;
+        taken.colors = colors;
+        taken.palette = palette;
+        taken.vertexStart = vertexStart;
+        taken.vertexCount = vertexCount;
+        taken.edges = edges;
+        taken.coords = coords;
+        taken.coordsUsed = coordsUsed;
+        taken.coordsGarbage = coordsGarbage;
+        taken.mapped = mapped;
+        taken.order = order;
+        taken.slots = slots;
+        taken.fileColors = fileColors;
+        taken.unloadedColors = unloadedColors;
+        taken.fileColorCache = fileColorCache;
+        taken.edgeRecords = edgeRecords;
+        taken.recordEdges = recordEdges;
+        taken.index = index;
+
+        types = new byte[16];
+        bounds = new double[64];
+        colors = new int[16];
+        vertexStart = new int[16];
+        vertexCount = new int[16];
+        coords = new float[64];
+        index = new SpatialIndex();
+        clear();
+        return taken;
+    }
+
+    /**
+     * Replaces all figures with figures of given store, for example read from the file.
+     * Arrays of given store are taken over, so it should not be used any more.
+     * @param other store with new figures
+     */
+    void setAll(FigureStore other) {
+        clear();
+        count = other.count;
+        types = other.types;
+        bounds = other.bounds;
+        colors = other.colors;
+        palette = other.palette;
+        vertexStart = other.vertexStart;
+        vertexCount = other.vertexCount;
+        edges = other.edges;
+        coords = other.coords;
+        coordsUsed = other.coordsUsed;
+        coordsGarbage = other.coordsGarbage;
+        mapped = other.mapped;
+        order = other.order;
+        slots = other.slots;
+        fileColors = other.fileColors;
+        unloadedColors = other.unloadedColors;
+        fileColorCache = other.fileColorCache;
+        edgeRecords = other.edgeRecords;
+        recordEdges = other.recordEdges;
+        index = other.index;
+        if (count > 0) {
+            for (FigureStoreListener l : listeners) l.figuresAdded(0, count - 1);
+        }
+    }
+
+    /**
+     * Creates store with figures of mapped scene. Figures of indexed scene stay in the file, store gets only its order
+     * and table of its colors, so it takes the same time for any number of figures.
+     * Of scene without index only circles, rectangles and bounds of polygons are read, vertices of polygons stay in the file.
+     * Every figure is then read and put into spatial index here, so it takes time proportional to the number of figures.
+     * Store can be created in background thread and given to setAll later.
+     * @param scene mapped scene file
+     * @param progress progress of reading, it can cancel reading
+     * @return store with figures of scene, it has no listeners
+     */
+    static FigureStore fromMapped(MappedScene scene, Progress progress) {
+        FigureStore read = new FigureStore();
+        read.mapped = scene;
+        if (scene.isIndexed()) {
+            read.order = new FigureOrder(scene.size());
+            read.count = scene.size();
+            read.fileColors = new int[scene.getColorCount()];
+            read.unloadedColors = scene.getColorCount();
+            read.fileColorCache = new Color[FILE_COLOR_CACHE];
+            return read;
+        }
+        read.ensureCapacity(scene.size());
+        double[] b = new double[4];
+        for (int r = 0; r < scene.size(); r++) {
+            if (r % BinarySceneFormat.PROGRESS_STEP == 0) progress.update(r, scene.size());
+            scene.readBounds(r, b);
+            byte type = scene.getType(r);
+            if (type == POLYGON) {
+                read.vertexStart[read.count] = -1 - r;
+                read.vertexCount[read.count] = scene.getVertexCount(r);
+            }
+            read.append(read.count, type, b[0], b[1], b[2], b[3], scene.getColor(r));
+        }
+        return read;
+    }
+
+    /**
+     * Creates store without spatial index, which only collects figures that are given to appendAll later,
+     * for example figures of part of file read by other thread. Its figures can be only read by their indices.
+     * @return empty store
+     */
+    static FigureStore buffer() {
+        FigureStore buffer = new FigureStore();
+        buffer.index = null;
+        return buffer;
+    }
+
+    /**
+     * Adds all figures of given store on the top of the others, in the same order. This store has no order.
+     * Arrays of figures and vertices are copied at once, only colors and index are updated figure by figure.
+     * @param other store with figures that are not in mapped file, it should not be used any more
+     */
+    void appendAll(FigureStore other) {
+        if (other.count == 0) return;
+        int from = count;
+        ensureCapacity(count + other.count);
+        int shift = allocateCoords(other.coordsUsed);
+        System.arraycopy(other.coords, 0, coords, shift, other.coordsUsed);
+        coordsGarbage += other.coordsGarbage;
+
+        System.arraycopy(other.types, 0, types, from, other.count);
+        System.arraycopy(other.bounds, 0, bounds, 4 * from, 4 * other.count);
+        System.arraycopy(other.vertexCount, 0, vertexCount, from, other.count);
+        System.arraycopy(other.edges, 0, edges, from, other.count);
+        for (int k = 0; k < other.count; k++) {
+            int i = from + k;
+            vertexStart[i] = other.types[k] == POLYGON ? other.vertexStart[k] + shift : 0;
+            colors[i] = palette.intern(other.palette.getRGB(other.colors[k]));
+            index.add(getX(i), getY(i), getWidth(i), getHeight(i));
+        }
+        count += other.count;
+        for (FigureStoreListener l : listeners) l.figuresAdded(from, count - 1);
+    }
+
+    /**
+     * Creates copy of figures that can be read from other threads while figures of this store are changed.
+     * Copy has no spatial index and no listeners, so its figures can be only read by their indices,
+     * indexedSnapshot copies the index too.
+     * Vertices of polygons that are still in mapped file are read from the same file.
+     * @return copy of figures
+     */
+    FigureStore snapshot() {
+        FigureStore copy = new FigureStore();
+        int n = order == null ? count : slots;
+        copy.count = count;
+        copy.types = Arrays.copyOf(types, n);
+        copy.bounds = Arrays.copyOf(bounds, 4 * n);
+        copy.colors = Arrays.copyOf(colors, n);
+        copy.palette = palette.copy();
+        copy.vertexStart = Arrays.copyOf(vertexStart, n);
+        copy.vertexCount = Arrays.copyOf(vertexCount, n);
+        copy.edges = Arrays.copyOf(edges, n);
+        copy.coords = Arrays.copyOf(coords, coordsUsed);
+        copy.coordsUsed = coordsUsed;
+        copy.coordsGarbage = coordsGarbage;
+        copy.mapped = mapped;
+        if (order != null) {
+            copy.order = order.copy();
+            copy.slots = slots;
+            copy.fileColors = fileColors.clone();
+            copy.unloadedColors = unloadedColors;
+        }
+        copy.index = null;
+        return copy;
+    }
+
+    /**
+     * Creates snapshot of figures with copy of spatial index, so figures in given area of the snapshot
+     * can be found by query. Copying the index takes longer than the rest of the snapshot, so it is done only
+     * for readers that need it, like export of image.
+     * @return copy of figures with spatial index
+     * @see #snapshot()
+     */
+    FigureStore indexedSnapshot() {
+        FigureStore copy = snapshot();
+        copy.index = index.copy();
+        return copy;
+    }
+
+    /**
+     * Changes color of figure of given index.
+     * @param i index of figure
+     * @param rgb new color
+     */
+    void setColor(int i, int rgb) {
+        recolor(own(i), rgb);
+        for (FigureStoreListener l : listeners) l.figureColored(i, rgb);
+    }
+
+    /**
+     * New color is taken from palette before the old one is released, so figure that keeps its color keeps its entry.
+     */
+    private void recolor(int s, int rgb) {
+        int entry = intern(rgb);
+        palette.release(colors[s]);
+        colors[s] = entry;
+    }
+
+    /**
+     * Changes color of all figures of given indices, listeners are notified once.
+     * @param sorted indices of figures, sorted ascending without duplicates
+     * @param rgb new color
+     */
+    void setColorAll(IntList sorted, int rgb) {
+        ownAll(sorted);
+        for (int k = 0; k < sorted.size(); k++) recolor(own(sorted.get(k)), rgb);
+        for (FigureStoreListener l : listeners) l.figuresColored(sorted, rgb);
+    }
+
+    /**
+     * Collects indices of all figures of given color.
+     * @param rgb packed RGB of color
+     * @param out list for found indices, sorted ascending
+     */
+    void findColor(int rgb, IntList out) {
+        out.clear();
+        int entry = find(rgb);
+        if (entry < 0) return;
+        for (int i = 0; i < count; i++) {
+            if (getColorIndex(i) == entry) out.add(i);
+        }
+    }
+
+    /**
+     * Changes color of all figures of one color to other color. When no figure has the new color,
+     * only the entry of palette changes, so it takes constant time however many figures have the color.
+     * Otherwise both colors are joined into one entry, figures are moved to it in one pass.
+     * Figures that are still in mapped file are moved by moving their color of the file.
+     * @param oldRgb color of changed figures
+     * @param newRgb new color of the figures
+     */
+    void replaceColor(int oldRgb, int newRgb) {
+        int entry = find(oldRgb);
+        if (entry < 0 || ((oldRgb ^ newRgb) & 0xffffff) == 0) return;
+
+        int target = find(newRgb);
+        if (target < 0) {
+            palette.recolor(entry, newRgb);
+        } else {
+            int n = order == null ? count : slots;
+            for (int s = 0; s < n; s++) {
+                if (colors[s] == entry) colors[s] = target;
+            }
+            if (fileColors != null) {
+                for (int c = 0; c < fileColors.length; c++) {
+                    if (fileColors[c] == entry + 1) fileColors[c] = target + 1;
+                }
+            }
+            palette.merge(entry, target);
+        }
+        for (FigureStoreListener l : listeners) l.colorReplaced(oldRgb, newRgb);
+    }
+
+    /**
+     * Moves figure of given index by given distance.
+     * @param i index of figure
+     * @param deltaX distance in horizontal axis
+     * @param deltaY distance in vertical axis
+     */
+    void translate(int i, int deltaX, int deltaY) {
+        move(i, deltaX, deltaY);
+        for (FigureStoreListener l : listeners) l.figureTranslated(i, deltaX, deltaY);
+    }
+
+    /**
+     * Moves all figures of given indices by given distance in one pass, listeners are notified once.
+     * @param sorted indices of figures, sorted ascending without duplicates
+     * @param deltaX distance in horizontal axis
+     * @param deltaY distance in vertical axis
+     */
+    void translateAll(IntList sorted, int deltaX, int deltaY) {
+        ownAll(sorted);
+        for (int k = 0; k < sorted.size(); k++) move(sorted.get(k), deltaX, deltaY);
+        for (FigureStoreListener l : listeners) l.figuresTranslated(sorted, deltaX, deltaY);
+    }
+
+    private void move(int i, int deltaX, int deltaY) {
+        int s = own(i);
+        double x = bounds[4 * s], y = bounds[4 * s + 1], w = bounds[4 * s + 2], h = bounds[4 * s + 3];
+
+        if (types[s] == POLYGON) {
+            materialize(s);
+            int start = vertexStart[s];
+            for (int j = 0; j < vertexCount[s]; j++) {
+                coords[start + 2 * j] += deltaX;
+                coords[start + 2 * j + 1] += deltaY;
+            }
+            setPolygonBounds(s);
+            keepEdges(s);
+        } else {
+            setBounds(s, x + deltaX, y + deltaY, w, h);
+        }
+        index.update(s, x, y, w, h, bounds[4 * s], bounds[4 * s + 1], bounds[4 * s + 2], bounds[4 * s + 3]);
+    }
+
+    /**
+     * Scales figure of given index according to the type of figure.
+     * Circles and rectangles are scaled in the same way as Circle.resize and Rectangle.grow do it,
+     * polygons are scaled around the center of their bounds.
+     * @param i index of figure
+     * @param scaleRate rate of scale, positive value makes figure smaller, values not smaller than 1 are ignored
+     */
+    void scale(int i, double scaleRate) {
+        if (scaleRate >= 1) return;
+        resize(i, scaleRate);
+        for (FigureStoreListener l : listeners) l.figureScaled(i, scaleRate);
+    }
+
+    /**
+     * Scales all figures of given indices, each around its own center like scale(int, double), listeners are notified once.
+     * @param sorted indices of figures, sorted ascending without duplicates
+     * @param scaleRate rate of scale, values not smaller than 1 are ignored
+     */
+    void scaleAll(IntList sorted, double scaleRate) {
+        if (scaleRate >= 1) return;
+        ownAll(sorted);
+        for (int k = 0; k < sorted.size(); k++) resize(sorted.get(k), scaleRate);
+        for (FigureStoreListener l : listeners) l.figuresScaled(sorted, scaleRate);
+    }
+
+    private void resize(int i, double scaleRate) {
+        int s = own(i);
+        double x = bounds[4 * s], y = bounds[4 * s + 1], w = bounds[4 * s + 2], h = bounds[4 * s + 3];
+
+        if (types[s] == CIRCLE) {
+            double radius = h / 2 * (1 - scaleRate);
+            setBounds(s, x + radius * scaleRate, y + radius * scaleRate, radius * 2, radius * 2);
+        }
+        else if (types[s] == RECT) {
+            int growX = (int) round(w * scaleRate);
+            int growY = (int) round(h * scaleRate);
+            setBounds(s, x + growX, y + growY, w - 2 * growX, h - 2 * growY);
+        }
+        else {
+            materialize(s);
+            float factor = (float) (1 - scaleRate);
+            float centerX = (float) (x + w / 2), centerY = (float) (y + h / 2);
+            int start = vertexStart[s];
+            for (int j = 0; j < vertexCount[s]; j++) {
+                coords[start + 2 * j] = centerX + (coords[start + 2 * j] - centerX) * factor;
+                coords[start + 2 * j + 1] = centerY + (coords[start + 2 * j + 1] - centerY) * factor;
+            }
+            setPolygonBounds(s);
+            keepEdges(s);
+        }
+        index.update(s, x, y, w, h, bounds[4 * s], bounds[4 * s + 1], bounds[4 * s + 2], bounds[4 * s + 3]);
+    }
+
+    /**
+     * Finds the topmost figure that contains given point.
+     * Only figures near the point are tested, thanks to spatial index.
+     * @param x first parameter of coordinates
+     * @param y second parameter of coordinates
+     * @return index of topmost hit figure, -1 if no figure is hit.
+     */
+    int hit(double x, double y) {
+        if (order == null) return index.findTopmost(x, y, hitTest);
+        hitCandidates.clear();
+        index.collect(x, y, found);
+        for (int k = 0; k < found.size(); k++) {
+            int i = order.indexOfSlot(found.get(k));
+            if (i >= 0) hitCandidates.add(i);
+        }
+        mapped.collect(x, y, found);
+        for (int k = 0; k < found.size(); k++) {
+            int i = order.indexOfRecord(found.get(k));
+            if (i >= 0) hitCandidates.add(i);
+        }
+        hitCandidates.sortUnique();
+        for (int c = hitCandidates.size() - 1; c >= 0; c--) {
+            if (isHit(hitCandidates.get(c), x, y)) return hitCandidates.get(c);
+        }
+        return -1;
+    }
+
+    /**
+     * Detects if given coordinates are inside of figure of given index.
+     * Works in the same way as contains method of Ellipse2D, Rectangle2D and PolygonShape.
+     * @param i index of figure
+     * @param x first parameter of coordinates
+     * @param y second parameter of coordinates
+     * @return {@code true} if figure contains given point, {@code false} otherwise.
+     */
+    boolean isHit(int i, double x, double y) {
+        double bx = getX(i), by = getY(i), bw = getWidth(i), bh = getHeight(i);
+        if (x < bx || y < by || x > bx + bw || y > by + bh) return false;
+
+        switch (getType(i)) {
+            case CIRCLE:
+                if (bw <= 0 || bh <= 0) return false;
+                double nx = (x - bx) / bw - 0.5;
+                double ny = (y - by) / bh - 0.5;
+                return nx * nx + ny * ny < 0.25;
+            case RECT:
+                return bw > 0 && bh > 0 && x < bx + bw && y < by + bh;
+            default:
+                int n = getVertexCount(i);
+                if (n < PolygonEdges.MIN_VERTICES) {
+                    int s = locate(i);
+                    return PolygonShape.windingNumber(vertices(s), vertexOffset(s), n, x, y) != 0;
+                }
+
+                /**
+                 * Big polygon gets table of edges by its first hit test. Mapped polygon stays in the file,
+                 * only the table is kept in memory and vertices of one band are read from the file by every test.
+                 * Table of polygon that has no slot is cached by its record.
+                 */
+                int s = locate(i);
+                PolygonEdges e = s >= 0 ? edges[s] : cachedEdges(-1 - s);
+                if (e == null) {
+                    e = new PolygonEdges(vertices(s), vertexOffset(s), n, by, bh);
+                    if (s >= 0) edges[s] = e;
+                    else cacheEdges(-1 - s, e);
+                }
+                if (s >= 0 && vertexStart[s] >= 0) return e.windingNumber(coords, vertexStart[s], n, x, y, by, bh) != 0;
+                int r = s >= 0 ? -1 - vertexStart[s] : -1 - s;
+                return e.windingNumber(mapped, mapped.getVertexPosition(r), n, x, y, by, bh, scratch) != 0;
+        }
+    }
+
+    /**
+     * Returns cached table of edges of polygon of given record of mapped file, null if it is not cached.
+     */
+    private PolygonEdges cachedEdges(int r) {
+        int k = r & (EDGE_CACHE - 1);
+        return recordEdges != null && edgeRecords[k] == r ? recordEdges[k] : null;
+    }
+
+    private void cacheEdges(int r, PolygonEdges e) {
+        if (recordEdges == null) {
+            edgeRecords = new int[EDGE_CACHE];
+            recordEdges = new PolygonEdges[EDGE_CACHE];
+        }
+        int k = r & (EDGE_CACHE - 1);
+        edgeRecords[k] = r;
+        recordEdges[k] = e;
+    }
+
+    /**
+     * Returns array with vertices of polygon of given slot, vertices of mapped polygon are read into scratch array.
+     * @param s slot of polygon, or -1 - record for polygon that is still only in the mapped file
+     */
+    private float[] vertices(int s) {
+        if (s >= 0 && vertexStart[s] >= 0) return coords;
+        int r = s >= 0 ? -1 - vertexStart[s] : -1 - s;
+        int n = mapped.getVertexCount(r);
+        if (scratch.length < 2 * n) scratch = new float[2 * n];
+        mapped.readVertices(r, scratch);
+        return scratch;
+    }
+
+    /**
+     * Returns position of the first vertex of polygon of given slot in the array returned by vertices.
+     */
+    private int vertexOffset(int s) {
+        return s >= 0 && vertexStart[s] >= 0 ? vertexStart[s] : 0;
+    }
+
+    /**
+     * Copies vertices of mapped polygon of given slot into the store, so polygon can be changed.
+     */
+    private void materialize(int s) {
+        if (vertexStart[s] >= 0) return;
+        int n = vertexCount[s];
+        float[] c = vertices(s);
+        int start = allocateCoords(2 * n);
+        System.arraycopy(c, 0, coords, start, 2 * n);
+        vertexStart[s] = start;
+    }
+
+    /**
+     * Calculates bounds of polygon of given slot from its vertices.
+     */
+    private void setPolygonBounds(int i) {
+        float[] c = vertices(i);
+        int start = vertexOffset(i);
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int j = 0; j < vertexCount[i]; j++) {
+            float x = c[start + 2 * j], y = c[start + 2 * j + 1];
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+        setBounds(i, minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Keeps table of edges of polygon of given slot that was moved or scaled, its bands moved with the bounds.
+     * @see PolygonEdges#transformed()
+     */
+    private void keepEdges(int i) {
+        if (edges[i] != null && !edges[i].transformed()) edges[i] = null;
+    }
+
+    private void setBounds(int i, double x, double y, double w, double h) {
+        bounds[4 * i] = x;
+        bounds[4 * i + 1] = y;
+        bounds[4 * i + 2] = w;
+        bounds[4 * i + 3] = h;
+    }
+
+    /**
+     * Reserves place for given number of values in coords array.
+     * @return position of reserved place
+     */
+    private int allocateCoords(int n) {
+        if (coordsUsed + n > coords.length) {
+            coords = Arrays.copyOf(coords, Math.max(coordsUsed + n, coords.length * 2));
+        }
+        int start = coordsUsed;
+        coordsUsed += n;
+        return start;
+    }
+
+    /**
+     * Moves vertices of polygons to the beginning of coords array, so place of removed polygons can be used again.
+     */
+    private void compactCoords() {
+        float[] compacted = new float[Math.max(64, coordsUsed - coordsGarbage)];
+        int used = 0;
+        int n = order == null ? count : slots;
+        for (int i = 0; i < n; i++) {
+            if (types[i] != POLYGON || vertexStart[i] < 0) continue;
+            System.arraycopy(coords, vertexStart[i], compacted, used, 2 * vertexCount[i]);
+            vertexStart[i] = used;
+            used += 2 * vertexCount[i];
+        }
+        coords = compacted;
+        coordsUsed = used;
+        coordsGarbage = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= types.length) return;
+        int size = Math.max(capacity, types.length * 2);
+        types = Arrays.copyOf(types, size);
+        bounds = Arrays.copyOf(bounds, 4 * size);
+        colors = Arrays.copyOf(colors, size);
+        vertexStart = Arrays.copyOf(vertexStart, size);
+        vertexCount = Arrays.copyOf(vertexCount, size);
+        edges = Arrays.copyOf(edges, size);
+    }
+
+    private void fireAdded(int i) {
+        for (FigureStoreListener l : listeners) l.figuresAdded(i, i);
+    }
+}
@@ -0,0 +1,124 @@
+package editor;
+
+/**
+ * Listener notified about changes of figures kept in FigureStore.
+ * Indices given to the listener are valid after the change.
+ * @see FigureStore
+ */
+interface FigureStoreListener {
+
+    /**
+     * Invoked when figures were added on the top of the others.
+     * @param from index of the first added figure
+     * @param to index of the last added figure
+     */
+    default void figuresAdded(int from, int to) {}
+
+    /**
+     * Invoked when figures were inserted at given indices at once. Figures that were there were moved up.
+     * By default it is handled like inserting of the figures one by one, from the lowest one.
+     * @param indices indices of inserted figures after inserting, sorted ascending
+     */
+    default void figuresInserted(IntList indices) {
+        for (int k = 0; k < indices.size(); k++) figuresAdded(indices.get(k), indices.get(k));
+    }
+
+    /**
+     * Invoked when figure was removed. Figures above it were moved down by one.
+     * @param index index of removed figure
+     */
+    default void figureRemoved(int index) {}
+
+    /**
+     * Invoked when figures of given indices were removed at once. Figures above them were moved down.
+     * By default it is handled like removing of the figures one by one, from the topmost one.
+     * @param indices indices of removed figures before removing, sorted ascending
+     */
+    default void figuresRemoved(IntList indices) {
+        for (int k = indices.size() - 1; k >= 0; k--) figureRemoved(indices.get(k));
+    }
+
+    /**
+     * Invoked when figure was moved on the top of the others. Figures above it were moved down by one.
+     * @param index previous index of figure
+     */
+    default void figureMovedToTop(int index) {}
+
+    /**
+     * Invoked when figure was moved, scaled or colored.
+     * @param index index of changed figure
+     */
+    default void figureChanged(int index) {}
+
+    /**
+     * Invoked when figure was moved by given distance. Listeners that do not need the distance get figureChanged.
+     * @param index index of moved figure
+     * @param deltaX distance in horizontal axis
+     * @param deltaY distance in vertical axis
+     */
+    default void figureTranslated(int index, int deltaX, int deltaY) {
+        figureChanged(index);
+    }
+
+    /**
+     * Invoked when figure was scaled by given rate. Listeners that do not need the rate get figureChanged.
+     * @param index index of scaled figure
+     * @param scaleRate rate given to FigureStore.scale
+     */
+    default void figureScaled(int index, double scaleRate) {
+        figureChanged(index);
+    }
+
+    /**
+     * Invoked when color of figure was changed. Listeners that do not need the color get figureChanged.
+     * @param index index of colored figure
+     * @param rgb new color
+     */
+    default void figureColored(int index, int rgb) {
+        figureChanged(index);
+    }
+
+    /**
+     * Invoked when figures of given indices were moved by given distance at once.
+     * By default every figure is handled like moved alone.
+     * @param indices indices of moved figures, sorted ascending
+     * @param deltaX distance in horizontal axis
+     * @param deltaY distance in vertical axis
+     */
+    default void figuresTranslated(IntList indices, int deltaX, int deltaY) {
+        for (int k = 0; k < indices.size(); k++) figureTranslated(indices.get(k), deltaX, deltaY);
+    }
+
+    /**
+     * Invoked when figures of given indices were scaled by given rate at once.
+     * By default every figure is handled like scaled alone.
+     * @param indices indices of scaled figures, sorted ascending
+     * @param scaleRate rate given to FigureStore.scaleAll
+     */
+    default void figuresScaled(IntList indices, double scaleRate) {
+        for (int k = 0; k < indices.size(); k++) figureScaled(indices.get(k), scaleRate);
+    }
+
+    /**
+     * Invoked when color of figures of given indices was changed at once.
+     * By default every figure is handled like colored alone.
+     * @param indices indices of colored figures, sorted ascending
+     * @param rgb new color
+     */
+    default void figuresColored(IntList indices, int rgb) {
+        for (int k = 0; k < indices.size(); k++) figureColored(indices.get(k), rgb);
+    }
+
+    /**
+     * Invoked when all figures of one color got other color at once, figures are not listed.
+     * Listeners that keep colors or images of figures have to forget all of them.
+     * @param oldRgb previous color of figures
+     * @param newRgb new color of figures
+     */
+    default void colorReplaced(int oldRgb, int newRgb) {}
+
+    /**
+     * Invoked when all figures were removed.
+     */
+    default void figuresCleared() {}
+}
@@ -0,0 +1,229 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Class ImageExporter saves figures as PNG image of any size without drawing the whole image into memory.
+ *
+ * Image is split into strips of tiles. Tiles of one strip are drawn in parallel on ForkJoinPool,
+ * figures of the strip are found by spatial index and every tile draws only figures that intersect it. When strip is ready its rows are given to PngEncoder,
+ * while the next strip is already being drawn. Only two strips of tiles are kept in memory at once.
+ *
+ * Exporter reads figures from store snapshot with spatial index, so figures can be changed on the panel during the export.
+ * @see FigureStore#indexedSnapshot()
+ * @see PngEncoder
+ */
+class ImageExporter {
+
+    /**
+     * TILE_SIZE is the width and height of one tile in pixels.
+     */
+    static final int TILE_SIZE = 512;
+
+    private final FigureStore figures;
+    private final Rectangle2D area;
+    private final double scale;
+    private final int width, height;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates exporter of given area of drawing.
+     * @param figures snapshot of figures to export with spatial index, it can not be changed during the export
+     * @param area exported area of drawing, in coordinates of DrawPanel
+     * @param scale number of pixels of image per one pixel of DrawPanel
+     */
+    ImageExporter(FigureStore figures, Rectangle2D area, double scale) {
+        this(figures, area, scale, ForkJoinPool.commonPool());
+    }
+
+    ImageExporter(FigureStore figures, Rectangle2D area, double scale, ForkJoinPool pool) {
+        if (scale <= 0) throw new IllegalArgumentException("Scale has to be positive");
+        this.figures = figures;
+        this.area = area;
+        this.scale = scale;
+        this.width = Math.max(1, (int) Math.ceil(area.getWidth() * scale));
+        this.height = Math.max(1, (int) Math.ceil(area.getHeight() * scale));
+        this.pool = pool;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Draws figures and saves them into PNG file.
+     * @param file file to write image into
+     * @param dpi resolution saved in image, in dots per inch
+     * @throws IOException if image can not be written
+     */
+    void export(File file, int dpi) throws IOException {
+        export(file, dpi, Progress.NONE);
+    }
+
+    /**
+     * Draws figures and saves them into PNG file, reports number of written strips.
+     * Image is written into temporary file that replaces the file when image is complete,
+     * so file that existed before is kept when export failed or was cancelled.
+     * @param file file to write image into
+     * @param dpi resolution saved in image, in dots per inch
+     * @param progress progress of export, it can cancel the export
+     * @throws IOException if image can not be written
+     */
+    void export(File file, int dpi, Progress progress) throws IOException {
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16)) {
+                export(out, dpi, progress);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    /**
+     * Draws figures and writes them into stream as PNG image. Stream is not closed.
+     * @param out stream to write image into
+     * @param dpi resolution saved in image, in dots per inch
+     * @param progress progress of export, it can cancel the export
+     * @throws IOException if image can not be written
+     */
+    void export(OutputStream out, int dpi, Progress progress) throws IOException {
+        PngEncoder encoder = new PngEncoder(out, width, height, dpi);
+        int strips = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int[] row = new int[width];
+
+        ForkJoinTask<BufferedImage[]> next = pool.submit(() -> drawStrip(0));
+        try {
+            for (int strip = 0; strip < strips; strip++) {
+                progress.update(strip, strips);
+                BufferedImage[] tiles = next.join();
+                if (strip + 1 < strips) {
+                    int following = strip + 1;
+                    next = pool.submit(() -> drawStrip(following));
+                }
+                writeStrip(encoder, tiles, row);
+            }
+            encoder.finish();
+        } catch (IOException | RuntimeException e) {
+            /** Strip that is being drawn is not needed when export failed or was cancelled. */
+            next.cancel(true);
+            throw e;
+        } finally {
+            encoder.end();
+        }
+    }
+
+    /**
+     * Draws all tiles of given strip. Figures that intersect the strip are found first by spatial index,
+     * then every tile picks from them figures that intersect the tile.
+     * @param strip index of strip, counted from the top of image
+     * @return tiles of strip, from the left to the right
+     */
+    private BufferedImage[] drawStrip(int strip) {
+        int y = strip * TILE_SIZE;
+        int h = Math.min(TILE_SIZE, height - y);
+
+        IntList inStrip = new IntList();
+        figures.query(toDrawing(0, y, width, h), inStrip);
+
+        List<ForkJoinTask<BufferedImage>> tasks = new ArrayList<>();
+        for (int x = 0; x < width; x += TILE_SIZE) {
+            int tileX = x;
+            int w = Math.min(TILE_SIZE, width - x);
+            tasks.add(ForkJoinTask.adapt(() -> drawTile(inStrip, tileX, y, w, h)));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        BufferedImage[] tiles = new BufferedImage[tasks.size()];
+        for (int t = 0; t < tiles.length; t++) tiles[t] = tasks.get(t).join();
+        return tiles;
+    }
+
+    /**
+     * Draws figures from given list that intersect the tile on white background.
+     * @param candidates indices of figures that can intersect the tile, sorted from the bottom to the top
+     * @param x, y, w, h position and size of tile in pixels of image
+     * @return image of tile
+     */
+    private BufferedImage drawTile(IntList candidates, int x, int y, int w, int h) {
+        IntList visible = new IntList();
+        Rectangle2D part = toDrawing(x, y, w, h);
+        for (int j = 0; j < candidates.size(); j++) {
+            if (intersects(candidates.get(j), part)) visible.add(candidates.get(j));
+        }
+
+        BufferedImage tile = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = tile.createGraphics();
+        g2d.setColor(Color.white);
+        g2d.fillRect(0, 0, w, h);
+        g2d.translate(-x, -y);
+        g2d.scale(scale, scale);
+        g2d.translate(-area.getX(), -area.getY());
+        FigureRenderer renderer = new FigureRenderer(figures);
+        renderer.setLevelOfDetail(false);
+        renderer.draw(g2d, visible, 0, visible.size());
+        g2d.dispose();
+        return tile;
+    }
+
+    /**
+     * Gives rows of tiles of one strip to encoder, rows of all tiles are joined into rows of image.
+     */
+    private void writeStrip(PngEncoder encoder, BufferedImage[] tiles, int[] row) throws IOException {
+        int h = tiles[0].getHeight();
+        for (int r = 0; r < h; r++) {
+            int x = 0;
+            for (BufferedImage tile : tiles) {
+                int[] pixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+                int w = tile.getWidth();
+                System.arraycopy(pixels, r * w, row, x, w);
+                x += w;
+            }
+            encoder.writeRows(row, 0, width, 1);
+        }
+    }
+
+    /**
+     * Checks if figure can be visible in given part of image, inclusive like query of spatial index.
+     * @param i index of figure
+     * @param part area of the drawing shown in the part of image
+     * @see #toDrawing(int, int, int, int)
+     */
+    private boolean intersects(int i, Rectangle2D part) {
+        return figures.getX(i) <= part.getMaxX() && figures.getY(i) <= part.getMaxY()
+                && figures.getX(i) + figures.getWidth(i) >= part.getX() && figures.getY(i) + figures.getHeight(i) >= part.getY();
+    }
+
+    /**
+     * Returns area of the drawing where figures can be visible in given part of image.
+     * It is bigger than the part by the width of outline and one pixel of antialiasing.
+     * @param x, y, w, h part of image in pixels
+     */
+    private Rectangle2D toDrawing(int x, int y, int w, int h) {
+        double margin = 1 + 1 / scale;
+        double left = area.getX() + x / scale - margin;
+        double top = area.getY() + y / scale - margin;
+        double right = area.getX() + (x + w) / scale + margin;
+        double bottom = area.getY() + (y + h) / scale + margin;
+        return new Rectangle2D.Double(left, top, right - left, bottom - top);
+    }
+}
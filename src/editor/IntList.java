@@ -0,0 +1,168 @@
+package editor;
+
+import java.util.Arrays;
+
+/**
+ * Class IntList is a growable list of primitive ints. Used instead of ArrayList<Integer> to avoid boxing.
+ */
+class IntList {
+    private int[] values;
+    private int size;
+
+    IntList() {
+        this(8);
+    }
+
+    IntList(int capacity) {
+        values = new int[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int get(int i) {
+        return values[i];
+    }
+
+    void set(int i, int value) {
+        values[i] = value;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Drops values after given number of values.
+     * @param size new size, not bigger than the current one
+     */
+    void truncate(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Appends value at the end of the list.
+     * @param value value to add
+     */
+    void add(int value) {
+        ensureCapacity(size + 1);
+        values[size++] = value;
+    }
+
+    /**
+     * Appends all values of other list at the end of the list.
+     * @param other list of values to add
+     */
+    void addAll(IntList other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Inserts value keeping the list sorted ascending. List has to be sorted before.
+     * @param value value to insert
+     */
+    void addSorted(int value) {
+        if (size == 0 || values[size - 1] < value) {
+            add(value);
+            return;
+        }
+        int pos = Arrays.binarySearch(values, 0, size, value);
+        if (pos < 0) pos = -pos - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(values, pos, values, pos + 1, size - pos);
+        values[pos] = value;
+        size++;
+    }
+
+    /**
+     * Removes value at given position. Values after it are moved down.
+     * @param i position of value
+     * @return removed value
+     */
+    int removeAt(int i) {
+        int value = values[i];
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        size--;
+        return value;
+    }
+
+    /**
+     * Removes first occurrence of given value.
+     * @param value value to remove
+     * @return {@code true} if value was removed, {@code false} if list did not contain it.
+     */
+    boolean removeValue(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                System.arraycopy(values, i + 1, values, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts values smaller than given value. List has to be sorted ascending.
+     * @param value value to compare with
+     * @return number of smaller values
+     */
+    int countBelow(int value) {
+        int pos = Arrays.binarySearch(values, 0, size, value);
+        return pos < 0 ? -pos - 1 : pos;
+    }
+
+    /**
+     * Tells if list contains given value. List has to be sorted ascending.
+     * @param value value to find
+     * @return {@code true} if list contains the value
+     */
+    boolean contains(int value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    /**
+     * Tells if other list has the same values in the same order.
+     * @param other list to compare with
+     * @return {@code true} if both lists have the same values
+     */
+    boolean sameValues(IntList other) {
+        return Arrays.equals(values, 0, size, other.values, 0, other.size);
+    }
+
+    /**
+     * Returns new list with the same values.
+     * @return copy of the list
+     */
+    IntList copy() {
+        IntList copy = new IntList(Math.max(size, 1));
+        copy.addAll(this);
+        return copy;
+    }
+
+    /**
+     * Sorts values ascending and removes duplicates.
+     */
+    void sortUnique() {
+        if (size < 2) return;
+        Arrays.sort(values, 0, size);
+        int n = 1;
+        for (int i = 1; i < size; i++) {
+            if (values[i] != values[n - 1]) values[n++] = values[i];
+        }
+        size = n;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(capacity, values.length * 2));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package editor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class LatencyHistogram counts measured times in buckets, so percentiles can be read without keeping every value.
+ *
+ * Buckets are like in HdrHistogram: values below 32 have own buckets, every next power of two is split
+ * into 16 buckets of the same width. Error of percentile is below 1/16 of the value for any value,
+ * the whole histogram takes fixed 8 KB. Recording is one increment of array element, so it can be done for every frame.
+ * Values can be recorded and read by different threads, like Event Dispatch Thread and JMX.
+ * @see RenderStats
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int BUCKETS = (64 - SUB_BITS) << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value.
+     * @param value measured time in nanoseconds, negative values are recorded as 0
+     */
+    void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        if (value > max.get()) max.accumulateAndGet(value, Math::max);
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns value below which given percent of recorded values is. Returns the middle of bucket of that value.
+     * @param percentile percent of values, from 0 to 100
+     * @return value in nanoseconds, 0 if nothing was recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        if (rank >= n) return max.get();
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(middleOf(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Bucket of value: values below 32 are their own index, bigger values are shifted to 5 bits
+     * and the shift tells the power of two.
+     */
+    private static int indexOf(long value) {
+        if (value < 2 << SUB_BITS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    private static long middleOf(int index) {
+        if (index < 2 << SUB_BITS) return index;
+        int shift = (index >> SUB_BITS) - 1;
+        long lowest = (long) (index - (shift << SUB_BITS)) << shift;
+        return lowest + (1L << shift) / 2;
+    }
+}
@@ -0,0 +1,255 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Class LayerCache keeps figures below and above the selected figures drawn into images.
+ * When selected figures are moved or scaled only figures between the lowest and the topmost selected one are drawn again,
+ * the rest of figures are copied from images. For one active figure it is only that figure.
+ * Images are drawn again when any other figure changes, when selection changes, when size of panel changes
+ * or when the drawing is moved or zoomed.
+ *
+ * When many selected figures are dragged, figures between them could be the whole drawing. Then figures that are not
+ * selected are kept in one image and selected figures in the other one, which is only moved while they are dragged.
+ * Selected figures are shown on the top of the others until the drag ends, like figures are drawn without antialiasing
+ * during interaction, then they are drawn in their place in z-order again.
+ * @see DrawPanel
+ */
+class LayerCache implements FigureStoreListener {
+
+    private final FigureStore store;
+    private final FigureRenderer renderer;
+
+    /**
+     * Below contains figures under the index from, above contains figures from the index to.
+     * From and to are the range of figures drawn between images and view is the transform of viewport the images were drawn for.
+     * Valid tells if images show current figures, antialiased tells if they were drawn with antialiasing.
+     */
+    private BufferedImage below, above;
+    private int from = -1, to = -1;
+    private AffineTransform view;
+    private boolean valid = false;
+    private boolean antialiased;
+
+    /**
+     * Dragged contains selected figures while they are dragged, null otherwise. It is copy of the selection in draggedFigures,
+     * so images are drawn again when the selection changes. Then below contains figures that are not
+     * selected, above contains selected figures moved by distance draggedX, draggedY since the drag started.
+     * Above is bigger than the panel by margin on every side, so figures dragged into the panel are there.
+     * Visible and inside are lists of figures reused to draw images.
+     */
+    private IntList dragged;
+    private final IntList draggedFigures = new IntList();
+    private int draggedX, draggedY;
+    private int margin;
+    private final IntList visible = new IntList();
+    private final IntList inside = new IntList();
+
+    /**
+     * Clip of painted frame, reused so painting does not create rectangle.
+     */
+    private final Rectangle clip = new Rectangle();
+
+    LayerCache(FigureStore store, FigureRenderer renderer) {
+        this.store = store;
+        this.renderer = renderer;
+        store.addListener(this);
+    }
+
+    /**
+     * Draws all figures using cached images, figures of given range are drawn between them.
+     * @param g2d used to draw figures, in coordinates of the panel
+     * @param viewport viewport of the panel
+     * @param width width of the panel
+     * @param height height of the panel
+     * @param from index of the lowest selected figure
+     * @param to index after the topmost selected figure
+     */
+    void paint(Graphics2D g2d, Viewport viewport, int width, int height, int from, int to) {
+        AffineTransform view = viewport.getTransform();
+        if(!valid || dragged != null || from != this.from || to != this.to || !view.equals(this.view)
+                || below == null || below.getWidth() != width || below.getHeight() != height) {
+            rebuild(g2d.getDeviceConfiguration(), viewport, width, height, from, to);
+        }
+
+        clip.setBounds(0, 0, width, height);
+        g2d.drawImage(below, 0, 0, null);
+        renderer.draw(g2d, view, viewport.toVisibleWorld(g2d.getClipBounds(clip)), from, to);
+        g2d.drawImage(above, 0, 0, null);
+    }
+
+    /**
+     * Draws figures while selected figures are dragged: figures that are not selected are copied from one image,
+     * selected figures from the other one moved by the distance they were dragged since it was drawn.
+     * Images are drawn again only when selected figures were dragged further than the margin of image.
+     * @param g2d used to draw figures, in coordinates of the panel
+     * @param viewport viewport of the panel
+     * @param width width of the panel
+     * @param height height of the panel
+     * @param selection indices of selected figures sorted ascending
+     * @param movedX distance in horizontal axis the figures were dragged since the drag started
+     * @param movedY distance in vertical axis the figures were dragged since the drag started
+     */
+    void paintDragged(Graphics2D g2d, Viewport viewport, int width, int height, IntList selection, int movedX, int movedY) {
+        AffineTransform view = viewport.getTransform();
+        double offsetX = (movedX - draggedX) * view.getScaleX(), offsetY = (movedY - draggedY) * view.getScaleY();
+        if(!valid || dragged == null || !dragged.sameValues(selection) || !view.equals(this.view) || Math.abs(offsetX) > margin || Math.abs(offsetY) > margin
+                || below == null || below.getWidth() != width || below.getHeight() != height) {
+            rebuildDragged(g2d.getDeviceConfiguration(), viewport, width, height, selection, movedX, movedY);
+            offsetX = 0;
+            offsetY = 0;
+        }
+        g2d.drawImage(below, 0, 0, null);
+        g2d.drawImage(above, (int) Math.round(offsetX) - margin, (int) Math.round(offsetY) - margin, null);
+    }
+
+    /**
+     * Draws figures that are not selected and selected figures into images.
+     * Visible figures are found by spatial index, then they are split by merging with sorted selection.
+     */
+    private void rebuildDragged(GraphicsConfiguration gc, Viewport viewport, int width, int height,
+                                IntList selection, int movedX, int movedY) {
+        if(below == null || below.getWidth() != width || below.getHeight() != height) {
+            below = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        margin = Math.max(width, height) / 2;
+        if(above == null || above.getWidth() != width + 2 * margin || above.getHeight() != height + 2 * margin) {
+            above = gc.createCompatibleImage(width + 2 * margin, height + 2 * margin, Transparency.TRANSLUCENT);
+        }
+        view = viewport.getTransform();
+
+        store.query(viewport.toVisibleWorld(new Rectangle(0, 0, width, height)), visible);
+        split(visible, selection, false);
+        drawLayer(below, inside, 0, 0);
+        int drawn = inside.size();
+
+        store.query(viewport.toVisibleWorld(new Rectangle(-margin, -margin, width + 2 * margin, height + 2 * margin)), visible);
+        split(visible, selection, true);
+        drawLayer(above, inside, margin, margin);
+        renderer.addCulled(store.size() - drawn - inside.size());
+        draggedFigures.clear();
+        draggedFigures.addAll(selection);
+        dragged = draggedFigures;
+        draggedX = movedX;
+        draggedY = movedY;
+        this.valid = true;
+        this.antialiased = renderer.isAntialiasing();
+    }
+
+    /**
+     * Puts figures of visible that are selected, or that are not selected, into inside. Both lists are sorted ascending.
+     */
+    private void split(IntList visible, IntList selection, boolean selected) {
+        inside.clear();
+        int k = 0;
+        for(int j = 0; j < visible.size(); j++) {
+            int i = visible.get(j);
+            while(k < selection.size() && selection.get(k) < i) k++;
+            boolean isSelected = k < selection.size() && selection.get(k) == i;
+            if(isSelected == selected) inside.add(i);
+        }
+    }
+
+    private void drawLayer(BufferedImage image, IntList figures, int x, int y) {
+        Graphics2D g2d = image.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2d.setComposite(AlphaComposite.SrcOver);
+        g2d.translate(x, y);
+        g2d.transform(view);
+        renderer.draw(g2d, figures, 0, figures.size());
+        g2d.dispose();
+    }
+
+    /**
+     * Draws figures below and above the range into images.
+     */
+    private void rebuild(GraphicsConfiguration gc, Viewport viewport, int width, int height, int from, int to) {
+        if(below == null || below.getWidth() != width || below.getHeight() != height) {
+            below = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        if(above == null || above.getWidth() != width || above.getHeight() != height) {
+            above = gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        }
+        view = viewport.getTransform();
+        Rectangle2D area = viewport.toVisibleWorld(new Rectangle(0, 0, width, height));
+        drawLayer(below, area, 0, from);
+        drawLayer(above, area, to, store.size());
+
+        this.from = from;
+        this.to = to;
+        this.dragged = null;
+        this.valid = true;
+        this.antialiased = renderer.isAntialiasing();
+    }
+
+    private void drawLayer(BufferedImage image, Rectangle2D area, int from, int to) {
+        Graphics2D g2d = image.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g2d.setComposite(AlphaComposite.SrcOver);
+        g2d.transform(view);
+        renderer.draw(g2d, area, from, to);
+        g2d.dispose();
+    }
+
+    /**
+     * Marks images as not valid, they are drawn again with the next paint.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Marks images as not valid if they were drawn without antialiasing, so they are drawn again in full quality.
+     */
+    void invalidateAliased() {
+        if(!antialiased) valid = false;
+    }
+
+    @Override
+    public void figuresAdded(int from, int to) {
+        invalidate();
+    }
+
+    @Override
+    public void figureRemoved(int index) {
+        invalidate();
+    }
+
+    @Override
+    public void figureMovedToTop(int index) {
+        invalidate();
+    }
+
+    /**
+     * Changes of figures in the range do not need new images, they are drawn between them.
+     * While selected figures are dragged, every change needs new images, only their moves are done by the image.
+     */
+    @Override
+    public void figureChanged(int index) {
+        if(dragged != null || index < from || index >= to) invalidate();
+    }
+
+    /**
+     * Dragged figures are moved by the image, so their moves do not need new images.
+     * Move of other figures, like of changed selection, is handled figure by figure.
+     */
+    @Override
+    public void figuresTranslated(IntList indices, int deltaX, int deltaY) {
+        if(dragged == null || !indices.sameValues(dragged)) FigureStoreListener.super.figuresTranslated(indices, deltaX, deltaY);
+    }
+
+    @Override
+    public void colorReplaced(int oldRgb, int newRgb) {
+        invalidate();
+    }
+
+    @Override
+    public void figuresCleared() {
+        invalidate();
+    }
+}
@@ -0,0 +1,131 @@
+package editor;
+
+import javax.swing.*;
+
+/**
+ * Class LayerListModel provides the list of layers (names of figures) for the list in EditPanel.
+ * Names are not kept in the model, they are taken from FigureStore when the list needs to show the row.
+ * Model listens to changes of figures and notifies the list only about changed rows.
+ * Figures removed or inserted at once are reported by one event for every run of neighbouring rows,
+ * batch with more than MAX_RUNS runs is reported as change of the size and of all rows above its lowest figure.
+ * @see FigureStore
+ * @see EditPanel
+ */
+class LayerListModel extends AbstractListModel<String> implements FigureStoreListener {
+
+    private static final int MAX_RUNS = 64;
+
+    private final FigureStore store;
+
+    /**
+     * Size is the number of rows that the list knows about. It is updated together with the events sent to the list.
+     */
+    private int size;
+
+    LayerListModel(FigureStore store) {
+        this.store = store;
+        this.size = store.size();
+        store.addListener(this);
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return store.getTypeName(index);
+    }
+
+    @Override
+    public void figuresAdded(int from, int to) {
+        size += to - from + 1;
+        fireIntervalAdded(this, from, to);
+    }
+
+    @Override
+    public void figureRemoved(int index) {
+        size--;
+        fireIntervalRemoved(this, index, index);
+    }
+
+    /**
+     * Runs are removed from the topmost one, so indices of lower runs are still valid when they are reported.
+     * Size is decreased by every run before it is reported, so the list always sees the size after the event.
+     */
+    @Override
+    public void figuresRemoved(IntList indices) {
+        if (indices.isEmpty()) return;
+        if (runs(indices) > MAX_RUNS) {
+            int old = size;
+            size -= indices.size();
+            fireIntervalRemoved(this, size, old - 1);
+            if (indices.get(0) < size) fireContentsChanged(this, indices.get(0), size - 1);
+            return;
+        }
+        for (int end = indices.size() - 1; end >= 0; ) {
+            int start = runStart(indices, end);
+            size -= end - start + 1;
+            fireIntervalRemoved(this, indices.get(start), indices.get(end));
+            end = start - 1;
+        }
+    }
+
+    /**
+     * Runs are inserted from the lowest one, so every run is reported with its final indices.
+     * Size is increased by every run before it is reported, like by removed runs.
+     */
+    @Override
+    public void figuresInserted(IntList indices) {
+        if (indices.isEmpty()) return;
+        if (runs(indices) > MAX_RUNS) {
+            int old = size;
+            size += indices.size();
+            fireIntervalAdded(this, old, size - 1);
+            if (indices.get(0) < old) fireContentsChanged(this, indices.get(0), old - 1);
+            return;
+        }
+        for (int start = 0; start < indices.size(); ) {
+            int end = start;
+            while (end + 1 < indices.size() && indices.get(end + 1) == indices.get(end) + 1) end++;
+            size += end - start + 1;
+            fireIntervalAdded(this, indices.get(start), indices.get(end));
+            start = end + 1;
+        }
+    }
+
+    @Override
+    public void figureMovedToTop(int index) {
+        fireContentsChanged(this, index, size - 1);
+    }
+
+    @Override
+    public void figuresCleared() {
+        if (size > 0) {
+            int removed = size;
+            size = 0;
+            fireIntervalRemoved(this, 0, removed - 1);
+        }
+    }
+
+    /**
+     * Counts runs of neighbouring indices in sorted list.
+     */
+    private static int runs(IntList indices) {
+        int runs = 1;
+        for (int k = 1; k < indices.size(); k++) {
+            if (indices.get(k) != indices.get(k - 1) + 1) runs++;
+        }
+        return runs;
+    }
+
+    /**
+     * Returns position of the first index of the run that ends at given position.
+     */
+    private static int runStart(IntList indices, int end) {
+        int start = end;
+        while (start > 0 && indices.get(start - 1) == indices.get(start) - 1) start--;
+        return start;
+    }
+}
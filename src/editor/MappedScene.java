@@ -0,0 +1,446 @@
+package editor;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class MappedScene gives access to figures of binary scene file without reading the whole file.
+ * File is mapped into memory and figures are read from it when they are needed,
+ * for example when figure is visible on the panel.
+ *
+ * File of version 2 has index after the records: palette of colors, table with offset and color of every record and
+ * grid of cells with ids of records in them. Opening reads the trailer, checks that sizes of the index fit into the file
+ * and that offsets, colors and ids of the index point to records and colors. It reads only the index, not the records,
+ * and allocates nothing for them. FigureStore.fromMapped then keeps figures in the file and finds visible ones by the grid.
+ *
+ * File of version 1, or file without valid index, has no index. Then open goes through the header of every record
+ * to find its offset and FigureStore.fromMapped reads type, color and bounds of every figure into memory.
+ * Only vertices of polygons, most of the file, are skipped.
+ *
+ * All records and index are read without changing position of the buffer, so they can be read from many threads.
+ * @see BinarySceneFormat
+ * @see FigureStore#fromMapped(MappedScene, Progress)
+ */
+class MappedScene {
+
+    /**
+     * Buffer is the mapped file and count is the number of its records.
+     * Offsets contains position of every record of file without index, null when offsets are read from the table.
+     */
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int[] offsets;
+
+    /**
+     * Positions of parts of index in the file: palette, table, keys of cells, starts of cells, ids of records in cells
+     * and large records. colorCount, cellSize, cellCount and largeCount are read from the index.
+     */
+    private int palette, table, keys, starts, ids, large;
+    private int colorCount, cellSize, cellCount, largeCount;
+
+    private MappedScene(MappedByteBuffer buffer, int count, int[] offsets) {
+        this.buffer = buffer;
+        this.count = count;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Maps given binary scene file and reads its index, file without index is opened by going through its records.
+     * @param file binary scene file
+     * @return mapped scene
+     * @throws IOException if file can not be read, is too big to map or it is not correct binary scene
+     */
+    static MappedScene open(File file) throws IOException {
+        return open(file, Progress.NONE);
+    }
+
+    /**
+     * Maps given binary scene file and reads its index. File without index is opened by going through headers of
+     * all records to find their offsets, vertices of polygons are skipped. Reports number of found records.
+     * @param file binary scene file
+     * @param progress progress of opening, it can cancel opening
+     * @return mapped scene
+     * @throws IOException if file can not be read, is too big to map or it is not correct binary scene
+     */
+    static MappedScene open(File file, Progress progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("File is too big to be mapped");
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int count = BinarySceneFormat.readHeader(buffer, channel.size());
+
+            if (buffer.get(BinarySceneFormat.MAGIC.length) == BinarySceneFormat.VERSION) {
+                MappedScene scene = new MappedScene(buffer, count, null);
+                if (scene.readIndex()) return scene;
+            }
+            return new MappedScene(buffer, count, readOffsets(buffer, count, progress));
+        }
+    }
+
+    /**
+     * Goes through headers of all records and collects their offsets.
+     * @param buffer mapped file positioned after the header
+     */
+    private static int[] readOffsets(MappedByteBuffer buffer, int count, Progress progress) throws IOException {
+        int[] offsets = new int[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                if (i % BinarySceneFormat.PROGRESS_STEP == 0) progress.update(i, count);
+                offsets[i] = buffer.position();
+                byte type = buffer.get();
+                buffer.position(buffer.position() + 3);
+
+                if (type == BinarySceneFormat.CIRCLE) {
+                    buffer.position(buffer.position() + 16);
+                }
+                else if (type == BinarySceneFormat.RECT) {
+                    for (int j = 0; j < 4; j++) BinarySceneFormat.getVarint(buffer);
+                }
+                else if (type == BinarySceneFormat.POLYGON) {
+                    int n = BinarySceneFormat.getVarint(buffer);
+                    BinarySceneFormat.checkVertexCount(i, n, buffer.remaining());
+                    buffer.position(buffer.position() + 16 + 8 * n);
+                }
+                else {
+                    throw new IOException("Unknown figure type " + type + " of figure " + i);
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Unexpected end of file");
+        }
+        return offsets;
+    }
+
+    /**
+     * Reads positions of parts of index from the trailer and sizes of the parts. Every part has to fit between the records
+     * and the trailer, and the parts have to end right at the trailer.
+     * @return {@code true} if the file has valid index, {@code false} otherwise.
+     */
+    private boolean readIndex() {
+        int trailer = buffer.capacity() - BinarySceneFormat.TRAILER_SIZE;
+        if (trailer < BinarySceneFormat.HEADER_SIZE) return false;
+        for (int k = 0; k < BinarySceneFormat.INDEX_MAGIC.length; k++) {
+            if (buffer.get(trailer + 8 + k) != BinarySceneFormat.INDEX_MAGIC[k]) return false;
+        }
+        long at = buffer.getLong(trailer);
+        if (at < BinarySceneFormat.HEADER_SIZE || at > trailer - 4) return false;
+
+        palette = (int) at;
+        colorCount = buffer.getInt(palette);
+        long grid = palette + 4 + 8L * colorCount + 8L * count;
+        if (colorCount < 0 || grid > trailer - 8) return false;
+        table = palette + 4 + 8 * colorCount;
+
+        cellSize = buffer.getInt((int) grid);
+        cellCount = buffer.getInt((int) grid + 4);
+        long end = grid + 8 + 12L * cellCount + 4;
+        if (cellSize <= 0 || cellCount < 0 || end > trailer) return false;
+        keys = (int) grid + 8;
+        starts = keys + 8 * cellCount;
+        int idCount = buffer.getInt(starts + 4 * cellCount);
+        end += 4L * idCount;
+        if (idCount < 0 || end > trailer - 4) return false;
+        ids = starts + 4 * (cellCount + 1);
+
+        largeCount = buffer.getInt((int) end);
+        large = (int) end + 4;
+        return largeCount >= 0 && end + 4 + 4L * largeCount == trailer && checkIndex(idCount);
+    }
+
+    /**
+     * Checks values of the index that records are read by: offset and color of every record have to point into
+     * the records and the palette, starts of cells have to grow up to the number of ids and every id has to be a record.
+     * Only the index is read, records stay untouched, so damaged index is found here and not when figure is drawn.
+     * @return {@code true} if all values are in their ranges, {@code false} otherwise.
+     */
+    private boolean checkIndex(int idCount) {
+        for (int i = 0; i < count; i++) {
+            int offset = buffer.getInt(table + 8 * i), color = buffer.getInt(table + 8 * i + 4);
+            if (offset < BinarySceneFormat.HEADER_SIZE || offset >= palette || color < 0 || color >= colorCount) return false;
+        }
+        if (buffer.getInt(starts) != 0) return false;
+        for (int c = 0; c < cellCount; c++) {
+            if (buffer.getInt(starts + 4 * c) > buffer.getInt(starts + 4 * c + 4)) return false;
+        }
+        for (int k = 0; k < idCount; k++) {
+            int id = buffer.getInt(ids + 4 * k);
+            if (id < 0 || id >= count) return false;
+        }
+        for (int k = 0; k < largeCount; k++) {
+            int id = buffer.getInt(large + 4 * k);
+            if (id < 0 || id >= count) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns number of figures in the scene.
+     * @return number of figures
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Tells if the file has index, so figures can be read from it only when they are needed.
+     * @return {@code true} if the file has index, {@code false} otherwise.
+     */
+    boolean isIndexed() {
+        return offsets == null;
+    }
+
+    private int offset(int i) {
+        return offsets != null ? offsets[i] : buffer.getInt(table + 8 * i);
+    }
+
+    /**
+     * Reads bounds of figure without decoding the whole figure.
+     * @param i index of figure
+     * @param out array for x, y, width and height of figure
+     */
+    void readBounds(int i, double[] out) {
+        for (int k = 0; k < 4; k++) out[k] = getBound(i, k);
+    }
+
+    /**
+     * Reads one value of bounds of figure, rectangles keep them as varints, other figures as float32.
+     * @param i index of figure
+     * @param k 0 for x, 1 for y, 2 for width and 3 for height
+     * @return value of bounds
+     */
+    double getBound(int i, int k) {
+        int position = offset(i);
+        byte type = buffer.get(position);
+        position += 4;
+        if (type == BinarySceneFormat.RECT) {
+            for (int j = 0; j < k; j++) position = skipVarint(position);
+            return getVarint(position);
+        }
+        if (type == BinarySceneFormat.POLYGON) position = skipVarint(position);
+        return buffer.getFloat(position + 4 * k);
+    }
+
+    /**
+     * Returns type of figure.
+     * @param i index of figure
+     * @return BinarySceneFormat.CIRCLE, RECT or POLYGON
+     */
+    byte getType(int i) {
+        return buffer.get(offset(i));
+    }
+
+    /**
+     * Returns number of vertices of polygon.
+     * @param i index of polygon
+     * @return number of vertices
+     */
+    int getVertexCount(int i) {
+        return getVarint(offset(i) + 4);
+    }
+
+    /**
+     * Reads vertices of polygon from the file.
+     * @param i index of polygon
+     * @param out array for x and y of every vertex, has to have place for 2 * getVertexCount(i) values
+     */
+    void readVertices(int i, float[] out) {
+        int n = getVertexCount(i);
+        int position = getVertexPosition(i);
+        for (int j = 0; j < 2 * n; j++) out[j] = buffer.getFloat(position + 4 * j);
+    }
+
+    /**
+     * Returns position of the first vertex of polygon in the file, single coordinates can be then read by getCoord.
+     * @param i index of polygon
+     * @return position of x of the first vertex
+     */
+    int getVertexPosition(int i) {
+        return skipVarint(offset(i) + 4) + 16;
+    }
+
+    /**
+     * Reads one coordinate of polygon from the file, x of vertex j is coordinate 2 * j and y is 2 * j + 1.
+     * @param position position of the first vertex returned by getVertexPosition
+     * @param k index of coordinate
+     * @return value of coordinate
+     */
+    float getCoord(int position, int k) {
+        return buffer.getFloat(position + 4 * k);
+    }
+
+    /**
+     * Decodes color of figure from the file.
+     * @param i index of figure
+     * @return RGB value of color
+     */
+    int getColor(int i) {
+        int position = offset(i);
+        return (buffer.get(position + 1) & 0xff) << 16 | (buffer.get(position + 2) & 0xff) << 8 | (buffer.get(position + 3) & 0xff);
+    }
+
+    /**
+     * Returns index of color of figure in palette of the index.
+     * @param i index of figure
+     * @return index of color, from 0 to getColorCount() - 1
+     */
+    int getColorIndex(int i) {
+        return buffer.getInt(table + 8 * i + 4);
+    }
+
+    /**
+     * Returns number of colors in palette of the index.
+     * @return number of colors
+     */
+    int getColorCount() {
+        return colorCount;
+    }
+
+    /**
+     * Returns color of given index in palette of the index.
+     * @param c index of color
+     * @return RGB value of color
+     */
+    int getPaletteRGB(int c) {
+        return buffer.getInt(palette + 4 + 8 * c);
+    }
+
+    /**
+     * Finds color in palette of the index, which is sorted by RGB.
+     * @param rgb RGB value of color, alpha is ignored
+     * @return index of color, -1 if no figure of the file has the color
+     */
+    int findColor(int rgb) {
+        rgb &= 0xffffff;
+        int low = 0, high = colorCount - 1;
+        while (low <= high) {
+            int m = (low + high) >>> 1;
+            int value = getPaletteRGB(m);
+            if (value < rgb) low = m + 1;
+            else if (value > rgb) high = m - 1;
+            else return m;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns number of figures of color of given index in palette of the index.
+     * @param c index of color
+     * @return number of figures
+     */
+    int getPaletteUses(int c) {
+        return buffer.getInt(palette + 8 + 8 * c);
+    }
+
+    /**
+     * Collects figures whose bounds intersect given area, by cells of the index.
+     * When the area covers more cells than there are figures, bounds of all figures are checked instead.
+     * @param area searched area
+     * @param out list for found indices of figures, unsorted, figure in many cells can be found more times
+     */
+    void query(Rectangle2D area, IntList out) {
+        out.clear();
+        int x0 = cell(area.getX()), y0 = cell(area.getY());
+        int x1 = cell(area.getMaxX()), y1 = cell(area.getMaxY());
+
+        if (((long) x1 - x0 + 1) * ((long) y1 - y0 + 1) > count) {
+            for (int i = 0; i < count; i++) {
+                if (intersects(i, area)) out.add(i);
+            }
+            return;
+        }
+        if ((long) x1 - x0 + 1 > cellCount) {
+            for (int c = 0; c < cellCount; c++) {
+                long key = buffer.getLong(keys + 8 * c);
+                int cx = (int) (key >> 32), cy = (int) key ^ 0x80000000;
+                if (cx >= x0 && cx <= x1 && cy >= y0 && cy <= y1) addCell(c, area, out);
+            }
+        } else {
+            for (int cx = x0; cx <= x1; cx++) {
+                long last = BinarySceneFormat.cellKey(cx, y1);
+                for (int c = findCell(BinarySceneFormat.cellKey(cx, y0)); c < cellCount && buffer.getLong(keys + 8 * c) <= last; c++) {
+                    addCell(c, area, out);
+                }
+            }
+        }
+        for (int j = 0; j < largeCount; j++) {
+            int i = buffer.getInt(large + 4 * j);
+            if (intersects(i, area)) out.add(i);
+        }
+    }
+
+    /**
+     * Collects figures from the cell of the index containing given point and large figures, figures that can contain the point.
+     * @param x first parameter of coordinates
+     * @param y second parameter of coordinates
+     * @param out list for found indices of figures, sorted ascending
+     */
+    void collect(double x, double y, IntList out) {
+        out.clear();
+        long key = BinarySceneFormat.cellKey(cell(x), cell(y));
+        int c = findCell(key);
+        if (c < cellCount && buffer.getLong(keys + 8 * c) == key) {
+            for (int j = buffer.getInt(starts + 4 * c); j < buffer.getInt(starts + 4 * c + 4); j++) out.add(buffer.getInt(ids + 4 * j));
+        }
+        for (int j = 0; j < largeCount; j++) out.add(buffer.getInt(large + 4 * j));
+        out.sortUnique();
+    }
+
+    private void addCell(int c, Rectangle2D area, IntList out) {
+        for (int j = buffer.getInt(starts + 4 * c); j < buffer.getInt(starts + 4 * c + 4); j++) {
+            int i = buffer.getInt(ids + 4 * j);
+            if (intersects(i, area)) out.add(i);
+        }
+    }
+
+    private boolean intersects(int i, Rectangle2D area) {
+        double x = getBound(i, 0), y = getBound(i, 1);
+        return x <= area.getMaxX() && y <= area.getMaxY() && x + getBound(i, 2) >= area.getX() && y + getBound(i, 3) >= area.getY();
+    }
+
+    /**
+     * Finds the first cell whose key is not smaller than given key, keys of cells are sorted ascending.
+     * @return index of cell, cellCount if all keys are smaller
+     */
+    private int findCell(long key) {
+        int low = 0, high = cellCount;
+        while (low < high) {
+            int c = (low + high) >>> 1;
+            if (buffer.getLong(keys + 8 * c) < key) low = c + 1;
+            else high = c;
+        }
+        return low;
+    }
+
+    private int cell(double coordinate) {
+        return BinarySceneFormat.cell(coordinate, cellSize);
+    }
+
+    /**
+     * Reads zigzag varint at given position. It has at most 5 bytes like varints read by BinarySceneFormat,
+     * so damaged record does not make it read past the record.
+     */
+    private int getVarint(int position) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte part = buffer.get(position++);
+            v |= (part & 0x7f) << shift;
+            if (part >= 0) break;
+        }
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Returns position after varint at given position, varint has at most 5 bytes.
+     */
+    private int skipVarint(int position) {
+        for (int k = 1; k < 5 && buffer.get(position) < 0; k++) position++;
+        return position + 1;
+    }
+}
@@ -0,0 +1,413 @@
+package editor;
+
+import javax.swing.*;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.geom.Rectangle2D;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Class provides MenuBar that allows to create new files, open, save and exit
+ */
+class MenuPanel extends JMenuBar {
+
+    /**
+     * Extension of files saved in binary format.
+     * @see BinarySceneFormat
+     */
+    private static final String BINARY_EXTENSION = "figb";
+
+    /**
+     * Binary files bigger than this size (in bytes) are opened as mapped scenes.
+     * @see MappedScene
+     */
+    private static final long MAPPED_FILE_SIZE = 16 << 20;
+
+    private DrawPanel drawPanel;
+    private FigureJournal journal;
+
+    /**
+     * Changes counts changes of figures, savedChanges is its value when figures were saved, opened or created by New File.
+     * Drawing is saved when they are equal. Snapshot of figures is saved, so changes made during saving
+     * are counted after savedChanges and the drawing stays not saved.
+     * @see ChangeCounter
+     */
+    private long changes, savedChanges;
+    private JFileChooser fc;
+    private int option;
+
+    MenuPanel() {
+        JMenu fileMenu = new JMenu("File");
+
+        JMenuItem newFile = new JMenuItem("New File");
+        JMenuItem openFile = new JMenuItem("Open File");
+        JMenuItem saveFile = new JMenuItem("Save File");
+        JMenuItem saveAsImage = new JMenuItem("Save as image");
+        JMenuItem exitProgram = new JMenuItem("Exit");
+
+        /**
+         * Prompt user to save file before doing any action if there are any drawn figures.
+         * Save if user agreed then proceed with selected action when saving is finished
+         * Proceed with action without saving if user didn't agree to save file
+         * Do nothing if user cancelled action
+         */
+
+        newFile.addActionListener(e -> {
+            if(drawPanel.getStore().size()>0) {
+                option = JOptionPane.showConfirmDialog(null,"Do you want to save changes?");
+
+                if (option == 0) {
+                    saveFile(this::newDrawing);
+                }
+                if (option == 1) {
+                    newDrawing();
+                }
+            }
+        });
+
+        saveFile.addActionListener(e -> saveFile(() -> {}));
+
+        saveAsImage.addActionListener(e -> saveAsImage());
+
+        openFile.addActionListener(e -> {
+            if(drawPanel.getStore().size()>0) {
+                option = JOptionPane.showConfirmDialog(null, "Do you want to save changes?");
+
+                if (option == 0) {
+                    saveFile(() -> {
+                        newDrawing();
+                        openFile();
+                    });
+                }
+                if (option == 1) {
+                    newDrawing();
+                    openFile();
+                }
+            }
+            else {
+                openFile();
+            }
+        });
+
+        exitProgram.addActionListener(e -> exitEditor());
+
+        /**
+         * Edit menu undoes and redoes changes of figures. Names of items show which change will be undone or redone.
+         * @see FigureHistory
+         */
+        JMenu editMenu = new JMenu("Edit");
+        JMenuItem undo = new JMenuItem("Undo");
+        JMenuItem redo = new JMenuItem("Redo");
+        int shortcut = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        undo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, shortcut));
+        redo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, shortcut));
+        undo.addActionListener(e -> drawPanel.undo());
+        redo.addActionListener(e -> drawPanel.redo());
+
+        editMenu.addMenuListener(new MenuListener() {
+            public void menuSelected(MenuEvent e) {
+                FigureHistory history = drawPanel.getHistory();
+                undo.setText(history.getUndoPresentationName());
+                undo.setEnabled(history.canUndo());
+                redo.setText(history.getRedoPresentationName());
+                redo.setEnabled(history.canRedo());
+            }
+
+            /**
+             * Items are enabled when menu is closed, so shortcuts work. Undo and redo check if there is any change.
+             */
+            public void menuDeselected(MenuEvent e) {
+                undo.setEnabled(true);
+                redo.setEnabled(true);
+            }
+
+            public void menuCanceled(MenuEvent e) {
+                menuDeselected(e);
+            }
+        });
+
+        /**
+         * View menu shows the drawing from the beginning without zoom, when user got lost in big drawing,
+         * and shows or hides performance overlay of drawPanel.
+         * The drawing is moved with middle mouse button or the wheel and zoomed with the wheel when control is pressed.
+         */
+        JMenu viewMenu = new JMenu("View");
+        JMenuItem resetView = new JMenuItem("Reset view");
+        resetView.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_0, shortcut));
+        resetView.addActionListener(e -> drawPanel.resetView());
+        JCheckBoxMenuItem overlay = new JCheckBoxMenuItem("Performance overlay");
+        overlay.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
+        overlay.addActionListener(e -> drawPanel.setOverlayVisible(overlay.isSelected()));
+
+        JMenu helpMenu = new JMenu("Help");
+        JMenuItem about = new JMenuItem("About...");
+
+        about.addActionListener(e -> JOptionPane.showMessageDialog(null, "Author: Jonasz Wiacek"));
+
+        /**
+         * Adds components to menu bar.
+         */
+
+        fileMenu.add(newFile);
+        fileMenu.add(openFile);
+        fileMenu.add(saveFile);
+        fileMenu.add(saveAsImage);
+        fileMenu.add(exitProgram);
+
+        editMenu.add(undo);
+        editMenu.add(redo);
+
+        viewMenu.add(resetView);
+        viewMenu.add(overlay);
+
+        helpMenu.add(about);
+
+        add(fileMenu);
+        add(editMenu);
+        add(viewMenu);
+        add(helpMenu);
+
+    }
+
+    /**
+     * Sets reference to drawPanel
+     * @param drawPanel reference to drawPanel
+     */
+    void setDrawPanel(DrawPanel drawPanel) {
+        this.drawPanel = drawPanel;
+        drawPanel.getStore().addListener(new ChangeCounter());
+    }
+
+    /**
+     * Sets journal of changes, it is deleted when user exits the editor with the drawing saved or dropped.
+     * @param journal journal of drawPanel figures
+     */
+    void setJournal(FigureJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Exits the editor, used by Exit and when the window is closed.
+     * When figures changed since they were saved, user is asked to save them first and the editor keeps running
+     * if user cancelled or saving failed. Empty drawing is never saved, there is nothing to recover.
+     */
+    void exitEditor() {
+        if(changes != savedChanges && drawPanel.getStore().size()>0) {
+            option = JOptionPane.showConfirmDialog(null, "Do you want to save changes?");
+
+            if (option == 0) {
+                saveFile(this::exit);
+            }
+            if (option == 1) {
+                exit();
+            }
+        }
+        else {
+            exit();
+        }
+    }
+
+    /**
+     * Clears figures for new drawing, which has nothing to save yet.
+     */
+    private void newDrawing() {
+        drawPanel.clearFigures();
+        savedChanges = changes;
+    }
+
+    /**
+     * Exits the editor. Journal is not needed any more, because user saved the drawing or did not want to save it.
+     * @see FigureJournal
+     */
+    private void exit() {
+        if (journal != null) journal.close();
+        System.exit(0);
+    }
+
+    /**
+     * Opens selected file
+     */
+    private void openFile() {
+        fc = new JFileChooser();
+        int returnVal = fc.showOpenDialog(null);
+
+        /**
+         * If user chose the file proceeds with reading figures from file in background.
+         * Read figures are kept in new store that is given to drawPanel by setFigures() when the whole file is read,
+         * so drawPanel never shows half of the file. Nothing changes if reading failed or was cancelled.
+         * @see BackgroundTask
+         */
+        if (returnVal == JFileChooser.APPROVE_OPTION) {
+            File file = fc.getSelectedFile();
+
+            new BackgroundTask<FigureStore>(drawPanel, "Opening " + file.getName()) {
+                protected FigureStore doInBackground() throws IOException {
+                    phase("read");
+
+                    /**
+                     * Files in binary format are read by BinarySceneFormat.
+                     * Big binary files are mapped into memory. Figures of files with index are read only when they are
+                     * drawn or changed, of older files only vertices of polygons.
+                     * @see BinarySceneFormat
+                     * @see MappedScene
+                     */
+                    if (BinarySceneFormat.isBinary(file)) {
+                        if (file.length() > MAPPED_FILE_SIZE) {
+                            MappedScene scene = MappedScene.open(file, this);
+                            phase("index");
+                            return FigureStore.fromMapped(scene, this);
+                        }
+                        return BinarySceneFormat.read(file, this);
+                    }
+                    return TextSceneFormat.read(file, this);
+                }
+
+                protected void finished(FigureStore result) {
+                    if (journal != null && result.size() > 0) journal.opened(file);
+                    drawPanel.setFigures(result);
+                    savedChanges = changes;
+                }
+            }.execute();
+        }
+    }
+
+    /**
+     * Saves figures into selected file.
+     * @param afterSave action run when figures were saved, it is not run when saving failed or was cancelled
+     */
+    private void saveFile(Runnable afterSave) {
+        fc = new JFileChooser();
+        FileNameExtensionFilter binaryFilter = new FileNameExtensionFilter("Binary scene (*." + BINARY_EXTENSION + ")", BINARY_EXTENSION);
+        FileNameExtensionFilter compressedFilter = new FileNameExtensionFilter("Compressed text scene (*." + TextSceneFormat.GZIP_EXTENSION + ")", TextSceneFormat.GZIP_EXTENSION);
+        fc.addChoosableFileFilter(binaryFilter);
+        fc.addChoosableFileFilter(compressedFilter);
+        int returnVal = fc.showSaveDialog(null);
+
+        /**
+         * If user selects the file to save figures in proceed with saving figures into file in background.
+         * Snapshot of figures is saved, so user can keep drawing while figures are saved.
+         *
+         * Files with binary scene extension (or saved with binary filter selected) are saved in binary format,
+         * the others in text format, compressed when their name ends with .gz.
+         * @see BinarySceneFormat
+         * @see TextSceneFormat
+         *
+         * Figures are saved into temporary file that replaces the selected file at the end,
+         * because the selected file can be the mapped scene that figures are still read from.
+         * Temporary file is deleted if saving failed or was cancelled.
+         * Journal that refers to the selected file takes snapshot of figures before it is replaced.
+         * @see MappedScene
+         * @see FigureJournal
+         */
+
+        if (returnVal == JFileChooser.APPROVE_OPTION) {
+            FigureStore figures = drawPanel.getStore().snapshot();
+            long saving = changes;
+
+            File selected = fc.getSelectedFile();
+            if (fc.getFileFilter() == binaryFilter && !binaryFilter.accept(selected)) {
+                selected = new File(selected.getPath() + "." + BINARY_EXTENSION);
+            }
+            if (fc.getFileFilter() == compressedFilter && !compressedFilter.accept(selected)) {
+                selected = new File(selected.getPath() + "." + TextSceneFormat.GZIP_EXTENSION);
+            }
+            File file = selected;
+            boolean binary = binaryFilter.accept(file);
+            if (journal != null) journal.replacing(file);
+
+            new BackgroundTask<Void>(drawPanel, "Saving " + file.getName()) {
+                protected Void doInBackground() throws IOException {
+                    phase("write");
+                    File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+                    try {
+                        if (binary) BinarySceneFormat.write(tmp, figures, this);
+                        else TextSceneFormat.write(tmp, figures, TextSceneFormat.isCompressed(file), this);
+                        phase("replace");
+                        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    } finally {
+                        Files.deleteIfExists(tmp.toPath());
+                    }
+                    return null;
+                }
+
+                protected void finished(Void result) {
+                    savedChanges = saving;
+                    afterSave.run();
+                }
+            }.execute();
+        }
+    }
+
+    private void saveAsImage() {
+
+        fc = new JFileChooser();
+        int returnVal = fc.showSaveDialog(null);
+
+        if (returnVal == JFileChooser.APPROVE_OPTION) {
+
+            /**
+             * Image shows the part of the drawing visible in drawPanel.
+             * Image is drawn in resolution chosen by user, resolution of the screen gives image of the size of drawPanel.
+             * Figures are drawn from snapshot in background by ImageExporter, so user can keep drawing during the export.
+             * Image replaces the selected file only when it is complete, existing file is kept if the export failed or was cancelled.
+             * @see ImageExporter
+             */
+            int screenDpi = Toolkit.getDefaultToolkit().getScreenResolution();
+            String answer = JOptionPane.showInputDialog(null, "Resolution of image (DPI):", screenDpi);
+            if (answer == null) return;
+            int dpi;
+            try {
+                dpi = Integer.parseInt(answer.trim());
+            } catch (NumberFormatException ex) {
+                dpi = 0;
+            }
+            if (dpi <= 0) {
+                JOptionPane.showMessageDialog(null, "Resolution has to be a positive number");
+                return;
+            }
+
+            File fileName = fc.getSelectedFile();
+            if (!fileName.getName().toLowerCase().endsWith(".png")) fileName = new File(fileName + ".png");
+            Viewport viewport = drawPanel.getViewport();
+            Rectangle2D area = viewport.toWorld(new Rectangle(0, 0, drawPanel.getWidth(), drawPanel.getHeight()));
+            double scale = viewport.getZoom() * dpi / screenDpi;
+            ImageExporter exporter = new ImageExporter(drawPanel.getStore().indexedSnapshot(), area, scale);
+            File file = fileName;
+            int imageDpi = dpi;
+
+            new BackgroundTask<Void>(drawPanel, "Saving image " + file.getName()) {
+                protected Void doInBackground() throws IOException {
+                    phase("export");
+                    exporter.export(file, imageDpi, this);
+                    return null;
+                }
+
+                protected void finished(Void result) {
+                }
+            }.execute();
+        }
+    }
+
+    /**
+     * Counts every change of figures, so it is known if the drawing was saved.
+     * Changes of many figures at once are counted once, so figures are not iterated.
+     */
+    private class ChangeCounter implements FigureStoreListener {
+        public void figuresAdded(int from, int to) { changes++; }
+        public void figuresInserted(IntList indices) { changes++; }
+        public void figureRemoved(int index) { changes++; }
+        public void figuresRemoved(IntList indices) { changes++; }
+        public void figureMovedToTop(int index) { changes++; }
+        public void figureChanged(int index) { changes++; }
+        public void figuresTranslated(IntList indices, int deltaX, int deltaY) { changes++; }
+        public void figuresScaled(IntList indices, double scaleRate) { changes++; }
+        public void figuresColored(IntList indices, int rgb) { changes++; }
+        public void colorReplaced(int oldRgb, int newRgb) { changes++; }
+        public void figuresCleared() { changes++; }
+    }
+}
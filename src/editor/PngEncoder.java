@@ -0,0 +1,150 @@
+package editor;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Class PngEncoder writes PNG image row by row, so the whole image never has to be kept in memory.
+ * Image is written as 8 bit RGBA, every row is filtered with Sub filter, which makes flat areas of drawing compress well.
+ * Compressed data is written in IDAT chunks of CHUNK_SIZE bytes as soon as deflater gives it.
+ * @see ImageExporter
+ */
+class PngEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final double INCHES_PER_METER = 1 / 0.0254;
+
+    private final DataOutputStream out;
+    private final int width, height;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Row contains filtered bytes of one row, the first byte is the type of filter.
+     * Chunk contains compressed bytes that are not written yet.
+     * rowsWritten is the number of rows given to encoder.
+     */
+    private final byte[] row;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkUsed;
+    private int rowsWritten;
+
+    /**
+     * Creates encoder and writes the header of image.
+     * @param out stream to write image into
+     * @param width width of image in pixels
+     * @param height height of image in pixels
+     * @param dpi resolution saved in image, in dots per inch
+     * @throws IOException if header can not be written
+     */
+    PngEncoder(OutputStream out, int width, int height, int dpi) throws IOException {
+        if (width <= 0 || height <= 0 || (long) width * 4 + 1 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Wrong size of image " + width + "x" + height);
+        }
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.row = new byte[1 + 4 * width];
+
+        this.out.write(SIGNATURE);
+
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 6;
+        writeChunk("IHDR", header, header.length);
+
+        int pixelsPerMeter = (int) Math.round(dpi * INCHES_PER_METER);
+        byte[] physical = new byte[9];
+        putInt(physical, 0, pixelsPerMeter);
+        putInt(physical, 4, pixelsPerMeter);
+        physical[8] = 1;
+        writeChunk("pHYs", physical, physical.length);
+    }
+
+    /**
+     * Writes rows of image given as ARGB pixels, for example data of BufferedImage of TYPE_INT_ARGB.
+     * @param argb pixels of rows
+     * @param offset position of the first pixel of the first row
+     * @param scanline distance between the first pixels of following rows
+     * @param rows number of rows to write
+     * @throws IOException if rows can not be written
+     */
+    void writeRows(int[] argb, int offset, int scanline, int rows) throws IOException {
+        if (rowsWritten + rows > height) throw new IllegalStateException("Image has only " + height + " rows");
+
+        for (int r = 0; r < rows; r++) {
+            int p = offset + r * scanline;
+            row[0] = 1;
+            int previous = 0;
+            for (int x = 0, j = 1; x < width; x++, j += 4) {
+                int pixel = argb[p + x];
+                row[j] = (byte) ((pixel >> 16) - (previous >> 16));
+                row[j + 1] = (byte) ((pixel >> 8) - (previous >> 8));
+                row[j + 2] = (byte) (pixel - previous);
+                row[j + 3] = (byte) ((pixel >>> 24) - (previous >>> 24));
+                previous = pixel;
+            }
+            deflater.setInput(row);
+            while (!deflater.needsInput()) deflate();
+        }
+        rowsWritten += rows;
+    }
+
+    /**
+     * Writes the rest of compressed data and the end of image. Stream is not closed.
+     * @throws IOException if image can not be written or not all rows were given
+     */
+    void finish() throws IOException {
+        if (rowsWritten != height) throw new IOException("Only " + rowsWritten + " of " + height + " rows were written");
+        deflater.finish();
+        while (!deflater.finished()) deflate();
+        if (chunkUsed > 0) writeChunk("IDAT", chunk, chunkUsed);
+        writeChunk("IEND", chunk, 0);
+        end();
+        out.flush();
+    }
+
+    /**
+     * Releases native memory of deflater. It is done by finish, but image that was not finished because export failed
+     * or was cancelled has to be ended too. Encoder can not be used after it, ending it again does nothing.
+     */
+    void end() {
+        deflater.end();
+    }
+
+    /**
+     * Compresses part of input into chunk, full chunk is written into stream.
+     */
+    private void deflate() throws IOException {
+        chunkUsed += deflater.deflate(chunk, chunkUsed, chunk.length - chunkUsed);
+        if (chunkUsed == chunk.length) {
+            writeChunk("IDAT", chunk, chunkUsed);
+            chunkUsed = 0;
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] name = {(byte) type.charAt(0), (byte) type.charAt(1), (byte) type.charAt(2), (byte) type.charAt(3)};
+        crc.reset();
+        crc.update(name);
+        crc.update(data, 0, length);
+
+        out.writeInt(length);
+        out.write(name);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] b, int offset, int value) {
+        b[offset] = (byte) (value >> 24);
+        b[offset + 1] = (byte) (value >> 16);
+        b[offset + 2] = (byte) (value >> 8);
+        b[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,143 @@
+package editor;
+
+import java.util.Arrays;
+
+/**
+ * Class PolygonEdges is table of edges of big polygon sorted into horizontal bands of its bounds.
+ * Winding number of point is counted only from edges of the band the point is in, so hit test of polygon
+ * with n vertices takes time proportional to the number of edges crossing one band, not to n.
+ *
+ * Bands are kept relative to bounds of polygon: band of y is (y - minY) / height * bands. Moving polygon
+ * or scaling it around its center moves its bounds in the same way, so the table stays valid and FigureStore
+ * does not build it again in every frame of drag. Edge is put also into bands next to its own,
+ * so rounding of vertices after moves and scales can not move it out of its bands. After MAX_TRANSFORMS
+ * moves and scales the table is built again, so rounding errors can not add up.
+ *
+ * Edges are kept like sparse matrix: edges of band b are at edges[bandStart[b]] to edges[bandStart[b + 1] - 1],
+ * every edge is given by the index of its first vertex.
+ * @see FigureStore#isHit(int, double, double)
+ * @see PolygonShape#windingNumber(float[], int, int, double, double)
+ */
+class PolygonEdges {
+
+    /**
+     * Polygons with less vertices are tested edge by edge, table would not make them faster.
+     */
+    static final int MIN_VERTICES = 64;
+
+    /**
+     * Polygon gets one band for every VERTICES_PER_BAND vertices. When long edges would put more than
+     * MAX_ENTRIES entries per edge into the table, number of bands is halved, so the table stays small.
+     */
+    private static final int VERTICES_PER_BAND = 4;
+    private static final int MAX_ENTRIES = 8;
+    private static final int MAX_TRANSFORMS = 4096;
+
+    private final int bands;
+    private final int[] bandStart;
+    private final int[] edges;
+    private int transforms;
+
+    /**
+     * Builds table of edges of polygon.
+     * @param c array with vertices
+     * @param start position of the first vertex in array
+     * @param n number of vertices
+     * @param minY top of bounds of polygon
+     * @param height height of bounds of polygon
+     */
+    PolygonEdges(float[] c, int start, int n, double minY, double height) {
+        int bands = Math.max(1, n / VERTICES_PER_BAND);
+        int[] bandStart = new int[bands + 1];
+        while (true) {
+            Arrays.fill(bandStart, 0, bands + 1, 0);
+            long entries = 0;
+            for (int j = 0; j < n; j++) {
+                int from = firstBand(c, start, n, j, minY, height, bands), to = lastBand(c, start, n, j, minY, height, bands);
+                for (int b = from; b <= to; b++) bandStart[b + 1]++;
+                entries += to - from + 1;
+            }
+            if (entries <= (long) MAX_ENTRIES * n || bands == 1) break;
+            bands /= 2;
+        }
+        for (int b = 0; b < bands; b++) bandStart[b + 1] += bandStart[b];
+
+        int[] edges = new int[bandStart[bands]];
+        int[] next = Arrays.copyOf(bandStart, bands);
+        for (int j = 0; j < n; j++) {
+            int from = firstBand(c, start, n, j, minY, height, bands), to = lastBand(c, start, n, j, minY, height, bands);
+            for (int b = from; b <= to; b++) edges[next[b]++] = j;
+        }
+
+        this.bands = bands;
+        this.bandStart = bandStart;
+        this.edges = edges;
+    }
+
+    /**
+     * Counts how many times polygon winds around given point, like PolygonShape.windingNumber,
+     * from the edges of the band of the point. Bounds have to be the same as bounds of polygon.
+     * @param c array with vertices
+     * @param start position of the first vertex in array
+     * @param n number of vertices
+     * @param minY top of bounds of polygon
+     * @param height height of bounds of polygon
+     * @return winding number, 0 if point is outside of polygon.
+     */
+    int windingNumber(float[] c, int start, int n, double x, double y, double minY, double height) {
+        int b = band(y, minY, height, bands);
+        int winding = 0;
+        for (int k = bandStart[b]; k < bandStart[b + 1]; k++) {
+            int j = edges[k];
+            winding += PolygonShape.edgeWinding(c, start + 2 * j, start + 2 * ((j + 1) % n), x, y);
+        }
+        return winding;
+    }
+
+    /**
+     * Counts winding number like the method above for polygon that is still in mapped file.
+     * Only vertices of edges of the band are read from the file, so polygon does not have to be read whole.
+     * @param scene mapped scene file
+     * @param position position of the first vertex in file
+     * @param edge array with place for 4 values, vertices of every edge are read into it
+     * @return winding number, 0 if point is outside of polygon.
+     * @see MappedScene#getVertexPosition(int)
+     */
+    int windingNumber(MappedScene scene, int position, int n, double x, double y, double minY, double height, float[] edge) {
+        int b = band(y, minY, height, bands);
+        int winding = 0;
+        for (int k = bandStart[b]; k < bandStart[b + 1]; k++) {
+            int j = edges[k], next = (j + 1) % n;
+            edge[0] = scene.getCoord(position, 2 * j);
+            edge[1] = scene.getCoord(position, 2 * j + 1);
+            edge[2] = scene.getCoord(position, 2 * next);
+            edge[3] = scene.getCoord(position, 2 * next + 1);
+            winding += PolygonShape.edgeWinding(edge, 0, 2, x, y);
+        }
+        return winding;
+    }
+
+    /**
+     * Counts one move or scale of polygon. Table moved with the bounds of polygon, it does not need any change.
+     * @return {@code false} if the table was moved too many times and should be built again
+     */
+    boolean transformed() {
+        return ++transforms < MAX_TRANSFORMS;
+    }
+
+    private static int firstBand(float[] c, int start, int n, int j, double minY, double height, int bands) {
+        double y = Math.min(c[start + 2 * j + 1], c[start + 2 * ((j + 1) % n) + 1]);
+        return Math.max(0, band(y, minY, height, bands) - 1);
+    }
+
+    private static int lastBand(float[] c, int start, int n, int j, double minY, double height, int bands) {
+        double y = Math.max(c[start + 2 * j + 1], c[start + 2 * ((j + 1) % n) + 1]);
+        return Math.min(bands - 1, band(y, minY, height, bands) + 1);
+    }
+
+    private static int band(double y, double minY, double height, int bands) {
+        if (!(height > 0)) return 0;
+        double b = Math.floor((y - minY) / height * bands);
+        return b < 0 ? 0 : b >= bands ? bands - 1 : (int) b;
+    }
+}
@@ -0,0 +1,215 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Class PolygonShape is closed polygon kept in packed array of x and y of vertices.
+ * It is used like GeneralPath, but vertices are not copied into segments and no object is created per vertex,
+ * so polygons with hundreds of thousands of vertices are cheap to draw and to test.
+ *
+ * Polygon can be set to other vertices, so one object can be reused, for example by FigureRenderer.
+ * Array of vertices is not copied, it should not be changed while polygon uses it.
+ * @see FigureStore
+ * @see FigureRenderer
+ */
+class PolygonShape implements Shape {
+
+    private float[] xy;
+    private int n;
+
+    /**
+     * Bounds are counted when they are needed for the first time after vertices were set.
+     */
+    private final Rectangle2D.Float bounds = new Rectangle2D.Float();
+    private boolean boundsValid;
+
+    PolygonShape() {
+        this(new float[0], 0);
+    }
+
+    /**
+     * Creates polygon of given vertices.
+     * @param xy x and y of every vertex
+     * @param n number of vertices
+     */
+    PolygonShape(float[] xy, int n) {
+        set(xy, n);
+    }
+
+    /**
+     * Sets polygon to given vertices.
+     * @param xy x and y of every vertex
+     * @param n number of vertices
+     */
+    void set(float[] xy, int n) {
+        if (2 * n > xy.length) throw new IllegalArgumentException("Array has less than " + n + " vertices");
+        this.xy = xy;
+        this.n = n;
+        this.boundsValid = false;
+    }
+
+    int getVertexCount() {
+        return n;
+    }
+
+    /**
+     * Returns array of vertices, x and y of vertex j are at 2 * j and 2 * j + 1.
+     * @return array used by polygon, not a copy
+     */
+    float[] getVertices() {
+        return xy;
+    }
+
+    /**
+     * Counts how many times closed polygon winds around given point.
+     * @param c array with vertices
+     * @param start position of the first vertex in array
+     * @param n number of vertices
+     * @return winding number, 0 if point is outside of polygon.
+     */
+    static int windingNumber(float[] c, int start, int n, double x, double y) {
+        int winding = 0;
+        for (int j = 0; j < n; j++) {
+            winding += edgeWinding(c, start + 2 * j, start + 2 * ((j + 1) % n), x, y);
+        }
+        return winding;
+    }
+
+    /**
+     * Counts how edge winds around given point: 1 if it goes up across the horizontal line of the point
+     * on the left of the point, -1 if it goes down on the right, 0 otherwise.
+     * @param c array with vertices
+     * @param a position of the first vertex of edge
+     * @param b position of the second vertex of edge
+     * @return contribution of edge to winding number
+     */
+    static int edgeWinding(float[] c, int a, int b, double x, double y) {
+        double x0 = c[a], y0 = c[a + 1], x1 = c[b], y1 = c[b + 1];
+        if (y0 <= y) {
+            if (y1 > y && (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0) > 0) return 1;
+        } else {
+            if (y1 <= y && (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0) < 0) return -1;
+        }
+        return 0;
+    }
+
+    @Override
+    public Rectangle getBounds() {
+        return getBounds2D().getBounds();
+    }
+
+    @Override
+    public Rectangle2D getBounds2D() {
+        if (!boundsValid) {
+            if (n == 0) {
+                bounds.setRect(0, 0, 0, 0);
+            } else {
+                float minX = xy[0], minY = xy[1], maxX = minX, maxY = minY;
+                for (int j = 1; j < n; j++) {
+                    float x = xy[2 * j], y = xy[2 * j + 1];
+                    if (x < minX) minX = x;
+                    if (x > maxX) maxX = x;
+                    if (y < minY) minY = y;
+                    if (y > maxY) maxY = y;
+                }
+                bounds.setRect(minX, minY, maxX - minX, maxY - minY);
+            }
+            boundsValid = true;
+        }
+        return (Rectangle2D) bounds.clone();
+    }
+
+    /**
+     * Point is inside when polygon winds around it, like in GeneralPath with WIND_NON_ZERO rule.
+     */
+    @Override
+    public boolean contains(double x, double y) {
+        if (n < 3) return false;
+        if (!boundsValid) getBounds2D();
+        if (x < bounds.x || y < bounds.y || x > bounds.x + bounds.width || y > bounds.y + bounds.height) return false;
+        return windingNumber(xy, 0, n, x, y) != 0;
+    }
+
+    @Override
+    public boolean contains(Point2D p) {
+        return contains(p.getX(), p.getY());
+    }
+
+    @Override
+    public boolean intersects(double x, double y, double w, double h) {
+        return n >= 3 && Path2D.intersects(getPathIterator(null), x, y, w, h);
+    }
+
+    @Override
+    public boolean intersects(Rectangle2D r) {
+        return intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    @Override
+    public boolean contains(double x, double y, double w, double h) {
+        return n >= 3 && Path2D.contains(getPathIterator(null), x, y, w, h);
+    }
+
+    @Override
+    public boolean contains(Rectangle2D r) {
+        return contains(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    @Override
+    public PathIterator getPathIterator(AffineTransform at) {
+        return new Iterator(at);
+    }
+
+    /**
+     * Polygon has only straight lines, so flattened path is the same.
+     */
+    @Override
+    public PathIterator getPathIterator(AffineTransform at, double flatness) {
+        return new Iterator(at);
+    }
+
+    /**
+     * Iterates over vertices without copying them: move to the first vertex, lines to the others and close.
+     */
+    private class Iterator implements PathIterator {
+        private final AffineTransform at;
+        private int j;
+
+        Iterator(AffineTransform at) {
+            this.at = at;
+        }
+
+        public int getWindingRule() {
+            return WIND_NON_ZERO;
+        }
+
+        public boolean isDone() {
+            return n == 0 || j > n;
+        }
+
+        public void next() {
+            j++;
+        }
+
+        public int currentSegment(float[] coords) {
+            if (j == n) return SEG_CLOSE;
+            coords[0] = xy[2 * j];
+            coords[1] = xy[2 * j + 1];
+            if (at != null) at.transform(coords, 0, coords, 0, 1);
+            return j == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+
+        public int currentSegment(double[] coords) {
+            if (j == n) return SEG_CLOSE;
+            coords[0] = xy[2 * j];
+            coords[1] = xy[2 * j + 1];
+            if (at != null) at.transform(coords, 0, coords, 0, 1);
+            return j == 0 ? SEG_MOVETO : SEG_LINETO;
+        }
+    }
+}
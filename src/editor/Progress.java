@@ -0,0 +1,22 @@
+package editor;
+
+/**
+ * Progress receives progress of long operations, like reading or saving big file.
+ * Operation is cancelled when update throws CancellationException.
+ * @see BackgroundTask
+ */
+interface Progress {
+
+    /**
+     * Progress that ignores all updates, used when nobody watches the operation.
+     */
+    Progress NONE = (done, total) -> {};
+
+    /**
+     * Invoked from time to time by the operation.
+     * @param done amount of work already done, for example read bytes or written figures
+     * @param total amount of the whole work
+     * @throws java.util.concurrent.CancellationException if operation has to be stopped
+     */
+    void update(long done, long total);
+}
@@ -0,0 +1,205 @@
+package editor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Class RenderStats records the cost of frames of DrawPanel: time of painting, number of drawn and culled figures,
+ * time of finding figure under the cursor and delay of mouse events in the event queue.
+ *
+ * Times are kept in histograms, so percentiles are known at almost no cost. Statistics are shown by the overlay
+ * of DrawPanel, in JMX as FiguresEditor:type=RenderStats and as events of Java Flight Recorder
+ * (figures.Paint and figures.HitTest), which can be recorded with -XX:StartFlightRecording.
+ * @see DrawPanel
+ * @see LatencyHistogram
+ */
+class RenderStats implements RenderStatsMBean {
+
+    private static final Logger LOGGER = Logger.getLogger(RenderStats.class.getName());
+    static final String OBJECT_NAME = "FiguresEditor:type=RenderStats";
+
+    /**
+     * Frames contains times of the last painted frames, used to count frames painted in the last second.
+     */
+    private static final int FRAMES = 256;
+    private static final long SECOND = 1000000000L;
+
+    private final LatencyHistogram paintTime = new LatencyHistogram();
+    private final LatencyHistogram hitTime = new LatencyHistogram();
+    private final LatencyHistogram queueDelay = new LatencyHistogram();
+    private final long[] frames = new long[FRAMES];
+    private long frameCount;
+    private volatile int figuresDrawn, figuresCulled;
+
+    /**
+     * Records painted frame.
+     * @param start value of System.nanoTime() when painting started
+     * @param end value of System.nanoTime() when painting ended
+     * @param drawn number of figures drawn in the frame
+     * @param culled number of figures skipped by queries of the viewport, because they are not visible
+     */
+    void recordFrame(long start, long end, int drawn, int culled) {
+        paintTime.record(end - start);
+        figuresDrawn = drawn;
+        figuresCulled = culled;
+        synchronized (frames) {
+            frames[(int) (frameCount++ % FRAMES)] = end;
+        }
+
+        PaintEvent event = new PaintEvent();
+        if (event.shouldCommit()) {
+            event.paintTime = end - start;
+            event.figuresDrawn = drawn;
+            event.figuresCulled = culled;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records finding figure under the cursor.
+     * @param start value of System.nanoTime() before hit test
+     * @param end value of System.nanoTime() after hit test
+     * @param figure index of hit figure, -1 if no figure was hit
+     */
+    void recordHit(long start, long end, int figure) {
+        hitTime.record(end - start);
+
+        HitTestEvent event = new HitTestEvent();
+        if (event.shouldCommit()) {
+            event.hitTestTime = end - start;
+            event.figure = figure;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records delay between creating of input event and handling it on Event Dispatch Thread.
+     * @param when time of event in milliseconds, like InputEvent.getWhen()
+     */
+    void recordQueueDelay(long when) {
+        queueDelay.record((System.currentTimeMillis() - when) * 1000000);
+    }
+
+    /**
+     * Registers statistics in platform MBean server. Failure is only logged, editor works without JMX.
+     */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Statistics of drawing are not available in JMX", e);
+        }
+    }
+
+    /**
+     * Returns lines shown by the overlay of DrawPanel.
+     * @return lines of text
+     */
+    String[] describe() {
+        return new String[] {
+                String.format(Locale.ROOT, "%.0f FPS, %d drawn, %d culled", getFramesPerSecond(), figuresDrawn, figuresCulled),
+                describe("paint", paintTime),
+                describe("hit test", hitTime),
+                describe("queue", queueDelay)
+        };
+    }
+
+    private static String describe(String name, LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "%s p50 %.2f p99 %.2f max %.2f ms", name,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getMax()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    public double getFramesPerSecond() {
+        long now = System.nanoTime();
+        synchronized (frames) {
+            int n = 0;
+            long available = Math.min(frameCount, FRAMES);
+            while (n < available && now - frames[(int) ((frameCount - 1 - n) % FRAMES)] < SECOND) n++;
+            return n;
+        }
+    }
+
+    public long getFrameCount() {
+        synchronized (frames) {
+            return frameCount;
+        }
+    }
+
+    public double getPaintTimeMedian() {
+        return millis(paintTime.getValueAtPercentile(50));
+    }
+
+    public double getPaintTime99thPercentile() {
+        return millis(paintTime.getValueAtPercentile(99));
+    }
+
+    public double getPaintTimeMax() {
+        return millis(paintTime.getMax());
+    }
+
+    public double getHitTestTimeMedian() {
+        return millis(hitTime.getValueAtPercentile(50));
+    }
+
+    public double getHitTestTime99thPercentile() {
+        return millis(hitTime.getValueAtPercentile(99));
+    }
+
+    public double getQueueDelayMedian() {
+        return millis(queueDelay.getValueAtPercentile(50));
+    }
+
+    public double getQueueDelay99thPercentile() {
+        return millis(queueDelay.getValueAtPercentile(99));
+    }
+
+    public int getFiguresDrawn() {
+        return figuresDrawn;
+    }
+
+    public int getFiguresCulled() {
+        return figuresCulled;
+    }
+
+    public void reset() {
+        paintTime.reset();
+        hitTime.reset();
+        queueDelay.reset();
+    }
+
+    @Name("figures.Paint")
+    @Label("Paint")
+    @Category("Figures Editor")
+    static class PaintEvent extends Event {
+        @Label("Paint Time (ns)")
+        long paintTime;
+        @Label("Figures Drawn")
+        int figuresDrawn;
+        @Label("Figures Culled")
+        int figuresCulled;
+    }
+
+    @Name("figures.HitTest")
+    @Label("Hit Test")
+    @Category("Figures Editor")
+    static class HitTestEvent extends Event {
+        @Label("Hit Test Time (ns)")
+        long hitTestTime;
+        @Label("Figure")
+        int figure;
+    }
+}
@@ -0,0 +1,36 @@
+package editor;
+
+/**
+ * Interface RenderStatsMBean shows statistics of drawing in JMX, for example in JConsole or VisualVM.
+ * It has to be public, JMX reads only public interfaces. Times are in milliseconds.
+ * @see RenderStats
+ */
+public interface RenderStatsMBean {
+
+    double getFramesPerSecond();
+
+    long getFrameCount();
+
+    double getPaintTimeMedian();
+
+    double getPaintTime99thPercentile();
+
+    double getPaintTimeMax();
+
+    double getHitTestTimeMedian();
+
+    double getHitTestTime99thPercentile();
+
+    double getQueueDelayMedian();
+
+    double getQueueDelay99thPercentile();
+
+    int getFiguresDrawn();
+
+    int getFiguresCulled();
+
+    /**
+     * Removes all recorded values.
+     */
+    void reset();
+}
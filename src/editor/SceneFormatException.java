@@ -0,0 +1,50 @@
+package editor;
+
+import java.io.IOException;
+
+/**
+ * Class SceneFormatException is thrown when scene file can not be read, because its text is not correct.
+ * Message tells the file, line and column of the wrong text, like "scene.txt:12:5: Number expected, found "x"",
+ * so it can be shown to the user as it is.
+ * @see TextSceneFormat
+ */
+class SceneFormatException extends IOException {
+
+    private final String name;
+    private final int line;
+    private final int column;
+    private final String reason;
+
+    /**
+     * Creates exception of wrong text at given place.
+     * @param name name of file
+     * @param line line of wrong text, counted from 1
+     * @param column column of wrong text, counted from 1
+     * @param message what is wrong
+     */
+    SceneFormatException(String name, int line, int column, String message) {
+        super(name + ":" + line + ":" + column + ": " + message);
+        this.name = name;
+        this.line = line;
+        this.column = column;
+        this.reason = message;
+    }
+
+    /**
+     * Creates the same error given number of lines further, for error found in part of file that does not start
+     * at its first line.
+     * @param lines number of lines before the part
+     * @return error with line counted from the beginning of file
+     */
+    SceneFormatException shifted(int lines) {
+        return new SceneFormatException(name, line + lines, column, reason);
+    }
+
+    int getLine() {
+        return line;
+    }
+
+    int getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,441 @@
+package editor;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * Class SpatialIndex is a uniform grid over bounds of figures. It is used to find figures near given point
+ * without testing every figure of the drawing.
+ *
+ * Figures are given to the index by their index in FigureStore, which is also their z-order. Cells keep ids
+ * of figures instead, which do not change when figures below are added, removed or moved, and array zOf maps
+ * every id to the index of its figure. So change of one figure renumbers only the figures above it in zOf
+ * and never scans the cells, like FigureStore moves only arrays above the figure.
+ * Figures that cover too many cells are kept in separate list that is always checked.
+ * Bounds of figures are kept by FigureStore, they are given to the index when figure is added, removed or changed.
+ * @see FigureStore
+ */
+class SpatialIndex {
+
+    /**
+     * CELL_SIZE is the size of one cell of the grid in pixels.
+     * MAX_CELLS is the number of cells after which figure is treated as large one.
+     * MAX_CELL is the biggest coordinate of cell, coordinates of cells are clamped to it,
+     * so the cells of huge or infinite bounds can be counted and iterated without overflow.
+     */
+    private static final int CELL_SIZE = 64;
+    private static final int MAX_CELLS = 256;
+    private static final int MAX_CELL = 1 << 29;
+
+    /**
+     * keys and cells are open addressing hash table that maps packed cell coordinates into list of ids of figures.
+     * Slot is empty when it has no list. Lists of cells are kept when they become empty, so slots are never removed.
+     * large contains ids of figures that cover more than MAX_CELLS cells.
+     * count is the number of indexed figures.
+     */
+    private long[] keys = new long[1024];
+    private IntList[] cells = new IntList[1024];
+    private int usedCells;
+    private final IntList large = new IntList();
+    private int count;
+
+    /**
+     * zOf is index of figure of every id, idAt is id of figure of every index.
+     * Ids of removed figures are put into freeIds and given to new figures, nextId is the smallest id never given.
+     */
+    private int[] zOf = new int[64];
+    private int[] idAt = new int[64];
+    private final IntList freeIds = new IntList();
+    private int nextId;
+
+    /**
+     * Indices of figures tested by findTopmost, kept to not create list for every test.
+     */
+    private final IntList candidates = new IntList();
+
+    /**
+     * Returns number of indexed figures.
+     * @return number of figures
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Removes all figures from index.
+     */
+    void clear() {
+        keys = new long[1024];
+        cells = new IntList[1024];
+        usedCells = 0;
+        large.clear();
+        count = 0;
+        zOf = new int[64];
+        idAt = new int[64];
+        freeIds.clear();
+        nextId = 0;
+    }
+
+    /**
+     * Creates copy of the index that can be queried from other threads while this index is changed.
+     * @return copy of the index
+     */
+    SpatialIndex copy() {
+        SpatialIndex copy = new SpatialIndex();
+        copy.keys = keys.clone();
+        copy.cells = new IntList[cells.length];
+        for (int s = 0; s < cells.length; s++) {
+            if (cells[s] != null) copy.cells[s] = cells[s].copy();
+        }
+        copy.usedCells = usedCells;
+        copy.large.addAll(large);
+        copy.count = count;
+        copy.zOf = zOf.clone();
+        copy.idAt = idAt.clone();
+        copy.freeIds.addAll(freeIds);
+        copy.nextId = nextId;
+        return copy;
+    }
+
+    /**
+     * Adds figure with given bounds on the top of the others.
+     * @param x first parameter of bounds
+     * @param y second parameter of bounds
+     * @param w width of bounds
+     * @param h height of bounds
+     */
+    void add(double x, double y, double w, double h) {
+        insert(count, x, y, w, h);
+    }
+
+    /**
+     * Inserts figure at given position in z-order. Figures with bigger or equal index are moved up.
+     * @param index position of new figure
+     */
+    void insert(int index, double x, double y, double w, double h) {
+        ensureCapacity(count + 1);
+        int id = newId();
+        for (int i = count; i > index; i--) place(idAt[i - 1], i);
+        place(id, index);
+        count++;
+        link(id, x, y, w, h);
+    }
+
+    /**
+     * Removes figure of given index. Figures above it are moved down.
+     * @param index index of figure to remove
+     * @param x, y, w, h bounds of removed figure
+     */
+    void remove(int index, double x, double y, double w, double h) {
+        int id = idAt[index];
+        unlink(id, x, y, w, h);
+        count--;
+        for (int i = index; i < count; i++) place(idAt[i + 1], i);
+        freeIds.add(id);
+    }
+
+    /**
+     * Removes figures of given indices at once. Figures above them are moved down in one pass.
+     * @param sorted indices of removed figures, sorted ascending without duplicates
+     * @param bounds x, y, width and height of every figure, bounds of figure i start at 4 * i
+     */
+    void removeAll(IntList sorted, double[] bounds) {
+        if (sorted.isEmpty()) return;
+        for (int k = 0; k < sorted.size(); k++) {
+            int i = sorted.get(k);
+            int id = idAt[i];
+            unlink(id, bounds[4 * i], bounds[4 * i + 1], bounds[4 * i + 2], bounds[4 * i + 3]);
+            freeIds.add(id);
+        }
+        int to = sorted.get(0);
+        for (int i = to, k = 0; i < count; i++) {
+            if (k < sorted.size() && sorted.get(k) == i) k++;
+            else place(idAt[i], to++);
+        }
+        count -= sorted.size();
+    }
+
+    /**
+     * Inserts figures at given indices at once, reverse of removeAll. Figures that were there and above them are moved up
+     * in one pass.
+     * @param sorted indices of inserted figures after inserting, sorted ascending without duplicates
+     * @param bounds x, y, width and height of every figure after inserting, bounds of figure i start at 4 * i
+     */
+    void insertAll(IntList sorted, double[] bounds) {
+        if (sorted.isEmpty()) return;
+        ensureCapacity(count + sorted.size());
+        int from = count - 1;
+        count += sorted.size();
+        for (int i = count - 1, k = sorted.size() - 1; k >= 0; i--) {
+            if (sorted.get(k) == i) {
+                int id = newId();
+                place(id, i);
+                link(id, bounds[4 * i], bounds[4 * i + 1], bounds[4 * i + 2], bounds[4 * i + 3]);
+                k--;
+            } else {
+                place(idAt[from--], i);
+            }
+        }
+    }
+
+    /**
+     * Counts figures inserted at given indices that come below figure of given index, so the figure moves up by this count.
+     * Inserted figure k comes below when its index minus k inserted before it is not bigger than index of the figure.
+     * @param sorted indices of inserted figures after inserting, sorted ascending without duplicates
+     * @param index index of figure before inserting
+     * @return number of inserted figures below the figure
+     */
+    static int insertedBelow(IntList sorted, int index) {
+        int low = 0, high = sorted.size();
+        while (low < high) {
+            int k = (low + high) >>> 1;
+            if (sorted.get(k) - k <= index) low = k + 1;
+            else high = k;
+        }
+        return low;
+    }
+
+    /**
+     * Moves figure of given index on the top of the others. Its cells do not change.
+     * @param index index of figure
+     * @param x, y, w, h bounds of figure
+     */
+    void moveToTop(int index, double x, double y, double w, double h) {
+        int id = idAt[index];
+        for (int i = index; i < count - 1; i++) place(idAt[i + 1], i);
+        place(id, count - 1);
+    }
+
+    /**
+     * Updates bounds of figure that was moved or scaled.
+     * Figure stays in the same cells if it did not leave them.
+     * @param index index of figure
+     * @param ox, oy, ow, oh old bounds of figure
+     * @param x, y, w, h new bounds of figure
+     */
+    void update(int index, double ox, double oy, double ow, double oh, double x, double y, double w, double h) {
+        boolean sameCells = cell(ox) == cell(x) && cell(oy) == cell(y)
+                && cell(ox + ow) == cell(x + w) && cell(oy + oh) == cell(y + h);
+
+        if (!sameCells) {
+            int id = idAt[index];
+            unlink(id, ox, oy, ow, oh);
+            link(id, x, y, w, h);
+        }
+    }
+
+    /**
+     * Finds the topmost figure near given point that passes the test.
+     * Only figures from the cell containing the point and large figures are tested, starting from the top.
+     * @param x first parameter of coordinates
+     * @param y second parameter of coordinates
+     * @param test exact hit test of figure of given index, it gets the point too, so it does not have to capture it
+     * @return index of topmost figure that passed the test, -1 if there is no such figure.
+     */
+    int findTopmost(double x, double y, HitTest test) {
+        collect(x, y, candidates);
+        for (int c = candidates.size() - 1; c >= 0; c--) {
+            if (test.isHit(candidates.get(c), x, y)) return candidates.get(c);
+        }
+        return -1;
+    }
+
+    /**
+     * Collects figures from the cell containing given point and large figures, figures that can contain the point.
+     * @param x first parameter of coordinates
+     * @param y second parameter of coordinates
+     * @param out list for found indices, sorted ascending
+     */
+    void collect(double x, double y, IntList out) {
+        out.clear();
+        IntList cell = getCell(cell(x), cell(y));
+        if (cell != null) {
+            for (int j = 0; j < cell.size(); j++) out.add(zOf[cell.get(j)]);
+        }
+        for (int j = 0; j < large.size(); j++) out.add(zOf[large.get(j)]);
+        out.sortUnique();
+    }
+
+    /**
+     * Collects indices of figures whose bounds intersect given area.
+     * When the area covers more cells than there are figures, bounds of all figures are checked instead.
+     * @param area searched area
+     * @param bounds bounds of all figures (x, y, width, height for every figure)
+     * @param out list for found indices, they are sorted ascending (from the bottom to the top)
+     */
+    void query(Rectangle2D area, double[] bounds, IntList out) {
+        out.clear();
+        int x0 = cell(area.getX()), y0 = cell(area.getY());
+        int x1 = cell(area.getMaxX()), y1 = cell(area.getMaxY());
+
+        if (cellCount(x0, y0, x1, y1) > count) {
+            for (int i = 0; i < count; i++) {
+                if (intersects(bounds, i, area)) out.add(i);
+            }
+            return;
+        }
+        for (int cx = x0; cx <= x1; cx++) {
+            for (int cy = y0; cy <= y1; cy++) {
+                IntList list = getCell(cx, cy);
+                if (list == null) continue;
+                for (int j = 0; j < list.size(); j++) {
+                    int i = zOf[list.get(j)];
+                    if (intersects(bounds, i, area)) out.add(i);
+                }
+            }
+        }
+        for (int j = 0; j < large.size(); j++) {
+            int i = zOf[large.get(j)];
+            if (intersects(bounds, i, area)) out.add(i);
+        }
+        out.sortUnique();
+    }
+
+    private static boolean intersects(double[] bounds, int index, Rectangle2D area) {
+        int i = index * 4;
+        return bounds[i] <= area.getMaxX() && bounds[i + 1] <= area.getMaxY()
+                && bounds[i] + bounds[i + 2] >= area.getX() && bounds[i + 1] + bounds[i + 3] >= area.getY();
+    }
+
+    /**
+     * Adds id of figure to all cells covered by its bounds.
+     */
+    private void link(int id, double x, double y, double w, double h) {
+        int x0 = cell(x), y0 = cell(y);
+        int x1 = cell(x + w), y1 = cell(y + h);
+
+        if (cellCount(x0, y0, x1, y1) > MAX_CELLS) {
+            large.add(id);
+            return;
+        }
+        for (int cx = x0; cx <= x1; cx++) {
+            for (int cy = y0; cy <= y1; cy++) {
+                addCell(cx, cy).add(id);
+            }
+        }
+    }
+
+    /**
+     * Removes id of figure from all cells covered by its bounds.
+     */
+    private void unlink(int id, double x, double y, double w, double h) {
+        int x0 = cell(x), y0 = cell(y);
+        int x1 = cell(x + w), y1 = cell(y + h);
+
+        if (cellCount(x0, y0, x1, y1) > MAX_CELLS) {
+            large.removeValue(id);
+            return;
+        }
+        for (int cx = x0; cx <= x1; cx++) {
+            for (int cy = y0; cy <= y1; cy++) {
+                IntList list = getCell(cx, cy);
+                if (list != null) list.removeValue(id);
+            }
+        }
+    }
+
+    /**
+     * Puts figure of given id at given index.
+     */
+    private void place(int id, int index) {
+        idAt[index] = id;
+        zOf[id] = index;
+    }
+
+    /**
+     * Returns id for new figure, reuses ids of removed figures first.
+     */
+    private int newId() {
+        if (!freeIds.isEmpty()) return freeIds.removeAt(freeIds.size() - 1);
+        return nextId++;
+    }
+
+    /**
+     * Makes room for ids and indices of given number of figures.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > idAt.length) {
+            int length = Math.max(capacity, idAt.length * 2);
+            idAt = Arrays.copyOf(idAt, length);
+            zOf = Arrays.copyOf(zOf, length);
+        }
+    }
+
+    /**
+     * Returns list of figures in given cell.
+     * @return list of figures, null if no figure was ever added to the cell
+     */
+    private IntList getCell(int cx, int cy) {
+        long key = key(cx, cy);
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; cells[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return cells[slot];
+        }
+        return null;
+    }
+
+    /**
+     * Returns list of figures in given cell, creates it if the cell has no list.
+     */
+    private IntList addCell(int cx, int cy) {
+        long key = key(cx, cy);
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; cells[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return cells[slot];
+        }
+        if (2 * (usedCells + 1) > keys.length) {
+            growCells();
+            return addCell(cx, cy);
+        }
+        keys[slot] = key;
+        cells[slot] = new IntList(4);
+        usedCells++;
+        return cells[slot];
+    }
+
+    private void growCells() {
+        long[] oldKeys = keys;
+        IntList[] oldCells = cells;
+        keys = new long[oldKeys.length * 2];
+        cells = new IntList[oldCells.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCells[i] == null) continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (cells[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            cells[slot] = oldCells[i];
+        }
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Returns coordinate of cell containing given coordinate, clamped to MAX_CELL.
+     */
+    private static int cell(double coordinate) {
+        return (int) Math.max(-MAX_CELL, Math.min(MAX_CELL, Math.floor(coordinate / CELL_SIZE)));
+    }
+
+    /**
+     * Returns number of cells from (x0, y0) to (x1, y1) inclusive, counted in long so it can not overflow.
+     */
+    private static long cellCount(int x0, int y0, int x1, int y1) {
+        return ((long) x1 - x0 + 1) * ((long) y1 - y0 + 1);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    /**
+     * Exact test of figure found near the point.
+     */
+    interface HitTest {
+        boolean isHit(int i, double x, double y);
+    }
+}
@@ -0,0 +1,739 @@
+package editor;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Class TextSceneFormat reads and writes figures in text format, which can be read and edited by people.
+ *
+ * File starts with header line "Scene 2", then every figure is on its own line:
+ * - Circle x y width height rgb
+ * - Rect x y width height rgb, all of them whole numbers
+ * - Polygon n x of every vertex, y of every vertex, rgb
+ * Values are separated by spaces or tabs. Empty lines and lines starting with # are skipped.
+ *
+ * Numbers are written as shortest text that gives the same double (or float for vertices of polygons),
+ * so saved figures are read back exactly. Values that are not finite are written as NaN, Infinity and -Infinity,
+ * like Double.toString writes them, and read back too, so every drawing that can be saved can be opened.
+ * Files without header were written by older versions,
+ * which wrote height of circles and rectangles before width, they are read in that order.
+ *
+ * Files with name ending with .gz are compressed by gzip, compressed files are recognized when they are read.
+ * Text is parsed straight from buffer of characters, no strings are created for values.
+ * Big files are split into parts at ends of lines and the parts are parsed in parallel.
+ * Wrong text is reported by SceneFormatException with line and column.
+ * @see BinarySceneFormat
+ * @see SceneFormatException
+ */
+class TextSceneFormat {
+
+    static final String HEADER = "Scene";
+    static final int VERSION = 2;
+    static final String GZIP_EXTENSION = "gz";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Uncompressed files bigger than PARALLEL_SIZE bytes are split into parts of about PART_SIZE bytes,
+     * which are parsed in parallel.
+     */
+    private static final long PARALLEL_SIZE = 1 << 23;
+    private static final long PART_SIZE = 1 << 22;
+
+    /**
+     * Long lines are written in parts of this length, so polygons with many vertices are not collected in one string.
+     */
+    private static final int LINE_PART = 1 << 13;
+
+    /**
+     * Powers of ten that are exact doubles. Number with at most 15 digits and such power of ten is counted
+     * exactly by one multiplication or division, without Double.parseDouble.
+     */
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final int EXACT_DIGITS = 15;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    /**
+     * Checks if file of given name is compressed when it is written.
+     * @param file file to check
+     * @return {@code true} if name of file ends with .gz
+     */
+    static boolean isCompressed(File file) {
+        return file.getName().toLowerCase().endsWith("." + GZIP_EXTENSION);
+    }
+
+    /**
+     * Writes figures into file, compressed if its name ends with .gz.
+     * @param file file to write into
+     * @param figures figures to write
+     * @param progress progress of writing, it can cancel writing
+     * @throws IOException if file can not be written
+     */
+    static void write(File file, FigureStore figures, Progress progress) throws IOException {
+        write(file, figures, isCompressed(file), progress);
+    }
+
+    /**
+     * Writes figures into file.
+     * @param file file to write into
+     * @param figures figures to write
+     * @param compressed {@code true} if file is compressed by gzip
+     * @param progress progress of writing, it can cancel writing
+     * @throws IOException if file can not be written
+     */
+    static void write(File file, FigureStore figures, boolean compressed, Progress progress) throws IOException {
+        OutputStream out = compressed
+                ? new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE)
+                : new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+
+        try (Writer w = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder();
+            char[] buffer = new char[2 * LINE_PART];
+            float[] vertices = new float[64];
+
+            line.append(HEADER).append(' ').append(VERSION).append('\n');
+            for (int i = 0; i < figures.size(); i++) {
+                if (i % BinarySceneFormat.PROGRESS_STEP == 0) progress.update(i, figures.size());
+                line.append(figures.getTypeName(i)).append(' ');
+
+                byte type = figures.getType(i);
+                if (type == FigureStore.RECT) {
+                    line.append((int) figures.getX(i)).append(' ').append((int) figures.getY(i)).append(' ')
+                            .append((int) figures.getWidth(i)).append(' ').append((int) figures.getHeight(i)).append(' ');
+                } else if (type == FigureStore.CIRCLE) {
+                    appendNumber(line, figures.getX(i));
+                    appendNumber(line, figures.getY(i));
+                    appendNumber(line, figures.getWidth(i));
+                    appendNumber(line, figures.getHeight(i));
+                } else {
+                    int n = figures.getVertexCount(i);
+                    if (vertices.length < 2 * n) vertices = new float[2 * n];
+                    figures.getVertices(i, vertices);
+                    line.append(n).append(' ');
+                    for (int j = 0; j < 2 * n; j += 2) {
+                        appendNumber(line, vertices[j]);
+                        if (line.length() >= LINE_PART) writePart(w, line, buffer);
+                    }
+                    for (int j = 1; j < 2 * n; j += 2) {
+                        appendNumber(line, vertices[j]);
+                        if (line.length() >= LINE_PART) writePart(w, line, buffer);
+                    }
+                }
+                line.append(figures.getRGB(i)).append('\n');
+                writePart(w, line, buffer);
+            }
+        }
+    }
+
+    /**
+     * Appends number and space. Whole numbers are written without ".0", other numbers like Double.toString,
+     * which is the shortest text read back as the same double. Negative zero keeps its sign.
+     */
+    private static void appendNumber(StringBuilder line, double value) {
+        if (value == (long) value && Math.abs(value) < 1e15 && (value != 0 || 1 / value > 0)) line.append((long) value);
+        else line.append(value);
+        line.append(' ');
+    }
+
+    /**
+     * Appends number and space, like for doubles, but with text read back as the same float.
+     */
+    private static void appendNumber(StringBuilder line, float value) {
+        if (value == (long) value && Math.abs(value) < 1e15 && (value != 0 || 1 / value > 0)) line.append((long) value);
+        else line.append(value);
+        line.append(' ');
+    }
+
+    /**
+     * Writes collected text and clears it. Text is copied through buffer, so no String is created for it.
+     * @param w writer to write into
+     * @param line collected text, shorter than buffer
+     * @param buffer buffer for characters
+     */
+    private static void writePart(Writer w, StringBuilder line, char[] buffer) throws IOException {
+        line.getChars(0, line.length(), buffer, 0);
+        w.write(buffer, 0, line.length());
+        line.setLength(0);
+    }
+
+    /**
+     * Reads figures from file, compressed or not, and reports number of read bytes of file.
+     * Big uncompressed file is parsed in common ForkJoinPool, by as many threads as there are processors.
+     * @param file file to read from
+     * @param progress progress of reading, it can cancel reading
+     * @return store with read figures, it has no listeners
+     * @throws SceneFormatException if text of file is not correct
+     * @throws IOException if file can not be read
+     */
+    static FigureStore read(File file, Progress progress) throws IOException {
+        return read(file, progress, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Reads figures from file, compressed or not, and reports number of read bytes of file.
+     *
+     * Uncompressed file bigger than PARALLEL_SIZE is split into parts at ends of lines, parts are parsed in parallel
+     * on given pool, each into its own buffer of figures. Buffers are appended to the store in order of parts,
+     * so figures keep their order from the file. Compressed file can be read only from its beginning, it is parsed
+     * in the calling thread, like any file when pool has only one thread.
+     * Pool is not created for every file, it is shared with other work, like ImageExporter does.
+     * @param file file to read from
+     * @param progress progress of reading, it can cancel reading
+     * @param pool pool that parses parts of big file
+     * @return store with read figures, it has no listeners
+     * @throws SceneFormatException if text of file is not correct
+     * @throws IOException if file can not be read
+     */
+    static FigureStore read(File file, Progress progress, ForkJoinPool pool) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            FileChannel channel = fis.getChannel();
+            boolean compressed = fis.read() == 0x1f && fis.read() == 0x8b;
+            channel.position(0);
+
+            long length = channel.size();
+            Part[] parts = null;
+            InputStream in;
+            if (!compressed && pool.getParallelism() > 1 && length > PARALLEL_SIZE) {
+                parts = split(channel, file.getName());
+                parts[0].stream = new PartStream(channel, 0, parts[0].end);
+                in = parts[0].stream;
+            } else {
+                in = compressed ? new GZIPInputStream(fis, BUFFER_SIZE) : fis;
+            }
+            Tokenizer t = new Tokenizer(new InputStreamReader(in, StandardCharsets.UTF_8), file.getName());
+
+            /**
+             * Files of version 1 have no header and height is before width.
+             */
+            int version = 1;
+            boolean more = t.nextRecord();
+            if (more && t.is(HEADER)) {
+                version = t.nextInt("Version");
+                if (version < 1 || version > VERSION) throw t.error("Unsupported version " + version);
+                t.endRecord();
+                more = t.nextRecord();
+            }
+
+            if (parts == null) {
+                FigureStore figures = new FigureStore();
+                readFigures(t, more, version, figures, channel, progress);
+                return figures;
+            }
+            parts[0].t = t;
+            parts[0].more = more;
+            return readParts(parts, version, channel, pool, progress);
+        }
+    }
+
+    /**
+     * Reads figures until the end of text.
+     * @param t tokenizer at the first figure
+     * @param more {@code false} if there are no figures
+     * @param version version of file
+     * @param figures store that gets read figures
+     * @param channel read file, its position is reported to progress
+     * @param progress progress of reading, it can cancel reading
+     */
+    private static void readFigures(Tokenizer t, boolean more, int version, FigureStore figures,
+                                    FileChannel channel, Progress progress) throws IOException {
+        long length = channel.size();
+        float[] vertices = new float[64];
+        for (; more; more = t.nextRecord()) {
+            if (figures.size() % BinarySceneFormat.PROGRESS_STEP == 0) progress.update(channel.position(), length);
+
+            if (t.is("Circle")) {
+                double x = t.nextDouble("X"), y = t.nextDouble("Y"), w, h;
+                if (version == 1) {
+                    h = t.nextDouble("Height");
+                    w = t.nextDouble("Width");
+                } else {
+                    w = t.nextDouble("Width");
+                    h = t.nextDouble("Height");
+                }
+                figures.addCircle(x, y, w, h, t.nextInt("Color"));
+            }
+            else if (t.is("Rect")) {
+                int x = t.nextWhole("X"), y = t.nextWhole("Y"), w, h;
+                if (version == 1) {
+                    h = t.nextWhole("Height");
+                    w = t.nextWhole("Width");
+                } else {
+                    w = t.nextWhole("Width");
+                    h = t.nextWhole("Height");
+                }
+                figures.addRect(x, y, w, h, t.nextInt("Color"));
+            }
+            else if (t.is("Polygon")) {
+                int n = t.nextInt("Number of vertices");
+                if (n <= 0) throw t.error("Polygon has no vertices");
+
+                /**
+                 * Array grows while vertices are read, so wrong number of vertices does not allocate huge array.
+                 */
+                for (int j = 0; j < n; j++) {
+                    if (vertices.length < 2 * j + 2) {
+                        vertices = Arrays.copyOf(vertices, (int) Math.min(2L * n, 2L * vertices.length));
+                    }
+                    vertices[2 * j] = t.nextFloat("X");
+                }
+                for (int j = 0; j < n; j++) {
+                    vertices[2 * j + 1] = t.nextFloat("Y");
+                }
+                figures.addPolygon(vertices, n, t.nextInt("Color"));
+            }
+            else {
+                throw t.error("Unknown figure \"" + t.text() + "\"");
+            }
+            t.endRecord();
+        }
+    }
+
+    /**
+     * Splits file into parts of about PART_SIZE bytes. Every part ends behind the end of line, so no figure is split.
+     * Byte of '\n' is never part of other character in UTF-8, so ends of lines are found without decoding the text.
+     */
+    private static Part[] split(FileChannel channel, String name) throws IOException {
+        long length = channel.size();
+        List<Part> parts = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 12);
+        for (long start = 0; start < length; ) {
+            long end = length;
+            for (long pos = start + PART_SIZE; pos < length && end == length; ) {
+                buffer.clear();
+                int n = channel.read(buffer, pos);
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    if (buffer.get(i) == '\n') {
+                        end = pos + i + 1;
+                        break;
+                    }
+                }
+                pos += n;
+            }
+            parts.add(new Part(name, start, end));
+            start = end;
+        }
+        return parts.toArray(new Part[0]);
+    }
+
+    /**
+     * Parses parts in parallel and appends their figures to one store in order of parts.
+     * Parts are appended as soon as they are parsed, while the next parts are still being parsed.
+     * Error of part is reported with line counted from the beginning of file, the first error in the file wins,
+     * like when the file is read by one thread.
+     *
+     * Parts report bytes they parsed since their last report, progress gets the sum of bytes parsed by all parts,
+     * so it grows while parts are parsed and can cancel them. Position of channel given by readFigures is not used,
+     * parts read the file by positional reads that do not move it.
+     */
+    private static FigureStore readParts(Part[] parts, int version, FileChannel channel, ForkJoinPool pool, Progress progress) throws IOException {
+        long length = channel.size();
+        AtomicBoolean stopped = new AtomicBoolean();
+        AtomicLong parsed = new AtomicLong();
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (Part part : parts) {
+            Progress partProgress = (done, total) -> {
+                if (stopped.get()) throw new CancellationException();
+                progress.update(parsed.addAndGet(part.parsed()), length);
+            };
+            tasks.add(pool.submit(() -> part.parse(version, channel, partProgress)));
+        }
+        try {
+            FigureStore figures = new FigureStore();
+            int lines = 0;
+            for (int k = 0; k < parts.length; k++) {
+                tasks.get(k).join();
+                Part part = parts[k];
+                if (part.error instanceof SceneFormatException) throw ((SceneFormatException) part.error).shifted(lines);
+                if (part.error != null) throw part.error;
+                figures.appendAll(part.figures);
+                part.figures = null;
+                lines += part.lines;
+                progress.update(parsed.addAndGet(part.parsed()), length);
+            }
+            return figures;
+        } finally {
+            /** Parts that are still parsed after error or cancel stop at their next progress update. */
+            stopped.set(true);
+        }
+    }
+
+    /**
+     * Part of file parsed by one task: its bytes, figures read from it and number of its lines, or error found in it.
+     * Stream and tokenizer of the first part are created by the caller, who reads header of file with them.
+     * Reported is the number of bytes of part already given to progress.
+     */
+    private static class Part {
+        final String name;
+        final long start, end;
+        PartStream stream;
+        Tokenizer t;
+        boolean more;
+        FigureStore figures;
+        int lines;
+        IOException error;
+        long reported;
+
+        Part(String name, long start, long end) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+
+        void parse(int version, FileChannel channel, Progress progress) {
+            try {
+                if (t == null) {
+                    stream = new PartStream(channel, start, end);
+                    t = new Tokenizer(new InputStreamReader(stream, StandardCharsets.UTF_8), name);
+                    more = t.nextRecord();
+                }
+                figures = FigureStore.buffer();
+                readFigures(t, more, version, figures, channel, progress);
+                lines = t.getLine() - 1;
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                t = null;
+            }
+        }
+
+        /**
+         * Returns number of bytes of part read since the last call.
+         */
+        long parsed() {
+            long read = stream == null ? 0 : stream.pos - start;
+            long delta = read - reported;
+            reported = read;
+            return delta;
+        }
+    }
+
+    /**
+     * Stream of bytes of part of file. Bytes are read by positional reads of channel, so more parts of one file
+     * can be read at once.
+     */
+    private static class PartStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long pos;
+
+        PartStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.pos = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos >= end) return -1;
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos)), pos);
+            if (n <= 0) return -1;
+            pos += n;
+            return n;
+        }
+    }
+
+    /**
+     * Tokenizer splits text into values separated by spaces and records separated by lines.
+     * Values are kept in buffer of characters and parsed from it, buffer grows only for values longer than it.
+     * Line and column of every value are known for error messages.
+     */
+    private static class Tokenizer {
+        private final Reader in;
+        private final String name;
+        private char[] buf = new char[BUFFER_SIZE];
+        private int pos, limit;
+
+        /**
+         * Position of buf[0] and of the current line from the beginning of text, used for columns.
+         */
+        private long base, lineStart;
+        private int line = 1;
+        private int start, end;
+
+        /**
+         * Tells if the last number was counted by the fast path, it is correctly rounded double then.
+         */
+        private boolean exact;
+
+        Tokenizer(Reader in, String name) {
+            this.in = in;
+            this.name = name;
+        }
+
+        /**
+         * Moves to the first value of the next record, skipping empty lines and comments.
+         * @return {@code true} if there is next record, {@code false} at the end of text
+         */
+        boolean nextRecord() throws IOException {
+            while (true) {
+                int c = skipSpaces();
+                if (c < 0) return false;
+                if (c == '\n') {
+                    newLine();
+                } else if (c == '#') {
+                    while ((c = peek()) >= 0 && c != '\n') pos++;
+                } else {
+                    token();
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Checks that the rest of the record is empty and moves behind its line.
+         */
+        void endRecord() throws IOException {
+            if (token()) throw error("Unexpected \"" + text() + "\" at the end of figure");
+            if (peek() == '\n') newLine();
+        }
+
+        /**
+         * Checks if the current value is given word.
+         */
+        boolean is(String word) {
+            return is(start, word);
+        }
+
+        /**
+         * Checks if the current value from given position to its end is given word.
+         */
+        private boolean is(int from, String word) {
+            if (end - from != word.length()) return false;
+            for (int i = 0; i < word.length(); i++) {
+                if (buf[from + i] != word.charAt(i)) return false;
+            }
+            return true;
+        }
+
+        String text() {
+            return new String(buf, start, end - start);
+        }
+
+        /**
+         * Returns number of the current line, counted from 1.
+         */
+        int getLine() {
+            return line;
+        }
+
+        SceneFormatException error(String message) {
+            return new SceneFormatException(name, line, (int) (base + start - lineStart) + 1, message);
+        }
+
+        /**
+         * Reads next value as whole number.
+         * @param what name of value for error message
+         */
+        int nextInt(String what) throws IOException {
+            require(what);
+            int i = start;
+            boolean negative = buf[i] == '-';
+            if (negative || buf[i] == '+') i++;
+            if (i == end) throw error(what + " has to be a whole number, found \"" + text() + "\"");
+
+            long value = 0;
+            for (; i < end; i++) {
+                int d = buf[i] - '0';
+                if (d < 0 || d > 9) throw error(what + " has to be a whole number, found \"" + text() + "\"");
+                value = value * 10 + d;
+                if (value > 1L << 32) throw error(what + " is too big");
+            }
+            if (negative) value = -value;
+
+            /**
+             * Colors are written as signed ints, but unsigned ones are accepted too.
+             */
+            if (value < Integer.MIN_VALUE || value > 0xffffffffL) throw error(what + " is too big");
+            return (int) value;
+        }
+
+        /**
+         * Reads next value as number without fraction. Files of version 1 have bounds of rectangles written like "12.0".
+         * @param what name of value for error message
+         */
+        int nextWhole(String what) throws IOException {
+            double value = nextDouble(what);
+            if (value != (int) value) throw error(what + " has to be a whole number, found \"" + text() + "\"");
+            return (int) value;
+        }
+
+        /**
+         * Reads next value as double. Numbers with at most 15 digits and small exponent are counted exactly
+         * from their digits, other numbers are parsed by Double.parseDouble.
+         * NaN and Infinity with optional sign are read as they are, but numbers too big for double are errors.
+         * @param what name of value for error message
+         */
+        double nextDouble(String what) throws IOException {
+            require(what);
+            int i = start;
+            boolean negative = buf[i] == '-';
+            if (negative || buf[i] == '+') i++;
+            exact = true;
+            if (is(i, "Infinity")) return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            if (is("NaN")) return Double.NaN;
+
+            long mantissa = 0;
+            int digits = 0, exponent = 0;
+            boolean any = false, fraction = false;
+            for (; i < end; i++) {
+                char c = buf[i];
+                if (c == '.' && !fraction) {
+                    fraction = true;
+                    continue;
+                }
+                if (c < '0' || c > '9') break;
+                any = true;
+                if (digits < EXACT_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) digits++;
+                    if (fraction) exponent--;
+                } else if (c != '0' || !fraction) {
+                    exact = false;
+                }
+            }
+            if (any && i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+                i++;
+                boolean negativeExponent = i < end && buf[i] == '-';
+                if (i < end && (negativeExponent || buf[i] == '+')) i++;
+                int e = 0;
+                boolean exponentDigits = false;
+                for (; i < end && buf[i] >= '0' && buf[i] <= '9'; i++) {
+                    if (e < 100000) e = e * 10 + (buf[i] - '0');
+                    exponentDigits = true;
+                }
+                if (!exponentDigits) any = false;
+                exponent += negativeExponent ? -e : e;
+            }
+            if (!any || i != end) throw error(what + " has to be a number, found \"" + text() + "\"");
+
+            double value;
+            if (mantissa == 0) {
+                value = 0;
+            } else if (exact && exponent >= -22 && exponent <= 22) {
+                value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            } else {
+                exact = false;
+                value = Math.abs(Double.parseDouble(text()));
+            }
+            if (Double.isInfinite(value)) throw error(what + " is too big");
+            return negative ? -value : value;
+        }
+
+        /**
+         * Reads next value as float. Double rounded to float is the correctly rounded float, unless the double lies
+         * exactly in the middle between two floats, such numbers are parsed again by Float.parseFloat.
+         * @param what name of value for error message
+         */
+        float nextFloat(String what) throws IOException {
+            double d = nextDouble(what);
+            float f = (float) d;
+            if (!Double.isFinite(d)) return f;
+            if (Float.isInfinite(f)) throw error(what + " is too big");
+            if (!exact) return Float.parseFloat(text());
+            if (d != f) {
+                double other = d > f ? Math.nextUp(f) : Math.nextDown(f);
+                if (d - f == other - d) return Float.parseFloat(text());
+            }
+            return f;
+        }
+
+        private void require(String what) throws IOException {
+            if (!token()) {
+                start = pos;
+                throw error(what + " expected");
+            }
+        }
+
+        /**
+         * Reads next value of the current line.
+         * @return {@code false} if the line has no more values
+         */
+        private boolean token() throws IOException {
+            int c = skipSpaces();
+            if (c < 0 || c == '\n') return false;
+            start = pos;
+            while (true) {
+                if (pos == limit && !fill()) break;
+                c = buf[pos];
+                if (c == ' ' || c == '\t' || c == '\r' || c == '\n') break;
+                pos++;
+            }
+            end = pos;
+            return true;
+        }
+
+        private int skipSpaces() throws IOException {
+            int c;
+            while ((c = peek()) == ' ' || c == '\t' || c == '\r') pos++;
+            return c;
+        }
+
+        private int peek() throws IOException {
+            if (pos == limit) {
+                start = pos;
+                if (!fill()) return -1;
+            }
+            return buf[pos];
+        }
+
+        private void newLine() {
+            pos++;
+            line++;
+            lineStart = base + pos;
+        }
+
+        /**
+         * Reads more text into buffer. Characters from start of the current value are kept, the others are dropped.
+         * @return {@code false} at the end of text
+         */
+        private boolean fill() throws IOException {
+            if (start > 0) {
+                System.arraycopy(buf, start, buf, 0, limit - start);
+                base += start;
+                pos -= start;
+                limit -= start;
+                start = 0;
+            } else if (limit == buf.length) {
+                buf = Arrays.copyOf(buf, 2 * buf.length);
+            }
+            int n = in.read(buf, limit, buf.length - limit);
+            if (n <= 0) return false;
+            limit += n;
+            return true;
+        }
+    }
+}
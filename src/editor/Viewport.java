@@ -0,0 +1,137 @@
+package editor;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Class Viewport maps coordinates of the drawing (world) to coordinates of DrawPanel (screen) and back.
+ * Figures are kept in world coordinates, viewport decides which part of the drawing is visible and how big it is.
+ *
+ * World point (originX, originY) is shown in the top left corner of the panel, one world unit takes zoom pixels.
+ * @see DrawPanel
+ */
+class Viewport {
+
+    /**
+     * Minimal and maximal zoom, beyond them zooming does nothing.
+     */
+    static final double MIN_ZOOM = 0.01, MAX_ZOOM = 100;
+
+    private double originX, originY;
+    private double zoom = 1;
+
+    double getZoom() {
+        return zoom;
+    }
+
+    double toWorldX(double x) {
+        return originX + x / zoom;
+    }
+
+    double toWorldY(double y) {
+        return originY + y / zoom;
+    }
+
+    double toScreenX(double x) {
+        return (x - originX) * zoom;
+    }
+
+    double toScreenY(double y) {
+        return (y - originY) * zoom;
+    }
+
+    /**
+     * Returns transform from world to screen, used to draw figures on the panel.
+     * @return new transform
+     */
+    AffineTransform getTransform() {
+        return new AffineTransform(zoom, 0, 0, zoom, -originX * zoom, -originY * zoom);
+    }
+
+    /**
+     * Returns the part of the drawing shown in given area of the panel.
+     * @param screen area of the panel
+     * @return area in world coordinates
+     */
+    Rectangle2D toWorld(Rectangle screen) {
+        return new Rectangle2D.Double(toWorldX(screen.x), toWorldY(screen.y), screen.width / zoom, screen.height / zoom);
+    }
+
+    /**
+     * Returns the part of the drawing that has to be drawn to fill given area of the panel.
+     * It is bigger than the area by outlines of figures (half of world unit) and by pixels touched by antialiasing.
+     * Figures outside of it are not visible in the area.
+     * @param screen area of the panel
+     * @return area in world coordinates
+     */
+    Rectangle2D toVisibleWorld(Rectangle screen) {
+        double margin = 1 + 2 / zoom;
+        return new Rectangle2D.Double(toWorldX(screen.x) - margin, toWorldY(screen.y) - margin,
+                screen.width / zoom + 2 * margin, screen.height / zoom + 2 * margin);
+    }
+
+    /**
+     * Returns the smallest area of the panel that contains given area of the drawing.
+     * @param world area in world coordinates
+     * @return area of the panel
+     */
+    Rectangle toScreen(Rectangle2D world) {
+        Rectangle screen = new Rectangle();
+        toScreen(world.getX(), world.getY(), world.getWidth(), world.getHeight(), screen);
+        return screen;
+    }
+
+    /**
+     * Sets given rectangle to the smallest area of the panel that contains given area of the drawing.
+     * Used while figures are dragged, so no rectangle is created for every event.
+     * @param x first parameter of coordinates of area in the drawing
+     * @param y second parameter of coordinates of area in the drawing
+     * @param width width of area in the drawing
+     * @param height height of area in the drawing
+     * @param screen rectangle that gets area of the panel
+     */
+    void toScreen(double x, double y, double width, double height, Rectangle screen) {
+        int minX = (int) Math.floor(toScreenX(x));
+        int minY = (int) Math.floor(toScreenY(y));
+        int maxX = (int) Math.ceil(toScreenX(x + width));
+        int maxY = (int) Math.ceil(toScreenY(y + height));
+        screen.setBounds(minX, minY, maxX - minX, maxY - minY);
+    }
+
+    /**
+     * Moves the drawing by given distance on the screen.
+     * @param deltaX distance in pixels in horizontal axis
+     * @param deltaY distance in pixels in vertical axis
+     */
+    void pan(int deltaX, int deltaY) {
+        originX -= deltaX / zoom;
+        originY -= deltaY / zoom;
+    }
+
+    /**
+     * Multiplies zoom by given factor, point of the drawing under (x, y) of the panel stays in its place.
+     * @param factor multiplier of zoom
+     * @param x position on the panel
+     * @param y position on the panel
+     * @return {@code true} if zoom changed, {@code false} if it already was minimal or maximal
+     */
+    boolean zoom(double factor, int x, int y) {
+        double newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        if (newZoom == zoom) return false;
+        double worldX = toWorldX(x), worldY = toWorldY(y);
+        zoom = newZoom;
+        originX = worldX - x / zoom;
+        originY = worldY - y / zoom;
+        return true;
+    }
+
+    /**
+     * Shows the drawing from (0, 0) without zoom.
+     */
+    void reset() {
+        originX = 0;
+        originY = 0;
+        zoom = 1;
+    }
+}
@@ -0,0 +1,66 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinarySceneFormatTest {
+
+    @TempDir
+    File directory;
+
+    /**
+     * Binary file keeps bounds of circles as floats, so the small value is the float nearest to 1e-7.
+     */
+    @Test
+    void readsBackWrittenFigures() throws IOException {
+        FigureStore figures = TextSceneFormatTest.scene((float) 1e-7);
+        File file = new File(directory, "scene.figb");
+        BinarySceneFormat.write(file, figures);
+
+        TextSceneFormatTest.assertSameFigures(figures, BinarySceneFormat.read(file));
+        TextSceneFormatTest.assertSameFigures(figures, FigureStore.fromMapped(MappedScene.open(file), Progress.NONE));
+    }
+
+    @Test
+    void rejectsNumberOfFiguresThatTheFileCanNotHold() throws IOException {
+        for (int count : new int[] {-1, Integer.MIN_VALUE, 3, Integer.MAX_VALUE}) {
+            ByteBuffer b = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+            b.put(BinarySceneFormat.MAGIC).put(BinarySceneFormat.VERSION).putInt(count);
+            b.put(BinarySceneFormat.RECT).put(new byte[3]).put(new byte[] {1, 2, 3, 4});
+            File file = new File(directory, "count.figb");
+            Files.write(file.toPath(), Arrays.copyOf(b.array(), b.position() + 5));
+
+            IOException read = assertThrows(IOException.class, () -> BinarySceneFormat.read(file));
+            IOException mapped = assertThrows(IOException.class, () -> MappedScene.open(file));
+            assertEquals(read.getMessage(), mapped.getMessage());
+        }
+    }
+
+    @Test
+    void rejectsMoreVerticesThanTheFileHolds() throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        b.put(BinarySceneFormat.MAGIC).put(BinarySceneFormat.VERSION).putInt(2);
+        b.put(BinarySceneFormat.CIRCLE).put(new byte[3]).putFloat(1).putFloat(2).putFloat(3).putFloat(4);
+        b.put(BinarySceneFormat.POLYGON).put(new byte[3]);
+        BinarySceneFormat.putVarint(b, 300000000);
+        b.putFloat(0).putFloat(0).putFloat(1).putFloat(1).putFloat(0).putFloat(0);
+        File file = new File(directory, "damaged.figb");
+        Files.write(file.toPath(), Arrays.copyOf(b.array(), b.position()));
+
+        IOException read = assertThrows(IOException.class, () -> BinarySceneFormat.read(file));
+        assertTrue(read.getMessage().startsWith("Polygon 1 has 300000000 vertices"), read.getMessage());
+        IOException mapped = assertThrows(IOException.class, () -> MappedScene.open(file));
+        assertEquals(read.getMessage(), mapped.getMessage());
+    }
+}
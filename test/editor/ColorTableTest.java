@@ -0,0 +1,33 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColorTableTest {
+
+    private final ColorTable table = new ColorTable();
+
+    @Test
+    void newColorTakesEntryOfColorThatIsNotUsed() {
+        int red = table.intern(0xff0000);
+        int blue = table.intern(0x0000ff);
+        table.intern(0xff0000);
+        table.release(red);
+        assertEquals(red, table.find(0xff0000));
+
+        table.release(red);
+        assertEquals(-1, table.find(0xff0000));
+        assertEquals(1, table.size());
+
+        int green = table.intern(0x00ff00);
+        assertEquals(red, green);
+        assertEquals(green, table.find(0x00ff00));
+        assertEquals(new Color(0x00ff00), table.getColor(green));
+        assertEquals(1, table.getUses(green));
+        assertEquals(blue, table.find(0x0000ff));
+        assertEquals(2, table.size());
+    }
+}
@@ -0,0 +1,149 @@
+package editor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.AbstractButton;
+import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that dragging and scaling of the pressed figure and finding figure under the mouse do not allocate,
+ * like every frame of the gesture does.
+ * Operations are repeated until JIT compiles them, then bytes allocated by the thread are counted.
+ * Every object has at least 16 bytes, so less than one byte per operation means that operations do not allocate,
+ * only rare work like starting new edit of history is averaged over all of them.
+ */
+class DrawPanelTest {
+
+    private static final int WARMUP = 200000;
+    private static final int OPERATIONS = 200000;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private DrawPanel panel;
+    private FigureStore store;
+    private int figure;
+    private MouseEvent press;
+
+    @BeforeEach
+    void pressFigure() {
+        panel = new DrawPanel();
+        ActionPanel actionPanel = new ActionPanel();
+        EditPanel editPanel = new EditPanel();
+        panel.setActionPanel(actionPanel);
+        panel.setEditPanel(editPanel);
+        actionPanel.setDrawPanel(panel);
+        editPanel.setDrawPanel(panel);
+        for (Component c : actionPanel.getComponents()) {
+            if (c instanceof AbstractButton && ((AbstractButton) c).getText().equals("Modify")) ((AbstractButton) c).doClick();
+        }
+        panel.setSize(880, 640);
+
+        Random random = new Random(42);
+        FigureStore scene = new FigureStore();
+        float[] vertices = new float[12];
+        for (int i = 0; i < 30000; i++) {
+            int x = random.nextInt(5000), y = random.nextInt(5000), w = 5 + random.nextInt(50);
+            if (i % 3 == 0) {
+                scene.addCircle(x, y, w, w, random.nextInt(0xffffff));
+            } else if (i % 3 == 1) {
+                scene.addRect(x, y, w, w, random.nextInt(0xffffff));
+            } else {
+                for (int j = 0; j < 6; j++) {
+                    vertices[2 * j] = x + random.nextInt(w);
+                    vertices[2 * j + 1] = y + random.nextInt(w);
+                }
+                scene.addPolygon(vertices, 6, random.nextInt(0xffffff));
+            }
+        }
+        scene.addRect(400, 300, 60, 40, 0x336699);
+        panel.setFigures(scene);
+        store = panel.getStore();
+        figure = store.size() - 1;
+
+        press = new MouseEvent(panel, MouseEvent.MOUSE_PRESSED, System.currentTimeMillis(),
+                InputEvent.BUTTON1_DOWN_MASK, 420, 320, 1, false, MouseEvent.BUTTON1);
+        panel.dispatchEvent(press);
+        assertEquals(figure, panel.getActiveFigure());
+    }
+
+    @Test
+    void dragDoesNotAllocate() {
+        MouseEvent[] moves = {
+                new MouseEvent(panel, MouseEvent.MOUSE_DRAGGED, 0, InputEvent.BUTTON1_DOWN_MASK, press.getX() + 8, press.getY(), 0, false),
+                new MouseEvent(panel, MouseEvent.MOUSE_DRAGGED, 0, InputEvent.BUTTON1_DOWN_MASK, press.getX(), press.getY(), 0, false)
+        };
+        for (int i = 0; i < WARMUP; i++) panel.drag(moves[i & 1]);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < OPERATIONS; i++) panel.drag(moves[i & 1]);
+        double perOperation = (double) (threads.getCurrentThreadAllocatedBytes() - before) / OPERATIONS;
+
+        assertEquals(400, store.getX(figure));
+        assertTrue(perOperation < 1, "Drag allocates " + perOperation + " bytes per operation");
+    }
+
+    @Test
+    void scaleDoesNotAllocate() {
+        MouseWheelEvent down = new MouseWheelEvent(panel, MouseEvent.MOUSE_WHEEL, 0, 0, press.getX(), press.getY(), 0, false,
+                MouseWheelEvent.WHEEL_UNIT_SCROLL, 1, 1);
+        MouseWheelEvent up = new MouseWheelEvent(panel, MouseEvent.MOUSE_WHEEL, 0, 0, press.getX(), press.getY(), 0, false,
+                MouseWheelEvent.WHEEL_UNIT_SCROLL, 1, -1);
+        for (int i = 0; i < WARMUP; i++) scale(down, up);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < OPERATIONS; i++) scale(down, up);
+        double perOperation = (double) (threads.getCurrentThreadAllocatedBytes() - before) / OPERATIONS;
+
+        assertTrue(perOperation < 1, "Scale allocates " + perOperation + " bytes per operation");
+    }
+
+    @Test
+    void hitDoesNotAllocate() {
+        for (int i = 0; i < WARMUP; i++) store.hit(420 + (i & 1), 320);
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int hit = -1;
+        for (int i = 0; i < OPERATIONS; i++) hit = store.hit(420 + (i & 1), 320);
+        double perOperation = (double) (threads.getCurrentThreadAllocatedBytes() - before) / OPERATIONS;
+
+        assertEquals(figure, hit);
+        assertTrue(perOperation < 1, "Hit allocates " + perOperation + " bytes per operation");
+    }
+
+    /**
+     * Figures below and above the pressed figure are copied from the layer cache in the second frame,
+     * so they are counted neither as drawn nor as culled.
+     */
+    @Test
+    void cachedFiguresAreNotCulled() {
+        BufferedImage image = new BufferedImage(panel.getWidth(), panel.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        panel.paint(g2d);
+        RenderStats stats = panel.getStats();
+        assertEquals(store.size(), stats.getFiguresDrawn() + stats.getFiguresCulled());
+
+        panel.paint(g2d);
+        g2d.dispose();
+        assertEquals(1, stats.getFiguresDrawn());
+        assertEquals(0, stats.getFiguresCulled());
+    }
+
+    /**
+     * Makes the figure smaller when it is bigger than at the start and bigger otherwise, so its size stays the same.
+     */
+    private void scale(MouseWheelEvent down, MouseWheelEvent up) {
+        if (store.getWidth(figure) > 60) panel.wheel(down, 1, 1);
+        else panel.wheel(up, -1, -1);
+    }
+}
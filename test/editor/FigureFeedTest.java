@@ -0,0 +1,120 @@
+package editor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.awt.EventQueue;
+import java.lang.reflect.InvocationTargetException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Figures are added and removed by the feed between changes of the user, undo and redo change the same figures
+ * as the user did. Everything runs in Event Dispatch Thread, like in the editor, and the test waits for the feed.
+ */
+class FigureFeedTest {
+
+    private DrawPanel panel;
+    private FigureStore store;
+    private FigureHistory history;
+    private FigureFeed feed;
+
+    @BeforeEach
+    void createPanel() throws Exception {
+        EventQueue.invokeAndWait(() -> {
+            panel = new DrawPanel();
+            ActionPanel actionPanel = new ActionPanel();
+            EditPanel editPanel = new EditPanel();
+            panel.setActionPanel(actionPanel);
+            panel.setEditPanel(editPanel);
+            actionPanel.setDrawPanel(panel);
+            editPanel.setDrawPanel(panel);
+            store = panel.getStore();
+            history = panel.getHistory();
+            feed = panel.getFeed();
+        });
+    }
+
+    @Test
+    void undoAndRedoChangeFiguresOfUserAfterFeedAddedAndRemovedFigures() throws Exception {
+        onEventThread(() -> {
+            store.addRect(0, 0, 10, 10, 0xff0000);
+            history.added();
+        });
+        int first = feed.addRect(100, 0, 10, 10, 0x00ff00);
+        feed.addRect(200, 0, 10, 10, 0x0000ff);
+        waitForFeed();
+
+        onEventThread(() -> {
+            assertEquals(3, store.size());
+            history.translate(2, 5, 0);
+            history.endGesture();
+            history.translate(0, 0, 7);
+            history.endGesture();
+        });
+        feed.remove(first);
+        waitForFeed();
+
+        onEventThread(() -> {
+            assertEquals(2, store.size());
+            history.undo();
+            assertEquals(0, store.getY(0));
+            history.undo();
+            assertEquals(200, store.getX(1));
+            history.undo();
+            assertEquals(1, store.size());
+            assertEquals(200, store.getX(0));
+            assertFalse(history.canUndo());
+
+            history.redo();
+            history.redo();
+            history.redo();
+            assertEquals(2, store.size());
+            assertEquals(7, store.getY(0));
+            assertEquals(205, store.getX(1));
+        });
+    }
+
+    /**
+     * Move of figure removed by the feed can not be undone, so it is dropped with the edits before it.
+     * Changes made after the removal are undone as usual.
+     */
+    @Test
+    void changeOfFigureRemovedByFeedIsDroppedWithEditsBeforeIt() throws Exception {
+        int id = feed.addRect(100, 0, 10, 10, 0x00ff00);
+        waitForFeed();
+        onEventThread(() -> {
+            store.addRect(0, 0, 10, 10, 0xff0000);
+            history.added();
+            history.translate(0, 5, 5);
+            history.endGesture();
+        });
+        feed.remove(id);
+        waitForFeed();
+
+        onEventThread(() -> {
+            assertEquals(1, store.size());
+            assertFalse(history.canUndo());
+            history.translate(0, 3, 0);
+            history.endGesture();
+            history.undo();
+            assertEquals(0, store.getX(0));
+            assertFalse(history.canUndo());
+        });
+    }
+
+    private static void onEventThread(Runnable r) throws InterruptedException, InvocationTargetException {
+        EventQueue.invokeAndWait(r);
+    }
+
+    /**
+     * Waits until Event Dispatch Thread applied all changes posted to the feed.
+     */
+    private void waitForFeed() throws Exception {
+        boolean[] idle = new boolean[1];
+        do {
+            onEventThread(() -> idle[0] = feed.isIdle());
+        } while (!idle[0]);
+    }
+}
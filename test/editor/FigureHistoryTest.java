@@ -0,0 +1,102 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FigureHistoryTest {
+
+    private static final int RED = 0xffff0000, GREEN = 0xff00ff00, BLUE = 0xff0000ff;
+
+    private final FigureStore store = new FigureStore();
+    private final FigureHistory history = new FigureHistory(store);
+
+    @TempDir
+    File directory;
+
+    /**
+     * Figures added by the feed after the change keep their colors, though they have one of the colors.
+     */
+    @Test
+    void undoOfReplacedColorChangesOnlyReplacedFigures() {
+        store.addRect(0, 0, 10, 10, RED);
+        store.addRect(20, 0, 10, 10, BLUE);
+        store.addRect(40, 0, 10, 10, RED);
+
+        history.replaceColor(RED, GREEN);
+        store.addRect(60, 0, 10, 10, GREEN);
+        history.figuresAppended();
+        history.undo();
+        assertEquals(RED, store.getRGB(0));
+        assertEquals(BLUE, store.getRGB(1));
+        assertEquals(RED, store.getRGB(2));
+        assertEquals(GREEN, store.getRGB(3));
+
+        store.addRect(80, 0, 10, 10, RED);
+        history.figuresAppended();
+        history.redo();
+        assertEquals(GREEN, store.getRGB(0));
+        assertEquals(BLUE, store.getRGB(1));
+        assertEquals(GREEN, store.getRGB(2));
+        assertEquals(GREEN, store.getRGB(3));
+        assertEquals(RED, store.getRGB(4));
+    }
+
+    @Test
+    void replacedColorJoinsExistingColor() {
+        store.addRect(0, 0, 10, 10, RED);
+        store.addRect(20, 0, 10, 10, BLUE);
+
+        history.replaceColor(RED, BLUE);
+        assertEquals(BLUE, store.getRGB(0));
+        assertEquals(1, store.getColorCount());
+
+        history.undo();
+        assertEquals(RED, store.getRGB(0));
+        assertEquals(BLUE, store.getRGB(1));
+    }
+
+    /**
+     * Figures of scene opened from indexed file stay in the file until the first scale gives them slots all at once.
+     * Undo and redo give back the figures of the file and the scaled figures.
+     */
+    @Test
+    void undoAndRedoScaleOfFiguresOfMappedFile() throws IOException {
+        FigureStore figures = new FigureStore();
+        for (int i = 0; i < 50000; i++) {
+            if (i % 100 == 0) figures.addPolygon(new float[] {i % 500 * 8, i / 500 * 8, i % 500 * 8 + 30, i / 500 * 8, i % 500 * 8, i / 500 * 8 + 20}, 3, BLUE);
+            else figures.addRect(i % 500 * 8, i / 500 * 8, 6 + i % 5, 6, i % 3 == 0 ? RED : GREEN);
+        }
+        File file = new File(directory, "scene.figb");
+        BinarySceneFormat.write(file, figures);
+        store.setAll(FigureStore.fromMapped(MappedScene.open(file), Progress.NONE));
+        FigureStore original = BinarySceneFormat.read(file), scaled = BinarySceneFormat.read(file);
+
+        IntList sorted = new IntList();
+        for (int i = 0; i < store.size(); i += 2) sorted.add(i);
+        history.scaleAll(sorted, 0.1);
+        history.scaleAll(sorted, 0.2);
+        scaled.scaleAll(sorted, 0.1);
+        scaled.scaleAll(sorted, 0.2);
+        TextSceneFormatTest.assertSameFigures(scaled, store);
+
+        history.undo();
+        TextSceneFormatTest.assertSameFigures(original, store);
+        history.redo();
+        TextSceneFormatTest.assertSameFigures(scaled, store);
+    }
+
+    @Test
+    void keepsLimitedNumberOfEdits() {
+        for (int i = 0; i < FigureHistory.LIMIT + 5; i++) {
+            store.addRect(i, 0, 10, 10, RED);
+            history.added();
+        }
+        while (history.canUndo()) history.undo();
+        assertEquals(5, store.size());
+    }
+}
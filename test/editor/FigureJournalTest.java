@@ -0,0 +1,81 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FigureJournalTest {
+
+    @TempDir
+    File directory;
+
+    /**
+     * Editor stopped while the last record was written, so only part of it is in the file.
+     * Figures are recovered with all changes before it.
+     */
+    @Test
+    void recoversChangesBeforeTruncatedLastRecord() throws IOException {
+        FigureJournal journal = FigureJournal.open(directory);
+        assertNotNull(journal);
+        FigureStore store = TextSceneFormatTest.scene(1e-7);
+        journal.start(store);
+
+        store.translate(1, 5, -3);
+        store.setColor(0, 0xabcdef);
+        store.addRect(40, 50, 60, 70, 0x336699);
+        IntList both = new IntList();
+        both.add(0);
+        both.add(2);
+        store.scaleAll(both, 0.5);
+        FigureStore expected = store.snapshot();
+        store.remove(1);
+        journal.stop();
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".journal"));
+        assertEquals(1, files.length);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        TextSceneFormatTest.assertSameFigures(expected, journal.recover());
+        journal.close();
+    }
+
+    /**
+     * Opened file is kept as snapshot without writing its figures, and recovery still works after saving replaced it.
+     */
+    @Test
+    void keepsOpenedFileInsteadOfSnapshot() throws IOException {
+        File drawing = new File(directory, "drawing.figb");
+        BinarySceneFormat.write(drawing, TextSceneFormatTest.scene(1e-7));
+        File journalDir = new File(directory, "journal");
+        FigureJournal journal = FigureJournal.open(journalDir);
+        assertNotNull(journal);
+        FigureStore store = new FigureStore();
+        journal.start(store);
+
+        journal.opened(drawing);
+        store.setAll(BinarySceneFormat.read(drawing));
+        store.translate(1, 5, -3);
+        store.addRect(40, 50, 60, 70, 0x336699);
+        FigureStore expected = store.snapshot();
+        journal.stop();
+        File saved = new File(directory, "saved.tmp");
+        BinarySceneFormat.write(saved, new FigureStore());
+        Files.move(saved.toPath(), drawing.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        assertEquals(0, journalDir.listFiles((dir, name) -> name.endsWith(".txt")).length);
+        assertTrue(journalDir.listFiles((dir, name) -> name.endsWith(".journal"))[0].length() < 1000);
+        TextSceneFormatTest.assertSameFigures(expected, journal.recover());
+        journal.close();
+    }
+}
@@ -0,0 +1,97 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FigureOrderTest {
+
+    private static final int RECORDS = 500;
+
+    /**
+     * Model keeps slot, or -1 - record, of every figure in a plain list.
+     */
+    private final List<Integer> model = new ArrayList<>();
+    private int slots;
+
+    @Test
+    void openedFileIsOneRun() {
+        FigureOrder order = new FigureOrder(1000000);
+
+        assertEquals(1, order.runs());
+        assertEquals(-1 - 777777, order.locate(777777));
+        assertEquals(777777, order.indexOfRecord(777777));
+        assertEquals(-1, order.indexOfSlot(0));
+    }
+
+    /**
+     * Changes order and model in random ways and compares every figure, record and slot after every change.
+     */
+    @Test
+    void changesLikeListOfFigures() {
+        Random random = new Random(11);
+        FigureOrder order = new FigureOrder(RECORDS);
+        for (int r = 0; r < RECORDS; r++) model.add(-1 - r);
+
+        IntList sorted = new IntList();
+        for (int step = 0; step < 2000; step++) {
+            int op = random.nextInt(7);
+            int i = model.isEmpty() ? 0 : random.nextInt(model.size());
+            if (op == 0) {
+                order.add(slots);
+                model.add(slots++);
+            } else if (op == 1) {
+                int at = random.nextInt(model.size() + 1);
+                order.insert(at, slots);
+                model.add(at, slots++);
+            } else if (op == 2 && !model.isEmpty()) {
+                int z = model.indexOf(-1 - random.nextInt(RECORDS));
+                if (z >= 0) {
+                    order.set(z, slots);
+                    model.set(z, slots++);
+                }
+            } else if (op == 3 && !model.isEmpty()) {
+                order.remove(i);
+                model.remove(i);
+            } else if (op == 4) {
+                sorted.clear();
+                for (int k = 0; k < model.size(); k++) if (random.nextInt(20) == 0) sorted.add(k);
+                order.removeAll(sorted);
+                for (int k = sorted.size() - 1; k >= 0; k--) model.remove(sorted.get(k));
+            } else if (op == 5) {
+                sorted.clear();
+                for (int k = 0; k < model.size(); k++) if (model.get(k) < 0 && random.nextInt(15) == 0) sorted.add(k);
+                order.setAll(sorted, slots);
+                for (int k = 0; k < sorted.size(); k++) model.set(sorted.get(k), slots++);
+            } else {
+                sorted.clear();
+                int size = model.size();
+                for (int k = 0; k <= size; k++) if (random.nextInt(25) == 0) sorted.add(sorted.size() + k);
+                order.insertAll(sorted, slots);
+                for (int k = 0; k < sorted.size(); k++) model.add(sorted.get(k), slots++);
+            }
+            assertSame(order, "after step " + step);
+        }
+        assertSame(order.copy(), "in copy");
+    }
+
+    private void assertSame(FigureOrder order, String when) {
+        assertEquals(model.size(), order.size(), "Size " + when);
+        int[] indexOfRecord = new int[RECORDS], indexOfSlot = new int[slots + 1];
+        Arrays.fill(indexOfRecord, -1);
+        Arrays.fill(indexOfSlot, -1);
+        for (int i = 0; i < model.size(); i++) {
+            int s = model.get(i);
+            assertEquals(s, order.locate(i), "Figure " + i + " " + when);
+            if (s >= 0) indexOfSlot[s] = i;
+            else indexOfRecord[-1 - s] = i;
+        }
+        for (int r = 0; r < RECORDS; r++) assertEquals(indexOfRecord[r], order.indexOfRecord(r), "Record " + r + " " + when);
+        for (int s = 0; s <= slots; s++) assertEquals(indexOfSlot[s], order.indexOfSlot(s), "Slot " + s + " " + when);
+    }
+}
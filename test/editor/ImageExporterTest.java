@@ -0,0 +1,40 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ImageExporterTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void cancelledExportKeepsExistingFile() throws IOException {
+        FigureStore figures = new FigureStore();
+        figures.addRect(10, 10, 100, 100, 0x336699);
+        ImageExporter exporter = new ImageExporter(figures.indexedSnapshot(), new Rectangle2D.Double(0, 0, 200, 2000), 1);
+        File image = new File(directory, "image.png");
+        byte[] existing = {1, 2, 3};
+        Files.write(image.toPath(), existing);
+
+        assertThrows(CancellationException.class, () -> exporter.export(image, 96, (done, total) -> {
+            if (done > 0) throw new CancellationException();
+        }));
+        assertArrayEquals(existing, Files.readAllBytes(image.toPath()));
+        assertEquals(1, directory.list().length);
+
+        exporter.export(image, 96);
+        assertEquals(1, directory.list().length);
+        assertEquals('P', Files.readAllBytes(image.toPath())[1]);
+    }
+}
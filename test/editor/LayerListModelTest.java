@@ -0,0 +1,54 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LayerListModelTest {
+
+    private final FigureStore store = new FigureStore();
+    private final LayerListModel model = new LayerListModel(store);
+
+    /**
+     * Size the list knows about, changed by every event like the list changes it.
+     */
+    private int listSize;
+
+    /**
+     * Every run of removed or inserted figures is reported with the size of the model after that run,
+     * so the list sees the same size as the model after every event.
+     */
+    @Test
+    void sizeChangesWithEveryReportedRun() {
+        for (int i = 0; i < 20; i++) store.addRect(i, i, 10, 10, 0x336699);
+        listSize = model.getSize();
+        model.addListDataListener(new ListDataListener() {
+            public void intervalAdded(ListDataEvent e) {
+                listSize += e.getIndex1() - e.getIndex0() + 1;
+                assertEquals(listSize, model.getSize());
+            }
+
+            public void intervalRemoved(ListDataEvent e) {
+                listSize -= e.getIndex1() - e.getIndex0() + 1;
+                assertEquals(listSize, model.getSize());
+            }
+
+            public void contentsChanged(ListDataEvent e) {
+                assertEquals(listSize, model.getSize());
+            }
+        });
+
+        IntList runs = new IntList();
+        for (int i : new int[] {2, 3, 7, 10, 11, 12}) runs.add(i);
+        store.removeAll(runs);
+        assertEquals(14, listSize);
+
+        FigureRecord[] figures = new FigureRecord[runs.size()];
+        for (int k = 0; k < figures.length; k++) figures[k] = new FigureRecord(FigureStore.RECT, k, k, 5, 5, 0x996633, null);
+        store.insertAll(runs, figures);
+        assertEquals(20, listSize);
+    }
+}
@@ -0,0 +1,280 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedSceneTest {
+
+    private static final int[] COLORS = {0xff0000, 0x00ff00, 0x0000ff, 0x123456, 0xffffff};
+
+    @TempDir
+    File directory;
+
+    private final IntList expected = new IntList();
+    private final IntList found = new IntList();
+
+    @Test
+    void opensIndexOfWrittenFile() throws IOException {
+        MappedScene scene = MappedScene.open(write(scene(new Random(1), 2000)));
+
+        assertTrue(scene.isIndexed());
+        assertEquals(2000, scene.size());
+        assertEquals(COLORS.length, scene.getColorCount());
+    }
+
+    /**
+     * Query by cells of the index finds the same records as checking bounds of every record.
+     */
+    @Test
+    void queryFindsRecordsIntersectingArea() throws IOException {
+        Random random = new Random(5);
+        MappedScene scene = MappedScene.open(write(scene(random, 3000)));
+        double[] b = new double[4];
+        for (int q = 0; q < 50; q++) {
+            Rectangle2D area = new Rectangle2D.Double(random.nextInt(4000) - 500, random.nextInt(4000) - 500,
+                    random.nextInt(q % 10 == 0 ? 8000 : 800), random.nextInt(800));
+            expected.clear();
+            for (int r = 0; r < scene.size(); r++) {
+                scene.readBounds(r, b);
+                if (b[0] <= area.getMaxX() && b[1] <= area.getMaxY() && b[0] + b[2] >= area.getX() && b[1] + b[3] >= area.getY()) expected.add(r);
+            }
+            found.clear();
+            scene.query(area, found);
+            assertArrayEquals(SpatialIndexTest.values(expected), IntStream.of(SpatialIndexTest.values(found)).sorted().distinct().toArray());
+        }
+    }
+
+    /**
+     * Changes figures of store opened from the file and of store read into memory in random ways,
+     * then compares figures, found figures and hit figures of both stores.
+     */
+    @Test
+    void changesFiguresLikeStoreInMemory() throws IOException {
+        Random random = new Random(7);
+        File file = write(scene(random, 3000));
+        FigureStore mapped = FigureStore.fromMapped(MappedScene.open(file), Progress.NONE);
+        FigureStore memory = BinarySceneFormat.read(file);
+        TextSceneFormatTest.assertSameFigures(memory, mapped);
+
+        IntList sorted = new IntList();
+        for (int step = 0; step < 400; step++) {
+            int op = random.nextInt(11);
+            int n = memory.size();
+            int i = random.nextInt(n);
+            if (op == 0) {
+                FigureRecord f = memory.getRecord(random.nextInt(n));
+                int at = random.nextInt(n + 1);
+                memory.insert(at, f);
+                mapped.insert(at, f);
+            } else if (op == 1) {
+                memory.remove(i);
+                mapped.remove(i);
+            } else if (op == 2) {
+                memory.moveToTop(i);
+                mapped.moveToTop(i);
+            } else if (op == 3) {
+                memory.translate(i, 30, -20);
+                mapped.translate(i, 30, -20);
+            } else if (op == 4) {
+                memory.scale(i, 0.1);
+                mapped.scale(i, 0.1);
+            } else if (op == 5) {
+                int rgb = COLORS[random.nextInt(COLORS.length)];
+                memory.setColor(i, rgb);
+                mapped.setColor(i, rgb);
+            } else if (op == 6) {
+                int from = COLORS[random.nextInt(COLORS.length)], to = random.nextInt(3) == 0 ? 0x777777 : COLORS[random.nextInt(COLORS.length)];
+                memory.replaceColor(from, to);
+                mapped.replaceColor(from, to);
+            } else if (op == 7) {
+                FigureRecord f = memory.getRecord(random.nextInt(n));
+                memory.replace(i, f);
+                mapped.replace(i, f);
+            } else if (op == 8) {
+                sorted.clear();
+                for (int k = 0; k < n; k++) if (random.nextInt(40) == 0) sorted.add(k);
+                FigureRecord[] removed = new FigureRecord[sorted.size()];
+                for (int k = 0; k < removed.length; k++) removed[k] = memory.getRecord(sorted.get(k));
+                memory.removeAll(sorted);
+                mapped.removeAll(sorted);
+                if (random.nextBoolean()) {
+                    memory.insertAll(sorted, removed);
+                    mapped.insertAll(sorted, removed);
+                }
+            } else if (op == 9) {
+                memory.addRect(i, i, 40, 30, COLORS[i % COLORS.length]);
+                mapped.addRect(i, i, 40, 30, COLORS[i % COLORS.length]);
+            } else {
+                sorted.clear();
+                for (int k = 0; k < n; k++) if (random.nextInt(30) == 0) sorted.add(k);
+                memory.translateAll(sorted, -5, 7);
+                mapped.translateAll(sorted, -5, 7);
+            }
+
+            assertEquals(memory.getColorCount(), mapped.getColorCount(), "Colors after step " + step);
+            for (int q = 0; q < 5; q++) {
+                Rectangle2D area = new Rectangle2D.Double(random.nextInt(4000) - 500, random.nextInt(4000) - 500,
+                        random.nextInt(800), random.nextInt(800));
+                memory.query(area, expected);
+                mapped.query(area, found);
+                assertArrayEquals(SpatialIndexTest.values(expected), SpatialIndexTest.values(found), "Query after step " + step);
+
+                double x = random.nextInt(3500), y = random.nextInt(3500);
+                assertEquals(memory.hit(x, y), mapped.hit(x, y), "Hit after step " + step);
+            }
+        }
+        TextSceneFormatTest.assertSameFigures(memory, mapped);
+        for (int i = 0; i < memory.size(); i++) assertEquals(memory.getRGB(i), mapped.getRGB(i));
+
+        FigureStore copy = mapped.snapshot();
+        TextSceneFormatTest.assertSameFigures(memory, copy);
+    }
+
+    @Test
+    void queryOfWholeDrawingFindsAllFigures() throws IOException {
+        FigureStore mapped = FigureStore.fromMapped(MappedScene.open(write(scene(new Random(3), 500))), Progress.NONE);
+
+        mapped.query(new Rectangle2D.Double(-1e9, -1e9, 2e9, 2e9), found);
+        assertEquals(500, found.size());
+        mapped.query(new Rectangle2D.Double(-1e6, -1e6, 2e6, 2e6), found);
+        assertEquals(500, found.size());
+    }
+
+    /**
+     * Every figure has its own color, colors of the file are loaded into palette only when figures of them are changed.
+     */
+    @Test
+    void loadsColorsOfFileWhenFiguresChange() throws IOException {
+        FigureStore memory = new FigureStore();
+        for (int i = 0; i < 1000; i++) memory.addRect(i, i, 10, 10, 0x10000 + 7 * i);
+        FigureStore mapped = FigureStore.fromMapped(MappedScene.open(write(memory)), Progress.NONE);
+        assertTrue(mapped.getColorIndex(0) < -1);
+        assertEquals(mapped.getColor(3), mapped.getColor(3));
+
+        memory.setColor(5, 0x10000 + 7 * 8);
+        mapped.setColor(5, 0x10000 + 7 * 8);
+        assertEquals(mapped.getColorIndex(5), mapped.getColorIndex(8));
+        memory.replaceColor(0x10000 + 7 * 20, 0x10000 + 7 * 30);
+        mapped.replaceColor(0x10000 + 7 * 20, 0x10000 + 7 * 30);
+        memory.addRect(0, 0, 5, 5, 0x10000 + 7 * 40);
+        mapped.addRect(0, 0, 5, 5, 0x10000 + 7 * 40);
+        assertEquals(mapped.getColorIndex(40), mapped.getColorIndex(1000));
+        memory.remove(50);
+        mapped.remove(50);
+
+        assertEquals(memory.getColorCount(), mapped.getColorCount());
+        for (int i = 0; i < memory.size(); i++) {
+            assertEquals(memory.getRGB(i), mapped.getRGB(i));
+            assertEquals(memory.getColor(i), mapped.getColor(i));
+        }
+        FigureStore copy = mapped.snapshot();
+        for (int i = 0; i < memory.size(); i++) assertEquals(memory.getColor(i), copy.getColor(i));
+    }
+
+    /**
+     * Hit test of big polygon makes its table of edges, but the polygon stays in the file. Its color is not loaded,
+     * so it has no slot.
+     */
+    @Test
+    void hitOfBigPolygonKeepsItInFile() throws IOException {
+        FigureStore memory = new FigureStore();
+        for (int i = 0; i < 20; i++) {
+            int n = 100;
+            float[] vertices = new float[2 * n];
+            for (int j = 0; j < n; j++) {
+                double angle = 2 * Math.PI * j / n;
+                vertices[2 * j] = (float) (1000 * i + 100 + 100 * Math.cos(angle));
+                vertices[2 * j + 1] = (float) (100 + 100 * Math.sin(angle));
+            }
+            memory.addPolygon(vertices, n, 0x10000 + i);
+        }
+        FigureStore mapped = FigureStore.fromMapped(MappedScene.open(write(memory)), Progress.NONE);
+
+        for (int k = 0; k < 3; k++) {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, mapped.hit(1000 * i + 100, 150));
+                assertEquals(-1, mapped.hit(1000 * i + 195, 195));
+            }
+        }
+        for (int i = 0; i < 20; i++) assertTrue(mapped.getColorIndex(i) < -1, "Figure " + i + " has slot");
+
+        mapped.translate(7, 10, 0);
+        memory.translate(7, 10, 0);
+        assertEquals(7, mapped.hit(7205, 100));
+        assertEquals(memory.hit(7205, 100), mapped.hit(7205, 100));
+        TextSceneFormatTest.assertSameFigures(memory, mapped);
+    }
+
+    /**
+     * Offset, color or id of the index that points outside of records or colors makes the index unusable,
+     * the file is opened by going through its records, as if it had no index.
+     */
+    @Test
+    void opensFileWithDamagedIndexWithoutIt() throws IOException {
+        FigureStore figures = scene(new Random(9), 300);
+        File file = write(figures);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer b = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int palette = (int) b.getLong(bytes.length - BinarySceneFormat.TRAILER_SIZE);
+        int table = palette + 4 + 8 * b.getInt(palette);
+        int grid = table + 8 * 300, cellCount = b.getInt(grid + 4);
+        int ids = grid + 8 + 12 * cellCount + 8;
+
+        int[][] damages = {{table + 8 * 17, bytes.length}, {table + 8 * 17, 2}, {table + 8 * 40 + 4, COLORS.length},
+                {ids + 4 * 5, 300}, {ids + 4 * 6, -1}, {bytes.length - BinarySceneFormat.TRAILER_SIZE - 4, 1 << 20}};
+        for (int[] damage : damages) {
+            byte[] damaged = bytes.clone();
+            ByteBuffer.wrap(damaged).order(ByteOrder.LITTLE_ENDIAN).putInt(damage[0], damage[1]);
+            Files.write(file.toPath(), damaged);
+
+            MappedScene scene = MappedScene.open(file);
+            assertFalse(scene.isIndexed(), "Damage at " + damage[0]);
+            TextSceneFormatTest.assertSameFigures(figures, FigureStore.fromMapped(scene, Progress.NONE));
+        }
+    }
+
+    private File write(FigureStore figures) throws IOException {
+        File file = new File(directory, "scene.figb");
+        BinarySceneFormat.write(file, figures);
+        return file;
+    }
+
+    /**
+     * Creates circles, rectangles, small and big polygons and a few figures that cover many cells of the index.
+     */
+    private static FigureStore scene(Random random, int size) {
+        FigureStore figures = new FigureStore();
+        for (int i = 0; i < size; i++) {
+            int x = random.nextInt(3000), y = random.nextInt(3000), w = 5 + random.nextInt(i % 50 == 0 ? 6000 : 300);
+            int rgb = COLORS[random.nextInt(COLORS.length)];
+            if (i % 3 == 0) {
+                figures.addCircle(x + 0.25, y - 0.5, w, w, rgb);
+            } else if (i % 3 == 1) {
+                figures.addRect(x, y, w, random.nextInt(300), rgb);
+            } else {
+                int n = i % 30 == 2 ? 100 : 3 + random.nextInt(6);
+                float[] vertices = new float[2 * n];
+                for (int j = 0; j < n; j++) {
+                    vertices[2 * j] = x + random.nextInt(w);
+                    vertices[2 * j + 1] = y + random.nextInt(w);
+                }
+                figures.addPolygon(vertices, n, rgb);
+            }
+        }
+        return figures;
+    }
+}
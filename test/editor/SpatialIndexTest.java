@@ -0,0 +1,146 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SpatialIndexTest {
+
+    private final SpatialIndex index = new SpatialIndex();
+    private final IntList found = new IntList();
+
+    @Test
+    void hugeBoundsAreLargeFigures() {
+        double[] bounds = {10, 10, 20, 20, -1e300, -1e300, 2e300, 2e300, -3e9, 5, 6e9, 10};
+        for (int i = 0; i < 3; i++) index.add(bounds[4 * i], bounds[4 * i + 1], bounds[4 * i + 2], bounds[4 * i + 3]);
+
+        assertEquals(2, index.findTopmost(15, 15, (i, px, py) -> contains(bounds, i, px, py)));
+        assertEquals(2, index.findTopmost(-2e9, 6, (i, px, py) -> contains(bounds, i, px, py)));
+        assertEquals(1, index.findTopmost(1e6, -1e6, (i, px, py) -> contains(bounds, i, px, py)));
+        index.query(new Rectangle2D.Double(0, 0, 50, 50), bounds, found);
+        assertArrayEquals(new int[] {0, 1, 2}, values(found));
+
+        index.remove(1, bounds[4], bounds[5], bounds[6], bounds[7]);
+        assertEquals(-1, index.findTopmost(1e6, -1e6, (i, px, py) -> contains(bounds, i < 1 ? i : i + 1, px, py)));
+    }
+
+    @Test
+    void queryOfHugeAreaChecksAllFigures() {
+        double[] bounds = {10, 10, 20, 20, 1e12, 1e12, 5, 5};
+        index.add(10, 10, 20, 20);
+        index.add(1e12, 1e12, 5, 5);
+
+        index.query(new Rectangle2D.Double(-Double.MAX_VALUE / 2, -Double.MAX_VALUE / 2, Double.MAX_VALUE, Double.MAX_VALUE), bounds, found);
+        assertArrayEquals(new int[] {0, 1}, values(found));
+        index.query(new Rectangle2D.Double(1e12 - 1, 1e12 - 1, 2, 2), bounds, found);
+        assertArrayEquals(new int[] {1}, values(found));
+    }
+
+    @Test
+    void copyKeepsFiguresWhenIndexChanges() {
+        double[] bounds = {10, 10, 20, 20, 100, 100, 20, 20, -1e12, 0, 2e12, 5};
+        for (int i = 0; i < 3; i++) index.add(bounds[4 * i], bounds[4 * i + 1], bounds[4 * i + 2], bounds[4 * i + 3]);
+        SpatialIndex copy = index.copy();
+
+        index.remove(0, 10, 10, 20, 20);
+        index.add(10, 10, 20, 20);
+        copy.query(new Rectangle2D.Double(0, 0, 50, 50), bounds, found);
+        assertArrayEquals(new int[] {0, 2}, values(found));
+        assertEquals(1, copy.findTopmost(110, 110, (i, px, py) -> contains(bounds, i, px, py)));
+        assertEquals(3, copy.size());
+    }
+
+    /**
+     * Changes figures in random ways and compares every query and hit with checking all figures.
+     */
+    @Test
+    void findsTheSameFiguresAsCheckingAll() {
+        Random random = new Random(3);
+        List<double[]> figures = new ArrayList<>();
+        IntList sorted = new IntList();
+
+        for (int step = 0; step < 3000; step++) {
+            int op = random.nextInt(7);
+            int n = figures.size();
+            if (n < 5 || op == 0) {
+                double[] b = randomBounds(random);
+                int i = random.nextInt(n + 1);
+                figures.add(i, b);
+                index.insert(i, b[0], b[1], b[2], b[3]);
+            } else if (op == 1) {
+                int i = random.nextInt(n);
+                double[] b = figures.remove(i);
+                index.remove(i, b[0], b[1], b[2], b[3]);
+            } else if (op == 2) {
+                int i = random.nextInt(n);
+                double[] b = figures.remove(i);
+                figures.add(b);
+                index.moveToTop(i, b[0], b[1], b[2], b[3]);
+            } else if (op == 3) {
+                int i = random.nextInt(n);
+                double[] o = figures.get(i), b = randomBounds(random);
+                figures.set(i, b);
+                index.update(i, o[0], o[1], o[2], o[3], b[0], b[1], b[2], b[3]);
+            } else if (op == 4) {
+                sorted.clear();
+                for (int i = 0; i < n; i++) if (random.nextInt(5) == 0) sorted.add(i);
+                double[] before = boundsOf(figures);
+                for (int k = sorted.size() - 1; k >= 0; k--) figures.remove(sorted.get(k));
+                index.removeAll(sorted, before);
+            } else {
+                sorted.clear();
+                int inserted = 1 + random.nextInt(5);
+                while (sorted.size() < inserted) {
+                    int i = random.nextInt(n + inserted);
+                    if (!sorted.contains(i)) sorted.addSorted(i);
+                }
+                for (int k = 0; k < inserted; k++) figures.add(sorted.get(k), randomBounds(random));
+                index.insertAll(sorted, boundsOf(figures));
+            }
+
+            double[] bounds = boundsOf(figures);
+            assertEquals(figures.size(), index.size());
+            double x = random.nextInt(1200) - 100, y = random.nextInt(1200) - 100;
+            Rectangle2D area = new Rectangle2D.Double(x, y, random.nextInt(300), random.nextInt(300));
+            index.query(area, bounds, found);
+            IntList expected = new IntList();
+            for (int i = 0; i < figures.size(); i++) {
+                if (bounds[4 * i] <= area.getMaxX() && bounds[4 * i + 1] <= area.getMaxY()
+                        && bounds[4 * i] + bounds[4 * i + 2] >= x && bounds[4 * i + 1] + bounds[4 * i + 3] >= y) expected.add(i);
+            }
+            assertArrayEquals(values(expected), values(found));
+
+            int topmost = -1;
+            for (int i = figures.size() - 1; i >= 0 && topmost == -1; i--) if (contains(bounds, i, x, y)) topmost = i;
+            assertEquals(topmost, index.findTopmost(x, y, (i, px, py) -> contains(bounds, i, px, py)));
+        }
+    }
+
+    private static double[] randomBounds(Random random) {
+        double w = random.nextInt(10) == 0 ? 20000 : random.nextInt(200);
+        return new double[] {random.nextInt(1000), random.nextInt(1000), w, random.nextInt(200)};
+    }
+
+    private static double[] boundsOf(List<double[]> figures) {
+        double[] bounds = new double[4 * figures.size()];
+        for (int i = 0; i < figures.size(); i++) System.arraycopy(figures.get(i), 0, bounds, 4 * i, 4);
+        return bounds;
+    }
+
+    private static boolean contains(double[] bounds, int i, double x, double y) {
+        return x >= bounds[4 * i] && y >= bounds[4 * i + 1]
+                && x <= bounds[4 * i] + bounds[4 * i + 2] && y <= bounds[4 * i + 1] + bounds[4 * i + 3];
+    }
+
+    static int[] values(IntList list) {
+        int[] values = new int[list.size()];
+        for (int i = 0; i < values.length; i++) values[i] = list.get(i);
+        return values;
+    }
+}
@@ -0,0 +1,132 @@
+package editor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextSceneFormatTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void readsBackWrittenFigures() throws IOException {
+        FigureStore figures = scene(1e-7);
+        for (File file : new File[] {new File(directory, "scene.txt"), new File(directory, "scene.txt.gz")}) {
+            TextSceneFormat.write(file, figures, Progress.NONE);
+            assertSameFigures(figures, TextSceneFormat.read(file, Progress.NONE));
+        }
+    }
+
+    @Test
+    void reportsLineAndColumnOfWrongValue() throws IOException {
+        File file = new File(directory, "wrong.txt");
+        Files.write(file.toPath(), "Scene 2\nRect 1 2 3 4 255\n\n  Circle 1 2 x 4 5\n".getBytes(StandardCharsets.UTF_8));
+
+        SceneFormatException e = assertThrows(SceneFormatException.class, () -> TextSceneFormat.read(file, Progress.NONE));
+        assertEquals(4, e.getLine());
+        assertEquals(14, e.getColumn());
+        assertTrue(e.getMessage().startsWith("wrong.txt:4:14: "), e.getMessage());
+    }
+
+    @Test
+    void readsBackValuesThatAreNotFinite() throws IOException {
+        FigureStore figures = new FigureStore();
+        figures.addCircle(Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 2, 0x123456);
+        figures.addPolygon(new float[] {Float.POSITIVE_INFINITY, 1, 2, Float.NEGATIVE_INFINITY, 3, 3}, 3, 0);
+        File file = new File(directory, "infinite.txt");
+
+        TextSceneFormat.write(file, figures, Progress.NONE);
+        FigureStore read = TextSceneFormat.read(file, Progress.NONE);
+
+        assertEquals(2, read.size());
+        assertEquals(Double.NaN, read.getX(0));
+        assertEquals(Double.POSITIVE_INFINITY, read.getY(0));
+        assertEquals(Double.NEGATIVE_INFINITY, read.getWidth(0));
+        float[] vertices = new float[6];
+        read.getVertices(1, vertices);
+        assertArrayEquals(new float[] {Float.POSITIVE_INFINITY, 1, 2, Float.NEGATIVE_INFINITY, 3, 3}, vertices);
+    }
+
+    /**
+     * File is big enough to be split into parts, progress gets bytes of all parts while they are parsed.
+     */
+    @Test
+    void readsBigFileInPartsWithProgressOfAllParts() throws IOException {
+        FigureStore figures = new FigureStore();
+        for (int i = 0; i < 400000; i++) figures.addRect(i % 1000, i / 1000, 10 + i % 7, 20, i);
+        File file = new File(directory, "big.txt");
+        TextSceneFormat.write(file, figures, Progress.NONE);
+        assertTrue(file.length() > 1 << 23);
+
+        AtomicLong last = new AtomicLong();
+        AtomicInteger updates = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        FigureStore read;
+        try {
+            read = TextSceneFormat.read(file, (done, total) -> {
+                assertEquals(file.length(), total);
+                last.accumulateAndGet(done, Math::max);
+                updates.incrementAndGet();
+            }, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(figures.size(), read.size());
+        for (int i = 0; i < figures.size(); i += 997) {
+            assertEquals(figures.getX(i), read.getX(i));
+            assertEquals(figures.getWidth(i), read.getWidth(i));
+            assertEquals(figures.getRGB(i), read.getRGB(i));
+        }
+        assertEquals(file.length(), last.get());
+        assertTrue(updates.get() > 10, "Only " + updates.get() + " updates");
+    }
+
+    /**
+     * Creates figures of all types with whole numbers, fractions and given small value.
+     */
+    static FigureStore scene(double small) {
+        FigureStore figures = new FigureStore();
+        figures.addCircle(small, 3, 0.375, 2.5, 0x123456);
+        figures.addRect(-5, 7, 10, 20, 0xff0000);
+        figures.addPolygon(new float[] {(float) small, 0, 10, 0, 5, -1.25f}, 3, 0x00ff00);
+        figures.addCircle(-100, 1e6, 40, 40, 0x123456);
+        return figures;
+    }
+
+    /**
+     * Checks that both stores have the same figures, with exactly the same numbers.
+     */
+    static void assertSameFigures(FigureStore expected, FigureStore actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getType(i), actual.getType(i), "Type of figure " + i);
+            assertEquals(expected.getRGB(i), actual.getRGB(i), "Color of figure " + i);
+            assertEquals(expected.getX(i), actual.getX(i), "X of figure " + i);
+            assertEquals(expected.getY(i), actual.getY(i), "Y of figure " + i);
+            assertEquals(expected.getWidth(i), actual.getWidth(i), "Width of figure " + i);
+            assertEquals(expected.getHeight(i), actual.getHeight(i), "Height of figure " + i);
+            if (expected.getType(i) == FigureStore.POLYGON) {
+                int n = expected.getVertexCount(i);
+                assertEquals(n, actual.getVertexCount(i));
+                float[] e = new float[2 * n], a = new float[2 * n];
+                expected.getVertices(i, e);
+                actual.getVertices(i, a);
+                assertArrayEquals(e, a, "Vertices of figure " + i);
+            }
+        }
+    }
+}